@@ -4,9 +4,7 @@
  */
 package com.newrelic.telemetry;
 
-import static java.util.Collections.unmodifiableMap;
-
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -14,9 +12,32 @@ import java.util.Map;
  *
  * <p>Only String keys are allowed. Acceptable values for attributes include Numbers, Strings, and
  * booleans.
+ *
+ * <p>The pairs are kept in a pair of arrays sorted by key, rather than a hash table, since most
+ * sets of attributes are small. Copies and {@link #view() views} share the arrays until either side
+ * is modified.
+ *
+ * <p>Longs, doubles and booleans are kept unboxed, in a parallel array of primitives, whether they
+ * are put with {@link #putLong(String, long)} and friends or as boxed values.
  */
 public class Attributes {
-  private final Map<String, Object> rawAttributes = new HashMap<>();
+  private static final String[] NO_KEYS = {};
+  private static final Object[] NO_VALUES = {};
+  private static final int INITIAL_CAPACITY = 4;
+  private static final byte OBJECT = (byte) AttributesView.ValueType.OBJECT.ordinal();
+  private static final byte LONG = (byte) AttributesView.ValueType.LONG.ordinal();
+  private static final byte DOUBLE = (byte) AttributesView.ValueType.DOUBLE.ordinal();
+  private static final byte BOOLEAN = (byte) AttributesView.ValueType.BOOLEAN.ordinal();
+
+  private String[] keys = NO_KEYS;
+  private Object[] values = NO_VALUES;
+  // Allocated on the first primitive value: the type of each value, and the primitive values.
+  private byte[] types;
+  private long[] primitives;
+  private int size;
+  // Whether the arrays are shared with a copy or a view, and must be copied before a change.
+  private boolean shared;
+  private AttributesView view;
 
   /** Creates an empty object */
   public Attributes() {}
@@ -26,7 +47,14 @@ public class Attributes {
    *     versa.
    */
   public Attributes(Attributes original) {
-    rawAttributes.putAll(original.rawAttributes);
+    this.keys = original.keys;
+    this.values = original.values;
+    this.types = original.types;
+    this.primitives = original.primitives;
+    this.size = original.size;
+    this.view = original.view;
+    this.shared = true;
+    original.shared = true;
   }
 
   /**
@@ -45,7 +73,23 @@ public class Attributes {
    * @return this
    */
   public Attributes putAll(Attributes incoming) {
-    rawAttributes.putAll(incoming.rawAttributes);
+    if (size == 0) {
+      // Share the incoming arrays rather than copying them one pair at a time.
+      keys = incoming.keys;
+      values = incoming.values;
+      types = incoming.types;
+      primitives = incoming.primitives;
+      size = incoming.size;
+      view = incoming.view;
+      shared = true;
+      incoming.shared = true;
+      return this;
+    }
+    for (int i = 0; i < incoming.size; i++) {
+      byte type = incoming.types == null ? OBJECT : incoming.types[i];
+      long primitive = type == OBJECT ? 0 : incoming.primitives[i];
+      set(incoming.keys[i], type, incoming.values[i], primitive);
+    }
     return this;
   }
 
@@ -57,7 +101,7 @@ public class Attributes {
    * @return this
    */
   public Attributes put(String key, String value) {
-    rawAttributes.put(key, value);
+    set(key, OBJECT, value, 0);
     return this;
   }
 
@@ -69,7 +113,13 @@ public class Attributes {
    * @return this
    */
   public Attributes put(String key, Number value) {
-    rawAttributes.put(key, value);
+    if (value instanceof Long) {
+      return putLong(key, (Long) value);
+    }
+    if (value instanceof Double) {
+      return putDouble(key, (Double) value);
+    }
+    set(key, OBJECT, value, 0);
     return this;
   }
 
@@ -81,7 +131,43 @@ public class Attributes {
    * @return this
    */
   public Attributes put(String key, boolean value) {
-    rawAttributes.put(key, value);
+    return putBoolean(key, value);
+  }
+
+  /**
+   * Add a long-valued attribute, without boxing it.
+   *
+   * @param key to locate the value
+   * @param value to be stored
+   * @return this
+   */
+  public Attributes putLong(String key, long value) {
+    set(key, LONG, null, value);
+    return this;
+  }
+
+  /**
+   * Add a double-valued attribute, without boxing it.
+   *
+   * @param key to locate the value
+   * @param value to be stored
+   * @return this
+   */
+  public Attributes putDouble(String key, double value) {
+    // Canonical bits, so that equal values, as Doubles, have equal bits.
+    set(key, DOUBLE, null, Double.doubleToLongBits(value));
+    return this;
+  }
+
+  /**
+   * Add a boolean-valued attribute, without boxing it.
+   *
+   * @param key to locate the value
+   * @param value to be stored
+   * @return this
+   */
+  public Attributes putBoolean(String key, boolean value) {
+    set(key, BOOLEAN, null, value ? 1 : 0);
     return this;
   }
 
@@ -92,7 +178,7 @@ public class Attributes {
    * @return true if the key exists
    */
   public boolean containsKey(String key) {
-    return rawAttributes.containsKey(key);
+    return AttributesView.indexOf(keys, size, key) >= 0;
   }
 
   /**
@@ -101,21 +187,139 @@ public class Attributes {
    * @param key the key for the mapping to remove
    */
   public void remove(String key) {
-    rawAttributes.remove(key);
+    int index = AttributesView.indexOf(keys, size, key);
+    if (index < 0) {
+      return;
+    }
+    prepareForChange(size);
+    int moved = size - index - 1;
+    System.arraycopy(keys, index + 1, keys, index, moved);
+    System.arraycopy(values, index + 1, values, index, moved);
+    if (types != null) {
+      System.arraycopy(types, index + 1, types, index, moved);
+      System.arraycopy(primitives, index + 1, primitives, index, moved);
+    }
+    size--;
+    keys[size] = null;
+    values[size] = null;
   }
 
   /**
-   * Make a copy of these attributes.
+   * Make a copy of these attributes. The copy is a {@link #view()}, so making it doesn't copy
+   * anything until these attributes are next modified.
    *
    * @return An unmodifiable copy of these attributes, as a Map.
    */
   public Map<String, Object> asMap() {
-    return unmodifiableMap(new HashMap<>(rawAttributes));
+    return view();
+  }
+
+  /**
+   * Returns a read-only view of these attributes, which can be iterated without copying them or
+   * allocating map entries. The view doesn't see later changes to these attributes.
+   *
+   * @return the view
+   */
+  public AttributesView view() {
+    AttributesView result = view;
+    if (result == null) {
+      result =
+          size == 0
+              ? AttributesView.EMPTY
+              : new AttributesView(keys, values, types, primitives, size);
+      view = result;
+      shared = true;
+    }
+    return result;
+  }
+
+  /** @return The number of attributes. */
+  public int size() {
+    return size;
   }
 
   /** @return true if there are no attributes in this Attributes instance */
   public boolean isEmpty() {
-    return rawAttributes.isEmpty();
+    return size == 0;
+  }
+
+  /**
+   * @param type the type of the value
+   * @param value the value, if it is an object, otherwise null
+   * @param primitive the bits of the value, if it is a primitive, otherwise 0
+   */
+  private void set(String key, byte type, Object value, long primitive) {
+    int index = AttributesView.indexOf(keys, size, key);
+    if (index >= 0) {
+      if (values[index] != value || typeAt(index) != type || primitiveAt(index) != primitive) {
+        prepareForChange(size);
+        store(index, type, value, primitive);
+      }
+      return;
+    }
+    int insertAt = -(index + 1);
+    prepareForChange(size + 1);
+    int moved = size - insertAt;
+    System.arraycopy(keys, insertAt, keys, insertAt + 1, moved);
+    System.arraycopy(values, insertAt, values, insertAt + 1, moved);
+    if (types != null) {
+      System.arraycopy(types, insertAt, types, insertAt + 1, moved);
+      System.arraycopy(primitives, insertAt, primitives, insertAt + 1, moved);
+    }
+    keys[insertAt] = key;
+    size++;
+    store(insertAt, type, value, primitive);
+  }
+
+  private void store(int index, byte type, Object value, long primitive) {
+    values[index] = value;
+    if (types == null) {
+      if (type == OBJECT) {
+        return;
+      }
+      // Zeroed arrays hold objects at every other index.
+      types = new byte[keys.length];
+      primitives = new long[keys.length];
+    }
+    types[index] = type;
+    primitives[index] = primitive;
+  }
+
+  /**
+   * Swaps the cached view for an equal, interned one, unless these attributes changed since the
+   * view was taken, so that later metrics built from them share the interned view straight away.
+   */
+  void replaceView(AttributesView current, AttributesView interned) {
+    if (view == current) {
+      view = interned;
+    }
+  }
+
+  private byte typeAt(int index) {
+    return types == null ? OBJECT : types[index];
+  }
+
+  private long primitiveAt(int index) {
+    return types == null ? 0 : primitives[index];
+  }
+
+  /** Makes sure the arrays are ours alone and can hold the given number of attributes. */
+  private void prepareForChange(int capacity) {
+    view = null;
+    if (!shared && capacity <= keys.length) {
+      return;
+    }
+    int newLength = keys.length;
+    if (capacity > newLength) {
+      newLength = Math.max(INITIAL_CAPACITY, Math.max(capacity, newLength + (newLength >> 1)));
+    }
+    keys = Arrays.copyOf(keys, newLength);
+    values = Arrays.copyOf(values, newLength);
+    if (types != null) {
+      types = Arrays.copyOf(types, newLength);
+      primitives = Arrays.copyOf(primitives, newLength);
+    }
+    shared = false;
   }
 
   @Override
@@ -125,18 +329,16 @@ public class Attributes {
 
     Attributes that = (Attributes) o;
 
-    return rawAttributes != null
-        ? rawAttributes.equals(that.rawAttributes)
-        : that.rawAttributes == null;
+    return view().equals(that.view());
   }
 
   @Override
   public int hashCode() {
-    return rawAttributes != null ? rawAttributes.hashCode() : 0;
+    return view().hashCode();
   }
 
   @Override
   public String toString() {
-    return "Attributes{" + "rawAttributes=" + rawAttributes + '}';
+    return "Attributes{" + "rawAttributes=" + view() + '}';
   }
 }
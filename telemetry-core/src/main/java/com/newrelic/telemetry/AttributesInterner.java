@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns frozen sets of attributes, so that metrics recorded with equal attributes share a single
+ * immutable {@link AttributesView}. Shared views are compared by identity before their entries,
+ * and cache their hash code, which makes aggregation keys cheap to look up, and only one copy of
+ * each set is retained by buffered metrics.
+ *
+ * <p>The interner holds at most a fixed number of sets, evicting the one interned longest ago. An
+ * evicted set stays valid for the metrics that hold it; a later equal set just isn't shared with
+ * it.
+ *
+ * <p>This class is thread-safe, and takes no locks. {@link Attributes} remember the view they were
+ * interned as, so metrics recorded with the same {@link Attributes} don't look it up again.
+ */
+public final class AttributesInterner {
+
+  private static final AttributesInterner SHARED = new AttributesInterner(4096);
+
+  private final int maxSize;
+  private final Map<AttributesView, AttributesView> views = new ConcurrentHashMap<>();
+  // The held views, in the order they were interned.
+  private final Queue<AttributesView> order = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  /** @param maxSize The max number of attribute sets to hold. */
+  public AttributesInterner(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be at least 1: " + maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return The interner used for the attributes of {@link com.newrelic.telemetry.metrics.Count},
+   *     {@link com.newrelic.telemetry.metrics.Gauge} and {@link
+   *     com.newrelic.telemetry.metrics.Summary}, which holds up to 4096 sets.
+   */
+  public static AttributesInterner shared() {
+    return SHARED;
+  }
+
+  /**
+   * @param attributes The attributes to intern.
+   * @return The interned view of the attributes' current contents.
+   */
+  public AttributesView intern(Attributes attributes) {
+    AttributesView view = attributes.view();
+    if (view.isInternedBy(this)) {
+      return view;
+    }
+    AttributesView interned = intern(view);
+    attributes.replaceView(view, interned);
+    return interned;
+  }
+
+  /**
+   * @param view The view to intern.
+   * @return An equal view: the first one interned, if it is still held, or else this one, trimmed
+   *     to its size.
+   */
+  public AttributesView intern(AttributesView view) {
+    if (view.isEmpty()) {
+      return AttributesView.EMPTY;
+    }
+    AttributesView interned = views.get(view);
+    if (interned != null) {
+      return interned;
+    }
+    AttributesView trimmed = view.trimmed();
+    interned = views.putIfAbsent(trimmed, trimmed);
+    if (interned != null) {
+      return interned;
+    }
+    trimmed.internedBy(this);
+    order.add(trimmed);
+    if (size.incrementAndGet() > maxSize) {
+      AttributesView eldest = order.poll();
+      if (eldest != null) {
+        views.remove(eldest);
+        size.decrementAndGet();
+      }
+    }
+    return trimmed;
+  }
+
+  /** @return The number of attribute sets currently held. */
+  public int size() {
+    return size.get();
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A read-only view of {@link Attributes}, as returned by {@link Attributes#view()} and {@link
+ * Attributes#asMap()}. A view never changes: it shares its storage with the attributes it was
+ * taken from until they are next modified, at which point the attributes, not the view, make a
+ * copy. Taking a view is therefore cheap, and so is taking many views of attributes that don't
+ * change in between.
+ *
+ * <p>Attributes are kept sorted by key, with a null key first. Besides the {@link Map} methods,
+ * which allocate entries only when iterated through {@link #entrySet()}, the attributes can be
+ * read by index with {@link #keyAt(int)} and {@link #valueAt(int)}, which allocates nothing.
+ *
+ * <p>Values put with {@link Attributes#putLong}, {@link Attributes#putDouble} and {@link
+ * Attributes#putBoolean} are held unboxed. {@link #valueAt(int)} and the {@link Map} methods box
+ * them on every read; check {@link #typeAt(int)} and use {@link #longAt(int)}, {@link
+ * #doubleAt(int)} or {@link #booleanAt(int)} to read them without boxing.
+ */
+public final class AttributesView extends AbstractMap<String, Object> {
+
+  /** The type of an attribute's value, as held by a view. */
+  public enum ValueType {
+    /** A boxed value: a String, or a Number that isn't a Long or a Double. */
+    OBJECT,
+    LONG,
+    DOUBLE,
+    BOOLEAN
+  }
+
+  private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+  static final AttributesView EMPTY =
+      new AttributesView(new String[0], new Object[0], null, null, 0);
+
+  private final String[] keys;
+  private final Object[] values;
+  // The ordinal of each value's type, or null if they are all objects.
+  private final byte[] types;
+  // The bits of each primitive value, or null if there are none.
+  private final long[] primitives;
+  private final int size;
+  // Lazily computed; a race only computes them more than once.
+  private int hash;
+  private String json;
+  // Volatile, unlike the string, so that a reader never sees the array before its contents.
+  private volatile byte[] utf8Json;
+  // The interner holding this view, if any.
+  private volatile AttributesInterner interner;
+
+  AttributesView(String[] keys, Object[] values, byte[] types, long[] primitives, int size) {
+    this.keys = keys;
+    this.values = values;
+    this.types = types;
+    this.primitives = primitives;
+    this.size = size;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @param index An index from 0 to {@code size() - 1}.
+   * @return The key at the index, in key order.
+   */
+  public String keyAt(int index) {
+    return keys[checkIndex(index)];
+  }
+
+  /**
+   * @param index An index from 0 to {@code size() - 1}.
+   * @return The value for the key at the index, boxed if it is held unboxed.
+   */
+  public Object valueAt(int index) {
+    return value(checkIndex(index));
+  }
+
+  /**
+   * @param index An index from 0 to {@code size() - 1}.
+   * @return The type of the value at the index.
+   */
+  public ValueType typeAt(int index) {
+    return type(checkIndex(index));
+  }
+
+  /**
+   * @param index The index of a {@link ValueType#LONG} value.
+   * @return The value, unboxed.
+   */
+  public long longAt(int index) {
+    return primitiveAt(index, ValueType.LONG);
+  }
+
+  /**
+   * @param index The index of a {@link ValueType#DOUBLE} value.
+   * @return The value, unboxed.
+   */
+  public double doubleAt(int index) {
+    return Double.longBitsToDouble(primitiveAt(index, ValueType.DOUBLE));
+  }
+
+  /**
+   * @param index The index of a {@link ValueType#BOOLEAN} value.
+   * @return The value, unboxed.
+   */
+  public boolean booleanAt(int index) {
+    return primitiveAt(index, ValueType.BOOLEAN) != 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return (key == null || key instanceof String) && indexOf(keys, size, (String) key) >= 0;
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (key != null && !(key instanceof String)) {
+      return null;
+    }
+    int index = indexOf(keys, size, (String) key);
+    return index >= 0 ? value(index) : null;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super Object> action) {
+    for (int i = 0; i < size; i++) {
+      action.accept(keys[i], value(i));
+    }
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new Iterator<Entry<String, Object>>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            if (next >= size) {
+              throw new NoSuchElementException();
+            }
+            int index = next++;
+            return new SimpleImmutableEntry<>(keys[index], value(index));
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof AttributesView)) {
+      return super.equals(o);
+    }
+    AttributesView that = (AttributesView) o;
+    if (size != that.size || (hash != 0 && that.hash != 0 && hash != that.hash)) {
+      return false;
+    }
+    // Both are sorted by key, so equal views hold equal entries at every index. Longs, doubles
+    // and booleans are always held unboxed, so equal values also have equal types.
+    for (int i = 0; i < size; i++) {
+      ValueType type = type(i);
+      if (!Objects.equals(keys[i], that.keys[i])
+          || type != that.type(i)
+          || (type == ValueType.OBJECT
+              ? !Objects.equals(values[i], that.values[i])
+              : primitives[i] != that.primitives[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** The same hash code as any other {@link Map} with the same entries. */
+  @Override
+  public int hashCode() {
+    int result = hash;
+    if (result == 0) {
+      for (int i = 0; i < size; i++) {
+        result += Objects.hashCode(keys[i]) ^ valueHashCode(i);
+      }
+      hash = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the json encoding of this view, computing it with the encoder only the first time.
+   * Since a view never changes, neither does its encoding, so long-lived views, such as common
+   * attributes and {@link AttributesInterner interned} ones, are encoded once rather than on
+   * every send.
+   *
+   * @param encoder Encodes the view as a json object. Every encoder passed to a view should
+   *     produce the same json.
+   * @return The json encoding.
+   */
+  public String toJson(Function<? super AttributesView, String> encoder) {
+    String result = json;
+    if (result == null) {
+      result = encoder.apply(this);
+      json = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the json encoding of this view as UTF-8, encoding it only the first time, like {@link
+   * #toJson(Function)}.
+   *
+   * @param encoder Encodes the view as a json object, as for {@link #toJson(Function)}.
+   * @return The UTF-8 bytes of the json encoding. The array is shared, and must not be modified.
+   */
+  public byte[] toUtf8Json(Function<? super AttributesView, String> encoder) {
+    byte[] result = utf8Json;
+    if (result == null) {
+      result = toJson(encoder).getBytes(StandardCharsets.UTF_8);
+      utf8Json = result;
+    }
+    return result;
+  }
+
+  boolean isInternedBy(AttributesInterner interner) {
+    return this.interner == interner;
+  }
+
+  void internedBy(AttributesInterner interner) {
+    this.interner = interner;
+  }
+
+  /**
+   * @return This view, or a copy of it if its arrays have room to spare, so that a long-lived view
+   *     retains no more than it needs.
+   */
+  AttributesView trimmed() {
+    if (keys.length == size) {
+      return this;
+    }
+    AttributesView copy =
+        new AttributesView(
+            Arrays.copyOf(keys, size),
+            Arrays.copyOf(values, size),
+            types == null ? null : Arrays.copyOf(types, size),
+            primitives == null ? null : Arrays.copyOf(primitives, size),
+            size);
+    copy.hash = hash;
+    copy.json = json;
+    copy.utf8Json = utf8Json;
+    return copy;
+  }
+
+  private ValueType type(int index) {
+    return types == null ? ValueType.OBJECT : VALUE_TYPES[types[index]];
+  }
+
+  private Object value(int index) {
+    switch (type(index)) {
+      case LONG:
+        return primitives[index];
+      case DOUBLE:
+        return Double.longBitsToDouble(primitives[index]);
+      case BOOLEAN:
+        return primitives[index] != 0;
+      default:
+        return values[index];
+    }
+  }
+
+  // The hash code of the boxed value, without boxing it.
+  private int valueHashCode(int index) {
+    switch (type(index)) {
+      case LONG:
+        return Long.hashCode(primitives[index]);
+      case DOUBLE:
+        return Double.hashCode(Double.longBitsToDouble(primitives[index]));
+      case BOOLEAN:
+        return Boolean.hashCode(primitives[index] != 0);
+      default:
+        return Objects.hashCode(values[index]);
+    }
+  }
+
+  private long primitiveAt(int index, ValueType expected) {
+    ValueType type = type(checkIndex(index));
+    if (type != expected) {
+      throw new IllegalStateException(
+          "The value at " + index + " is " + type + ", not " + expected);
+    }
+    return primitives[index];
+  }
+
+  private int checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return index;
+  }
+
+  /**
+   * Binary search of the first {@code size} sorted keys.
+   *
+   * @return the index of the key if present, otherwise {@code -(insertion point) - 1}
+   */
+  static int indexOf(String[] keys, int size, String key) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = compare(keys[middle], key);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private static int compare(String a, String b) {
+    if (a == null) {
+      return b == null ? 0 : -1;
+    }
+    return b == null ? 1 : a.compareTo(b);
+  }
+}
@@ -1,5 +1,6 @@
 package com.newrelic.telemetry;
 
+import com.newrelic.telemetry.util.Utils;
 import java.util.concurrent.TimeUnit;
 
 public class Backoff {
@@ -7,12 +8,16 @@ public class Backoff {
   private final long maxBackoffTimeMs;
   private final long backoffFactorMs;
   private final int maxRetries;
+  private final BackoffStrategy strategy;
   private int numRetries = 0;
+  private long previousWaitMs;
 
   private Backoff(Builder builder) {
     this.maxBackoffTimeMs = builder.maxBackoffTimeMs;
     this.backoffFactorMs = builder.backoffFactorMs;
     this.maxRetries = builder.maxRetries;
+    this.strategy = builder.strategy;
+    this.previousWaitMs = backoffFactorMs;
   }
 
   public static Backoff defaultBackoff() {
@@ -43,7 +48,8 @@ public class Backoff {
     if (n >= maxRetries) {
       return -1;
     }
-    return (long) Math.min(maxBackoffTimeMs, backoffFactorMs * Math.pow(2, n - 1));
+    previousWaitMs = strategy.nextWaitMs(n, previousWaitMs, backoffFactorMs, maxBackoffTimeMs);
+    return previousWaitMs;
   }
 
   public static class Builder {
@@ -51,6 +57,7 @@ public class Backoff {
     private long maxBackoffTimeMs;
     private long backoffFactorMs;
     private int maxRetries;
+    private BackoffStrategy strategy = BackoffStrategy.exponential();
 
     /**
      * The max time between retries
@@ -87,6 +94,17 @@ public class Backoff {
       return this;
     }
 
+    /**
+     * How to compute the time between retries. Defaults to {@link BackoffStrategy#exponential()}.
+     *
+     * @param strategy the strategy
+     * @return Builder instance
+     */
+    public Builder strategy(BackoffStrategy strategy) {
+      this.strategy = Utils.verifyNonNull(strategy);
+      return this;
+    }
+
     /**
      * Create a Backoff instance
      *
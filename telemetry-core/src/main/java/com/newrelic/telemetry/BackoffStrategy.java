@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+/**
+ * Computes how long a {@link Backoff} waits before each retry. Without jitter, every process that
+ * saw the same failure retries at the same moments, and the retries arrive at the ingest API
+ * together. The jittered strategies spread them out:
+ *
+ * <ul>
+ *   <li>{@link #exponential()} doubles the wait each retry, with no jitter. This is the default.
+ *   <li>{@link #fullJitter()} waits a random time between zero and the exponential wait.
+ *   <li>{@link #equalJitter()} waits half the exponential wait, plus a random time up to the other
+ *       half, so that no retry comes much sooner than planned.
+ *   <li>{@link #decorrelatedJitter()} waits a random time between the base wait and three times the
+ *       previous wait, so that the waits of different processes drift apart over the retries.
+ * </ul>
+ *
+ * <p>Every strategy caps its waits at the max backoff.
+ */
+@FunctionalInterface
+public interface BackoffStrategy {
+
+  /**
+   * @param retry The number of this retry, starting at 1.
+   * @param previousWaitMs The wait before the previous retry, or the base wait for the first.
+   * @param baseWaitMs The configured backoff factor.
+   * @param maxWaitMs The configured max backoff.
+   * @return The time to wait before this retry, in milliseconds.
+   */
+  long nextWaitMs(int retry, long previousWaitMs, long baseWaitMs, long maxWaitMs);
+
+  /** @return A strategy that doubles the wait each retry, starting from the base wait. */
+  static BackoffStrategy exponential() {
+    return JitterStrategy.NONE;
+  }
+
+  /** @return A strategy that waits a random time up to the exponential wait. */
+  static BackoffStrategy fullJitter() {
+    return JitterStrategy.FULL;
+  }
+
+  /** @return A strategy that waits between half and all of the exponential wait. */
+  static BackoffStrategy equalJitter() {
+    return JitterStrategy.EQUAL;
+  }
+
+  /** @return A strategy that waits between the base wait and three times the previous wait. */
+  static BackoffStrategy decorrelatedJitter() {
+    return JitterStrategy.DECORRELATED;
+  }
+}
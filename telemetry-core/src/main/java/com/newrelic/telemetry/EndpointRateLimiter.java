@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the requests sent to one ingest endpoint, with token buckets for requests per second and
+ * bytes per second, each allowing a burst of one second's worth. Either limit can be disabled.
+ *
+ * <p>The endpoint can also be paused, when it responds with a 429 and a Retry-After, so that every
+ * pending batch for it waits rather than only the one that was rejected.
+ *
+ * <p>The size of a request is only known once its payload is encoded, so bytes are charged after
+ * the fact, with {@link #recordBytes(long)}. A large request can leave the bytes bucket in debt,
+ * which later requests wait out.
+ *
+ * <p>This class is thread-safe.
+ */
+final class EndpointRateLimiter {
+
+  private final double requestsPerNano;
+  private final double bytesPerNano;
+  private final double maxRequestTokens;
+  private final double maxByteTokens;
+  private final LongSupplier nanoClock;
+
+  private double requestTokens;
+  private double byteTokens;
+  private long lastRefill;
+  private long pausedUntil;
+  private boolean paused;
+
+  /**
+   * @param requestsPerSecond The steady-state max number of requests per second, or 0 for no limit.
+   * @param bytesPerSecond The steady-state max number of payload bytes per second, or 0 for no
+   *     limit.
+   */
+  EndpointRateLimiter(double requestsPerSecond, long bytesPerSecond) {
+    this(requestsPerSecond, bytesPerSecond, System::nanoTime);
+  }
+
+  EndpointRateLimiter(double requestsPerSecond, long bytesPerSecond, LongSupplier nanoClock) {
+    if (requestsPerSecond < 0 || bytesPerSecond < 0) {
+      throw new IllegalArgumentException("Rate limits cannot be negative");
+    }
+    this.requestsPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.bytesPerNano = (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.maxRequestTokens = Math.max(1, requestsPerSecond);
+    this.maxByteTokens = bytesPerSecond;
+    this.nanoClock = nanoClock;
+    this.requestTokens = maxRequestTokens;
+    this.byteTokens = maxByteTokens;
+    this.lastRefill = nanoClock.getAsLong();
+  }
+
+  /**
+   * Takes a request token, if a request may be sent now.
+   *
+   * @return 0 if the request may be sent, otherwise how many nanoseconds to wait before trying
+   *     again
+   */
+  synchronized long tryAcquire() {
+    long now = nanoClock.getAsLong();
+    if (paused) {
+      if (now - pausedUntil < 0) {
+        return pausedUntil - now;
+      }
+      paused = false;
+    }
+    refill(now);
+    long wait = 0;
+    if (requestsPerNano > 0 && requestTokens < 1) {
+      wait = (long) Math.ceil((1 - requestTokens) / requestsPerNano);
+    }
+    if (bytesPerNano > 0 && byteTokens < 0) {
+      wait = Math.max(wait, (long) Math.ceil(-byteTokens / bytesPerNano));
+    }
+    if (wait > 0) {
+      return wait;
+    }
+    if (requestsPerNano > 0) {
+      requestTokens -= 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Charges the bytes of a request that was sent.
+   *
+   * @param bytes The size of the request payload.
+   */
+  synchronized void recordBytes(long bytes) {
+    if (bytesPerNano > 0) {
+      refill(nanoClock.getAsLong());
+      byteTokens -= bytes;
+    }
+  }
+
+  /**
+   * Stops any request from being sent for the given time, or longer if already paused for longer.
+   *
+   * @param duration How long to pause for.
+   * @param unit The unit of the duration.
+   */
+  synchronized void pause(long duration, TimeUnit unit) {
+    long until = nanoClock.getAsLong() + unit.toNanos(duration);
+    if (!paused || until - pausedUntil > 0) {
+      pausedUntil = until;
+      paused = true;
+    }
+  }
+
+  private void refill(long now) {
+    long elapsed = now - lastRefill;
+    lastRefill = now;
+    if (elapsed <= 0) {
+      return;
+    }
+    if (requestsPerNano > 0) {
+      requestTokens = Math.min(maxRequestTokens, requestTokens + elapsed * requestsPerNano);
+    }
+    if (bytesPerNano > 0) {
+      byteTokens = Math.min(maxByteTokens, byteTokens + elapsed * bytesPerNano);
+    }
+  }
+}
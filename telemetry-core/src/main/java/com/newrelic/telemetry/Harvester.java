@@ -0,0 +1,339 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import com.newrelic.telemetry.events.EventBatch;
+import com.newrelic.telemetry.events.EventBuffer;
+import com.newrelic.telemetry.logs.LogBatch;
+import com.newrelic.telemetry.logs.LogBuffer;
+import com.newrelic.telemetry.metrics.MetricBatch;
+import com.newrelic.telemetry.metrics.MetricBuffer;
+import com.newrelic.telemetry.spans.SpanBatch;
+import com.newrelic.telemetry.spans.SpanBuffer;
+import com.newrelic.telemetry.util.Utils;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a buffer and automatically sends its contents, usually through a {@link TelemetryClient},
+ * as soon as any of these is reached:
+ *
+ * <ul>
+ *   <li>the buffer holds {@link Builder#maxItems(int) a number of items},
+ *   <li>the buffer holds {@link Builder#maxBytes(long) an estimated number of bytes}, or
+ *   <li>the oldest buffered item has waited {@link Builder#maxAge(long, TimeUnit) a maximum age}.
+ * </ul>
+ *
+ * <p>The max age of each harvest is jittered, and so is the first check, so that many processes
+ * started at the same time don't all send to the ingest API in lockstep.
+ *
+ * <p>Call {@link #start()} to begin watching the buffer, and {@link #shutdown()} to stop, which
+ * also sends whatever is left in the buffer.
+ *
+ * @param <B> The type of batch created by the buffer.
+ */
+public final class Harvester<B extends TelemetryBatch<?>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(Harvester.class);
+
+  private final IntSupplier bufferSize;
+  private final Supplier<B> batchCreator;
+  private final Consumer<B> batchSender;
+  private final int maxItems;
+  private final long maxBytes;
+  private final int estimatedBytesPerItem;
+  private final long maxAgeNanos;
+  private final double jitter;
+  private final long checkIntervalNanos;
+  private final ScheduledExecutorService executor;
+  private final boolean ownsExecutor;
+
+  private volatile ScheduledFuture<?> checks;
+
+  // Only accessed while holding the monitor.
+  private long oldestItemSeenAt = -1;
+  private long currentMaxAgeNanos;
+
+  private Harvester(Builder<B> builder) {
+    this.bufferSize = builder.bufferSize;
+    this.batchCreator = builder.batchCreator;
+    this.batchSender = builder.batchSender;
+    this.maxItems = builder.maxItems;
+    this.maxBytes = builder.maxBytes;
+    this.estimatedBytesPerItem = builder.estimatedBytesPerItem;
+    this.maxAgeNanos = builder.maxAgeNanos;
+    this.jitter = builder.jitter;
+    this.checkIntervalNanos = builder.checkIntervalNanos;
+    this.ownsExecutor = builder.executor == null;
+    this.executor = ownsExecutor ? buildExecutor() : builder.executor;
+    this.currentMaxAgeNanos = jittered(maxAgeNanos);
+  }
+
+  /**
+   * @param buffer The buffer to harvest.
+   * @param client The client to send batches with.
+   * @return A builder for a harvester that sends the buffer's metrics with the client.
+   */
+  public static Builder<MetricBatch> builder(MetricBuffer buffer, TelemetryClient client) {
+    return builder(buffer::size, buffer::createBatch, client::sendBatch);
+  }
+
+  /**
+   * @param buffer The buffer to harvest.
+   * @param client The client to send batches with.
+   * @return A builder for a harvester that sends the buffer's spans with the client.
+   */
+  public static Builder<SpanBatch> builder(SpanBuffer buffer, TelemetryClient client) {
+    return builder(buffer::size, buffer::createBatch, client::sendBatch);
+  }
+
+  /**
+   * @param buffer The buffer to harvest.
+   * @param client The client to send batches with.
+   * @return A builder for a harvester that sends the buffer's events with the client.
+   */
+  public static Builder<EventBatch> builder(EventBuffer buffer, TelemetryClient client) {
+    return builder(buffer::size, buffer::createBatch, client::sendBatch);
+  }
+
+  /**
+   * @param buffer The buffer to harvest.
+   * @param client The client to send batches with.
+   * @return A builder for a harvester that sends the buffer's logs with the client.
+   */
+  public static Builder<LogBatch> builder(LogBuffer buffer, TelemetryClient client) {
+    return builder(buffer::size, buffer::createBatch, client::sendBatch);
+  }
+
+  /**
+   * @param bufferSize Returns the number of items in the buffer. Called on every check.
+   * @param batchCreator Drains the buffer into a batch.
+   * @param batchSender Sends a batch.
+   * @param <B> The type of batch.
+   * @return A builder for a harvester of any kind of buffer.
+   */
+  public static <B extends TelemetryBatch<?>> Builder<B> builder(
+      IntSupplier bufferSize, Supplier<B> batchCreator, Consumer<B> batchSender) {
+    return new Builder<>(bufferSize, batchCreator, batchSender);
+  }
+
+  /**
+   * Start watching the buffer.
+   *
+   * @throws IllegalStateException if the harvester has already been started
+   */
+  public synchronized void start() {
+    if (checks != null) {
+      throw new IllegalStateException("The harvester has already been started.");
+    }
+    long initialDelay = ThreadLocalRandom.current().nextLong(checkIntervalNanos + 1);
+    checks =
+        executor.scheduleWithFixedDelay(
+            this::check, initialDelay, checkIntervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /** Immediately send whatever is in the buffer. */
+  public synchronized void flush() {
+    try {
+      B batch = batchCreator.get();
+      if (!batch.isEmpty()) {
+        batchSender.accept(batch);
+      }
+    } catch (Exception e) {
+      logger.warn("Failed to harvest the buffer", e);
+    }
+    oldestItemSeenAt = -1;
+    currentMaxAgeNanos = jittered(maxAgeNanos);
+  }
+
+  /** Stop watching the buffer, and send whatever is left in it. */
+  public void shutdown() {
+    ScheduledFuture<?> checks = this.checks;
+    if (checks != null) {
+      checks.cancel(false);
+    }
+    if (ownsExecutor) {
+      executor.shutdownNow();
+    }
+    flush();
+  }
+
+  synchronized void check() {
+    int size = bufferSize.getAsInt();
+    if (size == 0) {
+      oldestItemSeenAt = -1;
+      return;
+    }
+    long now = System.nanoTime();
+    if (oldestItemSeenAt == -1) {
+      oldestItemSeenAt = now;
+    }
+    if (size >= maxItems
+        || (long) size * estimatedBytesPerItem >= maxBytes
+        || now - oldestItemSeenAt >= currentMaxAgeNanos) {
+      flush();
+    }
+  }
+
+  private long jittered(long nanos) {
+    if (jitter == 0) {
+      return nanos;
+    }
+    double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return (long) (nanos * factor);
+  }
+
+  private static ScheduledExecutorService buildExecutor() {
+    return Executors.newSingleThreadScheduledExecutor(
+        r -> {
+          Thread thread = new Thread(r, "telemetry-harvester");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  public static class Builder<B extends TelemetryBatch<?>> {
+    private final IntSupplier bufferSize;
+    private final Supplier<B> batchCreator;
+    private final Consumer<B> batchSender;
+    private int maxItems = 10_000;
+    private long maxBytes = 1_000_000;
+    private int estimatedBytesPerItem = 256;
+    private long maxAgeNanos = TimeUnit.SECONDS.toNanos(5);
+    private double jitter = 0.1;
+    private long checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private ScheduledExecutorService executor;
+
+    private Builder(IntSupplier bufferSize, Supplier<B> batchCreator, Consumer<B> batchSender) {
+      this.bufferSize = Utils.verifyNonNull(bufferSize);
+      this.batchCreator = Utils.verifyNonNull(batchCreator);
+      this.batchSender = Utils.verifyNonNull(batchSender);
+    }
+
+    /**
+     * The number of buffered items that triggers a harvest. Defaults to 10,000.
+     *
+     * @param maxItems the number of items
+     * @return this builder
+     */
+    public Builder<B> maxItems(int maxItems) {
+      if (maxItems <= 0) {
+        throw new IllegalArgumentException("maxItems must be positive: " + maxItems);
+      }
+      this.maxItems = maxItems;
+      return this;
+    }
+
+    /**
+     * The estimated uncompressed size of the buffered items that triggers a harvest. Defaults to
+     * 1MB.
+     *
+     * @param maxBytes the number of bytes
+     * @return this builder
+     * @see #estimatedBytesPerItem(int)
+     */
+    public Builder<B> maxBytes(long maxBytes) {
+      if (maxBytes <= 0) {
+        throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+      }
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * The size of a single item, as json, used to estimate the size of the buffer. Defaults to 256
+     * bytes.
+     *
+     * @param estimatedBytesPerItem the number of bytes
+     * @return this builder
+     */
+    public Builder<B> estimatedBytesPerItem(int estimatedBytesPerItem) {
+      if (estimatedBytesPerItem <= 0) {
+        throw new IllegalArgumentException(
+            "estimatedBytesPerItem must be positive: " + estimatedBytesPerItem);
+      }
+      this.estimatedBytesPerItem = estimatedBytesPerItem;
+      return this;
+    }
+
+    /**
+     * The longest an item should wait in the buffer before being harvested. Defaults to 5 seconds.
+     * The age is measured from the first check that finds the buffer non-empty, so an item may
+     * wait up to one check interval longer.
+     *
+     * @param maxAge the max age
+     * @param unit the unit of the max age
+     * @return this builder
+     */
+    public Builder<B> maxAge(long maxAge, TimeUnit unit) {
+      if (maxAge <= 0) {
+        throw new IllegalArgumentException("maxAge must be positive: " + maxAge);
+      }
+      this.maxAgeNanos = unit.toNanos(maxAge);
+      return this;
+    }
+
+    /**
+     * How much to randomly vary the max age of each harvest, as a fraction of it. For example, 0.1
+     * varies a 5 second max age between 4.5 and 5.5 seconds. Defaults to 0.1.
+     *
+     * @param jitter the fraction, between 0 and 1
+     * @return this builder
+     */
+    public Builder<B> jitter(double jitter) {
+      if (!(jitter >= 0 && jitter <= 1)) {
+        throw new IllegalArgumentException("jitter must be between 0 and 1: " + jitter);
+      }
+      this.jitter = jitter;
+      return this;
+    }
+
+    /**
+     * How often to check the buffer. Each check calls the buffer's {@code size()}, which is a
+     * constant time operation only for bounded buffers. Defaults to 100 milliseconds.
+     *
+     * @param checkInterval the interval between checks
+     * @param unit the unit of the interval
+     * @return this builder
+     */
+    public Builder<B> checkInterval(long checkInterval, TimeUnit unit) {
+      if (checkInterval <= 0) {
+        throw new IllegalArgumentException("checkInterval must be positive: " + checkInterval);
+      }
+      this.checkIntervalNanos = unit.toNanos(checkInterval);
+      return this;
+    }
+
+    /**
+     * Optional. The executor to check the buffer on. By default, the harvester creates its own
+     * daemon thread, which is stopped by {@link Harvester#shutdown()}. A provided executor is not
+     * shut down by the harvester, but the harvester's checks on it are cancelled.
+     *
+     * @param executor the executor
+     * @return this builder
+     */
+    public Builder<B> executor(ScheduledExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Builds the new Harvester instance. Call {@link Harvester#start()} to start it.
+     *
+     * @return a newly created instance of Harvester configured with data from this builder
+     */
+    public Harvester<B> build() {
+      return new Harvester<>(this);
+    }
+  }
+}
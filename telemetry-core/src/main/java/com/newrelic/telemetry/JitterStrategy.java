@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** The built-in {@link BackoffStrategy} implementations. */
+enum JitterStrategy implements BackoffStrategy {
+  NONE {
+    @Override
+    public long nextWaitMs(int retry, long previousWaitMs, long baseWaitMs, long maxWaitMs) {
+      return exponentialWaitMs(retry, baseWaitMs, maxWaitMs);
+    }
+  },
+  FULL {
+    @Override
+    public long nextWaitMs(int retry, long previousWaitMs, long baseWaitMs, long maxWaitMs) {
+      return random(0, exponentialWaitMs(retry, baseWaitMs, maxWaitMs));
+    }
+  },
+  EQUAL {
+    @Override
+    public long nextWaitMs(int retry, long previousWaitMs, long baseWaitMs, long maxWaitMs) {
+      long waitMs = exponentialWaitMs(retry, baseWaitMs, maxWaitMs);
+      return waitMs / 2 + random(0, waitMs - waitMs / 2);
+    }
+  },
+  DECORRELATED {
+    @Override
+    public long nextWaitMs(int retry, long previousWaitMs, long baseWaitMs, long maxWaitMs) {
+      long upperMs = Math.max(baseWaitMs, previousWaitMs) * 3;
+      return Math.min(maxWaitMs, random(baseWaitMs, upperMs));
+    }
+  };
+
+  private static long exponentialWaitMs(int retry, long baseWaitMs, long maxWaitMs) {
+    return (long) Math.min(maxWaitMs, baseWaitMs * Math.pow(2, retry - 1));
+  }
+
+  private static long random(long fromMs, long toMs) {
+    return toMs <= fromMs ? fromMs : ThreadLocalRandom.current().nextLong(fromMs, toMs + 1);
+  }
+}
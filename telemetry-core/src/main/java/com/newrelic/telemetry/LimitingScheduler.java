@@ -1,9 +1,16 @@
 package com.newrelic.telemetry;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,19 +20,59 @@ import org.slf4j.LoggerFactory;
  * to the number of telemetry items "in-flight" (being buffered) in memory.
  *
  * <p>A call to schedule() will include a work unit "size" that is accumulated, and if the max would
- * be exceeded then the work unit is rejected and a warning is logged.
+ * be exceeded then the {@link OverflowPolicy} decides what happens: by default the work unit is
+ * rejected and a warning is logged. The number of telemetry items discarded is counted, per {@link
+ * TelemetryType} when the caller provides one.
+ *
+ * <p>Work can optionally be handed off to a separate worker executor when its delay has elapsed,
+ * for example one that runs each unit of work on its own virtual thread. The executor passed to
+ * the constructor then only keeps time, and the work holds on to its share of the max until it
+ * completes on the worker.
  */
 public class LimitingScheduler {
 
   private static final Logger logger = LoggerFactory.getLogger(LimitingScheduler.class);
   private final ScheduledExecutorService executor;
+  private final ExecutorService worker;
   private final int max;
   private final Semaphore semaphore;
+  private final OverflowPolicy overflowPolicy;
+  // Work that hasn't started yet, oldest first. Only tracked when the policy can evict it.
+  private final ConcurrentLinkedDeque<PendingWork> pending = new ConcurrentLinkedDeque<>();
+  private final Map<TelemetryType, LongAdder> droppedByType = new EnumMap<>(TelemetryType.class);
+  private final LongAdder dropped = new LongAdder();
+  // The work running on the current thread, so that it can hand its share on to a reschedule.
+  private final ThreadLocal<Run> running = new ThreadLocal<>();
 
   public LimitingScheduler(ScheduledExecutorService executor, int max) {
+    this(executor, max, OverflowPolicy.dropNewest());
+  }
+
+  public LimitingScheduler(
+      ScheduledExecutorService executor, int max, OverflowPolicy overflowPolicy) {
+    this(executor, null, max, overflowPolicy);
+  }
+
+  /**
+   * @param executor Schedules the work.
+   * @param worker Runs the work once it is due, or null to run it on the scheduling executor. It is
+   *     shut down along with the scheduling executor.
+   * @param max The max amount of work.
+   * @param overflowPolicy What to do when the max would be exceeded.
+   */
+  public LimitingScheduler(
+      ScheduledExecutorService executor,
+      ExecutorService worker,
+      int max,
+      OverflowPolicy overflowPolicy) {
     this.executor = executor;
+    this.worker = worker;
     this.max = max;
     this.semaphore = new Semaphore(max);
+    this.overflowPolicy = overflowPolicy;
+    for (TelemetryType type : TelemetryType.values()) {
+      droppedByType.put(type, new LongAdder());
+    }
   }
 
   public boolean schedule(int size, Runnable command) {
@@ -33,7 +80,23 @@ public class LimitingScheduler {
   }
 
   public boolean schedule(int size, Runnable command, long delay, TimeUnit unit) {
-    if (!semaphore.tryAcquire(size)) {
+    return schedule(null, size, command, delay, unit);
+  }
+
+  /**
+   * Schedule a unit of work, applying the overflow policy if it would put us over the max.
+   *
+   * @param type The type of telemetry the work sends, used to count discarded telemetry. May be
+   *     null.
+   * @param size The number of telemetry items the work holds on to until it completes.
+   * @param command The work.
+   * @param delay How long to wait before running the work.
+   * @param unit The unit of the delay.
+   * @return true if the work was scheduled, false if it was discarded
+   */
+  public boolean schedule(
+      TelemetryType type, int size, Runnable command, long delay, TimeUnit unit) {
+    if (!acquire(size)) {
       logger.warn(
           "Refusing to schedule batch of size "
               + size
@@ -43,27 +106,193 @@ public class LimitingScheduler {
               + semaphore.availablePermits()
               + ")");
       logger.warn("DATA IS BEING LOST!");
+      countDropped(type, size);
       return false;
     }
+    return scheduleAcquired(type, size, command, delay, unit);
+  }
+
+  /**
+   * Schedule the work that is currently running on this thread to run again later, for example
+   * because what it sends to is paused, or pieces of it if it has to be split. The new work takes
+   * over the share of the max held by the running work, rather than releasing it and acquiring it
+   * again, so it can neither be refused nor have to wait for room, and doesn't evict other work.
+   * Called from anywhere else, or with more than the running work has left to hand over, this is
+   * the same as {@link #schedule(TelemetryType, int, Runnable, long, TimeUnit)}.
+   *
+   * @param type The type of telemetry the work sends. May be null.
+   * @param size The number of telemetry items the work holds on to.
+   * @param command The work.
+   * @param delay How long to wait before running the work.
+   * @param unit The unit of the delay.
+   * @return true if the work was scheduled, false if it was discarded
+   */
+  public boolean reschedule(
+      TelemetryType type, int size, Runnable command, long delay, TimeUnit unit) {
+    Run run = running.get();
+    if (run == null || size > run.held) {
+      return schedule(type, size, command, delay, unit);
+    }
+    run.held -= size;
+    return scheduleAcquired(type, size, command, delay, unit);
+  }
+
+  // Schedules work whose share of the max has already been acquired.
+  private boolean scheduleAcquired(
+      TelemetryType type, int size, Runnable command, long delay, TimeUnit unit) {
+    PendingWork work = new PendingWork(type, size);
     try {
-      executor.schedule(
-          () -> {
-            try {
-              command.run();
-            } finally {
-              semaphore.release(size);
-            }
-          },
-          delay,
-          unit);
+      if (tracksPendingWork()) {
+        pending.addLast(work);
+      }
+      work.future =
+          executor.schedule(
+              () -> {
+                if (!work.claim()) {
+                  return;
+                }
+                if (tracksPendingWork()) {
+                  pending.remove(work);
+                }
+                if (worker == null) {
+                  runAndRelease(command, size);
+                  return;
+                }
+                try {
+                  worker.execute(() -> runAndRelease(command, size));
+                } catch (RejectedExecutionException e) {
+                  logger.warn("Data is being lost, job could not be run", e);
+                  semaphore.release(size);
+                  countDropped(type, size);
+                }
+              },
+              delay,
+              unit);
       return true;
     } catch (RejectedExecutionException e) {
       logger.warn("Data is being lost, job could not be scheduled", e);
+      pending.remove(work);
       semaphore.release(size);
+      countDropped(type, size);
       return false;
     }
   }
 
+  /**
+   * Runs a short task, such as handling the response to a request, on the threads that run the
+   * scheduled work, without counting it against the max. Once this scheduler has shut down, the
+   * task runs on the calling thread instead, so that it isn't lost.
+   *
+   * @param command The task.
+   */
+  public void execute(Runnable command) {
+    try {
+      (worker == null ? executor : worker).execute(command);
+    } catch (RejectedExecutionException e) {
+      command.run();
+    }
+  }
+
+  private void runAndRelease(Runnable command, int size) {
+    Run run = new Run(size);
+    running.set(run);
+    try {
+      command.run();
+    } finally {
+      running.remove();
+      if (run.held > 0) {
+        semaphore.release(run.held);
+      }
+    }
+  }
+
+  private boolean acquire(int size) {
+    if (semaphore.tryAcquire(size)) {
+      return true;
+    }
+    switch (overflowPolicy.getAction()) {
+      case BLOCK:
+        try {
+          return semaphore.tryAcquire(size, overflowPolicy.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      case DROP_OLDEST:
+      case SAMPLE:
+        if (size <= max && overflowPolicy.shouldEvictOldest()) {
+          return acquireEvictingOldest(size);
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private boolean acquireEvictingOldest(int size) {
+    do {
+      PendingWork oldest = pending.pollFirst();
+      if (oldest == null) {
+        // Everything left is already running.
+        return false;
+      }
+      if (oldest.claim()) {
+        Future<?> future = oldest.future;
+        if (future != null) {
+          future.cancel(false);
+        }
+        logger.warn(
+            "Discarding a scheduled batch of size " + oldest.size + " to make room for new data");
+        countDropped(oldest.type, oldest.size);
+        semaphore.release(oldest.size);
+      }
+    } while (!semaphore.tryAcquire(size));
+    return true;
+  }
+
+  private boolean tracksPendingWork() {
+    return overflowPolicy.getAction() == OverflowPolicy.Action.DROP_OLDEST
+        || overflowPolicy.getAction() == OverflowPolicy.Action.SAMPLE;
+  }
+
+  private void countDropped(TelemetryType type, int size) {
+    dropped.add(size);
+    if (type != null) {
+      droppedByType.get(type).add(size);
+    }
+  }
+
+  /** @return The total number of telemetry items discarded because we were over the max. */
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  /**
+   * @param type A type of telemetry.
+   * @return The number of telemetry items of the given type discarded because we were over the
+   *     max.
+   */
+  public long getDroppedCount(TelemetryType type) {
+    return droppedByType.get(type).sum();
+  }
+
+  /** @return The max amount of work, in telemetry items. */
+  public int getMax() {
+    return max;
+  }
+
+  /**
+   * @return The amount of work that could be scheduled right now without applying the overflow
+   *     policy.
+   */
+  public int getAvailable() {
+    return semaphore.availablePermits();
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
   public boolean isTerminated() {
     return executor.isTerminated();
   }
@@ -74,10 +303,54 @@ public class LimitingScheduler {
 
   public boolean awaitTermination(int shutdownSeconds, TimeUnit seconds)
       throws InterruptedException {
-    return executor.awaitTermination(shutdownSeconds, seconds);
+    return awaitTermination((long) shutdownSeconds, seconds);
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    if (worker == null) {
+      return executor.awaitTermination(timeout, unit);
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    if (!executor.awaitTermination(timeout, unit)) {
+      return false;
+    }
+    // Delayed work still due after shutdown is handed off to the worker until the executor
+    // terminates, so the worker is only shut down afterwards.
+    worker.shutdown();
+    return worker.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
   }
 
   public void shutdownNow() {
     executor.shutdownNow();
+    if (worker != null) {
+      worker.shutdownNow();
+    }
+  }
+
+  /** Work that is running. Only accessed by the thread running it. */
+  private static final class Run {
+    // The share of the max that hasn't been handed over to rescheduled work.
+    private int held;
+
+    Run(int size) {
+      this.held = size;
+    }
+  }
+
+  private static final class PendingWork {
+    private final TelemetryType type;
+    private final int size;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private volatile Future<?> future;
+
+    PendingWork(TelemetryType type, int size) {
+      this.type = type;
+      this.size = size;
+    }
+
+    /** Claims the work, either to run it or to discard it. Only one claim succeeds. */
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
   }
 }
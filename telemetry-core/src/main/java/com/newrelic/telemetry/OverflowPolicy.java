@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides what happens to new telemetry when a bounded buffer, or the {@link LimitingScheduler}
+ * used by the {@link TelemetryClient}, is full.
+ *
+ * <ul>
+ *   <li>{@link #dropNewest()} rejects the new telemetry. This is the default.
+ *   <li>{@link #dropOldest()} discards the oldest buffered telemetry to make room.
+ *   <li>{@link #block(long, TimeUnit)} makes the caller wait for room, up to a timeout, and then
+ *       rejects the new telemetry.
+ *   <li>{@link #sample(double)} discards the oldest buffered telemetry with the given probability,
+ *       and otherwise rejects the new telemetry, so that what is kept is a mix of old and new.
+ * </ul>
+ *
+ * <p>Whatever the policy, every discarded item is counted, and the counts are available from the
+ * buffer or client that did the discarding.
+ */
+public final class OverflowPolicy {
+
+  public enum Action {
+    DROP_NEWEST,
+    DROP_OLDEST,
+    BLOCK,
+    SAMPLE
+  }
+
+  private static final OverflowPolicy DROP_NEWEST = new OverflowPolicy(Action.DROP_NEWEST, 0, 0);
+  private static final OverflowPolicy DROP_OLDEST = new OverflowPolicy(Action.DROP_OLDEST, 0, 0);
+
+  private final Action action;
+  private final long timeoutNanos;
+  private final double evictionProbability;
+
+  private OverflowPolicy(Action action, long timeoutNanos, double evictionProbability) {
+    this.action = action;
+    this.timeoutNanos = timeoutNanos;
+    this.evictionProbability = evictionProbability;
+  }
+
+  /** @return A policy that rejects new telemetry while full. */
+  public static OverflowPolicy dropNewest() {
+    return DROP_NEWEST;
+  }
+
+  /** @return A policy that discards the oldest buffered telemetry to make room for new items. */
+  public static OverflowPolicy dropOldest() {
+    return DROP_OLDEST;
+  }
+
+  /**
+   * Note that blocking when the {@link TelemetryClient} is full can stall the calling thread for up
+   * to the timeout, including the client's own sending thread when it reschedules a retry.
+   *
+   * @param timeout The longest time to wait for room.
+   * @param unit The unit of the timeout.
+   * @return A policy that waits for room, and rejects new telemetry if there is none in time.
+   */
+  public static OverflowPolicy block(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+    }
+    return new OverflowPolicy(Action.BLOCK, unit.toNanos(timeout), 0);
+  }
+
+  /**
+   * @param evictionProbability The probability, between 0 and 1, that new telemetry replaces the
+   *     oldest buffered telemetry rather than being rejected.
+   * @return A policy that keeps a random mix of old and new telemetry while full.
+   */
+  public static OverflowPolicy sample(double evictionProbability) {
+    if (!(evictionProbability >= 0 && evictionProbability <= 1)) {
+      throw new IllegalArgumentException(
+          "evictionProbability must be between 0 and 1: " + evictionProbability);
+    }
+    return new OverflowPolicy(Action.SAMPLE, 0, evictionProbability);
+  }
+
+  public Action getAction() {
+    return action;
+  }
+
+  /** @return How long a {@link Action#BLOCK} policy waits for room, in nanoseconds. */
+  public long getTimeoutNanos() {
+    return timeoutNanos;
+  }
+
+  /** @return The probability that a {@link Action#SAMPLE} policy evicts the oldest telemetry. */
+  public double getEvictionProbability() {
+    return evictionProbability;
+  }
+
+  /**
+   * Decides, for a single overflowing item, whether to make room by discarding the oldest
+   * telemetry.
+   *
+   * @return true if the oldest telemetry should be discarded, false if the new item should be
+   *     rejected
+   */
+  public boolean shouldEvictOldest() {
+    switch (action) {
+      case DROP_OLDEST:
+        return true;
+      case SAMPLE:
+        return ThreadLocalRandom.current().nextDouble() < evictionProbability;
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    switch (action) {
+      case BLOCK:
+        return "OverflowPolicy{" + action + ", timeoutNanos=" + timeoutNanos + '}';
+      case SAMPLE:
+        return "OverflowPolicy{" + action + ", evictionProbability=" + evictionProbability + '}';
+      default:
+        return "OverflowPolicy{" + action + '}';
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import com.newrelic.telemetry.events.Event;
+import com.newrelic.telemetry.logs.Log;
+import com.newrelic.telemetry.metrics.Count;
+import com.newrelic.telemetry.metrics.Gauge;
+import com.newrelic.telemetry.metrics.Summary;
+import com.newrelic.telemetry.spans.Span;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Estimates how many compressed payload bytes an item of telemetry takes, so that batches can be
+ * split to fit the ingest API's size limit before they are encoded. Each item's json size is
+ * estimated from its strings and attributes, without encoding it, and the compression ratio of
+ * each type of telemetry is remembered from the payloads sent so far.
+ *
+ * <p>This class is thread-safe.
+ */
+final class PayloadSizeEstimator {
+
+  // Weight of the newest payload in the smoothed ratio.
+  private static final double SMOOTHING = 0.3;
+  // Json chars of an item besides its strings and attributes: names, punctuation and numbers.
+  private static final int ITEM_CHARS = 64;
+  // Json chars of an attribute besides its key and string value: quotes, separators or a number.
+  private static final int ATTRIBUTE_CHARS = 8;
+  // Json chars of each frame of a logged stack trace.
+  private static final int STACK_FRAME_CHARS = 80;
+
+  private final Map<TelemetryType, Double> bytesPerChar = new EnumMap<>(TelemetryType.class);
+
+  /**
+   * Records the size of a payload.
+   *
+   * @param type The type of telemetry in the payload.
+   * @param chars The estimated json size of the telemetry in the payload, from {@link
+   *     #charsOf(TelemetryBatch)}.
+   * @param bytes The compressed size of the payload.
+   */
+  synchronized void record(TelemetryType type, double chars, int bytes) {
+    if (chars <= 0) {
+      return;
+    }
+    double observed = bytes / chars;
+    Double current = bytesPerChar.get(type);
+    bytesPerChar.put(
+        type, current == null ? observed : SMOOTHING * observed + (1 - SMOOTHING) * current);
+  }
+
+  /**
+   * @param type The type of telemetry.
+   * @return The compressed bytes per estimated json char of that type, or 0 if no payload has been
+   *     recorded yet.
+   */
+  synchronized double bytesPerChar(TelemetryType type) {
+    Double result = bytesPerChar.get(type);
+    return result == null ? 0 : result;
+  }
+
+  /**
+   * @param batch A batch of telemetry.
+   * @return The estimated json size of the telemetry in the batch, not counting its common block.
+   */
+  static double charsOf(TelemetryBatch<?> batch) {
+    double result = 0;
+    for (Telemetry item : batch.getTelemetry()) {
+      result += charsOf(item);
+    }
+    return result;
+  }
+
+  /**
+   * @param item An item of telemetry.
+   * @return The estimated json size of the item.
+   */
+  static int charsOf(Telemetry item) {
+    if (item instanceof Gauge) {
+      Gauge gauge = (Gauge) item;
+      return ITEM_CHARS + length(gauge.getName()) + charsOf(gauge.getAttributes());
+    }
+    if (item instanceof Count) {
+      Count count = (Count) item;
+      return ITEM_CHARS + length(count.getName()) + charsOf(count.getAttributes());
+    }
+    if (item instanceof Summary) {
+      Summary summary = (Summary) item;
+      return 2 * ITEM_CHARS + length(summary.getName()) + charsOf(summary.getAttributes());
+    }
+    if (item instanceof Span) {
+      Span span = (Span) item;
+      return ITEM_CHARS
+          + length(span.getId())
+          + length(span.getTraceId())
+          + length(span.getName())
+          + length(span.getParentId())
+          + length(span.getServiceName())
+          + charsOf(span.getAttributes());
+    }
+    if (item instanceof Event) {
+      Event event = (Event) item;
+      return ITEM_CHARS + length(event.getEventType()) + charsOf(event.getAttributes());
+    }
+    if (item instanceof Log) {
+      Log log = (Log) item;
+      Throwable throwable = log.getThrowable();
+      return ITEM_CHARS
+          + length(log.getMessage())
+          + length(log.getServiceName())
+          + length(log.getLevel())
+          + charsOf(log.getAttributes())
+          + (throwable == null
+              ? 0
+              : length(throwable.getMessage())
+                  + STACK_FRAME_CHARS * throwable.getStackTrace().length);
+    }
+    return ITEM_CHARS;
+  }
+
+  private static int charsOf(Attributes attributes) {
+    return attributes == null ? 0 : charsOf(attributes.view());
+  }
+
+  private static int charsOf(Map<String, Object> attributes) {
+    int result = 0;
+    if (attributes == null) {
+      return result;
+    }
+    if (attributes instanceof AttributesView) {
+      // Read by index, which neither allocates entries nor boxes primitives.
+      AttributesView view = (AttributesView) attributes;
+      for (int i = 0; i < view.size(); i++) {
+        result += ATTRIBUTE_CHARS + length(view.keyAt(i));
+        if (view.typeAt(i) == AttributesView.ValueType.OBJECT) {
+          result += length(view.valueAt(i));
+        }
+      }
+      return result;
+    }
+    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+      result += ATTRIBUTE_CHARS + length(entry.getKey()) + length(entry.getValue());
+    }
+    return result;
+  }
+
+  private static int length(Object value) {
+    return value instanceof String ? ((String) value).length() : 0;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps retries at a fraction of first attempts over a sliding window, so that during an outage
+ * retries can't multiply the number of requests sent. A minimum number of retries per window is
+ * always allowed, so that a client that sends little can still retry.
+ *
+ * <p>The window is divided into buckets, and a whole bucket expires at a time.
+ *
+ * <p>This class is thread-safe.
+ */
+final class RetryBudget {
+
+  private static final int BUCKETS = 10;
+
+  private final double retryRatio;
+  private final int minRetries;
+  private final long bucketNanos;
+  private final LongSupplier nanoClock;
+  private final long[] attempts = new long[BUCKETS];
+  private final long[] retries = new long[BUCKETS];
+
+  private int currentBucket;
+  private long currentBucketStart;
+  private long retryCount;
+  private long deniedCount;
+
+  /**
+   * @param retryRatio The max number of retries per first attempt, or a negative number for no
+   *     limit.
+   * @param minRetries The number of retries allowed per window whatever the number of attempts.
+   * @param window The length of the sliding window.
+   * @param unit The unit of the window.
+   */
+  RetryBudget(double retryRatio, int minRetries, long window, TimeUnit unit) {
+    this(retryRatio, minRetries, window, unit, System::nanoTime);
+  }
+
+  RetryBudget(
+      double retryRatio, int minRetries, long window, TimeUnit unit, LongSupplier nanoClock) {
+    if (minRetries < 0) {
+      throw new IllegalArgumentException("minRetries cannot be negative: " + minRetries);
+    }
+    if (window <= 0) {
+      throw new IllegalArgumentException("window must be positive: " + window);
+    }
+    this.retryRatio = retryRatio;
+    this.minRetries = minRetries;
+    this.bucketNanos = Math.max(1, unit.toNanos(window) / BUCKETS);
+    this.nanoClock = nanoClock;
+    this.currentBucketStart = nanoClock.getAsLong();
+  }
+
+  /** @return A budget that allows every retry, but still counts them. */
+  static RetryBudget unlimited() {
+    return new RetryBudget(-1, 0, 1, TimeUnit.SECONDS);
+  }
+
+  /** Records a first attempt at sending a batch, which adds to the budget. */
+  synchronized void recordAttempt() {
+    advance();
+    attempts[currentBucket]++;
+  }
+
+  /**
+   * Takes a retry from the budget, if there is one left.
+   *
+   * @return true if the retry may go ahead, false if the budget is exhausted
+   */
+  synchronized boolean tryRetry() {
+    advance();
+    if (retryRatio >= 0) {
+      long windowAttempts = 0;
+      long windowRetries = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        windowAttempts += attempts[i];
+        windowRetries += retries[i];
+      }
+      if (windowRetries + 1 > minRetries + retryRatio * windowAttempts) {
+        deniedCount++;
+        return false;
+      }
+    }
+    retries[currentBucket]++;
+    retryCount++;
+    return true;
+  }
+
+  /** @return The number of retries allowed so far. */
+  synchronized long getRetryCount() {
+    return retryCount;
+  }
+
+  /** @return The number of retries refused so far because the budget was exhausted. */
+  synchronized long getDeniedCount() {
+    return deniedCount;
+  }
+
+  private void advance() {
+    long elapsedBuckets = (nanoClock.getAsLong() - currentBucketStart) / bucketNanos;
+    if (elapsedBuckets <= 0) {
+      return;
+    }
+    for (int i = 0; i < Math.min(elapsedBuckets, BUCKETS); i++) {
+      currentBucket = (currentBucket + 1) % BUCKETS;
+      attempts[currentBucket] = 0;
+      retries[currentBucket] = 0;
+    }
+    currentBucketStart += elapsedBuckets * bucketNanos;
+  }
+}
@@ -6,6 +6,11 @@
 package com.newrelic.telemetry;
 
 import com.newrelic.telemetry.http.HttpPoster;
+import com.newrelic.telemetry.json.JsonEncoder;
+import com.newrelic.telemetry.transport.AdaptiveConcurrencyLimiter;
+import com.newrelic.telemetry.transport.BatchDataSender;
+import com.newrelic.telemetry.transport.CircuitBreaker;
+import com.newrelic.telemetry.util.Utils;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -20,6 +25,10 @@ public class SenderConfiguration {
   private final URL endpointUrl;
   private final boolean useLicenseKey;
   private final String endpointRegion;
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+  private final CircuitBreaker circuitBreaker;
+  private final int maxPayloadBytes;
+  private final JsonEncoder jsonEncoder;
 
   public SenderConfiguration(
       String apiKey,
@@ -45,11 +54,42 @@ public class SenderConfiguration {
       String secondaryUserAgent,
       boolean useLicenseKey,
       String endpointRegion) {
+    this(
+        apiKey,
+        httpPoster,
+        endpointUrl,
+        auditLoggingEnabled,
+        secondaryUserAgent,
+        useLicenseKey,
+        endpointRegion,
+        null,
+        null,
+        BatchDataSender.DEFAULT_MAX_PAYLOAD_BYTES,
+        JsonEncoder.GSON);
+  }
+
+  // Options beyond these are set with the builder, rather than with more public constructors.
+  SenderConfiguration(
+      String apiKey,
+      HttpPoster httpPoster,
+      URL endpointUrl,
+      boolean auditLoggingEnabled,
+      String secondaryUserAgent,
+      boolean useLicenseKey,
+      String endpointRegion,
+      AdaptiveConcurrencyLimiter concurrencyLimiter,
+      CircuitBreaker circuitBreaker,
+      int maxPayloadBytes,
+      JsonEncoder jsonEncoder) {
     this.httpPoster = httpPoster;
     this.endpointUrl = endpointUrl;
     this.baseConfig = new BaseConfig(apiKey, auditLoggingEnabled, secondaryUserAgent);
     this.useLicenseKey = useLicenseKey;
     this.endpointRegion = endpointRegion;
+    this.concurrencyLimiter = concurrencyLimiter;
+    this.circuitBreaker = circuitBreaker;
+    this.maxPayloadBytes = maxPayloadBytes;
+    this.jsonEncoder = jsonEncoder;
   }
 
   public String getApiKey() {
@@ -80,6 +120,22 @@ public class SenderConfiguration {
     return endpointRegion;
   }
 
+  public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public int getMaxPayloadBytes() {
+    return maxPayloadBytes;
+  }
+
+  public JsonEncoder getJsonEncoder() {
+    return jsonEncoder;
+  }
+
   public static SenderConfigurationBuilder builder(String defaultUrl, String basePath) {
     return new SenderConfigurationBuilder(defaultUrl, basePath);
   }
@@ -96,6 +152,10 @@ public class SenderConfiguration {
     private boolean useLicenseKey = false;
     private String endpointRegion = DEFAULT_US_REGION;
     private String secondaryUserAgent;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private CircuitBreaker circuitBreaker;
+    private int maxPayloadBytes = BatchDataSender.DEFAULT_MAX_PAYLOAD_BYTES;
+    private JsonEncoder jsonEncoder = JsonEncoder.GSON;
 
     public SenderConfigurationBuilder(String defaultUrl, String basePath) {
       this.defaultUrl = defaultUrl;
@@ -188,6 +248,64 @@ public class SenderConfiguration {
       return this;
     }
 
+    /**
+     * Optional. Adapts the number of requests in flight to the endpoint to how it is coping. Each
+     * sender needs its own limiter. Requests in flight are only limited when several threads
+     * share a sender, or it is used with an {@link com.newrelic.telemetry.http.AsyncHttpPoster}.
+     *
+     * @param concurrencyLimiter the limiter for this sender's endpoint
+     * @return this builder.
+     */
+    public SenderConfigurationBuilder concurrencyLimiter(
+        AdaptiveConcurrencyLimiter concurrencyLimiter) {
+      this.concurrencyLimiter = concurrencyLimiter;
+      return this;
+    }
+
+    /**
+     * Optional. Stops sending to this sender's endpoint while it keeps failing, letting a single
+     * probe request through now and then to find out whether it has recovered. A breaker can't
+     * be shared with a sender for a different endpoint.
+     *
+     * @param circuitBreaker the breaker for this sender's endpoint
+     * @return this builder.
+     */
+    public SenderConfigurationBuilder circuitBreaker(CircuitBreaker circuitBreaker) {
+      this.circuitBreaker = circuitBreaker;
+      return this;
+    }
+
+    /**
+     * Optional. The largest compressed payload to send. A larger payload fails with a {@link
+     * com.newrelic.telemetry.exceptions.RetryWithSplitException} before it is uploaded, rather
+     * than after the ingest API rejects it with a 413. A {@link TelemetryClient} splits batches to
+     * fit this size, going by the size of the payloads sent so far, before they are sent. Defaults
+     * to 1MB, the ingest API's limit.
+     *
+     * @param maxPayloadBytes the max number of compressed bytes, or 0 for no limit
+     * @return this builder.
+     */
+    public SenderConfigurationBuilder maxPayloadBytes(int maxPayloadBytes) {
+      if (maxPayloadBytes < 0) {
+        throw new IllegalArgumentException(
+            "maxPayloadBytes cannot be negative: " + maxPayloadBytes);
+      }
+      this.maxPayloadBytes = maxPayloadBytes;
+      return this;
+    }
+
+    /**
+     * Optional. How to encode the json payloads. {@link JsonEncoder#UTF8} writes the same bytes as
+     * the default, {@link JsonEncoder#GSON}, with less copying and fewer allocations.
+     *
+     * @param jsonEncoder the encoder
+     * @return this builder.
+     */
+    public SenderConfigurationBuilder jsonEncoder(JsonEncoder jsonEncoder) {
+      this.jsonEncoder = Utils.verifyNonNull(jsonEncoder);
+      return this;
+    }
+
     public SenderConfiguration build() {
       return new SenderConfiguration(
           apiKey,
@@ -196,7 +314,11 @@ public class SenderConfiguration {
           auditLoggingEnabled,
           secondaryUserAgent,
           useLicenseKey,
-          endpointRegion);
+          endpointRegion,
+          concurrencyLimiter,
+          circuitBreaker,
+          maxPayloadBytes,
+          jsonEncoder);
     }
 
     private URL getOrDefaultSendUrl() {
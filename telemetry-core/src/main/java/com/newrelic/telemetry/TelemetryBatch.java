@@ -6,12 +6,15 @@ package com.newrelic.telemetry;
 
 import static java.util.stream.Collectors.toList;
 
+import com.newrelic.telemetry.transport.EncodedPayload;
 import com.newrelic.telemetry.util.Utils;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.ToDoubleFunction;
 
 /** Represents a collection of {@link Telemetry} instances and some common attributes */
 public abstract class TelemetryBatch<T extends Telemetry> {
@@ -21,6 +24,8 @@ public abstract class TelemetryBatch<T extends Telemetry> {
 
   private Attributes commonAttributes;
 
+  private volatile EncodedPayload encodedPayload;
+
   public TelemetryBatch(Collection<T> telemetry, Attributes commonAttributes) {
     this.telemetry = Utils.verifyNonNull(telemetry);
     this.commonAttributes = Utils.verifyNonNull(commonAttributes);
@@ -44,6 +49,35 @@ public abstract class TelemetryBatch<T extends Telemetry> {
         createSubBatch(telemetry.stream().skip(halfSize).collect(toList())));
   }
 
+  /**
+   * Split this batch into pieces whose accumulated size stays within a limit, keeping the telemetry
+   * in order. Each piece holds at least one item, even if that item alone is over the limit.
+   *
+   * @param itemSize Estimates the size of an item of telemetry.
+   * @param maxSize The max accumulated size of each piece.
+   * @return a List holding just this batch if it is within the limit, otherwise the pieces.
+   */
+  public List<TelemetryBatch<T>> split(ToDoubleFunction<? super T> itemSize, double maxSize) {
+    List<TelemetryBatch<T>> result = new ArrayList<>();
+    List<T> piece = new ArrayList<>();
+    double pieceSize = 0;
+    for (T item : telemetry) {
+      double size = itemSize.applyAsDouble(item);
+      if (!piece.isEmpty() && pieceSize + size > maxSize) {
+        result.add(createSubBatch(piece));
+        piece = new ArrayList<>();
+        pieceSize = 0;
+      }
+      piece.add(item);
+      pieceSize += size;
+    }
+    if (result.isEmpty()) {
+      return Collections.singletonList(this);
+    }
+    result.add(createSubBatch(piece));
+    return result;
+  }
+
   /**
    * Returns the number of telemetry items in this collection. If this batch contains more than
    * {Integer.MAX_VALUE} items, returns {Integer.MAX_VALUE}.
@@ -77,6 +111,25 @@ public abstract class TelemetryBatch<T extends Telemetry> {
     return uuid;
   }
 
+  /**
+   * The compressed payload generated the first time this batch was sent, which is reused when the
+   * batch is retried.
+   *
+   * @return the encoded payload for this batch, or null if it hasn't been encoded yet
+   */
+  public EncodedPayload getEncodedPayload() {
+    return encodedPayload;
+  }
+
+  /**
+   * Attach the compressed payload generated for this batch, or pass null to discard it.
+   *
+   * @param encodedPayload the encoded payload for this batch
+   */
+  public void setEncodedPayload(EncodedPayload encodedPayload) {
+    this.encodedPayload = encodedPayload;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
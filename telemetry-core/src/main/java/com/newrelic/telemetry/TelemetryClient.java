@@ -6,6 +6,7 @@ package com.newrelic.telemetry;
 
 import com.newrelic.telemetry.events.EventBatch;
 import com.newrelic.telemetry.events.EventBatchSender;
+import com.newrelic.telemetry.exceptions.CircuitOpenException;
 import com.newrelic.telemetry.exceptions.ResponseException;
 import com.newrelic.telemetry.exceptions.RetryWithBackoffException;
 import com.newrelic.telemetry.exceptions.RetryWithRequestedWaitException;
@@ -17,11 +18,27 @@ import com.newrelic.telemetry.metrics.MetricBatch;
 import com.newrelic.telemetry.metrics.MetricBatchSender;
 import com.newrelic.telemetry.spans.SpanBatch;
 import com.newrelic.telemetry.spans.SpanBatchSender;
+import com.newrelic.telemetry.transport.DiskSpillQueue;
+import com.newrelic.telemetry.transport.EncodedPayload;
+import com.newrelic.telemetry.util.Utils;
+import com.newrelic.telemetry.util.VirtualThreads;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,13 +57,31 @@ public class TelemetryClient {
   private static final int DEFAULT_SHUTDOWN_SECONDS = 3;
   private static final boolean DEFAULT_IS_DAEMON = true;
   private static final int DEFAULT_MAX_TELEMETRY_LIMIT = 1_000_000;
+  private static final int DEFAULT_MIN_RETRIES_PER_WINDOW = 10;
+  // Split batches to this fraction of the max payload size, since their size is only an estimate.
+  private static final double SPLIT_TARGET_RATIO = 0.8;
+  private static final long SPILL_REPLAY_INTERVAL_MS = 1000;
+  private static final long DEFAULT_SPILL_PROBE_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
 
   private final EventBatchSender eventBatchSender;
   private final MetricBatchSender metricBatchSender;
   private final SpanBatchSender spanBatchSender;
-  private final LimitingScheduler scheduler;
+  private final Map<TelemetryType, Lane> lanes;
+  private final Map<TelemetryType, EndpointRateLimiter> rateLimiters;
   private final int shutdownSeconds;
+  private final Supplier<Backoff> backoffFactory;
+  private final RetryBudget retryBudget;
+  private final PayloadSizeEstimator payloadSizes = new PayloadSizeEstimator();
   private final LogBatchSender logBatchSender;
+  private final Map<TelemetryType, BatchSender> batchSenders;
+  // Whether the last attempt to send to each endpoint got through, which gates replaying.
+  private final Map<TelemetryType, AtomicBoolean> lastSendSucceeded;
+  private final DiskSpillQueue spillQueue;
+  private final ScheduledExecutorService spillReplayer;
+  private final long spillProbeIntervalMs;
+  // When a spilled payload was last sent to each endpoint whose last send failed, to find out
+  // whether it has recovered. Only used by the replay thread.
+  private final Map<TelemetryType, Long> spillProbedAt = new EnumMap<>(TelemetryType.class);
   private NotificationHandler notificationHandler = new LoggingNotificationHandler(LOG);
 
   /**
@@ -125,11 +160,197 @@ public class TelemetryClient {
     this.eventBatchSender = eventBatchSender;
     this.logBatchSender = logBatchSender;
     this.shutdownSeconds = shutdownSeconds;
-    this.scheduler = buildScheduler(useDaemonThread, maxTelemetryBuffer);
+    Lane lane =
+        new Lane(
+            buildScheduler(
+                useDaemonThread, 1, false, maxTelemetryBuffer, OverflowPolicy.dropNewest()),
+            1);
+    this.lanes = new EnumMap<>(TelemetryType.class);
+    for (TelemetryType type : TelemetryType.values()) {
+      lanes.put(type, lane);
+    }
+    this.rateLimiters = buildRateLimiters(0, 0);
+    this.backoffFactory = Backoff::defaultBackoff;
+    this.retryBudget = RetryBudget.unlimited();
+    this.batchSenders = buildBatchSenders();
+    this.lastSendSucceeded = buildSendOutcomes();
+    this.spillQueue = null;
+    this.spillReplayer = null;
+    this.spillProbeIntervalMs = DEFAULT_SPILL_PROBE_INTERVAL_MS;
+  }
+
+  private TelemetryClient(Builder builder) {
+    this.metricBatchSender = builder.metricBatchSender;
+    this.spanBatchSender = builder.spanBatchSender;
+    this.eventBatchSender = builder.eventBatchSender;
+    this.logBatchSender = builder.logBatchSender;
+    this.shutdownSeconds = builder.shutdownSeconds;
+    this.lanes = new EnumMap<>(TelemetryType.class);
+    Lane sharedLane = null;
+    for (TelemetryType type : TelemetryType.values()) {
+      Integer threads = builder.laneThreads.get(type);
+      if (threads == null && sharedLane != null) {
+        lanes.put(type, sharedLane);
+        continue;
+      }
+      Lane lane =
+          new Lane(
+              buildScheduler(
+                  builder.useDaemonThread,
+                  threads == null ? 1 : threads,
+                  builder.useVirtualThreads,
+                  builder.maxTelemetryBuffer,
+                  builder.overflowPolicy),
+              builder.maxRequestsInFlight);
+      if (threads == null) {
+        sharedLane = lane;
+      }
+      lanes.put(type, lane);
+    }
+    this.rateLimiters =
+        buildRateLimiters(builder.maxRequestsPerSecond, builder.maxBytesPerSecond);
+    this.backoffFactory = builder.backoffFactory;
+    this.retryBudget =
+        builder.retryBudgetRatio < 0
+            ? RetryBudget.unlimited()
+            : new RetryBudget(
+                builder.retryBudgetRatio,
+                DEFAULT_MIN_RETRIES_PER_WINDOW,
+                builder.retryBudgetWindowNanos,
+                TimeUnit.NANOSECONDS);
+    this.batchSenders = buildBatchSenders();
+    this.lastSendSucceeded = buildSendOutcomes();
+    this.spillQueue = builder.spillQueue;
+    this.spillProbeIntervalMs = builder.spillProbeIntervalMs;
+    this.spillReplayer =
+        spillQueue == null ? null : startSpillReplayer(builder.useDaemonThread);
+  }
+
+  private Map<TelemetryType, BatchSender> buildBatchSenders() {
+    Map<TelemetryType, BatchSender> result = new EnumMap<>(TelemetryType.class);
+    result.put(
+        TelemetryType.METRIC,
+        BatchSender.of(
+            b -> metricBatchSender.sendBatch((MetricBatch) b),
+            b -> metricBatchSender.sendBatchAsync((MetricBatch) b),
+            b -> metricBatchSender.encode((MetricBatch) b),
+            () -> metricBatchSender.getMaxPayloadBytes()));
+    result.put(
+        TelemetryType.SPAN,
+        BatchSender.of(
+            b -> spanBatchSender.sendBatch((SpanBatch) b),
+            b -> spanBatchSender.sendBatchAsync((SpanBatch) b),
+            b -> spanBatchSender.encode((SpanBatch) b),
+            () -> spanBatchSender.getMaxPayloadBytes()));
+    result.put(
+        TelemetryType.EVENT,
+        BatchSender.of(
+            b -> eventBatchSender.sendBatch((EventBatch) b),
+            b -> eventBatchSender.sendBatchAsync((EventBatch) b),
+            b -> eventBatchSender.encode((EventBatch) b),
+            () -> eventBatchSender.getMaxPayloadBytes()));
+    result.put(
+        TelemetryType.LOG,
+        BatchSender.of(
+            b -> logBatchSender.sendBatch((LogBatch) b),
+            b -> logBatchSender.sendBatchAsync((LogBatch) b),
+            b -> logBatchSender.encode((LogBatch) b),
+            () -> logBatchSender.getMaxPayloadBytes()));
+    return result;
+  }
+
+  private static Map<TelemetryType, AtomicBoolean> buildSendOutcomes() {
+    Map<TelemetryType, AtomicBoolean> result = new EnumMap<>(TelemetryType.class);
+    for (TelemetryType type : TelemetryType.values()) {
+      // Until we know better, assume each endpoint is up, so that spilled data is replayed after
+      // a restart.
+      result.put(type, new AtomicBoolean(true));
+    }
+    return result;
+  }
+
+  // Must be called last in the constructor, since the replayer may run at any time.
+  private ScheduledExecutorService startSpillReplayer(boolean useDaemonThread) {
+    ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "telemetry-spill-replay");
+              thread.setDaemon(useDaemonThread);
+              return thread;
+            });
+    executor.scheduleWithFixedDelay(
+        this::replaySpilled,
+        SPILL_REPLAY_INTERVAL_MS,
+        SPILL_REPLAY_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+    return executor;
+  }
+
+  private static Map<TelemetryType, EndpointRateLimiter> buildRateLimiters(
+      double maxRequestsPerSecond, long maxBytesPerSecond) {
+    // Each type of telemetry is sent to its own endpoint.
+    Map<TelemetryType, EndpointRateLimiter> result = new EnumMap<>(TelemetryType.class);
+    for (TelemetryType type : TelemetryType.values()) {
+      result.put(type, new EndpointRateLimiter(maxRequestsPerSecond, maxBytesPerSecond));
+    }
+    return result;
+  }
+
+  /**
+   * Returns a new Builder instance, for creating a TelemetryClient with options beyond those
+   * available on the constructors.
+   *
+   * @return a new instance of TelemetryClient.Builder
+   */
+  public static Builder builder() {
+    return new Builder();
   }
 
   private interface BatchSender {
     void sendBatch(TelemetryBatch<?> batch) throws ResponseException;
+
+    CompletableFuture<Response> sendBatchAsync(TelemetryBatch<?> batch);
+
+    EncodedPayload encode(TelemetryBatch<?> batch) throws ResponseException;
+
+    /** @return The largest compressed payload the sender sends, or 0 for no limit. */
+    int maxPayloadBytes();
+
+    static BatchSender of(
+        SyncSender syncSender,
+        Function<TelemetryBatch<?>, CompletableFuture<Response>> async,
+        Encoder encoder,
+        IntSupplier maxPayloadBytes) {
+      return new BatchSender() {
+        @Override
+        public void sendBatch(TelemetryBatch<?> batch) throws ResponseException {
+          syncSender.sendBatch(batch);
+        }
+
+        @Override
+        public CompletableFuture<Response> sendBatchAsync(TelemetryBatch<?> batch) {
+          return async.apply(batch);
+        }
+
+        @Override
+        public EncodedPayload encode(TelemetryBatch<?> batch) throws ResponseException {
+          return encoder.encode(batch);
+        }
+
+        @Override
+        public int maxPayloadBytes() {
+          return maxPayloadBytes.getAsInt();
+        }
+      };
+    }
+  }
+
+  private interface SyncSender {
+    void sendBatch(TelemetryBatch<?> batch) throws ResponseException;
+  }
+
+  private interface Encoder {
+    EncodedPayload encode(TelemetryBatch<?> batch) throws ResponseException;
   }
 
   /**
@@ -140,8 +361,7 @@ public class TelemetryClient {
    * @param batch batch metrics to be applied
    */
   public void sendBatch(MetricBatch batch) {
-    scheduleBatchSend(
-        (b) -> metricBatchSender.sendBatch((MetricBatch) b), batch, 0, TimeUnit.SECONDS);
+    sendNewBatch(batchSenders.get(TelemetryType.METRIC), batch);
   }
 
   /**
@@ -152,7 +372,7 @@ public class TelemetryClient {
    * @param batch to be sent
    */
   public void sendBatch(SpanBatch batch) {
-    scheduleBatchSend((b) -> spanBatchSender.sendBatch((SpanBatch) b), batch, 0, TimeUnit.SECONDS);
+    sendNewBatch(batchSenders.get(TelemetryType.SPAN), batch);
   }
 
   /**
@@ -163,8 +383,7 @@ public class TelemetryClient {
    * @param batch to be sent
    */
   public void sendBatch(EventBatch batch) {
-    scheduleBatchSend(
-        (b) -> eventBatchSender.sendBatch((EventBatch) b), batch, 0, TimeUnit.SECONDS);
+    sendNewBatch(batchSenders.get(TelemetryType.EVENT), batch);
   }
 
   /**
@@ -175,7 +394,37 @@ public class TelemetryClient {
    * @param batch to be sent
    */
   public void sendBatch(LogBatch batch) {
-    scheduleBatchSend((b) -> logBatchSender.sendBatch((LogBatch) b), batch, 0, TimeUnit.SECONDS);
+    sendNewBatch(batchSenders.get(TelemetryType.LOG), batch);
+  }
+
+  private <T extends Telemetry> void sendNewBatch(BatchSender sender, TelemetryBatch<T> batch) {
+    if (!hasSender(TelemetryType.of(batch))) {
+      if (notificationHandler != null) {
+        notificationHandler.noticeError(
+            "No sender for this type of telemetry. Dropping it!", null, batch);
+      }
+      return;
+    }
+    for (TelemetryBatch<T> piece : splitToFit(sender, batch)) {
+      retryBudget.recordAttempt();
+      scheduleBatchSend(sender, piece, 0, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Splits a batch that is likely to be over its sender's max payload size, going by the estimated
+   * size of each item and the compression of the payloads already sent for its type of telemetry.
+   */
+  private <T extends Telemetry> List<TelemetryBatch<T>> splitToFit(
+      BatchSender sender, TelemetryBatch<T> batch) {
+    int maxPayloadBytes = sender.maxPayloadBytes();
+    double bytesPerChar = payloadSizes.bytesPerChar(TelemetryType.of(batch));
+    if (maxPayloadBytes <= 0 || bytesPerChar <= 0) {
+      return Collections.singletonList(batch);
+    }
+    return batch.split(
+        item -> bytesPerChar * PayloadSizeEstimator.charsOf(item),
+        maxPayloadBytes * SPLIT_TARGET_RATIO);
   }
 
   private void scheduleBatchSend(
@@ -183,7 +432,7 @@ public class TelemetryClient {
       TelemetryBatch<? extends Telemetry> batch,
       long waitTime,
       TimeUnit timeUnit) {
-    scheduleBatchSend(sender, batch, waitTime, timeUnit, Backoff.defaultBackoff());
+    scheduleBatchSend(sender, batch, waitTime, timeUnit, backoffFactory.get());
   }
 
   private void scheduleBatchSend(
@@ -193,12 +442,23 @@ public class TelemetryClient {
       TimeUnit timeUnit,
       Backoff backoff) {
 
+    LimitingScheduler scheduler = lanes.get(TelemetryType.of(batch)).scheduler;
     if (scheduler.isTerminated()) {
       return;
     }
     try {
-      scheduler.schedule(
-          batch.size(), () -> sendWithErrorHandling(sender, batch, backoff), waitTime, timeUnit);
+      // A retry, or a piece of a split batch, takes over the share of the lane's buffer held by the
+      // batch that is running, so that it is neither refused nor kept waiting for room.
+      boolean scheduled =
+          scheduler.reschedule(
+              TelemetryType.of(batch),
+              weightOf(batch),
+              () -> sendWithErrorHandling(sender, batch, backoff),
+              waitTime,
+              timeUnit);
+      if (!scheduled) {
+        spill(sender, batch);
+      }
     } catch (RejectedExecutionException e) {
       if (notificationHandler != null) {
         notificationHandler.noticeError("Problem scheduling batch : ", e, batch);
@@ -206,35 +466,171 @@ public class TelemetryClient {
     }
   }
 
+  /**
+   * A batch replayed from the spill queue holds only its payload, but counts as the telemetry the
+   * payload was encoded from.
+   */
+  private static int weightOf(TelemetryBatch<? extends Telemetry> batch) {
+    EncodedPayload payload = batch.getEncodedPayload();
+    return payload == null ? batch.size() : Math.max(batch.size(), payload.getItemCount());
+  }
+
   private void sendWithErrorHandling(
       BatchSender batchSender, TelemetryBatch<? extends Telemetry> batch, Backoff backoff) {
+    TelemetryType type = TelemetryType.of(batch);
+    EndpointRateLimiter rateLimiter = rateLimiters.get(type);
+    long waitNanos = rateLimiter.tryAcquire();
+    if (waitNanos > 0) {
+      // The endpoint is paused or over its rate limit; try again once it might not be, keeping the
+      // share of the lane's buffer that the batch already holds.
+      LimitingScheduler scheduler = lanes.get(type).scheduler;
+      boolean rescheduled =
+          scheduler.reschedule(
+              type,
+              weightOf(batch),
+              () -> sendWithErrorHandling(batchSender, batch, backoff),
+              waitNanos,
+              TimeUnit.NANOSECONDS);
+      if (!rescheduled) {
+        spill(batchSender, batch);
+      }
+      return;
+    }
+    Semaphore requestsInFlight = lanes.get(type).requestsInFlight;
+    if (requestsInFlight != null) {
+      sendAsyncWithErrorHandling(requestsInFlight, batchSender, batch, backoff);
+      return;
+    }
     try {
       batchSender.sendBatch(batch);
+      recordPayload(batch);
+      lastSendSucceeded.get(type).set(true);
       LOG.debug("Telemetry - {} - sent", batch.getClass().getSimpleName());
-    } catch (RetryWithBackoffException e) {
+    } catch (Exception e) {
+      recordPayload(batch);
+      handleFailure(batchSender, batch, backoff, e);
+    }
+  }
+
+  private void recordPayload(TelemetryBatch<? extends Telemetry> batch) {
+    EncodedPayload payload = batch.getEncodedPayload();
+    if (payload != null) {
+      TelemetryType type = TelemetryType.of(batch);
+      rateLimiters.get(type).recordBytes(payload.size());
+      payloadSizes.record(type, PayloadSizeEstimator.charsOf(batch), payload.size());
+    }
+  }
+
+  /**
+   * Starts sending a batch without waiting for the response, once fewer than the max number of
+   * requests are in flight in the batch's lane. Waiting for a free slot blocks the lane's thread,
+   * which is what keeps more batches from being started.
+   */
+  private void sendAsyncWithErrorHandling(
+      Semaphore requestsInFlight,
+      BatchSender batchSender,
+      TelemetryBatch<? extends Telemetry> batch,
+      Backoff backoff) {
+    try {
+      requestsInFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      if (notificationHandler != null) {
+        notificationHandler.noticeError("Interrupted before sending data.", e, batch);
+      }
+      return;
+    }
+    CompletableFuture<Response> response;
+    try {
+      response = batchSender.sendBatchAsync(batch);
+      recordPayload(batch);
+    } catch (RuntimeException e) {
+      requestsInFlight.release();
+      handleFailure(batchSender, batch, backoff, e);
+      return;
+    }
+    // Free the slot on the thread that completed the request, since the lane's thread may be
+    // waiting for it, but handle the outcome on the lane so that the HTTP client's threads never
+    // run retries, notification handlers or spills.
+    LimitingScheduler scheduler = lanes.get(TelemetryType.of(batch)).scheduler;
+    response
+        .whenComplete((result, error) -> requestsInFlight.release())
+        .whenCompleteAsync(
+            (result, error) -> {
+              if (error == null) {
+                lastSendSucceeded.get(TelemetryType.of(batch)).set(true);
+                LOG.debug("Telemetry - {} - sent", batch.getClass().getSimpleName());
+              } else {
+                handleFailure(
+                    batchSender,
+                    batch,
+                    backoff,
+                    error instanceof CompletionException ? error.getCause() : error);
+              }
+            },
+            scheduler::execute);
+  }
+
+  private void handleFailure(
+      BatchSender batchSender,
+      TelemetryBatch<? extends Telemetry> batch,
+      Backoff backoff,
+      Throwable failure) {
+    if (failure instanceof RetryWithBackoffException) {
+      lastSendSucceeded.get(TelemetryType.of(batch)).set(false);
       backoff(batchSender, batch, backoff);
-    } catch (RetryWithRequestedWaitException e) {
+    } else if (failure instanceof CircuitOpenException) {
+      lastSendSucceeded.get(TelemetryType.of(batch)).set(false);
+      CircuitOpenException e = (CircuitOpenException) failure;
+      rateLimiters.get(TelemetryType.of(batch)).pause(e.getWaitTime(), e.getTimeUnit());
+      waitForCircuit(batchSender, batch, backoff, e);
+    } else if (failure instanceof RetryWithRequestedWaitException) {
+      lastSendSucceeded.get(TelemetryType.of(batch)).set(false);
+      RetryWithRequestedWaitException e = (RetryWithRequestedWaitException) failure;
+      // Hold back every batch for this endpoint, not just this one.
+      rateLimiters.get(TelemetryType.of(batch)).pause(e.getWaitTime(), e.getTimeUnit());
       retry(batchSender, batch, e);
-    } catch (RetryWithSplitException e) {
-      splitAndSend(batchSender, batch, e);
-    } catch (ResponseException e) {
+    } else if (failure instanceof RetryWithSplitException) {
+      splitAndSend(batchSender, batch, (RetryWithSplitException) failure);
+    } else if (failure instanceof ResponseException) {
       if (notificationHandler != null) {
         notificationHandler.noticeError(
-            "Received a fatal exception from the New Relic API. Aborting batch send.", e, batch);
-      }
-    } catch (Exception e) {
-      if (notificationHandler != null) {
-        notificationHandler.noticeError("Unexpected failure when sending data.", e, batch);
+            "Received a fatal exception from the New Relic API. Aborting batch send.",
+            failure,
+            batch);
       }
+    } else if (notificationHandler != null) {
+      notificationHandler.noticeError("Unexpected failure when sending data.", failure, batch);
     }
   }
 
   private <T extends Telemetry> void splitAndSend(
       BatchSender sender, TelemetryBatch<T> batch, RetryWithSplitException e) {
+    if (batch.isEmpty()) {
+      // A payload replayed from the spill queue has no telemetry left to split.
+      if (notificationHandler != null) {
+        notificationHandler.noticeError("Spilled payload too large. Dropping it!", e, batch);
+      }
+      return;
+    }
+    if (batch.size() == 1) {
+      // Splitting can't make it any smaller.
+      if (notificationHandler != null) {
+        notificationHandler.noticeError(
+            "A single item is over the max payload size. Dropping it!", e, batch);
+      }
+      return;
+    }
     if (notificationHandler != null) {
       notificationHandler.noticeInfo("Batch size too large, splitting and retrying.", e, batch);
     }
-    List<TelemetryBatch<T>> splitBatches = batch.split();
+    // The payload was rejected as too large, so it is of no further use to any retry. Its size has
+    // been recorded, so the batch can be split into pieces that fit rather than in half.
+    batch.setEncodedPayload(null);
+    List<TelemetryBatch<T>> splitBatches = splitToFit(sender, batch);
+    if (splitBatches.size() < 2) {
+      splitBatches = batch.split();
+    }
     splitBatches.forEach(
         metricBatch -> scheduleBatchSend(sender, metricBatch, 0, TimeUnit.SECONDS));
   }
@@ -243,6 +639,10 @@ public class TelemetryClient {
       BatchSender sender,
       TelemetryBatch<? extends Telemetry> batch,
       RetryWithRequestedWaitException e) {
+    if (!retryBudget.tryRetry()) {
+      dropOverBudget(sender, batch);
+      return;
+    }
     if (notificationHandler != null) {
       notificationHandler.noticeInfo(
           String.format(
@@ -253,16 +653,40 @@ public class TelemetryClient {
     scheduleBatchSend(sender, batch, e.getWaitTime(), e.getTimeUnit());
   }
 
+  /**
+   * Tries a batch that a circuit breaker held back again once the breaker lets a probe through. The
+   * batch was never sent, so this doesn't draw on the retry budget, but each attempt uses up one of
+   * the batch's backoff retries, so that a batch for an endpoint that stays down is spilled or
+   * dropped rather than held forever.
+   */
+  private void waitForCircuit(
+      BatchSender sender,
+      TelemetryBatch<? extends Telemetry> batch,
+      Backoff backoff,
+      CircuitOpenException e) {
+    if (backoff.nextWaitMs() == -1) {
+      maxRetriesExceeded(sender, batch);
+      return;
+    }
+    if (notificationHandler != null) {
+      notificationHandler.noticeInfo(
+          String.format(
+              "Circuit breaker open. Retrying batch after %d %s", e.getWaitTime(), e.getTimeUnit()),
+          batch);
+    }
+    scheduleBatchSend(sender, batch, e.getWaitTime(), e.getTimeUnit(), backoff);
+  }
+
   private void backoff(
       BatchSender sender, TelemetryBatch<? extends Telemetry> batch, Backoff backoff) {
 
     long newWaitTime = backoff.nextWaitMs();
     if (newWaitTime == -1) {
-      if (notificationHandler != null) {
-        notificationHandler.noticeError(
-            String.format("Max retries exceeded.  Dropping %d pieces of data!", batch.size()),
-            batch);
-      }
+      maxRetriesExceeded(sender, batch);
+      return;
+    }
+    if (!retryBudget.tryRetry()) {
+      dropOverBudget(sender, batch);
       return;
     }
     if (notificationHandler != null) {
@@ -274,14 +698,196 @@ public class TelemetryClient {
     scheduleBatchSend(sender, batch, newWaitTime, TimeUnit.MILLISECONDS, backoff);
   }
 
-  /** Cleanly shuts down the background Executor thread. */
+  private void maxRetriesExceeded(BatchSender sender, TelemetryBatch<? extends Telemetry> batch) {
+    if (spill(sender, batch)) {
+      return;
+    }
+    if (notificationHandler != null) {
+      notificationHandler.noticeError(
+          String.format("Max retries exceeded.  Dropping %d pieces of data!", batch.size()),
+          batch);
+    }
+  }
+
+  private void dropOverBudget(BatchSender sender, TelemetryBatch<? extends Telemetry> batch) {
+    if (spill(sender, batch)) {
+      return;
+    }
+    if (notificationHandler != null) {
+      notificationHandler.noticeError(
+          String.format("Retry budget exhausted.  Dropping %d pieces of data!", batch.size()),
+          batch);
+    }
+  }
+
+  /**
+   * Writes a batch that would otherwise be dropped to the spill queue, if there is one, encoding
+   * it first if it hasn't been yet.
+   *
+   * @return true if the batch was spilled
+   */
+  private boolean spill(BatchSender sender, TelemetryBatch<? extends Telemetry> batch) {
+    if (spillQueue == null) {
+      return false;
+    }
+    EncodedPayload payload = batch.getEncodedPayload();
+    try {
+      if (payload == null) {
+        payload = sender.encode(batch);
+      }
+    } catch (ResponseException | RuntimeException e) {
+      LOG.warn("Failed to encode a batch for the spill queue", e);
+      return false;
+    }
+    if (!spillQueue.offer(TelemetryType.of(batch), payload)) {
+      return false;
+    }
+    if (notificationHandler != null) {
+      notificationHandler.noticeInfo(
+          String.format("Spilled %d pieces of data to disk, to send later", weightOf(batch)),
+          batch);
+    }
+    return true;
+  }
+
+  /**
+   * Moves spilled payloads back onto the schedulers, oldest first for each type of telemetry, for
+   * as long as the last send to their endpoint succeeded and their lane has room to spare. While
+   * the last send failed, a single payload is sent now and then as a probe, since there may be no
+   * new telemetry to find out when the endpoint recovers. Each type is replayed on its own, so an
+   * endpoint that stays down doesn't hold back the payloads for the others.
+   */
+  private void replaySpilled() {
+    for (TelemetryType type : TelemetryType.values()) {
+      try {
+        replaySpilled(type);
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to replay spilled telemetry", e);
+      }
+    }
+  }
+
+  private void replaySpilled(TelemetryType type) {
+    DiskSpillQueue.Entry entry;
+    while ((entry = spillQueue.peek(type)) != null) {
+      if (!hasSender(type)) {
+        // Spilled by an earlier process that had a sender for it; it can't be sent by this one.
+        spillQueue.poll(type);
+        TelemetryBatch<?> batch = emptyBatchOf(type);
+        batch.setEncodedPayload(entry.getPayload());
+        if (notificationHandler != null) {
+          notificationHandler.noticeError(
+              "No sender for spilled telemetry. Dropping it!", null, batch);
+        }
+        continue;
+      }
+      boolean probe = !lastSendSucceeded.get(type).get();
+      long now = System.currentTimeMillis();
+      if (probe) {
+        Long probedAt = spillProbedAt.putIfAbsent(type, now);
+        if (probedAt == null || now - probedAt < spillProbeIntervalMs) {
+          return;
+        }
+      }
+      if (!hasRoomToReplay(lanes.get(type).scheduler, entry.getPayload().getItemCount())) {
+        return;
+      }
+      spillQueue.poll(type);
+      TelemetryBatch<?> batch = emptyBatchOf(type);
+      batch.setEncodedPayload(entry.getPayload());
+      scheduleBatchSend(batchSenders.get(type), batch, 0, TimeUnit.SECONDS);
+      if (probe) {
+        spillProbedAt.put(type, now);
+        return;
+      }
+      spillProbedAt.remove(type);
+    }
+  }
+
+  /** Replayed data may take up to half of a lane's buffer, leaving the rest to new telemetry. */
+  private static boolean hasRoomToReplay(LimitingScheduler scheduler, int size) {
+    int available = scheduler.getAvailable();
+    if (available == scheduler.getMax()) {
+      // Even a payload of more than half the buffer gets through once the lane is idle.
+      return true;
+    }
+    return available - size >= scheduler.getMax() / 2;
+  }
+
+  private boolean hasSender(TelemetryType type) {
+    switch (type) {
+      case METRIC:
+        return metricBatchSender != null;
+      case SPAN:
+        return spanBatchSender != null;
+      case EVENT:
+        return eventBatchSender != null;
+      default:
+        return logBatchSender != null;
+    }
+  }
+
+  private static TelemetryBatch<?> emptyBatchOf(TelemetryType type) {
+    switch (type) {
+      case METRIC:
+        return new MetricBatch(Collections.emptyList(), new Attributes());
+      case SPAN:
+        return new SpanBatch(Collections.emptyList(), new Attributes());
+      case EVENT:
+        return new EventBatch(Collections.emptyList());
+      default:
+        return new LogBatch(Collections.emptyList(), new Attributes());
+    }
+  }
+
+  /**
+   * Get the number of telemetry items of a type that have been discarded because the maximum
+   * amount of telemetry was already buffered. What is discarded depends on the {@link
+   * Builder#overflowPolicy(OverflowPolicy) overflow policy}.
+   *
+   * @param type The type of telemetry.
+   * @return The number of discarded items of that type.
+   */
+  public long getDroppedCount(TelemetryType type) {
+    return lanes.get(type).scheduler.getDroppedCount(type);
+  }
+
+  /** @return The number of times a batch has been retried after a failure. */
+  public long getRetryCount() {
+    return retryBudget.getRetryCount();
+  }
+
+  /**
+   * @return The number of times a batch has been dropped instead of retried, because the {@link
+   *     Builder#retryBudget(double, long, TimeUnit) retry budget} was exhausted.
+   */
+  public long getRetriesDeniedCount() {
+    return retryBudget.getDeniedCount();
+  }
+
+  /** Cleanly shuts down the background Executor threads. */
   public void shutdown() {
     LOG.info("Shutting down the TelemetryClient background Executor");
-    scheduler.shutdown();
+    if (spillReplayer != null) {
+      spillReplayer.shutdownNow();
+    }
+    Set<Lane> distinctLanes = Collections.newSetFromMap(new IdentityHashMap<>());
+    distinctLanes.addAll(lanes.values());
+    distinctLanes.forEach(lane -> lane.scheduler.shutdown());
     try {
-      if (!scheduler.awaitTermination(shutdownSeconds, TimeUnit.SECONDS)) {
-        LOG.warn("couldn't shutdown within timeout");
-        scheduler.shutdownNow();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(shutdownSeconds);
+      for (Lane lane : distinctLanes) {
+        if (!lane.scheduler.awaitTermination(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+          LOG.warn("couldn't shutdown within timeout");
+          lane.scheduler.shutdownNow();
+        }
+      }
+      for (Lane lane : distinctLanes) {
+        if (lane.requestsInFlight != null
+            && !lane.requestsInFlight.tryAcquire(
+                lane.maxRequestsInFlight, remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+          LOG.warn("requests still in flight after the shutdown timeout");
+        }
       }
     } catch (InterruptedException e) {
       LOG.error("interrupted graceful shutdown", e);
@@ -318,22 +924,48 @@ public class TelemetryClient {
         metricBatchSender, spanBatchSender, eventBatchSender, logBatchSender);
   }
 
+  private static long remainingNanos(long deadline) {
+    return Math.max(0, deadline - System.nanoTime());
+  }
+
   /**
    * Create ScheduledExecutorService from a parameter given by constructor
    *
    * @param useDaemonThread A flag to decide user-threads or daemon-threads
+   * @param threads The number of threads to send with
+   * @param useVirtualThreads Send each batch on its own virtual thread, if available
    * @param maxTelemetryBuffer Max number of telemetry to buffer
+   * @param overflowPolicy What to do when the buffer is full
    * @return ScheduledExecutorService
    */
-  private static LimitingScheduler buildScheduler(boolean useDaemonThread, int maxTelemetryBuffer) {
+  private static LimitingScheduler buildScheduler(
+      boolean useDaemonThread,
+      int threads,
+      boolean useVirtualThreads,
+      int maxTelemetryBuffer,
+      OverflowPolicy overflowPolicy) {
+    ThreadFactory threadFactory =
+        r -> {
+          Thread thread = new Thread(r);
+          thread.setDaemon(useDaemonThread);
+          return thread;
+        };
+    if (useVirtualThreads) {
+      if (VirtualThreads.isAvailable()) {
+        // The platform thread only keeps time; every send runs on a virtual thread of its own.
+        return new LimitingScheduler(
+            Executors.newSingleThreadScheduledExecutor(threadFactory),
+            VirtualThreads.newVirtualThreadPerTaskExecutor(),
+            maxTelemetryBuffer,
+            overflowPolicy);
+      }
+      LOG.warn("Virtual threads require Java 21 or later. Sending on platform threads.");
+    }
     ScheduledExecutorService executor =
-        Executors.newSingleThreadScheduledExecutor(
-            r -> {
-              Thread thread = new Thread(r);
-              thread.setDaemon(useDaemonThread);
-              return thread;
-            });
-    return new LimitingScheduler(executor, maxTelemetryBuffer);
+        threads == 1
+            ? Executors.newSingleThreadScheduledExecutor(threadFactory)
+            : Executors.newScheduledThreadPool(threads, threadFactory);
+    return new LimitingScheduler(executor, maxTelemetryBuffer, overflowPolicy);
   }
 
   /**
@@ -345,4 +977,297 @@ public class TelemetryClient {
   public void withNotificationHandler(NotificationHandler notificationHandler) {
     this.notificationHandler = notificationHandler;
   }
+
+  /**
+   * The scheduler that batches of one or more telemetry types are sent on, and the limit on the
+   * requests those batches may have in flight. Each lane has its own threads and its own max
+   * number of buffered telemetry, so that a slow endpoint only holds back its own lane.
+   */
+  private static final class Lane {
+    private final LimitingScheduler scheduler;
+    private final int maxRequestsInFlight;
+    // Null when sending one batch at a time, synchronously.
+    private final Semaphore requestsInFlight;
+
+    Lane(LimitingScheduler scheduler, int maxRequestsInFlight) {
+      this.scheduler = scheduler;
+      this.maxRequestsInFlight = maxRequestsInFlight;
+      this.requestsInFlight =
+          maxRequestsInFlight > 1 ? new Semaphore(maxRequestsInFlight) : null;
+    }
+  }
+
+  public static class Builder {
+    private MetricBatchSender metricBatchSender;
+    private SpanBatchSender spanBatchSender;
+    private EventBatchSender eventBatchSender;
+    private LogBatchSender logBatchSender;
+    private int shutdownSeconds = DEFAULT_SHUTDOWN_SECONDS;
+    private boolean useDaemonThread = DEFAULT_IS_DAEMON;
+    private int maxTelemetryBuffer = DEFAULT_MAX_TELEMETRY_LIMIT;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.dropNewest();
+    private int maxRequestsInFlight = 1;
+    private boolean useVirtualThreads = false;
+    private double maxRequestsPerSecond = 0;
+    private long maxBytesPerSecond = 0;
+    private Supplier<Backoff> backoffFactory = Backoff::defaultBackoff;
+    private double retryBudgetRatio = -1;
+    private long retryBudgetWindowNanos;
+    private DiskSpillQueue spillQueue;
+    private long spillProbeIntervalMs = DEFAULT_SPILL_PROBE_INTERVAL_MS;
+    private final Map<TelemetryType, Integer> laneThreads = new EnumMap<>(TelemetryType.class);
+
+    /**
+     * @param metricBatchSender The sender for dimensional metrics, or null if not sending metrics.
+     * @return this builder
+     */
+    public Builder metricBatchSender(MetricBatchSender metricBatchSender) {
+      this.metricBatchSender = metricBatchSender;
+      return this;
+    }
+
+    /**
+     * @param spanBatchSender The sender for distributed tracing spans, or null if not sending
+     *     spans.
+     * @return this builder
+     */
+    public Builder spanBatchSender(SpanBatchSender spanBatchSender) {
+      this.spanBatchSender = spanBatchSender;
+      return this;
+    }
+
+    /**
+     * @param eventBatchSender The sender for custom events, or null if not sending events.
+     * @return this builder
+     */
+    public Builder eventBatchSender(EventBatchSender eventBatchSender) {
+      this.eventBatchSender = eventBatchSender;
+      return this;
+    }
+
+    /**
+     * @param logBatchSender The sender for log entries, or null if not sending logs.
+     * @return this builder
+     */
+    public Builder logBatchSender(LogBatchSender logBatchSender) {
+      this.logBatchSender = logBatchSender;
+      return this;
+    }
+
+    /**
+     * @param shutdownSeconds num of seconds to wait for graceful shutdown of its executor
+     * @return this builder
+     */
+    public Builder shutdownSeconds(int shutdownSeconds) {
+      this.shutdownSeconds = shutdownSeconds;
+      return this;
+    }
+
+    /**
+     * @param useDaemonThread A flag to decide user-threads or daemon-threads
+     * @return this builder
+     */
+    public Builder useDaemonThread(boolean useDaemonThread) {
+      this.useDaemonThread = useDaemonThread;
+      return this;
+    }
+
+    /**
+     * @param maxTelemetryBuffer The max number of telemetry to buffer
+     * @return this builder
+     */
+    public Builder maxTelemetryBuffer(int maxTelemetryBuffer) {
+      this.maxTelemetryBuffer = maxTelemetryBuffer;
+      return this;
+    }
+
+    /**
+     * Optional. Decides what happens to a batch when sending it would put the client over the max
+     * number of buffered telemetry. Defaults to {@link OverflowPolicy#dropNewest()}.
+     *
+     * @param overflowPolicy the policy to apply when the buffer is full
+     * @return this builder
+     */
+    public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = Utils.verifyNonNull(overflowPolicy);
+      return this;
+    }
+
+    /**
+     * Optional. The max number of requests to the ingest API that may be waiting for a response at
+     * the same time, in each {@link #lane(TelemetryType, int) lane}. Defaults to 1, which sends one
+     * batch at a time per thread. With more than one, batches are sent without waiting for the
+     * previous response, so throughput isn't limited by the round trip time; this needs senders
+     * configured with an {@link com.newrelic.telemetry.http.AsyncHttpPoster} to have any effect.
+     *
+     * @param maxRequestsInFlight the max number of concurrent requests
+     * @return this builder
+     */
+    public Builder maxRequestsInFlight(int maxRequestsInFlight) {
+      if (maxRequestsInFlight <= 0) {
+        throw new IllegalArgumentException(
+            "maxRequestsInFlight must be positive: " + maxRequestsInFlight);
+      }
+      this.maxRequestsInFlight = maxRequestsInFlight;
+      return this;
+    }
+
+    /**
+     * Optional. Sends one type of telemetry on its own lane, with its own threads, so that it is
+     * neither held back by nor holds back the other types. The lane has its own max number of
+     * buffered telemetry and, if more than one is allowed, its own max number of requests in
+     * flight, both configured as for the whole client. Types without a lane of their own share a
+     * single thread.
+     *
+     * @param type the type of telemetry
+     * @param threads the number of threads to serialize and send this type with
+     * @return this builder
+     */
+    public Builder lane(TelemetryType type, int threads) {
+      Utils.verifyNonNull(type);
+      if (threads <= 0) {
+        throw new IllegalArgumentException("threads must be positive: " + threads);
+      }
+      laneThreads.put(type, threads);
+      return this;
+    }
+
+    /**
+     * Optional. On Java 21 and later, sends each batch on its own virtual thread, so that a
+     * blocking {@link HttpPoster} doesn't tie up a platform thread and many batches can be in
+     * flight at once. The number of batches being sent is then only bounded by the max number of
+     * buffered telemetry. Lane thread counts are ignored. On earlier versions of Java, this setting
+     * is ignored with a warning. Defaults to false.
+     *
+     * @param useVirtualThreads whether to send on virtual threads
+     * @return this builder
+     */
+    public Builder useVirtualThreads(boolean useVirtualThreads) {
+      this.useVirtualThreads = useVirtualThreads;
+      return this;
+    }
+
+    /**
+     * Optional. The steady-state max number of requests per second sent to each ingest endpoint,
+     * with bursts of up to one second's worth. Batches over the limit wait their turn. Defaults to
+     * 0, for no limit.
+     *
+     * <p>Whether or not there is a limit, a 429 response with a Retry-After from an endpoint pauses
+     * every pending batch for that endpoint, not just the rejected one.
+     *
+     * @param maxRequestsPerSecond the max number of requests per second per endpoint
+     * @return this builder
+     */
+    public Builder maxRequestsPerSecond(double maxRequestsPerSecond) {
+      if (!(maxRequestsPerSecond >= 0)) {
+        throw new IllegalArgumentException(
+            "maxRequestsPerSecond cannot be negative: " + maxRequestsPerSecond);
+      }
+      this.maxRequestsPerSecond = maxRequestsPerSecond;
+      return this;
+    }
+
+    /**
+     * Optional. The steady-state max number of compressed payload bytes per second sent to each
+     * ingest endpoint, with bursts of up to one second's worth. Defaults to 0, for no limit.
+     *
+     * @param maxBytesPerSecond the max number of bytes per second per endpoint
+     * @return this builder
+     */
+    public Builder maxBytesPerSecond(long maxBytesPerSecond) {
+      if (maxBytesPerSecond < 0) {
+        throw new IllegalArgumentException(
+            "maxBytesPerSecond cannot be negative: " + maxBytesPerSecond);
+      }
+      this.maxBytesPerSecond = maxBytesPerSecond;
+      return this;
+    }
+
+    /**
+     * Optional. Creates the {@link Backoff} that decides when, and how many times, a batch is
+     * retried after a failure that calls for backing off. Called once for each batch, since a
+     * backoff tracks the retries of a single batch. Defaults to {@link Backoff#defaultBackoff()}.
+     *
+     * <p>When many processes send to New Relic, consider a jittered {@link BackoffStrategy}, so
+     * that their retries don't all arrive at the same time after an outage. For example:
+     *
+     * <pre>{@code
+     * builder.backoff(
+     *     () -> Backoff.builder()
+     *         .maxBackoff(15, TimeUnit.SECONDS)
+     *         .backoffFactor(1, TimeUnit.SECONDS)
+     *         .maxRetries(10)
+     *         .strategy(BackoffStrategy.fullJitter())
+     *         .build());
+     * }</pre>
+     *
+     * @param backoffFactory creates a new backoff for each batch
+     * @return this builder
+     */
+    public Builder backoff(Supplier<Backoff> backoffFactory) {
+      this.backoffFactory = Utils.verifyNonNull(backoffFactory);
+      return this;
+    }
+
+    /**
+     * Optional. Limits retries, across every type of telemetry, to a fraction of the batches sent
+     * over a sliding window, so that retries can't swamp the ingest API during an outage. On top
+     * of the fraction, 10 retries per window are always allowed. Once the budget is exhausted,
+     * batches that fail are dropped instead of retried, and counted by {@link
+     * TelemetryClient#getRetriesDeniedCount()}. By default, retries are only limited per batch, by
+     * its {@link #backoff(Supplier) backoff}.
+     *
+     * @param retryRatio the max number of retries per batch sent, for example 0.2
+     * @param window the length of the sliding window
+     * @param unit the unit of the window
+     * @return this builder
+     */
+    public Builder retryBudget(double retryRatio, long window, TimeUnit unit) {
+      if (!(retryRatio >= 0)) {
+        throw new IllegalArgumentException("retryRatio cannot be negative: " + retryRatio);
+      }
+      if (window <= 0) {
+        throw new IllegalArgumentException("window must be positive: " + window);
+      }
+      this.retryBudgetRatio = retryRatio;
+      this.retryBudgetWindowNanos = unit.toNanos(window);
+      return this;
+    }
+
+    /**
+     * Optional. Keeps batches on disk, rather than dropping them, when the client is over its max
+     * number of buffered telemetry or a batch has used up its retries or the retry budget. Spilled
+     * batches are replayed, oldest first, once the last send to their endpoint succeeded and the
+     * client has buffer to spare, including batches spilled before a restart. While sends to an
+     * endpoint fail, a single spilled batch is sent to it every 30 seconds, so that replaying
+     * resumes once it recovers even if no new telemetry is sent to it. Spilled batches of a type of
+     * telemetry that the client has no sender for are dropped. Spilled telemetry
+     * that was over the max is still counted by {@link TelemetryClient#getDroppedCount}, since it
+     * was dropped from memory. By default, such batches are dropped.
+     *
+     * <p>A batch that is spilled before it was ever sent is encoded on the thread that sent it.
+     * The queue is not closed by the client; close it after {@link TelemetryClient#shutdown()}.
+     *
+     * @param spillQueue the queue to spill to
+     * @return this builder
+     */
+    public Builder spillQueue(DiskSpillQueue spillQueue) {
+      this.spillQueue = spillQueue;
+      return this;
+    }
+
+    Builder spillProbeInterval(long interval, TimeUnit unit) {
+      this.spillProbeIntervalMs = unit.toMillis(interval);
+      return this;
+    }
+
+    /**
+     * Builds the new TelemetryClient instance
+     *
+     * @return a newly created instance of TelemetryClient configured with data from this builder
+     */
+    public TelemetryClient build() {
+      return new TelemetryClient(this);
+    }
+  }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import com.newrelic.telemetry.events.EventBatch;
+import com.newrelic.telemetry.logs.LogBatch;
+import com.newrelic.telemetry.metrics.MetricBatch;
+import com.newrelic.telemetry.spans.SpanBatch;
+
+/** The kinds of telemetry that can be sent to New Relic, each of which has its own ingest API. */
+public enum TelemetryType {
+  METRIC,
+  SPAN,
+  EVENT,
+  LOG;
+
+  /**
+   * @param batch A batch of telemetry.
+   * @return The type of the telemetry in the batch, or null if it isn't one of the known types.
+   */
+  public static TelemetryType of(TelemetryBatch<?> batch) {
+    if (batch instanceof MetricBatch) {
+      return METRIC;
+    }
+    if (batch instanceof SpanBatch) {
+      return SPAN;
+    }
+    if (batch instanceof EventBatch) {
+      return EVENT;
+    }
+    if (batch instanceof LogBatch) {
+      return LOG;
+    }
+    return null;
+  }
+}
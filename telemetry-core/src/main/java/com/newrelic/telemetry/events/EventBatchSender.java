@@ -8,15 +8,19 @@ package com.newrelic.telemetry.events;
 import com.newrelic.telemetry.BaseConfig;
 import com.newrelic.telemetry.EventBatchSenderFactory;
 import com.newrelic.telemetry.Response;
-import com.newrelic.telemetry.SenderConfiguration;
 import com.newrelic.telemetry.SenderConfiguration.SenderConfigurationBuilder;
+import com.newrelic.telemetry.SenderConfiguration;
 import com.newrelic.telemetry.events.json.EventBatchMarshaller;
 import com.newrelic.telemetry.exceptions.ResponseException;
+import com.newrelic.telemetry.http.AsyncHttpPoster;
 import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.transport.BatchDataSender;
+import com.newrelic.telemetry.transport.EncodedPayload;
+import com.newrelic.telemetry.transport.JsonPayloadWriter;
 import com.newrelic.telemetry.util.Utils;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,16 +52,56 @@ public class EventBatchSender {
    *     hierarchy for details on the recommended ways to respond to those exceptions.
    */
   public Response sendBatch(EventBatch batch) throws ResponseException {
-    if (batch == null || batch.size() == 0) {
+    if (batch == null || (batch.size() == 0 && batch.getEncodedPayload() == null)) {
       logger.debug("Skipped sending of an empty event batch.");
       return EMPTY_BATCH_RESPONSE;
     }
     logger.debug(
         "Sending an event batch (number of events: {}) to the New Relic event ingest endpoint)",
         batch.size());
-    String json = marshaller.toJson(batch);
+    return sender.send(payloadWriter(batch), batch);
+  }
+
+  /**
+   * Send a batch of events to New Relic without blocking the calling thread. This only avoids
+   * blocking when the configured {@link HttpPoster} is an {@link AsyncHttpPoster}; with any other
+   * poster, the batch is sent before this method returns.
+   *
+   * @param batch The batch to send.
+   * @return The future response from the ingest API. In cases where the batch is unable to be
+   *     successfully sent, the future completes exceptionally with one of the subclasses of {@link
+   *     ResponseException}.
+   */
+  public CompletableFuture<Response> sendBatchAsync(EventBatch batch) {
+    if (batch == null || (batch.size() == 0 && batch.getEncodedPayload() == null)) {
+      return CompletableFuture.completedFuture(new Response(202, "Ignored", "Empty batch"));
+    }
+    return sender.sendAsync(payloadWriter(batch), batch);
+  }
+
+  /**
+   * Marshalls and compresses a batch of events without sending it, for example to keep it on disk
+   * until it can be sent. A batch with no events but an encoded payload is sent as that payload.
+   *
+   * @param batch The batch to encode.
+   * @return The compressed payload, ready to be sent.
+   * @throws ResponseException If the json could not be written.
+   */
+  public EncodedPayload encode(EventBatch batch) throws ResponseException {
+    return sender.encode(payloadWriter(batch), batch);
+  }
+
+  /**
+   * @return The largest compressed payload this sender sends, or 0 for no limit. Larger payloads
+   *     fail with a {@link com.newrelic.telemetry.exceptions.RetryWithSplitException}.
+   */
+  public int getMaxPayloadBytes() {
+    return sender.getMaxPayloadBytes();
+  }
 
-    return sender.send(json, batch);
+  private JsonPayloadWriter payloadWriter(EventBatch batch) {
+    return JsonPayloadWriter.of(
+        out -> marshaller.writeJson(batch, out), out -> marshaller.writeUtf8Json(batch, out));
   }
 
   /**
@@ -97,16 +141,9 @@ public class EventBatchSender {
       }
     }
 
-    EventBatchMarshaller marshaller = new EventBatchMarshaller();
+    EventBatchMarshaller marshaller = new EventBatchMarshaller(configuration.getJsonEncoder());
 
-    BatchDataSender sender =
-        new BatchDataSender(
-            configuration.getHttpPoster(),
-            configuration.getApiKey(),
-            url,
-            configuration.isAuditLoggingEnabled(),
-            configuration.getSecondaryUserAgent(),
-            configuration.useLicenseKey());
+    BatchDataSender sender = new BatchDataSender(configuration, url);
 
     return new EventBatchSender(marshaller, sender);
   }
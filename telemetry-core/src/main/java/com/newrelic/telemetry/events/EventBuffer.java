@@ -5,6 +5,8 @@
 package com.newrelic.telemetry.events;
 
 import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.OverflowPolicy;
+import com.newrelic.telemetry.util.BufferQueues;
 import com.newrelic.telemetry.util.IngestWarnings;
 import com.newrelic.telemetry.util.Utils;
 import java.util.*;
@@ -20,7 +22,7 @@ import org.slf4j.LoggerFactory;
  */
 public final class EventBuffer {
   private static final Logger logger = LoggerFactory.getLogger(EventBuffer.class);
-  private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+  private final Queue<Event> events;
   private final IngestWarnings ingestWarnings = new IngestWarnings();
   private final Attributes commonAttributes;
 
@@ -31,7 +33,12 @@ public final class EventBuffer {
    *     {@link Event} in this buffer.
    */
   public EventBuffer(Attributes commonAttributes) {
+    this(commonAttributes, new ConcurrentLinkedQueue<>());
+  }
+
+  private EventBuffer(Attributes commonAttributes, Queue<Event> events) {
     this.commonAttributes = Utils.verifyNonNull(commonAttributes);
+    this.events = events;
   }
 
   /**
@@ -40,14 +47,27 @@ public final class EventBuffer {
    * @param event The new {@link Event} instance to be sent.
    */
   public void addEvent(Event event) {
-    Map<String, Object> attributes = event.getAttributes().asMap();
-    ingestWarnings.raiseIngestWarnings(attributes, event);
-    events.add(event);
+    ingestWarnings.raiseIngestWarnings(event.getAttributes().view(), event);
+    if (!events.offer(event)) {
+      logger.debug("Event buffer is full, dropping event: {}", event);
+    }
+  }
+
+  /**
+   * Get the number of {@link Event Events} that have been discarded because this buffer was full.
+   * Only a bounded buffer (see {@link Builder#capacity(int)}) discards events.
+   *
+   * @return The number of discarded {@link Event Events}.
+   */
+  public long getDroppedCount() {
+    return BufferQueues.getDroppedCount(events);
   }
 
   /**
    * Get the size of the {@link Event Events} buffer.
    *
+   * <p>For a bounded buffer (see {@link Builder#capacity(int)}), this is a constant time operation.
+   *
    * @return Size of the {@link Event Events} buffer.
    */
   public int size() {
@@ -69,10 +89,7 @@ public final class EventBuffer {
     Collection<Event> eventsForBatch = new ArrayList<>(this.events.size());
 
     // Drain the Event buffer and return the batch
-    Event event;
-    while ((event = this.events.poll()) != null) {
-      eventsForBatch.add(event);
-    }
+    BufferQueues.drainTo(this.events, eventsForBatch);
 
     return new EventBatch(eventsForBatch, this.commonAttributes);
   }
@@ -110,4 +127,85 @@ public final class EventBuffer {
     result = 31 * result + (getCommonAttributes() != null ? getCommonAttributes().hashCode() : 0);
     return result;
   }
+
+  /**
+   * Returns a new Builder instance for help with creating new EventBuffer instances
+   *
+   * @return a new instance of EventBuffer.Builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private Attributes attributes = new Attributes();
+    private int capacity = 0;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.dropNewest();
+    private boolean striped = false;
+
+    /**
+     * Provides the common attributes that will be applied (by the New Relic backend) to all
+     * buffered events.
+     *
+     * @param attributes - common attributes to be applied to all events within this buffer
+     * @return this builder
+     */
+    public Builder attributes(Attributes attributes) {
+      this.attributes = Utils.verifyNonNull(attributes);
+      return this;
+    }
+
+    /**
+     * Optional. Bounds the number of events the buffer holds between batches. A bounded buffer
+     * stores events in a pre-allocated ring, so its memory use is fixed and adding an event doesn't
+     * allocate; what happens to events added while it is full is decided by the {@link
+     * #overflowPolicy(OverflowPolicy) overflow policy}. By default, the buffer is unbounded.
+     *
+     * @param capacity the maximum number of buffered events, or 0 for an unbounded buffer
+     * @return this builder
+     */
+    public Builder capacity(int capacity) {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Optional. Decides what happens to events added to a bounded buffer while it is full. Defaults
+     * to {@link OverflowPolicy#dropNewest()}. Has no effect on an unbounded buffer.
+     *
+     * @param overflowPolicy the policy to apply when the buffer is full
+     * @return this builder
+     */
+    public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = Utils.verifyNonNull(overflowPolicy);
+      return this;
+    }
+
+    /**
+     * Optional. When enabled, each thread adds to its own stripe of the buffer rather than all
+     * threads contending on a single queue, and the stripes are merged when a batch is created.
+     * This helps when many threads add events concurrently. Events added by different threads are
+     * no longer batched in the order they were added. A bounded buffer divides its capacity
+     * between the stripes, and applies its overflow policy per stripe. Defaults to false.
+     *
+     * @param striped true to stripe the buffer by thread
+     * @return this builder
+     */
+    public Builder striped(boolean striped) {
+      this.striped = striped;
+      return this;
+    }
+
+    /**
+     * Builds the new EventBuffer instance
+     *
+     * @return a newly created instance of EventBuffer configured with data from this builder
+     */
+    public EventBuffer build() {
+      return new EventBuffer(attributes, BufferQueues.create(capacity, overflowPolicy, striped));
+    }
+  }
 }
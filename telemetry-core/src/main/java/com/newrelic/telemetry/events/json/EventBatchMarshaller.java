@@ -6,76 +6,160 @@
 package com.newrelic.telemetry.events.json;
 
 import com.google.gson.stream.JsonWriter;
+import com.newrelic.telemetry.AttributesView;
 import com.newrelic.telemetry.events.Event;
 import com.newrelic.telemetry.events.EventBatch;
+import com.newrelic.telemetry.json.JsonEncoder;
+import com.newrelic.telemetry.json.Utf8JsonWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
-import java.util.Map;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class EventBatchMarshaller {
 
   private static final Logger logger = LoggerFactory.getLogger(EventBatchMarshaller.class);
+  private final JsonEncoder encoder;
+
+  public EventBatchMarshaller() {
+    this(JsonEncoder.GSON);
+  }
+
+  /**
+   * @param encoder how to encode the json written by {@link #writeUtf8Json(EventBatch,
+   *     OutputStream)}
+   */
+  public EventBatchMarshaller(JsonEncoder encoder) {
+    this.encoder = encoder;
+  }
 
   public String toJson(EventBatch batch) {
+    StringWriter out = new StringWriter();
+    try {
+      writeJson(batch, out);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to marshall json for an event batch", e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Streams the json for an event batch to the provided writer, one event at a time.
+   *
+   * @param batch the batch to marshall
+   * @param out the stream to write the json to
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeJson(EventBatch batch, Writer out) throws IOException {
     logger.debug("Generating json for event batch.");
 
-    Function<Event, Event> decorator = Function.identity();
-    if (batch.hasCommonAttributes()) {
-      decorator =
-          event -> {
-            Event out = new Event(event);
-            out.getAttributes().putAll(batch.getCommonAttributes());
-            return out;
-          };
+    Function<Event, Event> decorator = decorator(batch);
+    out.write("[");
+    boolean first = true;
+    for (Event event : batch.getTelemetry()) {
+      if (!first) {
+        out.write(",");
+      }
+      out.write(mapToJson(decorator.apply(event)));
+      first = false;
+    }
+    out.write("]");
+  }
+
+  /**
+   * Streams the json for an event batch to the provided stream, encoded as UTF-8 with the encoder
+   * this marshaller was built with.
+   *
+   * @param batch the batch to marshall
+   * @param out the stream to write the json to, which is not closed
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeUtf8Json(EventBatch batch, OutputStream out) throws IOException {
+    if (encoder != JsonEncoder.UTF8) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      writeJson(batch, writer);
+      writer.flush();
+      return;
+    }
+    logger.debug("Generating UTF-8 json for event batch.");
+    Function<Event, Event> decorator = decorator(batch);
+    Utf8JsonWriter jsonWriter = new Utf8JsonWriter(out);
+    jsonWriter.beginArray();
+    for (Event event : batch.getTelemetry()) {
+      writeEvent(decorator.apply(event), jsonWriter);
     }
+    jsonWriter.endArray();
+    jsonWriter.close();
+  }
 
-    StringBuilder builder = new StringBuilder();
-    builder.append("[");
-    builder.append(
-        batch.getTelemetry().stream()
-            .map(decorator)
-            .map(EventBatchMarshaller::mapToJson)
-            .collect(Collectors.joining(",")));
-    builder.append("]");
-    return builder.toString();
+  private static Function<Event, Event> decorator(EventBatch batch) {
+    if (!batch.hasCommonAttributes()) {
+      return Function.identity();
+    }
+    return event -> {
+      Event decorated = new Event(event);
+      decorated.getAttributes().putAll(batch.getCommonAttributes());
+      return decorated;
+    };
   }
 
   static String mapToJson(Event event) {
     try {
       StringWriter out = new StringWriter();
-      JsonWriter jsonWriter = new JsonWriter(out);
-      jsonWriter.beginObject();
+      writeEvent(event, new JsonWriter(out));
+      return out.toString();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to generate summary json", e);
+    }
+  }
+
+  private static void writeEvent(Event event, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginObject();
 
-      jsonWriter.name("eventType").value(event.getEventType());
-      jsonWriter.name("timestamp").value(event.getTimestamp());
+    jsonWriter.name("eventType").value(event.getEventType());
+    jsonWriter.name("timestamp").value(event.getTimestamp());
+
+    AttributesView attributes = event.getAttributes().view();
+    for (int i = 0; i < attributes.size(); i++) {
+      writeAttribute(attributes, i, jsonWriter);
+    }
 
-      for (Map.Entry<String, Object> entry : event.getAttributes().asMap().entrySet()) {
-        Object value = entry.getValue();
+    jsonWriter.endObject();
+  }
+
+  private static void writeAttribute(AttributesView attributes, int index, JsonWriter jsonWriter)
+      throws IOException {
+    String key = attributes.keyAt(index);
+    switch (attributes.typeAt(index)) {
+      case LONG:
+        jsonWriter.name(key).value(attributes.longAt(index));
+        break;
+      case DOUBLE:
+        jsonWriter.name(key).value(attributes.doubleAt(index));
+        break;
+      case BOOLEAN:
+        jsonWriter.name(key).value(attributes.booleanAt(index));
+        break;
+      default:
+        Object value = attributes.valueAt(index);
         if (value instanceof String) {
           String sValue = (String) value;
-          jsonWriter.name(entry.getKey()).value(sValue);
+          jsonWriter.name(key).value(sValue);
         } else if (value instanceof Number) {
           Number nValue = (Number) value;
-          jsonWriter.name(entry.getKey()).value(nValue);
-        } else if (value instanceof Boolean) {
-          Boolean bValue = (Boolean) value;
-          jsonWriter.name(entry.getKey()).value(bValue);
+          jsonWriter.name(key).value(nValue);
         } else {
           throw new RuntimeException(
               String.format(
                   "Failed to generate json type %s encountered with value %s",
                   value.getClass(), value));
         }
-      }
-
-      jsonWriter.endObject();
-      return out.toString();
-    } catch (IOException e) {
-      throw new RuntimeException("Failed to generate summary json", e);
     }
   }
 }
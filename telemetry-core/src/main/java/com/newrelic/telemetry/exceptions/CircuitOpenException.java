@@ -0,0 +1,21 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.exceptions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This exception is thrown, without contacting the ingest API, when the circuit breaker for its
+ * endpoint is open because the endpoint keeps failing. The request should be tried again after the
+ * wait time, when the breaker lets a probe through.
+ *
+ * @see com.newrelic.telemetry.transport.CircuitBreaker
+ */
+public class CircuitOpenException extends RetryWithRequestedWaitException {
+
+  public CircuitOpenException(int waitTime, TimeUnit timeUnit) {
+    super(waitTime, timeUnit);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An {@link HttpPoster} that can also post without blocking the calling thread, so that several
+ * requests can be in flight at once. Senders use {@link #postAsync} when the configured poster
+ * implements this interface.
+ */
+public interface AsyncHttpPoster extends HttpPoster {
+
+  /**
+   * Post data to the provided URL, without waiting for the response.
+   *
+   * @param url http url to be reached
+   * @param headers headers to be sent
+   * @param body body to be sent
+   * @param mediaType media type definition
+   * @return a future http response from the POST request, completed exceptionally with an {@link
+   *     IOException} in case of http request error
+   */
+  CompletableFuture<HttpResponse> postAsync(
+      URL url, Map<String, String> headers, byte[] body, String mediaType);
+
+  /** Post data to the provided URL, and wait for the response of {@link #postAsync}. */
+  @Override
+  default HttpResponse post(URL url, Map<String, String> headers, byte[] body, String mediaType)
+      throws IOException {
+    try {
+      return postAsync(url, headers, body, mediaType).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+}
@@ -5,50 +5,146 @@
 package com.newrelic.telemetry.json;
 
 import com.google.gson.stream.JsonWriter;
+import com.newrelic.telemetry.AttributesView;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
 public class AttributesJson {
 
+  /**
+   * Encodes the attributes as a json object. The encoding of an {@link AttributesView} is cached
+   * on the view, so encoding the same view again is free.
+   *
+   * @param attributes the attributes to encode
+   * @return the json
+   */
   public String toJson(Map<String, Object> attributes) {
-    StringWriter out = new StringWriter();
-    Map<String, Object> filteredAttributes = filterIllegalValues(attributes);
-    if (filteredAttributes.isEmpty()) {
-      return "{}";
+    if (attributes instanceof AttributesView) {
+      return ((AttributesView) attributes).toJson(this::encode);
+    }
+    return encode(attributes);
+  }
+
+  /**
+   * Writes the attributes, as encoded by {@link #toJson(Map)}, as a value in an enclosing document.
+   * When the writer is a {@link Utf8JsonWriter}, the UTF-8 encoding cached on an {@link
+   * AttributesView} is copied in, rather than transcoding the json again for every payload.
+   *
+   * @param attributes the attributes to write
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public final void writeJsonValue(Map<String, Object> attributes, JsonWriter jsonWriter)
+      throws IOException {
+    if (jsonWriter instanceof Utf8JsonWriter && attributes instanceof AttributesView) {
+      ((Utf8JsonWriter) jsonWriter)
+          .jsonValue(((AttributesView) attributes).toUtf8Json(this::encode));
+      return;
     }
+    jsonWriter.jsonValue(toJson(attributes));
+  }
+
+  private String encode(Map<String, Object> attributes) {
+    StringWriter out = new StringWriter();
     try {
-      JsonWriter jsonWriter = new JsonWriter(out);
-      jsonWriter.beginObject();
-
-      for (Map.Entry<String, Object> attribute : filteredAttributes.entrySet()) {
-        Object value = attribute.getValue();
-
-        if (value instanceof Boolean) {
-          jsonWriter.name(attribute.getKey()).value((boolean) value);
-        } else if (value instanceof Number) {
-          Number num = (Number) value;
-          jsonWriter.name(attribute.getKey()).value(num);
-        } else {
-          jsonWriter.name(attribute.getKey()).value(String.valueOf(value));
-        }
-      }
-      jsonWriter.endObject();
+      writeJson(attributes, new JsonWriter(out));
     } catch (IOException e) {
       throw new RuntimeException("Failed to generate attributes json");
     }
     return out.toString();
   }
 
-  private Map<String, Object> filterIllegalValues(Map<String, Object> attributes) {
-    return attributes.entrySet().stream()
-        .filter(entry -> entry.getValue() != null)
-        .filter(
-            entry ->
-                !(entry.getValue() instanceof Number)
-                    || (Double.isFinite(((Number) entry.getValue()).doubleValue())))
-        .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+  /**
+   * Writes the attributes as a json object, directly into an enclosing document. Values that can't
+   * be represented in json (nulls, and non-finite numbers) are skipped.
+   *
+   * @param attributes the attributes to write
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeJson(Map<String, Object> attributes, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginObject();
+    writeAttributes(attributes, jsonWriter);
+    jsonWriter.endObject();
+  }
+
+  /**
+   * Writes the attributes as members of a json object that the caller has begun, so that more
+   * members can be added. An {@link AttributesView} is read in place, without allocating entries
+   * or boxing its primitive values.
+   *
+   * @param attributes the attributes to write
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeAttributes(Map<String, Object> attributes, JsonWriter jsonWriter)
+      throws IOException {
+    if (attributes instanceof AttributesView) {
+      AttributesView view = (AttributesView) attributes;
+      for (int i = 0; i < view.size(); i++) {
+        writeAttribute(view, i, jsonWriter);
+      }
+      return;
+    }
+    for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+      writeAttribute(attribute.getKey(), attribute.getValue(), jsonWriter);
+    }
+  }
+
+  /**
+   * Writes a single attribute as a member of a json object, unless its value can't be represented
+   * in json.
+   *
+   * @param key the name of the attribute
+   * @param value the value of the attribute
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeAttribute(String key, Object value, JsonWriter jsonWriter) throws IOException {
+    if (!isLegalValue(value)) {
+      return;
+    }
+    if (value instanceof Boolean) {
+      jsonWriter.name(key).value((boolean) value);
+    } else if (value instanceof Number) {
+      jsonWriter.name(key).value((Number) value);
+    } else {
+      jsonWriter.name(key).value(String.valueOf(value));
+    }
+  }
+
+  /**
+   * Writes the attribute at an index of a view as a member of a json object, unless its value
+   * can't be represented in json. Primitive values are written without boxing them.
+   *
+   * @param view the attributes
+   * @param index the index of the attribute to write
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeAttribute(AttributesView view, int index, JsonWriter jsonWriter)
+      throws IOException {
+    switch (view.typeAt(index)) {
+      case LONG:
+        jsonWriter.name(view.keyAt(index)).value(view.longAt(index));
+        break;
+      case DOUBLE:
+        double value = view.doubleAt(index);
+        if (Double.isFinite(value)) {
+          jsonWriter.name(view.keyAt(index)).value(value);
+        }
+        break;
+      case BOOLEAN:
+        jsonWriter.name(view.keyAt(index)).value(view.booleanAt(index));
+        break;
+      default:
+        writeAttribute(view.keyAt(index), view.valueAt(index), jsonWriter);
+    }
+  }
+
+  private static boolean isLegalValue(Object value) {
+    return value != null
+        && (!(value instanceof Number) || Double.isFinite(((Number) value).doubleValue()));
   }
 }
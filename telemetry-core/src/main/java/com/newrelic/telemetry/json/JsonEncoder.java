@@ -0,0 +1,16 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.json;
+
+/** How the marshallers encode the json payloads sent to the ingest APIs. */
+public enum JsonEncoder {
+  /** With gson's {@link com.google.gson.stream.JsonWriter}, then a UTF-8 charset encoder. */
+  GSON,
+  /**
+   * With {@link Utf8JsonWriter}, which writes the same bytes straight to the payload, with less
+   * copying and fewer allocations.
+   */
+  UTF8
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.json;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A {@link JsonWriter} that encodes json straight to UTF-8 bytes, for the ingest payloads written
+ * by the marshallers when they are built with {@link JsonEncoder#UTF8}. The bytes are identical to
+ * those of a gson {@link JsonWriter}, with its default settings, over a UTF-8 {@link
+ * java.io.OutputStreamWriter}.
+ *
+ * <p>Compared to that, this writer:
+ *
+ * <ul>
+ *   <li>collects the bytes in a buffer, flushed to the stream whenever it fills up, instead of
+ *       going through a char buffer and a charset encoder. The buffer is kept for the next writer
+ *       on the same thread once this one is {@link #close() closed}, so a thread that marshals
+ *       payload after payload allocates it once,
+ *   <li>writes the names used by the ingest payloads, like {@code "timestamp"}, from pre-escaped
+ *       bytes,
+ *   <li>copies in json that is already encoded as UTF-8, such as the cached encoding of a set of
+ *       attributes, with {@link #jsonValue(byte[])},
+ *   <li>writes longs, and doubles below 10^7 with at most 6 decimal places, digit by digit,
+ *       without building a String, and
+ *   <li>only looks for characters to escape in strings that have some.
+ * </ul>
+ *
+ * <p>Other doubles are written with {@link Double#toString(double)}, as gson does. This writer
+ * doesn't have a shortest round-trip formatter of its own for them: before Java 19, {@link
+ * Double#toString(double)} doesn't always pick the shortest digits, so such a formatter would make
+ * payloads that differ from gson's. A double with at most 6 decimal places, below 10^7, has at most
+ * 13 significant digits, so it is the only decimal of its length that rounds to that double. Every
+ * Java version writes it with those digits, which is what this writer does.
+ *
+ * <p>Only the compact, non-lenient output of a default gson writer is supported: indentation, html
+ * escaping and leaving out null values can't be configured. This class is not thread-safe.
+ */
+public final class Utf8JsonWriter extends JsonWriter {
+
+  private static final Writer UNWRITABLE =
+      new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+          throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+          throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+          throw new AssertionError();
+        }
+      };
+
+  private static final int BUFFER_SIZE = 8192;
+  // Each thread's buffer, while no writer on the thread is using it.
+  private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+  // Doubles from 10^-3 to below 10^7 are written by Double.toString without an exponent.
+  private static final double PLAIN_DOUBLE_MIN = 1e-3;
+  private static final double PLAIN_DOUBLE_LIMIT = 1e7;
+  private static final int MAX_DECIMAL_PLACES = 6;
+  private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6};
+  private static final long[] LONG_POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+  private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+  // The escape sequence for each ascii character that has one, like gson's.
+  private static final byte[][] ESCAPES = new byte[128][];
+  // Escaped by gson, since javascript doesn't allow them in strings.
+  private static final char LINE_SEPARATOR = 0x2028;
+  private static final char PARAGRAPH_SEPARATOR = 0x2029;
+  private static final byte[] LINE_SEPARATOR_ESCAPE = ascii("\\u2028");
+  private static final byte[] PARAGRAPH_SEPARATOR_ESCAPE = ascii("\\u2029");
+  // The names written by the marshallers, pre-escaped and quoted. Looked up by identity, since
+  // they are all passed as literals.
+  private static final Map<String, byte[]> NAMES = new IdentityHashMap<>();
+
+  static {
+    for (int c = 0; c < 0x20; c++) {
+      ESCAPES[c] = ascii(String.format("\\u%04x", c));
+    }
+    ESCAPES['"'] = new byte[] {'\\', '"'};
+    ESCAPES['\\'] = new byte[] {'\\', '\\'};
+    ESCAPES['\t'] = new byte[] {'\\', 't'};
+    ESCAPES['\b'] = new byte[] {'\\', 'b'};
+    ESCAPES['\n'] = new byte[] {'\\', 'n'};
+    ESCAPES['\r'] = new byte[] {'\\', 'r'};
+    ESCAPES['\f'] = new byte[] {'\\', 'f'};
+    for (String name :
+        new String[] {
+          "attributes", "common", "count", "duration.ms", "error", "eventType", "id",
+          "interval.ms", "log.level", "logs", "max", "message", "metrics", "min", "name",
+          "parent.id", "service.name", "spans", "sum", "timestamp", "trace.id", "type", "value"
+        }) {
+      NAMES.put(name, ('"' + name + '"').getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private final OutputStream out;
+  // Null once the writer is closed.
+  private byte[] buffer;
+  private int position;
+
+  // Whether each open array or object has any elements yet, by depth. Depth 0 is the top level.
+  private boolean[] hasElements = new boolean[16];
+  private boolean[] isObject = new boolean[16];
+  private int depth;
+  private String deferredName;
+
+  /** @param out The stream to write to. It is not closed by {@link #close()}. */
+  public Utf8JsonWriter(OutputStream out) {
+    super(UNWRITABLE);
+    this.out = out;
+    byte[] pooled = BUFFERS.get();
+    if (pooled == null) {
+      this.buffer = new byte[BUFFER_SIZE];
+    } else {
+      // A writer opened while this one is in use gets a buffer of its own.
+      BUFFERS.remove();
+      this.buffer = pooled;
+    }
+  }
+
+  @Override
+  public JsonWriter beginArray() throws IOException {
+    return open(false, '[');
+  }
+
+  @Override
+  public JsonWriter endArray() throws IOException {
+    return close(false, ']');
+  }
+
+  @Override
+  public JsonWriter beginObject() throws IOException {
+    return open(true, '{');
+  }
+
+  @Override
+  public JsonWriter endObject() throws IOException {
+    return close(true, '}');
+  }
+
+  @Override
+  public JsonWriter name(String name) throws IOException {
+    if (name == null) {
+      throw new NullPointerException("name == null");
+    }
+    if (deferredName != null || depth == 0 || !isObject[depth]) {
+      throw new IllegalStateException("Nesting problem.");
+    }
+    deferredName = name;
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    writeString(value);
+    return this;
+  }
+
+  @Override
+  public JsonWriter jsonValue(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    writeUtf8(value);
+    return this;
+  }
+
+  /**
+   * Writes a value that is already encoded as json, in UTF-8, without transcoding it.
+   *
+   * @param utf8Json The json of the value. It must be as gson would write it.
+   * @return this writer
+   * @throws IOException if the stream fails
+   */
+  public JsonWriter jsonValue(byte[] utf8Json) throws IOException {
+    beforeValue();
+    writeBytes(utf8Json);
+    return this;
+  }
+
+  @Override
+  public JsonWriter nullValue() throws IOException {
+    beforeValue();
+    writeBytes(NULL);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(boolean value) throws IOException {
+    beforeValue();
+    writeBytes(value ? TRUE : FALSE);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(Boolean value) throws IOException {
+    return value == null ? nullValue() : value((boolean) value);
+  }
+
+  @Override
+  public JsonWriter value(double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+    }
+    beforeValue();
+    writeDouble(value);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(long value) throws IOException {
+    beforeValue();
+    writeLong(value);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(Number value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    if (value instanceof Long || value instanceof Integer) {
+      return value(value.longValue());
+    }
+    if (value instanceof Double) {
+      return value(value.doubleValue());
+    }
+    String string = value.toString();
+    if (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN")) {
+      throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+    }
+    beforeValue();
+    writeUtf8(string);
+    return this;
+  }
+
+  /** Writes any buffered bytes to the stream, and flushes it. */
+  @Override
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  /**
+   * Writes any buffered bytes to the stream, without closing it, and leaves the buffer to the next
+   * writer on this thread. The writer can't be used afterwards.
+   *
+   * @throws IOException if the stream fails, or the document is incomplete
+   */
+  @Override
+  public void close() throws IOException {
+    if (buffer == null) {
+      return;
+    }
+    try {
+      drain();
+    } finally {
+      BUFFERS.set(buffer);
+      buffer = null;
+    }
+    if (depth > 0) {
+      throw new IOException("Incomplete document");
+    }
+  }
+
+  private JsonWriter open(boolean object, char bracket) throws IOException {
+    beforeValue();
+    depth++;
+    if (depth == hasElements.length) {
+      hasElements = Arrays.copyOf(hasElements, depth * 2);
+      isObject = Arrays.copyOf(isObject, depth * 2);
+    }
+    hasElements[depth] = false;
+    isObject[depth] = object;
+    writeByte(bracket);
+    return this;
+  }
+
+  private JsonWriter close(boolean object, char bracket) throws IOException {
+    checkOpen();
+    if (depth == 0 || isObject[depth] != object) {
+      throw new IllegalStateException("Nesting problem.");
+    }
+    if (deferredName != null) {
+      throw new IllegalStateException("Dangling name: " + deferredName);
+    }
+    depth--;
+    writeByte(bracket);
+    return this;
+  }
+
+  private void beforeValue() throws IOException {
+    checkOpen();
+    if (depth == 0) {
+      if (hasElements[0]) {
+        throw new IllegalStateException("JSON must have only one top-level value.");
+      }
+    } else if (isObject[depth] != (deferredName != null)) {
+      throw new IllegalStateException("Nesting problem.");
+    } else if (hasElements[depth]) {
+      writeByte(',');
+    }
+    hasElements[depth] = true;
+    if (deferredName != null) {
+      byte[] name = NAMES.get(deferredName);
+      if (name != null) {
+        writeBytes(name);
+      } else {
+        writeString(deferredName);
+      }
+      writeByte(':');
+      deferredName = null;
+    }
+  }
+
+  private void writeString(String value) throws IOException {
+    writeByte('"');
+    int length = value.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      byte[] escape;
+      if (c < 128) {
+        escape = ESCAPES[c];
+      } else if (c == LINE_SEPARATOR) {
+        escape = LINE_SEPARATOR_ESCAPE;
+      } else if (c == PARAGRAPH_SEPARATOR) {
+        escape = PARAGRAPH_SEPARATOR_ESCAPE;
+      } else {
+        continue;
+      }
+      if (escape != null) {
+        writeUtf8(value, start, i);
+        writeBytes(escape);
+        start = i + 1;
+      }
+    }
+    writeUtf8(value, start, length);
+    writeByte('"');
+  }
+
+  private void writeUtf8(String value) throws IOException {
+    writeUtf8(value, 0, value.length());
+  }
+
+  /** Encodes chars as UTF-8, with a '?' for each unpaired surrogate, like OutputStreamWriter. */
+  private void writeUtf8(String value, int start, int end) throws IOException {
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        writeByte(c);
+      } else if (c < 0x800) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (0xc0 | (c >> 6));
+        buffer[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (!Character.isSurrogate(c)) {
+        ensureCapacity(3);
+        buffer[position++] = (byte) (0xe0 | (c >> 12));
+        buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < end
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        ensureCapacity(4);
+        buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+        buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        writeByte('?');
+      }
+    }
+  }
+
+  /** Writes a double exactly as {@link Double#toString(double)} does. */
+  private void writeDouble(double value) throws IOException {
+    double magnitude = Math.abs(value);
+    if (value == (long) value && magnitude < PLAIN_DOUBLE_LIMIT) {
+      // Whole numbers below 10^7, -0.0 aside, are written as the long, then ".0".
+      if (value == 0 && Double.doubleToRawLongBits(value) != 0) {
+        writeByte('-');
+      }
+      writeLong((long) value);
+      writeByte('.');
+      writeByte('0');
+      return;
+    }
+    if (magnitude >= PLAIN_DOUBLE_MIN && magnitude < PLAIN_DOUBLE_LIMIT) {
+      // Look for the fewest decimal places that round to the value, as Double.toString does.
+      for (int places = 1; places <= MAX_DECIMAL_PLACES; places++) {
+        double scaled = Math.rint(magnitude * POWERS_OF_TEN[places]);
+        if (scaled / POWERS_OF_TEN[places] == magnitude) {
+          writeDecimal(value < 0, (long) scaled, places);
+          return;
+        }
+      }
+    }
+    writeUtf8(Double.toString(value));
+  }
+
+  /** Writes unscaled / 10^places, with all the places. */
+  private void writeDecimal(boolean negative, long unscaled, int places) throws IOException {
+    if (negative) {
+      writeByte('-');
+    }
+    long power = LONG_POWERS_OF_TEN[places];
+    writeLong(unscaled / power);
+    writeByte('.');
+    ensureCapacity(places);
+    long fraction = unscaled % power;
+    for (int i = position + places - 1; i >= position; i--) {
+      buffer[i] = (byte) ('0' + fraction % 10);
+      fraction /= 10;
+    }
+    position += places;
+  }
+
+  private void writeLong(long value) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      writeUtf8(Long.toString(value));
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[position++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    int end = position + digits;
+    for (int i = end - 1; i >= position; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    position = end;
+  }
+
+  private void writeByte(int b) throws IOException {
+    if (position == buffer.length) {
+      drain();
+    }
+    buffer[position++] = (byte) b;
+  }
+
+  private void writeBytes(byte[] bytes) throws IOException {
+    if (bytes.length > buffer.length - position) {
+      drain();
+      if (bytes.length > buffer.length) {
+        out.write(bytes);
+        return;
+      }
+    }
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void checkOpen() {
+    if (buffer == null) {
+      throw new IllegalStateException("JsonWriter is closed.");
+    }
+  }
+
+  private void ensureCapacity(int bytes) throws IOException {
+    if (buffer.length - position < bytes) {
+      drain();
+    }
+  }
+
+  private static byte[] ascii(String string) {
+    return string.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private void drain() throws IOException {
+    if (position > 0) {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.logs;
+
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.OverflowPolicy;
+import com.newrelic.telemetry.metrics.CommonAttributesBuilder;
+import com.newrelic.telemetry.util.BufferQueues;
+import com.newrelic.telemetry.util.IngestWarnings;
+import com.newrelic.telemetry.util.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A buffer for collecting {@link Log Logs}.
+ *
+ * <p>One instance of this class can collect many {@link Log Logs}. To send them to the Logs
+ * API, call {@link #createBatch()} and then {@link LogBatchSender#sendBatch(LogBatch)}.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class LogBuffer {
+  private static final Logger logger = LoggerFactory.getLogger(LogBuffer.class);
+  private final Queue<Log> logs;
+  private final IngestWarnings ingestWarnings = new IngestWarnings();
+  private final Attributes commonAttributes;
+
+  /**
+   * Create a new buffer with the provided common set of attributes.
+   *
+   * @param commonAttributes These attributes will be appended (by the New Relic backend) to every
+   *     {@link Log} in this buffer.
+   */
+  public LogBuffer(Attributes commonAttributes) {
+    this(commonAttributes, new ConcurrentLinkedQueue<>());
+  }
+
+  private LogBuffer(Attributes commonAttributes, Queue<Log> logs) {
+    this.commonAttributes = Utils.verifyNonNull(commonAttributes);
+    this.logs = logs;
+  }
+
+  /**
+   * Append a {@link Log} to this buffer, to be sent in the next {@link LogBatch}.
+   *
+   * @param log The new {@link Log} instance to be sent.
+   */
+  public void addLog(Log log) {
+    Attributes attributes = log.getAttributes();
+    if (attributes != null) {
+      ingestWarnings.raiseIngestWarnings(attributes.view(), log);
+    }
+    if (!logs.offer(log)) {
+      logger.debug("Log buffer is full, dropping log: {}", log);
+    }
+  }
+
+  /**
+   * Get the number of {@link Log Logs} that have been discarded because this buffer was full.
+   * Only a bounded buffer (see {@link Builder#capacity(int)}) discards logs.
+   *
+   * @return The number of discarded {@link Log Logs}.
+   */
+  public long getDroppedCount() {
+    return BufferQueues.getDroppedCount(logs);
+  }
+
+  /**
+   * Get the size of the {@link Log Logs} buffer.
+   *
+   * <p>For a bounded buffer (see {@link Builder#capacity(int)}), this is a constant time operation.
+   *
+   * @return Size of the {@link Log Logs} buffer.
+   */
+  public int size() {
+    return logs.size();
+  }
+
+  /**
+   * Creates a new {@link LogBatch} from the contents of this buffer, then clears the contents of
+   * this buffer.
+   *
+   * <p>{@link Log Logs} added to this buffer by other threads during this method call will
+   * either be added to the {@link LogBatch} being created, or will be saved for the next {@link
+   * LogBatch}.
+   *
+   * @return A new {@link LogBatch} with an immutable collection of {@link Log Logs}.
+   */
+  public LogBatch createBatch() {
+    logger.debug("Creating Log batch.");
+    Collection<Log> logsForBatch = new ArrayList<>(this.logs.size());
+
+    // Drain the Log buffer and return the batch
+    BufferQueues.drainTo(this.logs, logsForBatch);
+
+    return new LogBatch(logsForBatch, this.commonAttributes);
+  }
+
+  Queue<Log> getLogs() {
+    return logs;
+  }
+
+  Attributes getCommonAttributes() {
+    return commonAttributes;
+  }
+
+  @Override
+  public String toString() {
+    return "LogBuffer{" + "logs=" + logs + ", commonAttributes=" + commonAttributes + '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    LogBuffer that = (LogBuffer) o;
+
+    if (getLogs() != null ? !getLogs().equals(that.getLogs()) : that.getLogs() != null)
+      return false;
+    return getCommonAttributes() != null
+        ? getCommonAttributes().equals(that.getCommonAttributes())
+        : that.getCommonAttributes() == null;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = getLogs() != null ? getLogs().hashCode() : 0;
+    result = 31 * result + (getCommonAttributes() != null ? getCommonAttributes().hashCode() : 0);
+    return result;
+  }
+
+  /**
+   * Returns a new Builder instance for help with creating new LogBuffer instances
+   *
+   * @return a new instance of LogBuffer.Builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private final CommonAttributesBuilder commonAttributesBuilder = new CommonAttributesBuilder();
+    private int capacity = 0;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.dropNewest();
+    private boolean striped = false;
+
+    /**
+     * Provides the common attributes that will be applied (by the New Relic backend) to all
+     * buffered logs.
+     *
+     * @param attributes - common attributes to be applied to all logs within this buffer
+     * @return this builder
+     */
+    public Builder attributes(Attributes attributes) {
+      commonAttributesBuilder.attributes(Utils.verifyNonNull(attributes));
+      return this;
+    }
+
+    /**
+     * Optional. Specify the name of the service that is creating the logs. The service name will
+     * be included in all common attributes as "service.name".
+     *
+     * @param serviceName - The name of the service
+     * @return this builder
+     */
+    public Builder serviceName(String serviceName) {
+      commonAttributesBuilder.serviceName(serviceName);
+      return this;
+    }
+
+    /**
+     * Optional. Specify the name of the instrumentation that provides the logs. This is generally
+     * not expected to be called by a user's manual instrumentation code. The instrumentation
+     * provider will be included in all common attributes as "instrumentation.provider".
+     *
+     * @param instrumentationProvider - The name of the instrumentation library
+     * @return this builder
+     */
+    public Builder instrumentationProvider(String instrumentationProvider) {
+      commonAttributesBuilder.instrumentationProvider(instrumentationProvider);
+      return this;
+    }
+
+    /**
+     * Optional. Bounds the number of logs the buffer holds between batches. A bounded buffer
+     * stores logs in a pre-allocated ring, so its memory use is fixed and adding a log doesn't
+     * allocate; what happens to logs added while it is full is decided by the {@link
+     * #overflowPolicy(OverflowPolicy) overflow policy}. By default, the buffer is unbounded.
+     *
+     * @param capacity the maximum number of buffered logs, or 0 for an unbounded buffer
+     * @return this builder
+     */
+    public Builder capacity(int capacity) {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Optional. Decides what happens to logs added to a bounded buffer while it is full. Defaults
+     * to {@link OverflowPolicy#dropNewest()}. Has no effect on an unbounded buffer.
+     *
+     * @param overflowPolicy the policy to apply when the buffer is full
+     * @return this builder
+     */
+    public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = Utils.verifyNonNull(overflowPolicy);
+      return this;
+    }
+
+    /**
+     * Optional. When enabled, each thread adds to its own stripe of the buffer rather than all
+     * threads contending on a single queue, and the stripes are merged when a batch is created.
+     * This helps when many threads add logs concurrently. Logs added by different threads are
+     * no longer batched in the order they were added. A bounded buffer divides its capacity
+     * between the stripes, and applies its overflow policy per stripe. Defaults to false.
+     *
+     * @param striped true to stripe the buffer by thread
+     * @return this builder
+     */
+    public Builder striped(boolean striped) {
+      this.striped = striped;
+      return this;
+    }
+
+    /**
+     * Builds the new LogBuffer instance
+     *
+     * @return a newly created instance of LogBuffer configured with data from this builder
+     */
+    public LogBuffer build() {
+      return new LogBuffer(
+          commonAttributesBuilder.build(), BufferQueues.create(capacity, overflowPolicy, striped));
+    }
+  }
+}
@@ -5,9 +5,16 @@
 package com.newrelic.telemetry.logs.json;
 
 import com.google.gson.stream.JsonWriter;
+import com.newrelic.telemetry.json.JsonEncoder;
+import com.newrelic.telemetry.json.Utf8JsonWriter;
 import com.newrelic.telemetry.logs.LogBatch;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,29 +23,77 @@ public class LogBatchMarshaller {
   private static final Logger logger = LoggerFactory.getLogger(LogBatchMarshaller.class);
   private final LogJsonCommonBlockWriter commonBlockWriter;
   private final LogJsonTelemetryBlockWriter telemetryBlockWriter;
+  private final JsonEncoder encoder;
 
   public LogBatchMarshaller(
       LogJsonCommonBlockWriter commonBlockWriter,
       LogJsonTelemetryBlockWriter telemetryBlockWriter) {
+    this(commonBlockWriter, telemetryBlockWriter, JsonEncoder.GSON);
+  }
+
+  /**
+   * @param commonBlockWriter writes the common block
+   * @param telemetryBlockWriter writes the logs
+   * @param encoder how to encode the json written by {@link #writeUtf8Json(LogBatch,
+   *     OutputStream)}
+   */
+  public LogBatchMarshaller(
+      LogJsonCommonBlockWriter commonBlockWriter,
+      LogJsonTelemetryBlockWriter telemetryBlockWriter,
+      JsonEncoder encoder) {
     this.commonBlockWriter = commonBlockWriter;
     this.telemetryBlockWriter = telemetryBlockWriter;
+    this.encoder = encoder;
   }
 
   public String toJson(LogBatch batch) {
-    logger.debug("Generating json for log batch.");
-
     StringWriter out = new StringWriter();
-    JsonWriter jsonWriter = new JsonWriter(out);
-
     try {
-      jsonWriter.beginArray().beginObject();
-      commonBlockWriter.appendCommonJson(batch, jsonWriter);
-      telemetryBlockWriter.appendTelemetryJson(batch, jsonWriter);
-      jsonWriter.endObject().endArray();
+      writeJson(batch, out);
     } catch (IOException e) {
       throw new RuntimeException("Failed to marshall json for a log batch");
     }
 
     return out.toString();
   }
+
+  /**
+   * Streams the json for a log batch to the provided writer.
+   *
+   * @param batch the batch to marshall
+   * @param out the stream to write the json to
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeJson(LogBatch batch, Writer out) throws IOException {
+    logger.debug("Generating json for log batch.");
+    write(batch, new JsonWriter(out));
+  }
+
+  /**
+   * Streams the json for a log batch to the provided stream, encoded as UTF-8 with the encoder
+   * this marshaller was built with.
+   *
+   * @param batch the batch to marshall
+   * @param out the stream to write the json to, which is not closed
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeUtf8Json(LogBatch batch, OutputStream out) throws IOException {
+    if (encoder != JsonEncoder.UTF8) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      writeJson(batch, writer);
+      writer.flush();
+      return;
+    }
+    logger.debug("Generating UTF-8 json for log batch.");
+    Utf8JsonWriter jsonWriter = new Utf8JsonWriter(out);
+    write(batch, jsonWriter);
+    jsonWriter.close();
+  }
+
+  private void write(LogBatch batch, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginArray().beginObject();
+    commonBlockWriter.appendCommonJson(batch, jsonWriter);
+    telemetryBlockWriter.appendTelemetryJson(batch, jsonWriter);
+    jsonWriter.endObject().endArray();
+  }
 }
@@ -25,7 +25,7 @@ public class LogJsonCommonBlockWriter {
       jsonWriter.name("common");
       jsonWriter.beginObject();
       jsonWriter.name("attributes");
-      jsonWriter.jsonValue(attributesJson.toJson(batch.getCommonAttributes().asMap()));
+      attributesJson.writeJsonValue(batch.getCommonAttributes().asMap(), jsonWriter);
       jsonWriter.endObject();
     } catch (IOException e) {
       throw new RuntimeException("Failed to create log common block json", e);
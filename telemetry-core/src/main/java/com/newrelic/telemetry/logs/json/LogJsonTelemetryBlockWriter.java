@@ -5,6 +5,7 @@
 package com.newrelic.telemetry.logs.json;
 
 import com.google.gson.stream.JsonWriter;
+import com.newrelic.telemetry.AttributesView;
 import com.newrelic.telemetry.json.AttributesJson;
 import com.newrelic.telemetry.logs.Log;
 import com.newrelic.telemetry.logs.LogBatch;
@@ -12,8 +13,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 public final class LogJsonTelemetryBlockWriter {
 
@@ -31,7 +30,8 @@ public final class LogJsonTelemetryBlockWriter {
       for (Log log : telemetry) {
         jsonWriter.beginObject();
         jsonWriter.name("timestamp").value(log.getTimestamp());
-        jsonWriter.name("attributes").jsonValue(attributesJson.toJson(enhanceAttributes(log)));
+        jsonWriter.name("attributes");
+        writeAttributes(log, jsonWriter);
         if (log.getMessage() != null) {
           jsonWriter.name("message").value(log.getMessage());
         }
@@ -43,21 +43,43 @@ public final class LogJsonTelemetryBlockWriter {
     }
   }
 
-  private Map<String, Object> enhanceAttributes(Log log) {
-    Map<String, Object> result = new HashMap<>(log.getAttributes().asMap());
-    result.putIfAbsent("service.name", log.getServiceName());
+  /**
+   * Writes the log's own attributes, then those derived from its fields, without merging them into
+   * a copy first. The service name only fills in for a missing one; the level and error details
+   * always win.
+   */
+  private void writeAttributes(Log log, JsonWriter jsonWriter) throws IOException {
+    AttributesView attributes = log.getAttributes().view();
+    Throwable throwable = log.getThrowable();
+    jsonWriter.beginObject();
+    for (int i = 0; i < attributes.size(); i++) {
+      String key = attributes.keyAt(i);
+      if (!isOverridden(key, log.getLevel() != null, throwable != null)) {
+        attributesJson.writeAttribute(attributes, i, jsonWriter);
+      }
+    }
+    if (attributes.get("service.name") == null) {
+      attributesJson.writeAttribute("service.name", log.getServiceName(), jsonWriter);
+    }
     if (log.getLevel() != null) {
-      result.put("log.level", log.getLevel());
+      attributesJson.writeAttribute("log.level", log.getLevel(), jsonWriter);
     }
-    Throwable throwable = log.getThrowable();
     if (throwable != null) {
       ByteArrayOutputStream bytes = new ByteArrayOutputStream();
       throwable.printStackTrace(new PrintStream(bytes));
-      result.put("error.message", throwable.getMessage());
-      result.put("error.class", throwable.getClass().getName());
-      result.put("error.stack", bytes.toString());
+      attributesJson.writeAttribute("error.message", throwable.getMessage(), jsonWriter);
+      attributesJson.writeAttribute("error.class", throwable.getClass().getName(), jsonWriter);
+      attributesJson.writeAttribute("error.stack", bytes.toString(), jsonWriter);
+    }
+    jsonWriter.endObject();
+  }
+
+  private static boolean isOverridden(String key, boolean hasLevel, boolean hasThrowable) {
+    if (hasLevel && "log.level".equals(key)) {
+      return true;
     }
-    return result;
+    return hasThrowable
+        && ("error.message".equals(key) || "error.class".equals(key) || "error.stack".equals(key));
   }
 
   @Override
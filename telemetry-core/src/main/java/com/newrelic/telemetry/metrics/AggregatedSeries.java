@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.metrics;
+
+import com.newrelic.telemetry.Attributes;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The in-place accumulator for a single metric series (a name plus a set of attributes) in an
+ * aggregating {@link MetricBuffer}.
+ *
+ * <p>Recordings are spread over a small number of lock-striped cells, keyed by the recording
+ * thread, so that threads recording into the same series rarely contend with each other. Each cell
+ * keeps count/sum/min/max, the latest value, and the covered interval; harvesting merges the cells
+ * and resets them.
+ */
+final class AggregatedSeries {
+
+  enum Kind {
+    COUNT,
+    GAUGE,
+    SUMMARY
+  }
+
+  private static final int STRIPES = stripeCount();
+
+  private final Kind kind;
+  private final String name;
+  private final Attributes attributes;
+  private final AtomicReferenceArray<Cell> cells = new AtomicReferenceArray<>(STRIPES);
+  // Whether anything has been recorded since the last harvest, counted in recordedSeries.
+  private final AtomicBoolean recorded = new AtomicBoolean();
+  private final AtomicInteger recordedSeries;
+  private volatile boolean retired;
+  private volatile boolean pinned;
+  // When the current interval began: the creation of this series, or its last harvest.
+  private volatile long intervalStartMs = System.currentTimeMillis();
+
+  /**
+   * @param recordedSeries Counts the series with recordings since their last harvest, shared by
+   *     every series of an aggregator.
+   */
+  AggregatedSeries(
+      Kind kind, String name, Map<String, Object> attributes, AtomicInteger recordedSeries) {
+    this.kind = kind;
+    this.name = name;
+    this.attributes = toAttributes(attributes);
+    this.recordedSeries = recordedSeries;
+  }
+
+  Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Mark this series as referenced by a bound instrument, so that it is kept even when idle.
+   *
+   * @return this series
+   */
+  AggregatedSeries pin() {
+    pinned = true;
+    return this;
+  }
+
+  boolean isPinned() {
+    return pinned;
+  }
+
+  boolean isRetired() {
+    return retired;
+  }
+
+  /**
+   * Merge a recording into this series.
+   *
+   * @return false if this series has been retired, and the recording must go to its replacement.
+   */
+  boolean record(
+      long count,
+      double sum,
+      double min,
+      double max,
+      double last,
+      long lastTimestamp,
+      long startMs,
+      long endMs) {
+    Cell cell = cellForCurrentThread();
+    synchronized (cell) {
+      if (retired) {
+        return false;
+      }
+      cell.merge(count, sum, min, max, last, lastTimestamp, startMs, endMs);
+      // Set under the cell's lock, so that once a harvest has taken this cell, the flag can only
+      // be set by recordings that the harvest didn't take.
+      if (!recorded.get() && recorded.compareAndSet(false, true)) {
+        recordedSeries.incrementAndGet();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Stop accepting recordings. Any recording that raced with retirement is still picked up by the
+   * next {@link #harvest(long)}; any recording after it is refused.
+   */
+  void retire() {
+    retired = true;
+  }
+
+  /**
+   * Collect and reset everything recorded since the last harvest.
+   *
+   * <p>A pinned series is recorded into by bound instruments, whose recordings are instants. Its
+   * counts and summaries therefore cover the whole interval since the last harvest, rather than
+   * the span from its first recording to its last, which is empty for a single recording.
+   *
+   * @param nowMs the time of this harvest
+   * @return the aggregated metric, or null if nothing has been recorded
+   */
+  Metric harvest(long nowMs) {
+    // Cleared first: a recording that sets it again may be taken by this harvest, which only
+    // counts the series until the next one.
+    clearRecorded();
+    Cell total = new Cell();
+    for (int i = 0; i < STRIPES; i++) {
+      Cell cell = cells.get(i);
+      if (cell == null) {
+        continue;
+      }
+      synchronized (cell) {
+        total.merge(cell);
+        cell.reset();
+      }
+    }
+    if (retired) {
+      // Nothing can be recorded after this, so nothing is left to count.
+      clearRecorded();
+    }
+    long startMs = total.startMs;
+    long endMs = total.endMs;
+    if (pinned) {
+      startMs = Math.min(startMs, intervalStartMs);
+      endMs = Math.max(endMs, nowMs);
+      intervalStartMs = nowMs;
+    }
+    if (total.count == 0) {
+      return null;
+    }
+    switch (kind) {
+      case COUNT:
+        return new Count(name, total.sum, startMs, endMs, attributes);
+      case GAUGE:
+        return new Gauge(name, total.last, total.lastTimestamp, attributes);
+      default:
+        return new Summary(
+            name,
+            (int) Math.min(total.count, Integer.MAX_VALUE),
+            total.sum,
+            total.min,
+            total.max,
+            startMs,
+            endMs,
+            attributes);
+    }
+  }
+
+  private void clearRecorded() {
+    if (recorded.getAndSet(false)) {
+      recordedSeries.decrementAndGet();
+    }
+  }
+
+  private Cell cellForCurrentThread() {
+    int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    Cell cell = cells.get(index);
+    if (cell == null) {
+      cells.compareAndSet(index, null, new Cell());
+      cell = cells.get(index);
+    }
+    return cell;
+  }
+
+  private static int stripeCount() {
+    int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+    return Integer.highestOneBit(Math.max(processors, 1) * 2 - 1);
+  }
+
+  private static Attributes toAttributes(Map<String, Object> attributes) {
+    Attributes result = new Attributes();
+    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+      Object value = entry.getValue();
+      if (value instanceof Number) {
+        result.put(entry.getKey(), (Number) value);
+      } else if (value instanceof Boolean) {
+        result.put(entry.getKey(), (boolean) value);
+      } else {
+        result.put(entry.getKey(), value == null ? null : String.valueOf(value));
+      }
+    }
+    return result;
+  }
+
+  /** One stripe of a series. All access is guarded by the cell's monitor. */
+  private static final class Cell {
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double last = Double.NaN;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private long startMs = Long.MAX_VALUE;
+    private long endMs = Long.MIN_VALUE;
+
+    void merge(
+        long count,
+        double sum,
+        double min,
+        double max,
+        double last,
+        long lastTimestamp,
+        long startMs,
+        long endMs) {
+      this.count += count;
+      this.sum += sum;
+      if (min < this.min) {
+        this.min = min;
+      }
+      if (max > this.max) {
+        this.max = max;
+      }
+      if (lastTimestamp >= this.lastTimestamp) {
+        this.last = last;
+        this.lastTimestamp = lastTimestamp;
+      }
+      if (startMs < this.startMs) {
+        this.startMs = startMs;
+      }
+      if (endMs > this.endMs) {
+        this.endMs = endMs;
+      }
+    }
+
+    void merge(Cell other) {
+      if (other.count == 0) {
+        return;
+      }
+      merge(
+          other.count,
+          other.sum,
+          other.min,
+          other.max,
+          other.last,
+          other.lastTimestamp,
+          other.startMs,
+          other.endMs);
+    }
+
+    void reset() {
+      count = 0;
+      sum = 0;
+      min = Double.POSITIVE_INFINITY;
+      max = Double.NEGATIVE_INFINITY;
+      last = Double.NaN;
+      lastTimestamp = Long.MIN_VALUE;
+      startMs = Long.MAX_VALUE;
+      endMs = Long.MIN_VALUE;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.metrics;
+
+/**
+ * A counter bound to a fixed name and set of attributes, obtained from {@link
+ * MetricBuffer#boundCounter(String, com.newrelic.telemetry.Attributes)}.
+ *
+ * <p>Recording through a bound counter doesn't allocate and doesn't look up the series, which makes
+ * it suitable for very hot code paths. Everything added during an interval is reported as a single
+ * {@link Count} in the next {@link MetricBatch} created by the buffer, covering the time since the
+ * previous batch.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class BoundCounter {
+
+  private final AggregatedSeries series;
+
+  BoundCounter(AggregatedSeries series) {
+    this.series = series;
+  }
+
+  /**
+   * Add to the counter. Non-finite amounts are ignored.
+   *
+   * @param amount The amount to add.
+   */
+  public void add(double amount) {
+    if (!Double.isFinite(amount)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    series.record(1, amount, amount, amount, amount, now, now, now);
+  }
+
+  /** Add one to the counter. */
+  public void increment() {
+    add(1);
+  }
+}
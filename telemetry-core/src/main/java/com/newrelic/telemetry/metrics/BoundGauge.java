@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.metrics;
+
+/**
+ * A gauge bound to a fixed name and set of attributes, obtained from {@link
+ * MetricBuffer#boundGauge(String, com.newrelic.telemetry.Attributes)}.
+ *
+ * <p>Recording through a bound gauge doesn't allocate and doesn't look up the series, which makes
+ * it suitable for very hot code paths. The latest value recorded during an interval is reported as
+ * a single {@link Gauge} in the next {@link MetricBatch} created by the buffer.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class BoundGauge {
+
+  private final AggregatedSeries series;
+
+  BoundGauge(AggregatedSeries series) {
+    this.series = series;
+  }
+
+  /**
+   * Record the current value of the gauge. Non-finite values are ignored.
+   *
+   * @param value The current value.
+   */
+  public void record(double value) {
+    if (!Double.isFinite(value)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    series.record(1, value, value, value, value, now, now, now);
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.metrics;
+
+/**
+ * A summary bound to a fixed name and set of attributes, obtained from {@link
+ * MetricBuffer#boundSummary(String, com.newrelic.telemetry.Attributes)}.
+ *
+ * <p>Recording through a bound summary doesn't allocate and doesn't look up the series, which makes
+ * it suitable for very hot code paths. The count, sum, min and max of the values recorded during an
+ * interval are reported as a single {@link Summary} in the next {@link MetricBatch} created by the
+ * buffer.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class BoundSummary {
+
+  private final AggregatedSeries series;
+
+  BoundSummary(AggregatedSeries series) {
+    this.series = series;
+  }
+
+  /**
+   * Record a single observation, such as the duration of a request. Non-finite values are ignored.
+   *
+   * @param value The observed value.
+   */
+  public void record(double value) {
+    if (!Double.isFinite(value)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    series.record(1, value, value, value, value, now, now, now);
+  }
+}
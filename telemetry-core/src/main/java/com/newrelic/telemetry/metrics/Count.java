@@ -5,6 +5,7 @@
 package com.newrelic.telemetry.metrics;
 
 import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.AttributesInterner;
 import com.newrelic.telemetry.util.Utils;
 import java.util.Map;
 
@@ -39,7 +40,7 @@ public final class Count implements Metric {
     this.value = value;
     this.startTimeMs = startTimeMs;
     this.endTimeMs = endTimeMs;
-    this.attributes = Utils.verifyNonNull(attributes).asMap();
+    this.attributes = AttributesInterner.shared().intern(Utils.verifyNonNull(attributes));
   }
 
   /** @return The name for this Count metric. */
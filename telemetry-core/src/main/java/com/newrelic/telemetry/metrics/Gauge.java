@@ -5,6 +5,7 @@
 package com.newrelic.telemetry.metrics;
 
 import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.AttributesInterner;
 import com.newrelic.telemetry.util.Utils;
 import java.util.Map;
 
@@ -33,7 +34,7 @@ public final class Gauge implements Metric {
     this.name = Utils.verifyNonNull(name);
     this.value = value;
     this.timestamp = timestamp;
-    this.attributes = Utils.verifyNonNull(attributes).asMap();
+    this.attributes = AttributesInterner.shared().intern(Utils.verifyNonNull(attributes));
   }
 
   /** @return The value of this Gauge, recorded at the point in time. */
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.metrics;
+
+import com.newrelic.telemetry.metrics.AggregatedSeries.Kind;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates metrics in place, keyed by metric type, name and attributes, so that the memory held
+ * by an aggregating {@link MetricBuffer} grows with the number of distinct series rather than the
+ * number of recordings.
+ *
+ * <p>Counts are summed, gauges keep the most recent value, and summaries merge their
+ * count/sum/min/max. Each harvest emits at most one metric per series. A series that received no
+ * recordings for a whole interval is dropped, so that short-lived series don't accumulate, unless
+ * it has been pinned by a bound instrument.
+ *
+ * <p>This class is thread-safe.
+ */
+final class MetricAggregator {
+
+  private final Map<SeriesKey, AggregatedSeries> series = new ConcurrentHashMap<>();
+  private final AtomicInteger recordedSeries = new AtomicInteger();
+  private final Consumer<Metric> onNewSeries;
+
+  /**
+   * @param onNewSeries Called with the first metric recorded into each new series, so that
+   *     per-series validation only has to happen once.
+   */
+  MetricAggregator(Consumer<Metric> onNewSeries) {
+    this.onNewSeries = onNewSeries;
+  }
+
+  /**
+   * Merge a metric into its series. Metrics with non-finite values are ignored, since they would be
+   * dropped at send time anyway and would poison the aggregate.
+   */
+  void add(Metric metric) {
+    if (metric instanceof Count) {
+      Count count = (Count) metric;
+      double value = count.getValue();
+      if (!Double.isFinite(value)) {
+        return;
+      }
+      record(
+          new SeriesKey(Kind.COUNT, count.getName(), count.getAttributes()),
+          metric,
+          1,
+          value,
+          value,
+          value,
+          count.getEndTimeMs(),
+          count.getStartTimeMs(),
+          count.getEndTimeMs());
+    } else if (metric instanceof Gauge) {
+      Gauge gauge = (Gauge) metric;
+      double value = gauge.getValue();
+      if (!Double.isFinite(value)) {
+        return;
+      }
+      record(
+          new SeriesKey(Kind.GAUGE, gauge.getName(), gauge.getAttributes()),
+          metric,
+          1,
+          value,
+          value,
+          value,
+          gauge.getTimestamp(),
+          gauge.getTimestamp(),
+          gauge.getTimestamp());
+    } else if (metric instanceof Summary) {
+      Summary summary = (Summary) metric;
+      if (!Double.isFinite(summary.getSum())) {
+        return;
+      }
+      record(
+          new SeriesKey(Kind.SUMMARY, summary.getName(), summary.getAttributes()),
+          metric,
+          summary.getCount(),
+          summary.getSum(),
+          summary.getMin(),
+          summary.getMax(),
+          summary.getEndTimeMs(),
+          summary.getStartTimeMs(),
+          summary.getEndTimeMs());
+    } else {
+      throw new UnsupportedOperationException("Unknown metric type: " + metric.getClass());
+    }
+  }
+
+  /**
+   * Returns the series for the given key, creating it if needed, and pins it so that it is never
+   * retired. Pinned series can be recorded into directly, without going through the map.
+   *
+   * @param onCreated called if a new series had to be created
+   */
+  AggregatedSeries pinnedSeries(
+      Kind kind, String name, Map<String, Object> attributes, Runnable onCreated) {
+    SeriesKey key = new SeriesKey(kind, name, attributes);
+    AggregatedSeries existing = series.get(key);
+    if (existing != null && existing.isPinned()) {
+      return existing;
+    }
+    boolean[] created = new boolean[1];
+    AggregatedSeries result =
+        series.compute(
+            key,
+            (k, current) -> {
+              if (current == null || current.isRetired()) {
+                created[0] = true;
+                return new AggregatedSeries(kind, name, attributes, recordedSeries).pin();
+              }
+              return current.pin();
+            });
+    if (created[0]) {
+      onCreated.run();
+    }
+    return result;
+  }
+
+  /**
+   * Harvest every series into the given collection, resetting them for the next interval.
+   *
+   * @param metrics receives one metric for each series recorded into since the last harvest
+   */
+  void harvestInto(Collection<Metric> metrics) {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<SeriesKey, AggregatedSeries> entry : series.entrySet()) {
+      AggregatedSeries aggregatedSeries = entry.getValue();
+      Metric metric = aggregatedSeries.harvest(now);
+      if (metric != null) {
+        metrics.add(metric);
+        continue;
+      }
+      if (aggregatedSeries.isPinned()) {
+        continue;
+      }
+      // Retire under the map's lock for this key, so that it can't race with pinning.
+      series.computeIfPresent(
+          entry.getKey(),
+          (key, current) -> {
+            if (current != aggregatedSeries || current.isPinned()) {
+              return current;
+            }
+            current.retire();
+            return null;
+          });
+      if (aggregatedSeries.isRetired()) {
+        // Pick up anything recorded between the harvest above and the retirement.
+        metric = aggregatedSeries.harvest(now);
+        if (metric != null) {
+          metrics.add(metric);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The number of series recorded into since they were last harvested. Idle series, such
+   *     as those kept by bound instruments, aren't counted.
+   */
+  int size() {
+    return recordedSeries.get();
+  }
+
+  private void record(
+      SeriesKey key,
+      Metric metric,
+      long count,
+      double sum,
+      double min,
+      double max,
+      long lastTimestamp,
+      long startMs,
+      long endMs) {
+    // The value doubles as "last", which only matters for gauges, where count, sum, min and max
+    // are all the single recorded value.
+    AggregatedSeries aggregatedSeries = seriesFor(key, metric);
+    while (!aggregatedSeries.record(count, sum, min, max, max, lastTimestamp, startMs, endMs)) {
+      // Retired by a concurrent harvest; make way for a fresh series.
+      series.remove(key, aggregatedSeries);
+      aggregatedSeries = seriesFor(key, metric);
+    }
+  }
+
+  private AggregatedSeries seriesFor(SeriesKey key, Metric metric) {
+    AggregatedSeries result = series.get(key);
+    if (result != null) {
+      return result;
+    }
+    AggregatedSeries created =
+        new AggregatedSeries(key.kind, key.name, key.attributes, recordedSeries);
+    result = series.putIfAbsent(key, created);
+    if (result == null) {
+      onNewSeries.accept(metric);
+      return created;
+    }
+    return result;
+  }
+
+  private static final class SeriesKey {
+    private final Kind kind;
+    private final String name;
+    private final Map<String, Object> attributes;
+    private final int hash;
+
+    SeriesKey(Kind kind, String name, Map<String, Object> attributes) {
+      this.kind = kind;
+      this.name = name;
+      this.attributes = attributes;
+      int result = kind.hashCode();
+      result = 31 * result + (name != null ? name.hashCode() : 0);
+      result = 31 * result + attributes.hashCode();
+      this.hash = result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      SeriesKey that = (SeriesKey) o;
+
+      return hash == that.hash
+          && kind == that.kind
+          && (name != null ? name.equals(that.name) : that.name == null)
+          && attributes.equals(that.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
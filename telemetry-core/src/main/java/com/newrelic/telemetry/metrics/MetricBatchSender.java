@@ -7,9 +7,10 @@ package com.newrelic.telemetry.metrics;
 import com.newrelic.telemetry.BaseConfig;
 import com.newrelic.telemetry.MetricBatchSenderFactory;
 import com.newrelic.telemetry.Response;
-import com.newrelic.telemetry.SenderConfiguration;
 import com.newrelic.telemetry.SenderConfiguration.SenderConfigurationBuilder;
+import com.newrelic.telemetry.SenderConfiguration;
 import com.newrelic.telemetry.exceptions.ResponseException;
+import com.newrelic.telemetry.http.AsyncHttpPoster;
 import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.json.AttributesJson;
 import com.newrelic.telemetry.metrics.json.MetricBatchJsonCommonBlockWriter;
@@ -17,9 +18,12 @@ import com.newrelic.telemetry.metrics.json.MetricBatchJsonTelemetryBlockWriter;
 import com.newrelic.telemetry.metrics.json.MetricBatchMarshaller;
 import com.newrelic.telemetry.metrics.json.MetricToJson;
 import com.newrelic.telemetry.transport.BatchDataSender;
+import com.newrelic.telemetry.transport.EncodedPayload;
+import com.newrelic.telemetry.transport.JsonPayloadWriter;
 import com.newrelic.telemetry.util.Utils;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,15 +56,56 @@ public class MetricBatchSender {
    *     hierarchy for details on the recommended ways to respond to those exceptions.
    */
   public Response sendBatch(MetricBatch batch) throws ResponseException {
-    if (batch == null || batch.size() == 0) {
+    if (batch == null || (batch.size() == 0 && batch.getEncodedPayload() == null)) {
       logger.debug("Skipped sending of an empty metric batch.");
       return new Response(202, "Ignored", "Empty batch");
     }
     logger.debug(
         "Sending a metric batch (number of metrics: {}) to the New Relic metric ingest endpoint)",
         batch.size());
-    String json = marshaller.toJson(batch);
-    return sender.send(json, batch);
+    return sender.send(payloadWriter(batch), batch);
+  }
+
+  /**
+   * Send a batch of metrics to New Relic without blocking the calling thread. This only avoids
+   * blocking when the configured {@link HttpPoster} is an {@link AsyncHttpPoster}; with any other
+   * poster, the batch is sent before this method returns.
+   *
+   * @param batch The batch to send.
+   * @return The future response from the ingest API. In cases where the batch is unable to be
+   *     successfully sent, the future completes exceptionally with one of the subclasses of {@link
+   *     ResponseException}.
+   */
+  public CompletableFuture<Response> sendBatchAsync(MetricBatch batch) {
+    if (batch == null || (batch.size() == 0 && batch.getEncodedPayload() == null)) {
+      return CompletableFuture.completedFuture(new Response(202, "Ignored", "Empty batch"));
+    }
+    return sender.sendAsync(payloadWriter(batch), batch);
+  }
+
+  /**
+   * Marshalls and compresses a batch of metrics without sending it, for example to keep it on disk
+   * until it can be sent. A batch with no metrics but an encoded payload is sent as that payload.
+   *
+   * @param batch The batch to encode.
+   * @return The compressed payload, ready to be sent.
+   * @throws ResponseException If the json could not be written.
+   */
+  public EncodedPayload encode(MetricBatch batch) throws ResponseException {
+    return sender.encode(payloadWriter(batch), batch);
+  }
+
+  /**
+   * @return The largest compressed payload this sender sends, or 0 for no limit. Larger payloads
+   *     fail with a {@link com.newrelic.telemetry.exceptions.RetryWithSplitException}.
+   */
+  public int getMaxPayloadBytes() {
+    return sender.getMaxPayloadBytes();
+  }
+
+  private JsonPayloadWriter payloadWriter(MetricBatch batch) {
+    return JsonPayloadWriter.of(
+        out -> marshaller.writeJson(batch, out), out -> marshaller.writeUtf8Json(batch, out));
   }
 
   /**
@@ -109,15 +154,9 @@ public class MetricBatchSender {
     MetricBatchMarshaller marshaller =
         new MetricBatchMarshaller(
             new MetricBatchJsonCommonBlockWriter(new AttributesJson()),
-            new MetricBatchJsonTelemetryBlockWriter(new MetricToJson()));
-    BatchDataSender sender =
-        new BatchDataSender(
-            configuration.getHttpPoster(),
-            configuration.getApiKey(),
-            url,
-            configuration.isAuditLoggingEnabled(),
-            configuration.getSecondaryUserAgent(),
-            configuration.useLicenseKey());
+            new MetricBatchJsonTelemetryBlockWriter(new MetricToJson()),
+            configuration.getJsonEncoder());
+    BatchDataSender sender = new BatchDataSender(configuration, url);
 
     return new MetricBatchSender(marshaller, sender);
   }
@@ -5,12 +5,17 @@
 package com.newrelic.telemetry.metrics;
 
 import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.AttributesInterner;
+import com.newrelic.telemetry.OverflowPolicy;
+import com.newrelic.telemetry.metrics.AggregatedSeries.Kind;
+import com.newrelic.telemetry.util.BufferQueues;
 import com.newrelic.telemetry.util.IngestWarnings;
 import com.newrelic.telemetry.util.Utils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongFunction;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -20,13 +25,22 @@ import org.slf4j.LoggerFactory;
  * Metrics API, call {@link #createBatch()} and then {@link
  * MetricBatchSender#sendBatch(MetricBatch)}.
  *
+ * <p>A buffer created with {@link Builder#aggregating(boolean)} aggregates metrics in place instead
+ * of holding on to each one: counts with the same name and attributes are summed, gauges keep their
+ * latest value, and summaries are merged, so that each batch holds at most one metric per series.
+ *
+ * <p>For very frequently recorded metrics, bound instruments such as {@link #boundCounter(String,
+ * Attributes)} record into their series without allocating, in either mode.
+ *
  * <p>This class is thread-safe.
  */
 public final class MetricBuffer {
   private static final org.slf4j.Logger logger = LoggerFactory.getLogger(MetricBuffer.class);
-  private final Queue<Metric> metrics = new ConcurrentLinkedQueue<>();
+  private final Queue<Metric> metrics;
   private final IngestWarnings ingestWarnings = new IngestWarnings();
   private final Attributes commonAttributes;
+  private final MetricAggregator aggregator = new MetricAggregator(this::raiseIngestWarnings);
+  private final boolean aggregating;
 
   /**
    * Create a new buffer with the provided common set of attributes.
@@ -35,7 +49,13 @@ public final class MetricBuffer {
    *     {@link Metric} in this buffer.
    */
   public MetricBuffer(Attributes commonAttributes) {
+    this(commonAttributes, false, new ConcurrentLinkedQueue<>());
+  }
+
+  private MetricBuffer(Attributes commonAttributes, boolean aggregating, Queue<Metric> metrics) {
     this.commonAttributes = Utils.verifyNonNull(commonAttributes);
+    this.aggregating = aggregating;
+    this.metrics = metrics;
   }
 
   /**
@@ -44,8 +64,89 @@ public final class MetricBuffer {
    * @param metric The new {@link Metric} instance to be sent.
    */
   public void addMetric(Metric metric) {
+    if (aggregating) {
+      aggregator.add(metric);
+      return;
+    }
     raiseIngestWarnings(metric);
-    metrics.add(metric);
+    if (!metrics.offer(metric)) {
+      logger.debug("Metric buffer is full, dropping metric: {}", metric);
+    }
+  }
+
+  /**
+   * Get the number of {@link Metric Metrics} that have been discarded because this buffer was full.
+   * Only a bounded buffer (see {@link Builder#capacity(int)}) discards metrics.
+   *
+   * @return The number of discarded {@link Metric Metrics}.
+   */
+  public long getDroppedCount() {
+    return BufferQueues.getDroppedCount(metrics);
+  }
+
+  /**
+   * Returns a counter bound to the given name and attributes. Recording through the returned handle
+   * is much cheaper than adding a {@link Count} to this buffer, and the total is reported as a
+   * single {@link Count} in each {@link MetricBatch} created by this buffer. Handles for the same
+   * name and attributes share their series, and may be kept for the lifetime of the buffer.
+   *
+   * @param name The name of the counter.
+   * @param attributes The attributes to report with the counter. Later changes to this instance
+   *     have no effect on the handle.
+   * @return A handle for recording into the counter.
+   */
+  public BoundCounter boundCounter(String name, Attributes attributes) {
+    return new BoundCounter(
+        pinnedSeries(
+            Kind.COUNT, name, attributes, now -> new Count(name, 0, now, now, attributes)));
+  }
+
+  /**
+   * Returns a gauge bound to the given name and attributes. Recording through the returned handle
+   * is much cheaper than adding a {@link Gauge} to this buffer, and the latest value is reported as
+   * a single {@link Gauge} in each {@link MetricBatch} created by this buffer. Handles for the same
+   * name and attributes share their series, and may be kept for the lifetime of the buffer.
+   *
+   * @param name The name of the gauge.
+   * @param attributes The attributes to report with the gauge. Later changes to this instance have
+   *     no effect on the handle.
+   * @return A handle for recording into the gauge.
+   */
+  public BoundGauge boundGauge(String name, Attributes attributes) {
+    return new BoundGauge(
+        pinnedSeries(Kind.GAUGE, name, attributes, now -> new Gauge(name, 0, now, attributes)));
+  }
+
+  /**
+   * Returns a summary bound to the given name and attributes. Recording through the returned handle
+   * is much cheaper than adding a {@link Summary} to this buffer, and the recorded values are
+   * reported as a single {@link Summary} in each {@link MetricBatch} created by this buffer.
+   * Handles for the same name and attributes share their series, and may be kept for the lifetime
+   * of the buffer.
+   *
+   * @param name The name of the summary.
+   * @param attributes The attributes to report with the summary. Later changes to this instance
+   *     have no effect on the handle.
+   * @return A handle for recording into the summary.
+   */
+  public BoundSummary boundSummary(String name, Attributes attributes) {
+    return new BoundSummary(
+        pinnedSeries(
+            Kind.SUMMARY,
+            name,
+            attributes,
+            now -> new Summary(name, 0, 0, 0, 0, now, now, attributes)));
+  }
+
+  private AggregatedSeries pinnedSeries(
+      Kind kind, String name, Attributes attributes, LongFunction<Metric> prototype) {
+    Utils.verifyNonNull(name);
+    Utils.verifyNonNull(attributes);
+    return aggregator.pinnedSeries(
+        kind,
+        name,
+        AttributesInterner.shared().intern(attributes),
+        () -> raiseIngestWarnings(prototype.apply(System.currentTimeMillis())));
   }
 
   /**
@@ -64,12 +165,15 @@ public final class MetricBuffer {
   }
 
   /**
-   * Get the size of the {@link Metric Metrics} buffer.
+   * Get the size of the {@link Metric Metrics} buffer. For an aggregating buffer, and for bound
+   * instruments, this is the number of series recorded into since the last batch was created.
+   *
+   * <p>For a bounded buffer (see {@link Builder#capacity(int)}), this is a constant time operation.
    *
    * @return Size of the {@link Metric Metrics} buffer.
    */
   public int size() {
-    return metrics.size();
+    return metrics.size() + aggregator.size();
   }
   /**
    * Creates a new {@link MetricBatch} from the contents of this buffer, then clears the contents of
@@ -86,10 +190,8 @@ public final class MetricBuffer {
     Collection<Metric> metrics = new ArrayList<>(this.metrics.size());
 
     // Drain the metric buffer and return the batch
-    Metric metric;
-    while ((metric = this.metrics.poll()) != null) {
-      metrics.add(metric);
-    }
+    BufferQueues.drainTo(this.metrics, metrics);
+    aggregator.harvestInto(metrics);
 
     return new MetricBatch(metrics, this.commonAttributes);
   }
@@ -139,6 +241,10 @@ public final class MetricBuffer {
 
   public static class Builder {
     private final CommonAttributesBuilder commonAttributesBuilder = new CommonAttributesBuilder();
+    private boolean aggregating = false;
+    private int capacity = 0;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.dropNewest();
+    private boolean striped = false;
 
     /**
      * Provides the base collection of common attributes that will be applied to all buffered
@@ -178,6 +284,64 @@ public final class MetricBuffer {
       return this;
     }
 
+    /**
+     * Optional. When enabled, the buffer aggregates metrics by name and attributes as they are
+     * added, rather than keeping every instance until the next batch. Counts are summed, gauges
+     * keep the most recent value, and summaries merge their count, sum, min and max. Metrics with
+     * non-finite values are dropped when they are added. Defaults to false.
+     *
+     * @param aggregating true to aggregate metrics in place
+     * @return this builder
+     */
+    public Builder aggregating(boolean aggregating) {
+      this.aggregating = aggregating;
+      return this;
+    }
+
+    /**
+     * Optional. Bounds the number of metrics the buffer holds between batches. A bounded buffer
+     * stores metrics in a pre-allocated ring, so its memory use is fixed and adding a metric
+     * doesn't allocate; what happens to metrics added while it is full is decided by the {@link
+     * #overflowPolicy(OverflowPolicy) overflow policy}. By default, the buffer is unbounded.
+     *
+     * @param capacity the maximum number of buffered metrics, or 0 for an unbounded buffer
+     * @return this builder
+     */
+    public Builder capacity(int capacity) {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Optional. Decides what happens to metrics added to a bounded buffer while it is full.
+     * Defaults to {@link OverflowPolicy#dropNewest()}. Has no effect on an unbounded buffer.
+     *
+     * @param overflowPolicy the policy to apply when the buffer is full
+     * @return this builder
+     */
+    public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = Utils.verifyNonNull(overflowPolicy);
+      return this;
+    }
+
+    /**
+     * Optional. When enabled, each thread adds to its own stripe of the buffer rather than all
+     * threads contending on a single queue, and the stripes are merged when a batch is created.
+     * This helps when many threads add metrics concurrently. Metrics added by different threads are
+     * no longer batched in the order they were added. A bounded buffer divides its capacity
+     * between the stripes, and applies its overflow policy per stripe. Defaults to false.
+     *
+     * @param striped true to stripe the buffer by thread
+     * @return this builder
+     */
+    public Builder striped(boolean striped) {
+      this.striped = striped;
+      return this;
+    }
+
     /**
      * Builds the new MetricBuffer instance
      *
@@ -185,7 +349,8 @@ public final class MetricBuffer {
      */
     public MetricBuffer build() {
       Attributes attributes = commonAttributesBuilder.build();
-      return new MetricBuffer(attributes);
+      return new MetricBuffer(
+          attributes, aggregating, BufferQueues.create(capacity, overflowPolicy, striped));
     }
   }
 }
@@ -5,6 +5,7 @@
 package com.newrelic.telemetry.metrics;
 
 import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.AttributesInterner;
 import com.newrelic.telemetry.util.Utils;
 import java.util.Map;
 
@@ -55,7 +56,7 @@ public final class Summary implements Metric {
     this.max = max;
     this.startTimeMs = startTimeMs;
     this.endTimeMs = endTimeMs;
-    this.attributes = Utils.verifyNonNull(attributes).asMap();
+    this.attributes = AttributesInterner.shared().intern(Utils.verifyNonNull(attributes));
   }
 
   /**
@@ -4,8 +4,10 @@
  */
 package com.newrelic.telemetry.metrics.json;
 
+import com.google.gson.stream.JsonWriter;
 import com.newrelic.telemetry.json.AttributesJson;
 import com.newrelic.telemetry.metrics.MetricBatch;
+import java.io.IOException;
 
 public class MetricBatchJsonCommonBlockWriter {
 
@@ -25,4 +27,19 @@ public class MetricBatchJsonCommonBlockWriter {
           .append("}");
     }
   }
+
+  public void appendCommonJson(MetricBatch batch, JsonWriter jsonWriter) {
+    if (!batch.hasCommonAttributes()) {
+      return;
+    }
+    try {
+      jsonWriter.name("common");
+      jsonWriter.beginObject();
+      jsonWriter.name("attributes");
+      attributesJson.writeJsonValue(batch.getCommonAttributes().asMap(), jsonWriter);
+      jsonWriter.endObject();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to create metric common block json", e);
+    }
+  }
 }
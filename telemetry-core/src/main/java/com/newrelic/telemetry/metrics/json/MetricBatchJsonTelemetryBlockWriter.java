@@ -6,11 +6,11 @@ package com.newrelic.telemetry.metrics.json;
 
 import static java.lang.Double.isFinite;
 
+import com.google.gson.stream.JsonWriter;
 import com.newrelic.telemetry.metrics.*;
+import java.io.IOException;
 import java.util.Collection;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,29 +28,75 @@ public class MetricBatchJsonTelemetryBlockWriter {
     builder.append("\"metrics\":").append("[");
     Collection<Metric> metrics = batch.getTelemetry();
 
-    AtomicInteger retainedCount = new AtomicInteger();
-    builder.append(
-        metrics.stream()
-            .filter(this::isValid)
-            .map(this::toJsonString)
-            .peek(x -> retainedCount.getAndIncrement())
-            .collect(Collectors.joining(",")));
+    int retainedCount = 0;
+    for (Metric metric : metrics) {
+      if (!isValid(metric)) {
+        logInvalid(metric);
+        continue;
+      }
+      if (retainedCount > 0) {
+        builder.append(",");
+      }
+      builder.append(toJsonString(metric));
+      retainedCount++;
+    }
 
-    if (retainedCount.get() != metrics.size()) {
+    logDropped(metrics.size() - retainedCount);
+    builder.append("]");
+  }
+
+  /**
+   * Validates and writes every metric in the batch into the shared writer, in a single pass.
+   * Invalid metrics are skipped and counted as they are encountered.
+   *
+   * @param batch the batch whose metrics should be written
+   * @param jsonWriter the writer for the enclosing json document
+   */
+  public void appendTelemetryJson(MetricBatch batch, JsonWriter jsonWriter) {
+    try {
+      jsonWriter.name("metrics");
+      jsonWriter.beginArray();
+      int droppedCount = 0;
+      for (Metric metric : batch.getTelemetry()) {
+        if (!isValid(metric)) {
+          droppedCount++;
+          logInvalid(metric);
+          continue;
+        }
+        writeMetric(metric, jsonWriter);
+      }
+      jsonWriter.endArray();
+      logDropped(droppedCount);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to generate metric telemetry json", e);
+    }
+  }
+
+  private void writeMetric(Metric metric, JsonWriter jsonWriter) throws IOException {
+    if (metric instanceof Count) {
+      metricToJson.writeCountJson((Count) metric, jsonWriter);
+    } else if (metric instanceof Gauge) {
+      metricToJson.writeGaugeJson((Gauge) metric, jsonWriter);
+    } else if (metric instanceof Summary) {
+      metricToJson.writeSummaryJson((Summary) metric, jsonWriter);
+    } else {
+      throw new UnsupportedOperationException("Unknown metric type: " + metric.getClass());
+    }
+  }
+
+  private void logDropped(int droppedCount) {
+    if (droppedCount > 0) {
       logger.info(
           "Dropped "
-              + (metrics.size() - retainedCount.get())
+              + droppedCount
               + " metrics from batch due to invalid metric contents (you should fix this)");
-      logAllInvalid(metrics);
     }
-    builder.append("]");
-  }
-
-  private void logAllInvalid(Collection<Metric> metrics) {
-    metrics.stream().filter(this::isInvalid).forEach(this::logInvalid);
   }
 
   private void logInvalid(Metric invalidMetric) {
+    if (!logger.isDebugEnabled()) {
+      return;
+    }
     logger.debug(
         "  * Dropped "
             + typeDispatch(
@@ -60,10 +106,6 @@ public class MetricBatchJsonTelemetryBlockWriter {
                 summary -> "Summary(name=" + summary.getName() + ", value = " + summary.getSum()));
   }
 
-  private boolean isInvalid(Metric metric) {
-    return !isValid(metric);
-  }
-
   private boolean isValid(Metric metric) {
     return typeDispatch(
         metric,
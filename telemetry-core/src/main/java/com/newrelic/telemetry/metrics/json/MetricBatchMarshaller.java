@@ -4,7 +4,17 @@
  */
 package com.newrelic.telemetry.metrics.json;
 
+import com.google.gson.stream.JsonWriter;
+import com.newrelic.telemetry.json.JsonEncoder;
+import com.newrelic.telemetry.json.Utf8JsonWriter;
 import com.newrelic.telemetry.metrics.MetricBatch;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,28 +23,76 @@ public class MetricBatchMarshaller {
   private static final Logger logger = LoggerFactory.getLogger(MetricBatchMarshaller.class);
   private final MetricBatchJsonCommonBlockWriter commonBlockWriter;
   private final MetricBatchJsonTelemetryBlockWriter telemetryBlockWriter;
+  private final JsonEncoder encoder;
 
   public MetricBatchMarshaller(
       MetricBatchJsonCommonBlockWriter commonBlockWriter,
       MetricBatchJsonTelemetryBlockWriter telemetryBlockWriter) {
+    this(commonBlockWriter, telemetryBlockWriter, JsonEncoder.GSON);
+  }
+
+  /**
+   * @param commonBlockWriter writes the common block
+   * @param telemetryBlockWriter writes the metrics
+   * @param encoder how to encode the json written by {@link #writeUtf8Json(MetricBatch,
+   *     OutputStream)}
+   */
+  public MetricBatchMarshaller(
+      MetricBatchJsonCommonBlockWriter commonBlockWriter,
+      MetricBatchJsonTelemetryBlockWriter telemetryBlockWriter,
+      JsonEncoder encoder) {
     this.commonBlockWriter = commonBlockWriter;
     this.telemetryBlockWriter = telemetryBlockWriter;
+    this.encoder = encoder;
   }
 
   public String toJson(MetricBatch batch) {
-    logger.debug("Generating json for metric batch.");
-    StringBuilder builder = new StringBuilder();
+    StringWriter out = new StringWriter();
+    try {
+      writeJson(batch, out);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to marshall json for a metric batch", e);
+    }
+    return out.toString();
+  }
 
-    builder.append("[").append("{");
+  /**
+   * Streams the json for a metric batch to the provided writer, in a single pass over the metrics.
+   *
+   * @param batch the batch to marshall
+   * @param out the stream to write the json to
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeJson(MetricBatch batch, Writer out) throws IOException {
+    logger.debug("Generating json for metric batch.");
+    write(batch, new JsonWriter(out));
+  }
 
-    int lengthBefore = builder.length();
-    commonBlockWriter.appendCommonJson(batch, builder);
-    if (builder.length() > lengthBefore) {
-      builder.append(",");
+  /**
+   * Streams the json for a metric batch to the provided stream, encoded as UTF-8 with the encoder
+   * this marshaller was built with.
+   *
+   * @param batch the batch to marshall
+   * @param out the stream to write the json to, which is not closed
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeUtf8Json(MetricBatch batch, OutputStream out) throws IOException {
+    if (encoder != JsonEncoder.UTF8) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      writeJson(batch, writer);
+      writer.flush();
+      return;
     }
-    telemetryBlockWriter.appendTelemetryJson(batch, builder);
+    logger.debug("Generating UTF-8 json for metric batch.");
+    Utf8JsonWriter jsonWriter = new Utf8JsonWriter(out);
+    write(batch, jsonWriter);
+    jsonWriter.close();
+  }
 
-    builder.append("}").append("]");
-    return builder.toString();
+  private void write(MetricBatch batch, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginArray().beginObject();
+    commonBlockWriter.appendCommonJson(batch, jsonWriter);
+    telemetryBlockWriter.appendTelemetryJson(batch, jsonWriter);
+    jsonWriter.endObject().endArray();
   }
 }
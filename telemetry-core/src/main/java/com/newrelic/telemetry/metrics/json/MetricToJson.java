@@ -20,76 +20,99 @@ public class MetricToJson {
   public String writeSummaryJson(Summary summary) {
     try {
       StringWriter out = new StringWriter();
-      JsonWriter jsonWriter = new JsonWriter(out);
-      jsonWriter.beginObject();
-      jsonWriter.name("name").value(summary.getName());
-      jsonWriter.name("type").value("summary");
-
-      jsonWriter.name("value");
-      jsonWriter.beginObject();
-      jsonWriter.name("count").value(summary.getCount());
-      jsonWriter.name("sum").value(summary.getSum());
-      jsonWriter.name("min");
-      writeDouble(jsonWriter, summary.getMin());
-      jsonWriter.name("max");
-      writeDouble(jsonWriter, summary.getMax());
-      jsonWriter.endObject();
-
-      jsonWriter.name("timestamp").value(summary.getStartTimeMs());
-      jsonWriter.name("interval.ms").value(summary.getEndTimeMs() - summary.getStartTimeMs());
-      String attributes = attributeJson.toJson(summary.getAttributes());
-      if (!attributes.isEmpty()) {
-        jsonWriter.name("attributes").jsonValue(attributes);
-      }
-      jsonWriter.endObject();
+      writeSummaryJson(summary, new JsonWriter(out));
       return out.toString();
     } catch (IOException e) {
       throw new RuntimeException("Failed to generate summary json", e);
     }
   }
 
+  /**
+   * Writes a summary as the next value of an enclosing json document.
+   *
+   * @param summary the summary to write
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeSummaryJson(Summary summary, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginObject();
+    jsonWriter.name("name").value(summary.getName());
+    jsonWriter.name("type").value("summary");
+
+    jsonWriter.name("value");
+    jsonWriter.beginObject();
+    jsonWriter.name("count").value(summary.getCount());
+    jsonWriter.name("sum").value(summary.getSum());
+    jsonWriter.name("min");
+    writeDouble(jsonWriter, summary.getMin());
+    jsonWriter.name("max");
+    writeDouble(jsonWriter, summary.getMax());
+    jsonWriter.endObject();
+
+    jsonWriter.name("timestamp").value(summary.getStartTimeMs());
+    jsonWriter.name("interval.ms").value(summary.getEndTimeMs() - summary.getStartTimeMs());
+    jsonWriter.name("attributes");
+    attributeJson.writeJsonValue(summary.getAttributes(), jsonWriter);
+    jsonWriter.endObject();
+  }
+
   public String writeGaugeJson(Gauge gauge) {
     try {
       StringWriter out = new StringWriter();
-      JsonWriter jsonWriter = new JsonWriter(out);
-      jsonWriter.beginObject();
-      jsonWriter.name("name").value(gauge.getName());
-      jsonWriter.name("type").value("gauge");
-      jsonWriter.name("value").value(gauge.getValue());
-      jsonWriter.name("timestamp").value(gauge.getTimestamp());
-      String attributes = attributeJson.toJson(gauge.getAttributes());
-      if (!attributes.isEmpty()) {
-        jsonWriter.name("attributes").jsonValue(attributes);
-      }
-      jsonWriter.endObject();
+      writeGaugeJson(gauge, new JsonWriter(out));
       return out.toString();
     } catch (IOException e) {
       throw new RuntimeException("Failed to generate gauge json", e);
     }
   }
 
+  /**
+   * Writes a gauge as the next value of an enclosing json document.
+   *
+   * @param gauge the gauge to write
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeGaugeJson(Gauge gauge, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginObject();
+    jsonWriter.name("name").value(gauge.getName());
+    jsonWriter.name("type").value("gauge");
+    jsonWriter.name("value").value(gauge.getValue());
+    jsonWriter.name("timestamp").value(gauge.getTimestamp());
+    jsonWriter.name("attributes");
+    attributeJson.writeJsonValue(gauge.getAttributes(), jsonWriter);
+    jsonWriter.endObject();
+  }
+
   public String writeCountJson(Count count) {
     try {
       StringWriter out = new StringWriter();
-      JsonWriter jsonWriter = new JsonWriter(out);
-      jsonWriter.beginObject();
-      jsonWriter.name("name").value(count.getName());
-      jsonWriter.name("type").value("count");
-      jsonWriter.name("value").value(count.getValue());
-      jsonWriter.name("timestamp").value(count.getStartTimeMs());
-      jsonWriter.name("interval.ms").value(count.getEndTimeMs() - count.getStartTimeMs());
-
-      String attributes = attributeJson.toJson(count.getAttributes());
-      if (!attributes.isEmpty()) {
-        jsonWriter.name("attributes").jsonValue(attributes);
-      }
-      jsonWriter.endObject();
+      writeCountJson(count, new JsonWriter(out));
       return out.toString();
     } catch (IOException e) {
       throw new RuntimeException("Failed to generate count json");
     }
   }
 
+  /**
+   * Writes a count as the next value of an enclosing json document.
+   *
+   * @param count the count to write
+   * @param jsonWriter the writer for the enclosing document
+   * @throws IOException if the underlying stream fails
+   */
+  public void writeCountJson(Count count, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginObject();
+    jsonWriter.name("name").value(count.getName());
+    jsonWriter.name("type").value("count");
+    jsonWriter.name("value").value(count.getValue());
+    jsonWriter.name("timestamp").value(count.getStartTimeMs());
+    jsonWriter.name("interval.ms").value(count.getEndTimeMs() - count.getStartTimeMs());
+    jsonWriter.name("attributes");
+    attributeJson.writeJsonValue(count.getAttributes(), jsonWriter);
+    jsonWriter.endObject();
+  }
+
   private void writeDouble(final JsonWriter jsonWriter, final double value) throws IOException {
     if (Double.isFinite(value)) {
       jsonWriter.value(value);
@@ -9,15 +9,19 @@ import com.newrelic.telemetry.Response;
 import com.newrelic.telemetry.SenderConfiguration;
 import com.newrelic.telemetry.SpanBatchSenderFactory;
 import com.newrelic.telemetry.exceptions.ResponseException;
+import com.newrelic.telemetry.http.AsyncHttpPoster;
 import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.json.AttributesJson;
 import com.newrelic.telemetry.spans.json.SpanBatchMarshaller;
 import com.newrelic.telemetry.spans.json.SpanJsonCommonBlockWriter;
 import com.newrelic.telemetry.spans.json.SpanJsonTelemetryBlockWriter;
 import com.newrelic.telemetry.transport.BatchDataSender;
+import com.newrelic.telemetry.transport.EncodedPayload;
+import com.newrelic.telemetry.transport.JsonPayloadWriter;
 import com.newrelic.telemetry.util.Utils;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,15 +59,56 @@ public class SpanBatchSender {
    *     hierarchy for details on the recommended ways to respond to those exceptions.
    */
   public Response sendBatch(SpanBatch batch) throws ResponseException {
-    if (batch == null || batch.size() == 0) {
+    if (batch == null || (batch.size() == 0 && batch.getEncodedPayload() == null)) {
       logger.debug("Skipped sending a null or empty span batch");
       return new Response(202, "Ignored", "Empty batch");
     }
     logger.debug(
         "Sending a span batch (number of spans: {}) to the New Relic span ingest endpoint)",
         batch.size());
-    String json = marshaller.toJson(batch);
-    return sender.send(json, batch);
+    return sender.send(payloadWriter(batch), batch);
+  }
+
+  /**
+   * Send a batch of spans to New Relic without blocking the calling thread. This only avoids
+   * blocking when the configured {@link HttpPoster} is an {@link AsyncHttpPoster}; with any other
+   * poster, the batch is sent before this method returns.
+   *
+   * @param batch The batch to send.
+   * @return The future response from the ingest API. In cases where the batch is unable to be
+   *     successfully sent, the future completes exceptionally with one of the subclasses of {@link
+   *     ResponseException}.
+   */
+  public CompletableFuture<Response> sendBatchAsync(SpanBatch batch) {
+    if (batch == null || (batch.size() == 0 && batch.getEncodedPayload() == null)) {
+      return CompletableFuture.completedFuture(new Response(202, "Ignored", "Empty batch"));
+    }
+    return sender.sendAsync(payloadWriter(batch), batch);
+  }
+
+  /**
+   * Marshalls and compresses a batch of spans without sending it, for example to keep it on disk
+   * until it can be sent. A batch with no spans but an encoded payload is sent as that payload.
+   *
+   * @param batch The batch to encode.
+   * @return The compressed payload, ready to be sent.
+   * @throws ResponseException If the json could not be written.
+   */
+  public EncodedPayload encode(SpanBatch batch) throws ResponseException {
+    return sender.encode(payloadWriter(batch), batch);
+  }
+
+  /**
+   * @return The largest compressed payload this sender sends, or 0 for no limit. Larger payloads
+   *     fail with a {@link com.newrelic.telemetry.exceptions.RetryWithSplitException}.
+   */
+  public int getMaxPayloadBytes() {
+    return sender.getMaxPayloadBytes();
+  }
+
+  private JsonPayloadWriter payloadWriter(SpanBatch batch) {
+    return JsonPayloadWriter.of(
+        out -> marshaller.writeJson(batch, out), out -> marshaller.writeUtf8Json(batch, out));
   }
 
   /**
@@ -110,15 +155,9 @@ public class SpanBatchSender {
     SpanBatchMarshaller marshaller =
         new SpanBatchMarshaller(
             new SpanJsonCommonBlockWriter(new AttributesJson()),
-            new SpanJsonTelemetryBlockWriter(new AttributesJson()));
-    BatchDataSender sender =
-        new BatchDataSender(
-            configuration.getHttpPoster(),
-            configuration.getApiKey(),
-            url,
-            configuration.isAuditLoggingEnabled(),
-            configuration.getSecondaryUserAgent(),
-            configuration.useLicenseKey());
+            new SpanJsonTelemetryBlockWriter(new AttributesJson()),
+            configuration.getJsonEncoder());
+    BatchDataSender sender = new BatchDataSender(configuration, url);
 
     return new SpanBatchSender(marshaller, sender);
   }
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.spans;
+
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.OverflowPolicy;
+import com.newrelic.telemetry.metrics.CommonAttributesBuilder;
+import com.newrelic.telemetry.util.BufferQueues;
+import com.newrelic.telemetry.util.IngestWarnings;
+import com.newrelic.telemetry.util.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A buffer for collecting {@link Span Spans}.
+ *
+ * <p>One instance of this class can collect many {@link Span Spans}. To send them to the Trace
+ * API, call {@link #createBatch()} and then {@link SpanBatchSender#sendBatch(SpanBatch)}.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class SpanBuffer {
+  private static final Logger logger = LoggerFactory.getLogger(SpanBuffer.class);
+  private final Queue<Span> spans;
+  private final IngestWarnings ingestWarnings = new IngestWarnings();
+  private final Attributes commonAttributes;
+
+  /**
+   * Create a new buffer with the provided common set of attributes.
+   *
+   * @param commonAttributes These attributes will be appended (by the New Relic backend) to every
+   *     {@link Span} in this buffer.
+   */
+  public SpanBuffer(Attributes commonAttributes) {
+    this(commonAttributes, new ConcurrentLinkedQueue<>());
+  }
+
+  private SpanBuffer(Attributes commonAttributes, Queue<Span> spans) {
+    this.commonAttributes = Utils.verifyNonNull(commonAttributes);
+    this.spans = spans;
+  }
+
+  /**
+   * Append a {@link Span} to this buffer, to be sent in the next {@link SpanBatch}.
+   *
+   * @param span The new {@link Span} instance to be sent.
+   */
+  public void addSpan(Span span) {
+    Attributes attributes = span.getAttributes();
+    if (attributes != null) {
+      ingestWarnings.raiseIngestWarnings(attributes.view(), span);
+    }
+    if (!spans.offer(span)) {
+      logger.debug("Span buffer is full, dropping span: {}", span);
+    }
+  }
+
+  /**
+   * Get the number of {@link Span Spans} that have been discarded because this buffer was full.
+   * Only a bounded buffer (see {@link Builder#capacity(int)}) discards spans.
+   *
+   * @return The number of discarded {@link Span Spans}.
+   */
+  public long getDroppedCount() {
+    return BufferQueues.getDroppedCount(spans);
+  }
+
+  /**
+   * Get the size of the {@link Span Spans} buffer.
+   *
+   * <p>For a bounded buffer (see {@link Builder#capacity(int)}), this is a constant time operation.
+   *
+   * @return Size of the {@link Span Spans} buffer.
+   */
+  public int size() {
+    return spans.size();
+  }
+
+  /**
+   * Creates a new {@link SpanBatch} from the contents of this buffer, then clears the contents of
+   * this buffer.
+   *
+   * <p>{@link Span Spans} added to this buffer by other threads during this method call will
+   * either be added to the {@link SpanBatch} being created, or will be saved for the next {@link
+   * SpanBatch}.
+   *
+   * @return A new {@link SpanBatch} with an immutable collection of {@link Span Spans}.
+   */
+  public SpanBatch createBatch() {
+    logger.debug("Creating Span batch.");
+    Collection<Span> spansForBatch = new ArrayList<>(this.spans.size());
+
+    // Drain the Span buffer and return the batch
+    BufferQueues.drainTo(this.spans, spansForBatch);
+
+    return new SpanBatch(spansForBatch, this.commonAttributes);
+  }
+
+  Queue<Span> getSpans() {
+    return spans;
+  }
+
+  Attributes getCommonAttributes() {
+    return commonAttributes;
+  }
+
+  @Override
+  public String toString() {
+    return "SpanBuffer{" + "spans=" + spans + ", commonAttributes=" + commonAttributes + '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    SpanBuffer that = (SpanBuffer) o;
+
+    if (getSpans() != null ? !getSpans().equals(that.getSpans()) : that.getSpans() != null)
+      return false;
+    return getCommonAttributes() != null
+        ? getCommonAttributes().equals(that.getCommonAttributes())
+        : that.getCommonAttributes() == null;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = getSpans() != null ? getSpans().hashCode() : 0;
+    result = 31 * result + (getCommonAttributes() != null ? getCommonAttributes().hashCode() : 0);
+    return result;
+  }
+
+  /**
+   * Returns a new Builder instance for help with creating new SpanBuffer instances
+   *
+   * @return a new instance of SpanBuffer.Builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private final CommonAttributesBuilder commonAttributesBuilder = new CommonAttributesBuilder();
+    private int capacity = 0;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.dropNewest();
+    private boolean striped = false;
+
+    /**
+     * Provides the common attributes that will be applied (by the New Relic backend) to all
+     * buffered spans.
+     *
+     * @param attributes - common attributes to be applied to all spans within this buffer
+     * @return this builder
+     */
+    public Builder attributes(Attributes attributes) {
+      commonAttributesBuilder.attributes(Utils.verifyNonNull(attributes));
+      return this;
+    }
+
+    /**
+     * Optional. Specify the name of the service that is creating the spans. The service name will
+     * be included in all common attributes as "service.name".
+     *
+     * @param serviceName - The name of the service
+     * @return this builder
+     */
+    public Builder serviceName(String serviceName) {
+      commonAttributesBuilder.serviceName(serviceName);
+      return this;
+    }
+
+    /**
+     * Optional. Specify the name of the instrumentation that provides the spans. This is generally
+     * not expected to be called by a user's manual instrumentation code. The instrumentation
+     * provider will be included in all common attributes as "instrumentation.provider".
+     *
+     * @param instrumentationProvider - The name of the instrumentation library
+     * @return this builder
+     */
+    public Builder instrumentationProvider(String instrumentationProvider) {
+      commonAttributesBuilder.instrumentationProvider(instrumentationProvider);
+      return this;
+    }
+
+    /**
+     * Optional. Bounds the number of spans the buffer holds between batches. A bounded buffer
+     * stores spans in a pre-allocated ring, so its memory use is fixed and adding a span doesn't
+     * allocate; what happens to spans added while it is full is decided by the {@link
+     * #overflowPolicy(OverflowPolicy) overflow policy}. By default, the buffer is unbounded.
+     *
+     * @param capacity the maximum number of buffered spans, or 0 for an unbounded buffer
+     * @return this builder
+     */
+    public Builder capacity(int capacity) {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Optional. Decides what happens to spans added to a bounded buffer while it is full. Defaults
+     * to {@link OverflowPolicy#dropNewest()}. Has no effect on an unbounded buffer.
+     *
+     * @param overflowPolicy the policy to apply when the buffer is full
+     * @return this builder
+     */
+    public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = Utils.verifyNonNull(overflowPolicy);
+      return this;
+    }
+
+    /**
+     * Optional. When enabled, each thread adds to its own stripe of the buffer rather than all
+     * threads contending on a single queue, and the stripes are merged when a batch is created.
+     * This helps when many threads add spans concurrently. Spans added by different threads are
+     * no longer batched in the order they were added. A bounded buffer divides its capacity
+     * between the stripes, and applies its overflow policy per stripe. Defaults to false.
+     *
+     * @param striped true to stripe the buffer by thread
+     * @return this builder
+     */
+    public Builder striped(boolean striped) {
+      this.striped = striped;
+      return this;
+    }
+
+    /**
+     * Builds the new SpanBuffer instance
+     *
+     * @return a newly created instance of SpanBuffer configured with data from this builder
+     */
+    public SpanBuffer build() {
+      return new SpanBuffer(
+          commonAttributesBuilder.build(), BufferQueues.create(capacity, overflowPolicy, striped));
+    }
+  }
+}
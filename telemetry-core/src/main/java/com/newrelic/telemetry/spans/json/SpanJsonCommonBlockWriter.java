@@ -41,7 +41,7 @@ public class SpanJsonCommonBlockWriter {
   private void appendAttributes(SpanBatch batch, JsonWriter jsonWriter) throws IOException {
     if (batch.hasCommonAttributes()) {
       jsonWriter.name("attributes");
-      jsonWriter.jsonValue(attributesJson.toJson(batch.getCommonAttributes().asMap()));
+      attributesJson.writeJsonValue(batch.getCommonAttributes().asMap(), jsonWriter);
     }
   }
 
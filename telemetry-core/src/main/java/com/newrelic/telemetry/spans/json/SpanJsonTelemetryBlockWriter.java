@@ -5,16 +5,20 @@
 package com.newrelic.telemetry.spans.json;
 
 import com.google.gson.stream.JsonWriter;
+import com.newrelic.telemetry.AttributesView;
 import com.newrelic.telemetry.json.AttributesJson;
 import com.newrelic.telemetry.spans.Span;
 import com.newrelic.telemetry.spans.SpanBatch;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 public final class SpanJsonTelemetryBlockWriter {
 
+  private static final String[] DERIVED_KEYS = {
+    "duration.ms", "error", "name", "parent.id", "service.name"
+  };
+  private static final int ERROR_INDEX = 1;
+
   private final AttributesJson attributesJson;
 
   public SpanJsonTelemetryBlockWriter(AttributesJson attributesJson) {
@@ -33,7 +37,8 @@ public final class SpanJsonTelemetryBlockWriter {
           jsonWriter.name("trace.id").value(span.getTraceId());
         }
         jsonWriter.name("timestamp").value(span.getTimestamp());
-        jsonWriter.name("attributes").jsonValue(attributesJson.toJson(enhanceAttributes(span)));
+        jsonWriter.name("attributes");
+        writeAttributes(span, jsonWriter);
         jsonWriter.endObject();
       }
       jsonWriter.endArray();
@@ -42,16 +47,44 @@ public final class SpanJsonTelemetryBlockWriter {
     }
   }
 
-  private Map<String, Object> enhanceAttributes(Span span) {
-    Map<String, Object> result = new HashMap<>(span.getAttributes().asMap());
-    result.putIfAbsent("name", span.getName());
-    result.putIfAbsent("parent.id", span.getParentId());
-    result.putIfAbsent("duration.ms", span.getDurationMs());
-    result.putIfAbsent("service.name", span.getServiceName());
-    if (span.isError()) {
-      result.put("error", true);
+  /**
+   * Writes the span's own attributes merged with those derived from its fields, in key order,
+   * without merging them into a copy first. The derived attributes only fill in for missing ones,
+   * except for the error flag, which always wins.
+   */
+  private void writeAttributes(Span span, JsonWriter jsonWriter) throws IOException {
+    AttributesView attributes = span.getAttributes().view();
+    // In the same (sorted) order as DERIVED_KEYS.
+    Object[] derived = {
+      span.getDurationMs(),
+      span.isError() ? Boolean.TRUE : null,
+      span.getName(),
+      span.getParentId(),
+      span.getServiceName()
+    };
+    jsonWriter.beginObject();
+    int next = 0;
+    for (int i = 0; i < attributes.size(); i++) {
+      String key = attributes.keyAt(i);
+      while (next < DERIVED_KEYS.length && key != null && DERIVED_KEYS[next].compareTo(key) < 0) {
+        attributesJson.writeAttribute(DERIVED_KEYS[next], derived[next], jsonWriter);
+        next++;
+      }
+      if (next < DERIVED_KEYS.length && DERIVED_KEYS[next].equals(key)) {
+        int derivedIndex = next++;
+        // A null attribute counts as missing, so the derived value can take its place.
+        if (derived[derivedIndex] != null
+            && (attributes.valueAt(i) == null || derivedIndex == ERROR_INDEX)) {
+          attributesJson.writeAttribute(key, derived[derivedIndex], jsonWriter);
+          continue;
+        }
+      }
+      attributesJson.writeAttribute(attributes, i, jsonWriter);
+    }
+    for (; next < DERIVED_KEYS.length; next++) {
+      attributesJson.writeAttribute(DERIVED_KEYS[next], derived[next], jsonWriter);
     }
-    return result;
+    jsonWriter.endObject();
   }
 
   public AttributesJson getAttributesJson() {
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of requests to an ingest endpoint that are in flight at once, adapting the
+ * limit to how the endpoint is coping: additive increase, multiplicative decrease (AIMD).
+ *
+ * <p>Each successful request that completes while the limit is at least half used raises the limit
+ * by one. A request that is rejected with a 429 or 5xx, fails with an I/O error, or takes longer
+ * than the timeout, cuts the limit by the backoff ratio. Other outcomes, such as a batch that is
+ * too large, leave the limit unchanged.
+ *
+ * <p>Configure one limiter per endpoint with {@link
+ * com.newrelic.telemetry.SenderConfiguration.SenderConfigurationBuilder#concurrencyLimiter}. The
+ * current limit and the observed latency are available from the getters, for monitoring.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+  private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+  // Weight of the newest sample in the smoothed latency.
+  private static final double LATENCY_SMOOTHING = 0.2;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final long timeoutNanos;
+
+  // Guarded by this.
+  private double limit;
+  private int inFlight;
+  private long smoothedLatencyNanos = -1;
+  private long minLatencyNanos = Long.MAX_VALUE;
+
+  private AdaptiveConcurrencyLimiter(Builder builder) {
+    this.minLimit = builder.minLimit;
+    this.maxLimit = builder.maxLimit;
+    this.backoffRatio = builder.backoffRatio;
+    this.timeoutNanos = builder.timeoutNanos;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+  }
+
+  /** @return A new builder, with an initial limit of 4, between 1 and 64. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Waits until a request may be sent, and counts it as in flight. Each call must be followed by
+   * exactly one call to {@link #onSuccess}, {@link #onDropped} or {@link #onIgnored}.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while (inFlight >= (int) limit) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  /**
+   * Records a request that was accepted by the endpoint.
+   *
+   * @param latencyNanos how long the request took
+   */
+  public synchronized void onSuccess(long latencyNanos) {
+    recordLatency(latencyNanos);
+    if (latencyNanos > timeoutNanos) {
+      decrease();
+    } else if (inFlight * 2 >= (int) limit) {
+      // Only grow when the current limit is actually being used.
+      setLimit(limit + 1);
+    }
+    release();
+  }
+
+  /**
+   * Records a request that was rejected because the endpoint is overloaded, or that failed.
+   *
+   * @param latencyNanos how long the request took
+   */
+  public synchronized void onDropped(long latencyNanos) {
+    recordLatency(latencyNanos);
+    decrease();
+    release();
+  }
+
+  /** Records a request whose outcome says nothing about the load on the endpoint. */
+  public synchronized void onIgnored() {
+    release();
+  }
+
+  /** @return The current max number of requests in flight. */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  /** @return The number of requests currently in flight. */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * @param unit the unit to return the latency in
+   * @return The exponentially smoothed latency of recent requests, or -1 if there were none.
+   */
+  public synchronized long getSmoothedLatency(TimeUnit unit) {
+    return smoothedLatencyNanos < 0 ? -1 : unit.convert(smoothedLatencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param unit the unit to return the latency in
+   * @return The lowest latency observed, or -1 if there were no requests.
+   */
+  public synchronized long getMinLatency(TimeUnit unit) {
+    return minLatencyNanos == Long.MAX_VALUE
+        ? -1
+        : unit.convert(minLatencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void recordLatency(long latencyNanos) {
+    minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+    smoothedLatencyNanos =
+        smoothedLatencyNanos < 0
+            ? latencyNanos
+            : (long)
+                (LATENCY_SMOOTHING * latencyNanos + (1 - LATENCY_SMOOTHING) * smoothedLatencyNanos);
+  }
+
+  private void decrease() {
+    setLimit(limit * backoffRatio);
+  }
+
+  private void setLimit(double newLimit) {
+    int before = (int) limit;
+    limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    if ((int) limit != before) {
+      logger.debug("Concurrency limit changed from {} to {}", before, (int) limit);
+      notifyAll();
+    }
+  }
+
+  private void release() {
+    inFlight--;
+    notifyAll();
+  }
+
+  public static final class Builder {
+    private int initialLimit = 4;
+    private int minLimit = 1;
+    private int maxLimit = 64;
+    private double backoffRatio = 0.5;
+    private long timeoutNanos = TimeUnit.SECONDS.toNanos(10);
+
+    private Builder() {}
+
+    /**
+     * @param initialLimit the limit to start with. Defaults to 4.
+     * @return this builder
+     */
+    public Builder initialLimit(int initialLimit) {
+      this.initialLimit = initialLimit;
+      return this;
+    }
+
+    /**
+     * @param minLimit the lowest the limit may go. Must be at least 1. Defaults to 1.
+     * @return this builder
+     */
+    public Builder minLimit(int minLimit) {
+      if (minLimit < 1) {
+        throw new IllegalArgumentException("minLimit must be at least 1: " + minLimit);
+      }
+      this.minLimit = minLimit;
+      return this;
+    }
+
+    /**
+     * @param maxLimit the highest the limit may go. Defaults to 64.
+     * @return this builder
+     */
+    public Builder maxLimit(int maxLimit) {
+      if (maxLimit < 1) {
+        throw new IllegalArgumentException("maxLimit must be at least 1: " + maxLimit);
+      }
+      this.maxLimit = maxLimit;
+      return this;
+    }
+
+    /**
+     * @param backoffRatio what to multiply the limit by when a request is dropped. Must be between
+     *     0 and 1. Defaults to 0.5.
+     * @return this builder
+     */
+    public Builder backoffRatio(double backoffRatio) {
+      if (!(backoffRatio > 0 && backoffRatio < 1)) {
+        throw new IllegalArgumentException("backoffRatio must be between 0 and 1: " + backoffRatio);
+      }
+      this.backoffRatio = backoffRatio;
+      return this;
+    }
+
+    /**
+     * @param timeout how long a successful request may take before it counts as dropped. Defaults
+     *     to 10 seconds.
+     * @param unit the unit of the timeout
+     * @return this builder
+     */
+    public Builder timeout(long timeout, TimeUnit unit) {
+      this.timeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    public AdaptiveConcurrencyLimiter build() {
+      if (minLimit > maxLimit) {
+        throw new IllegalArgumentException("minLimit cannot be greater than maxLimit");
+      }
+      return new AdaptiveConcurrencyLimiter(this);
+    }
+  }
+}
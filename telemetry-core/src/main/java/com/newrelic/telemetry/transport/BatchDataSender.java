@@ -7,12 +7,16 @@ package com.newrelic.telemetry.transport;
 import static java.util.Collections.emptyList;
 
 import com.newrelic.telemetry.Response;
+import com.newrelic.telemetry.SenderConfiguration;
 import com.newrelic.telemetry.Telemetry;
 import com.newrelic.telemetry.TelemetryBatch;
+import com.newrelic.telemetry.exceptions.CircuitOpenException;
 import com.newrelic.telemetry.exceptions.DiscardBatchException;
+import com.newrelic.telemetry.exceptions.ResponseException;
 import com.newrelic.telemetry.exceptions.RetryWithBackoffException;
 import com.newrelic.telemetry.exceptions.RetryWithRequestedWaitException;
 import com.newrelic.telemetry.exceptions.RetryWithSplitException;
+import com.newrelic.telemetry.http.AsyncHttpPoster;
 import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.http.HttpResponse;
 import java.io.BufferedReader;
@@ -20,12 +24,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPOutputStream;
 import org.slf4j.Logger;
@@ -37,6 +44,13 @@ public class BatchDataSender {
   private static final String MEDIA_TYPE = "application/json; charset=utf-8";
   private static final String UNKNOWN_VERSION = "UnknownVersion";
 
+  // Stand-ins for a response code, when there was no response.
+  private static final int NOT_SENT = 0;
+  private static final int IO_FAILURE = -1;
+
+  /** The largest compressed payload the ingest API accepts. */
+  public static final int DEFAULT_MAX_PAYLOAD_BYTES = 1_000_000;
+
   static final String BASE_USER_AGENT_VALUE;
 
   private final HttpPoster client;
@@ -45,6 +59,9 @@ public class BatchDataSender {
   private final boolean auditLoggingEnabled;
   private final String userAgent;
   private final boolean useLicenseKey;
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+  private final CircuitBreaker circuitBreaker;
+  private final int maxPayloadBytes;
 
   static {
     String implementationVersion = readVersion();
@@ -67,12 +84,74 @@ public class BatchDataSender {
       boolean auditLoggingEnabled,
       String secondaryUserAgent,
       boolean useLicenseKey) {
+    this(
+        client,
+        apiKey,
+        endpointURl,
+        auditLoggingEnabled,
+        secondaryUserAgent,
+        useLicenseKey,
+        null,
+        null,
+        0);
+  }
+
+  /**
+   * Creates a sender with every option of a {@link SenderConfiguration}, which is where options
+   * beyond those of the other constructors are set.
+   *
+   * @param configuration The configuration.
+   * @param endpointURl Where to send requests, which may differ from the configured endpoint, for
+   *     example to send to the configured region.
+   */
+  public BatchDataSender(SenderConfiguration configuration, URL endpointURl) {
+    this(
+        configuration.getHttpPoster(),
+        configuration.getApiKey(),
+        endpointURl,
+        configuration.isAuditLoggingEnabled(),
+        configuration.getSecondaryUserAgent(),
+        configuration.useLicenseKey(),
+        configuration.getConcurrencyLimiter(),
+        configuration.getCircuitBreaker(),
+        configuration.getMaxPayloadBytes());
+  }
+
+  /**
+   * @param client Posts the requests.
+   * @param apiKey The key to send with each request.
+   * @param endpointURl Where to send requests.
+   * @param auditLoggingEnabled Whether to log the json of each request.
+   * @param secondaryUserAgent Appended to the User-Agent, or null.
+   * @param useLicenseKey Whether the key is a license key rather than an insert key.
+   * @param concurrencyLimiter Limits the number of requests in flight, or null for no limit.
+   * @param circuitBreaker Stops sending while the endpoint keeps failing, or null to always send.
+   *     It must not be used for any other endpoint.
+   * @param maxPayloadBytes The largest compressed payload to send, or 0 for no limit. Larger
+   *     payloads fail with a {@link RetryWithSplitException} without being sent.
+   */
+  BatchDataSender(
+      HttpPoster client,
+      String apiKey,
+      URL endpointURl,
+      boolean auditLoggingEnabled,
+      String secondaryUserAgent,
+      boolean useLicenseKey,
+      AdaptiveConcurrencyLimiter concurrencyLimiter,
+      CircuitBreaker circuitBreaker,
+      int maxPayloadBytes) {
     this.client = client;
     this.apiKey = apiKey;
     this.endpointURl = endpointURl;
     this.auditLoggingEnabled = auditLoggingEnabled;
     this.userAgent = buildUserAgent(secondaryUserAgent);
     this.useLicenseKey = useLicenseKey;
+    this.concurrencyLimiter = concurrencyLimiter;
+    this.circuitBreaker = circuitBreaker;
+    if (circuitBreaker != null) {
+      circuitBreaker.bindTo(endpointURl);
+    }
+    this.maxPayloadBytes = maxPayloadBytes;
     logger.info("BatchDataSender configured with endpoint {}", endpointURl);
     if (auditLoggingEnabled) {
       logger.info("BatchDataSender configured with audit logging enabled.");
@@ -84,6 +163,11 @@ public class BatchDataSender {
     }
   }
 
+  /** @return The largest compressed payload this sender sends, or 0 for no limit. */
+  public int getMaxPayloadBytes() {
+    return maxPayloadBytes;
+  }
+
   private String buildUserAgent(String additionalUserAgent) {
     if (additionalUserAgent == null || additionalUserAgent.isEmpty()) {
       return BASE_USER_AGENT_VALUE;
@@ -99,25 +183,120 @@ public class BatchDataSender {
    * @return The response from the ingest API.
    * @throws RetryWithBackoffException Is the default case if the Ingest API responds with an error.
    * @throws DiscardBatchException In cases where the Ingest API responds with a 411.
-   * @throws RetryWithSplitException In cases where the Ingest API responds with a 413.
-   * @throws RetryWithRequestedWaitException In cases where the Ingest API responds with a 429.
+   * @throws RetryWithSplitException In cases where the Ingest API responds with a 413, or the
+   *     payload is over the max payload size.
+   * @throws RetryWithRequestedWaitException In cases where the Ingest API responds with a 429,
+   *     or a {@link CircuitOpenException} while the circuit breaker holds requests back.
    */
   public Response send(String json, TelemetryBatch<? extends Telemetry> batch)
       throws DiscardBatchException, RetryWithSplitException, RetryWithBackoffException,
           RetryWithRequestedWaitException {
     String batchType = batch.getClass().getSimpleName();
+    checkCircuit(batchType);
     if (auditLoggingEnabled) {
       logger.debug("Sending json for {} : {} ", batchType, json);
     }
-    byte[] payload = generatePayload(json, batchType);
+    byte[] payload = generatePayload(out -> out.write(json), batchType);
 
     return sendPayload(payload, batch.getUuid(), batchType);
   }
 
-  private byte[] generatePayload(String json, String batchType) throws DiscardBatchException {
+  /**
+   * Sends a compressed byte[] of telemetry to New Relic. The json is streamed by the provided writer
+   * directly into the compression stream, so the uncompressed payload is never held in memory.
+   *
+   * <p>The compressed payload is cached on the batch, so that retrying the same batch re-sends the
+   * bytes produced by the first attempt rather than marshalling and compressing it again. Batches
+   * produced by {@link TelemetryBatch#split()} start without a payload.
+   *
+   * @param payloadWriter Writes the json to send.
+   * @param batch The batch of telemetry the json is generated from
+   * @return The response from the ingest API.
+   * @throws RetryWithBackoffException Is the default case if the Ingest API responds with an error.
+   * @throws DiscardBatchException In cases where the Ingest API responds with a 411, or the json
+   *     could not be written.
+   * @throws RetryWithSplitException In cases where the Ingest API responds with a 413, or the
+   *     payload is over the max payload size.
+   * @throws RetryWithRequestedWaitException In cases where the Ingest API responds with a 429,
+   *     or a {@link CircuitOpenException} while the circuit breaker holds requests back.
+   */
+  public Response send(JsonPayloadWriter payloadWriter, TelemetryBatch<? extends Telemetry> batch)
+      throws DiscardBatchException, RetryWithSplitException, RetryWithBackoffException,
+          RetryWithRequestedWaitException {
+    EncodedPayload payload = batch.getEncodedPayload();
+    if (payload == null) {
+      // Don't bother encoding a batch that can't be sent yet.
+      checkCircuit(batch.getClass().getSimpleName());
+      payload = encode(payloadWriter, batch);
+      batch.setEncodedPayload(payload);
+    } else {
+      logger.debug("Reusing the encoded payload for {}", batch.getClass().getSimpleName());
+    }
+    return send(payload, batch);
+  }
+
+  /**
+   * Marshalls and compresses the json for a batch. When audit logging is enabled, the json is
+   * rendered to a String first so that it can be logged.
+   *
+   * @param payloadWriter Writes the json to encode.
+   * @param batch The batch of telemetry the json is generated from
+   * @return The compressed payload, ready to be sent.
+   * @throws DiscardBatchException If the json could not be written.
+   */
+  public EncodedPayload encode(
+      JsonPayloadWriter payloadWriter, TelemetryBatch<? extends Telemetry> batch)
+      throws DiscardBatchException {
+    String batchType = batch.getClass().getSimpleName();
+    if (auditLoggingEnabled) {
+      String json = renderJson(payloadWriter, batchType);
+      logger.debug("Sending json for {} : {} ", batchType, json);
+      return new EncodedPayload(generatePayload(out -> out.write(json), batchType), batch.size());
+    }
+    return new EncodedPayload(generatePayload(payloadWriter, batchType), batch.size());
+  }
+
+  /**
+   * Sends a previously encoded payload to New Relic.
+   *
+   * @param payload The compressed payload to send.
+   * @param batch The batch of telemetry the payload was generated from
+   * @return The response from the ingest API.
+   * @throws RetryWithBackoffException Is the default case if the Ingest API responds with an error.
+   * @throws DiscardBatchException In cases where the Ingest API responds with a 411.
+   * @throws RetryWithSplitException In cases where the Ingest API responds with a 413, or the
+   *     payload is over the max payload size.
+   * @throws RetryWithRequestedWaitException In cases where the Ingest API responds with a 429,
+   *     or a {@link CircuitOpenException} while the circuit breaker holds requests back.
+   */
+  public Response send(EncodedPayload payload, TelemetryBatch<? extends Telemetry> batch)
+      throws DiscardBatchException, RetryWithSplitException, RetryWithBackoffException,
+          RetryWithRequestedWaitException {
+    return sendPayload(
+        payload.getCompressedBytes(), batch.getUuid(), batch.getClass().getSimpleName());
+  }
+
+  private String renderJson(JsonPayloadWriter payloadWriter, String batchType)
+      throws DiscardBatchException {
+    StringWriter out = new StringWriter();
+    try {
+      payloadWriter.writeTo(out);
+    } catch (IOException e) {
+      logger.error(
+          "Failed to serialize the "
+              + batchType
+              + " for sending to the ingest API. Discard batch recommended.",
+          e);
+      throw new DiscardBatchException();
+    }
+    return out.toString();
+  }
+
+  private byte[] generatePayload(JsonPayloadWriter payloadWriter, String batchType)
+      throws DiscardBatchException {
     byte[] payload;
     try {
-      payload = compressJson(json);
+      payload = compressJson(payloadWriter);
     } catch (IOException e) {
       logger.error(
           "Failed to serialize the "
@@ -129,17 +308,240 @@ public class BatchDataSender {
     return payload;
   }
 
-  private byte[] compressJson(String result) throws IOException {
+  private byte[] compressJson(JsonPayloadWriter payloadWriter) throws IOException {
     ByteArrayOutputStream compressedOutput = new ByteArrayOutputStream();
-    GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedOutput);
-    gzipOutputStream.write(result.getBytes(StandardCharsets.UTF_8));
-    gzipOutputStream.close();
+    try (OutputStream out = new GZIPOutputStream(compressedOutput)) {
+      payloadWriter.writeUtf8To(out);
+    }
     return compressedOutput.toByteArray();
   }
 
   private Response sendPayload(byte[] payload, UUID requestId, String batchType)
       throws DiscardBatchException, RetryWithSplitException, RetryWithBackoffException,
           RetryWithRequestedWaitException {
+    verifyPayloadSize(payload.length, batchType);
+    acquireCircuit(batchType);
+    try {
+      acquirePermit(batchType);
+    } catch (RetryWithBackoffException e) {
+      releaseCircuit(NOT_SENT);
+      throw e;
+    }
+    long start = System.nanoTime();
+    Outcome outcome = Outcome.IGNORED;
+    int code = NOT_SENT;
+    try {
+      HttpResponse response =
+          client.post(endpointURl, buildHeaders(requestId), payload, MEDIA_TYPE);
+      code = response.getCode();
+      outcome = outcomeOf(code);
+      return handleResponse(response, batchType);
+    } catch (IOException e) {
+      outcome = Outcome.DROPPED;
+      code = IO_FAILURE;
+      throw ioFailure(e, batchType);
+    } finally {
+      releasePermit(outcome, start);
+      releaseCircuit(code);
+    }
+  }
+
+  /**
+   * Sends a previously encoded payload to New Relic without blocking the calling thread, when the
+   * {@link HttpPoster} is an {@link AsyncHttpPoster}. Otherwise, the payload is sent synchronously
+   * and the returned future is already complete.
+   *
+   * <p>When a {@link AdaptiveConcurrencyLimiter} is configured, this still waits for the limiter to
+   * allow another request in flight.
+   *
+   * @param payload The compressed payload to send.
+   * @param batch The batch of telemetry the payload was generated from
+   * @return The future response from the ingest API. On failure, the future completes exceptionally
+   *     with the same {@link ResponseException} that {@link #send(EncodedPayload, TelemetryBatch)}
+   *     would throw.
+   */
+  public CompletableFuture<Response> sendAsync(
+      EncodedPayload payload, TelemetryBatch<? extends Telemetry> batch) {
+    String batchType = batch.getClass().getSimpleName();
+    if (!(client instanceof AsyncHttpPoster)) {
+      CompletableFuture<Response> result = new CompletableFuture<>();
+      try {
+        result.complete(send(payload, batch));
+      } catch (ResponseException e) {
+        result.completeExceptionally(e);
+      }
+      return result;
+    }
+    AsyncHttpPoster asyncClient = (AsyncHttpPoster) client;
+    CompletableFuture<Response> result = new CompletableFuture<>();
+    try {
+      verifyPayloadSize(payload.size(), batchType);
+      acquireCircuit(batchType);
+    } catch (RetryWithSplitException | CircuitOpenException e) {
+      result.completeExceptionally(e);
+      return result;
+    }
+    try {
+      acquirePermit(batchType);
+    } catch (RetryWithBackoffException e) {
+      releaseCircuit(NOT_SENT);
+      result.completeExceptionally(e);
+      return result;
+    }
+    long start = System.nanoTime();
+    CompletableFuture<HttpResponse> posted;
+    try {
+      posted =
+          asyncClient.postAsync(
+              endpointURl, buildHeaders(batch.getUuid()), payload.getCompressedBytes(), MEDIA_TYPE);
+    } catch (RuntimeException e) {
+      releasePermit(Outcome.IGNORED, start);
+      releaseCircuit(NOT_SENT);
+      throw e;
+    }
+    posted.whenComplete(
+        (response, error) -> {
+          releasePermit(error == null ? outcomeOf(response.getCode()) : Outcome.DROPPED, start);
+          releaseCircuit(error == null ? response.getCode() : IO_FAILURE);
+          try {
+            if (error != null) {
+              Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+              throw ioFailure(
+                  cause instanceof IOException ? (IOException) cause : new IOException(cause),
+                  batchType);
+            }
+            result.complete(handleResponse(response, batchType));
+          } catch (ResponseException | RuntimeException e) {
+            result.completeExceptionally(e);
+          }
+        });
+    return result;
+  }
+
+  /**
+   * Encodes the batch, if it doesn't already carry an encoded payload, and sends it without
+   * blocking the calling thread. See {@link #send(JsonPayloadWriter, TelemetryBatch)} and {@link
+   * #sendAsync(EncodedPayload, TelemetryBatch)}.
+   *
+   * @param payloadWriter Writes the json to send.
+   * @param batch The batch of telemetry the json is generated from
+   * @return The future response from the ingest API.
+   */
+  public CompletableFuture<Response> sendAsync(
+      JsonPayloadWriter payloadWriter, TelemetryBatch<? extends Telemetry> batch) {
+    EncodedPayload payload = batch.getEncodedPayload();
+    if (payload == null) {
+      try {
+        checkCircuit(batch.getClass().getSimpleName());
+        payload = encode(payloadWriter, batch);
+      } catch (CircuitOpenException | DiscardBatchException e) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        result.completeExceptionally(e);
+        return result;
+      }
+      batch.setEncodedPayload(payload);
+    }
+    return sendAsync(payload, batch);
+  }
+
+  /**
+   * Fails a payload that the ingest API would reject with a 413 before uploading it. The batch
+   * keeps the payload, so that its size can be used to decide how to split the batch.
+   */
+  private void verifyPayloadSize(int size, String batchType) throws RetryWithSplitException {
+    if (maxPayloadBytes > 0 && size > maxPayloadBytes) {
+      logger.debug(
+          "The {} payload is {} bytes, over the limit of {}. Split recommended.",
+          batchType,
+          size,
+          maxPayloadBytes);
+      throw new RetryWithSplitException();
+    }
+  }
+
+  /** Fails fast, without claiming a probe, if the circuit breaker would hold a request back. */
+  private void checkCircuit(String batchType) throws CircuitOpenException {
+    if (circuitBreaker != null) {
+      throwIfOpen(circuitBreaker.peek(), batchType);
+    }
+  }
+
+  private void acquireCircuit(String batchType) throws CircuitOpenException {
+    if (circuitBreaker != null) {
+      throwIfOpen(circuitBreaker.tryAcquire(), batchType);
+    }
+  }
+
+  private void throwIfOpen(long waitNanos, String batchType) throws CircuitOpenException {
+    if (waitNanos > 0) {
+      logger.debug("Circuit to {} is open. Not sending {}", endpointURl, batchType);
+      // Round up, so that the wait is never zero.
+      throw new CircuitOpenException(
+          (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1),
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void releaseCircuit(int code) {
+    if (circuitBreaker == null) {
+      return;
+    }
+    if (code == NOT_SENT) {
+      circuitBreaker.onIgnored();
+    } else if (code == IO_FAILURE || code >= 500) {
+      circuitBreaker.onFailure();
+    } else {
+      circuitBreaker.onSuccess();
+    }
+  }
+
+  private void acquirePermit(String batchType) throws RetryWithBackoffException {
+    if (concurrencyLimiter == null) {
+      return;
+    }
+    try {
+      concurrencyLimiter.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RetryWithBackoffException(
+          "Interrupted while waiting to send " + batchType + ". Retry recommended", e);
+    }
+  }
+
+  private void releasePermit(Outcome outcome, long start) {
+    if (concurrencyLimiter == null) {
+      return;
+    }
+    switch (outcome) {
+      case SUCCEEDED:
+        concurrencyLimiter.onSuccess(System.nanoTime() - start);
+        break;
+      case DROPPED:
+        concurrencyLimiter.onDropped(System.nanoTime() - start);
+        break;
+      default:
+        concurrencyLimiter.onIgnored();
+    }
+  }
+
+  /** What a response says about the load on the endpoint. */
+  private static Outcome outcomeOf(int code) {
+    if (code == 200 || code == 202) {
+      return Outcome.SUCCEEDED;
+    }
+    if (code == 429 || code >= 500) {
+      return Outcome.DROPPED;
+    }
+    return Outcome.IGNORED;
+  }
+
+  private enum Outcome {
+    SUCCEEDED,
+    DROPPED,
+    IGNORED
+  }
+
+  private Map<String, String> buildHeaders(UUID requestId) {
     Map<String, String> headers = new HashMap<>();
     if (useLicenseKey) {
       headers.put("X-License-Key", apiKey);
@@ -151,55 +553,60 @@ public class BatchDataSender {
       headers.put("X-Request-Id", requestId.toString());
     }
     headers.put("User-Agent", userAgent);
-    try {
-      HttpResponse response = client.post(endpointURl, headers, payload, MEDIA_TYPE);
-      String responseBody = response.getBody();
-      logger.debug(
-          "Response from New Relic ingest API for {}: code: {}, body: {}",
-          batchType,
-          response.getCode(),
-          response.getBody());
-      // Both response codes need to be catered for at this point - the events endpoint uses 200
-      // whereas the metrics endpoint uses 202
-      if (response.getCode() == 202 || response.getCode() == 200) {
-        return new Response(response.getCode(), response.getMessage(), responseBody);
-      }
-      switch (response.getCode()) {
-        case 400:
-        case 403:
-        case 404:
-        case 405:
-        case 411:
-          logger.warn(
-              "Response from New Relic ingest API. Discarding {} recommended.: code: {}, body: {}",
-              batchType,
-              response.getCode(),
-              responseBody);
-          throw new DiscardBatchException();
-        case 413:
-          logger.warn(
-              "Response from New Relic ingest API. Retry {} with split recommended.: code: {}, body: {}",
-              batchType,
-              response.getCode(),
-              responseBody);
-          throw new RetryWithSplitException();
-        case 429:
-          return handle429(response, responseBody, batchType);
-        default:
-          logger.error(
-              "Response from New Relic ingest API. {} retry recommended. : code: {}, body: {}",
-              batchType,
-              response.getCode(),
-              responseBody);
-          throw new RetryWithBackoffException();
-      }
-    } catch (IOException e) {
-      String message =
-          String.format(
-              "IOException (message: %s, cause: %s) while trying to send data to New Relic. %s retry recommended",
-              e.getMessage(), e.getCause(), batchType);
-      logger.warn(message);
-      throw new RetryWithBackoffException(message, e);
+    return headers;
+  }
+
+  private RetryWithBackoffException ioFailure(IOException e, String batchType) {
+    String message =
+        String.format(
+            "IOException (message: %s, cause: %s) while trying to send data to New Relic. %s retry recommended",
+            e.getMessage(), e.getCause(), batchType);
+    logger.warn(message);
+    return new RetryWithBackoffException(message, e);
+  }
+
+  private Response handleResponse(HttpResponse response, String batchType)
+      throws DiscardBatchException, RetryWithSplitException, RetryWithBackoffException,
+          RetryWithRequestedWaitException {
+    String responseBody = response.getBody();
+    logger.debug(
+        "Response from New Relic ingest API for {}: code: {}, body: {}",
+        batchType,
+        response.getCode(),
+        response.getBody());
+    // Both response codes need to be catered for at this point - the events endpoint uses 200
+    // whereas the metrics endpoint uses 202
+    if (response.getCode() == 202 || response.getCode() == 200) {
+      return new Response(response.getCode(), response.getMessage(), responseBody);
+    }
+    switch (response.getCode()) {
+      case 400:
+      case 403:
+      case 404:
+      case 405:
+      case 411:
+        logger.warn(
+            "Response from New Relic ingest API. Discarding {} recommended.: code: {}, body: {}",
+            batchType,
+            response.getCode(),
+            responseBody);
+        throw new DiscardBatchException();
+      case 413:
+        logger.warn(
+            "Response from New Relic ingest API. Retry {} with split recommended.: code: {}, body: {}",
+            batchType,
+            response.getCode(),
+            responseBody);
+        throw new RetryWithSplitException();
+      case 429:
+        return handle429(response, responseBody, batchType);
+      default:
+        logger.error(
+            "Response from New Relic ingest API. {} retry recommended. : code: {}, body: {}",
+            batchType,
+            response.getCode(),
+            responseBody);
+        throw new RetryWithBackoffException();
     }
   }
 
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops sending to an ingest endpoint that keeps failing, so that batches for it aren't encoded
+ * and posted only to wait out a timeout or get a 5xx back.
+ *
+ * <ul>
+ *   <li>While {@link State#CLOSED closed}, every request is sent. A number of consecutive failures
+ *       (5xx responses or I/O errors) opens the breaker.
+ *   <li>While {@link State#OPEN open}, no request is sent, until the open duration has passed.
+ *   <li>Then the breaker is {@link State#HALF_OPEN half-open}, and lets a single probe request
+ *       through. If the probe gets a response other than a 5xx, the breaker closes again;
+ *       otherwise, it opens for another open duration.
+ * </ul>
+ *
+ * <p>Configure one breaker per endpoint with {@link
+ * com.newrelic.telemetry.SenderConfiguration.SenderConfigurationBuilder#circuitBreaker}. A breaker
+ * can't be shared by senders for different endpoints, since one endpoint failing would then stop
+ * sending to all of them. A request
+ * that the breaker holds back fails with a {@link
+ * com.newrelic.telemetry.exceptions.CircuitOpenException}, which the {@link
+ * com.newrelic.telemetry.TelemetryClient} handles by pausing every batch for the endpoint until a
+ * probe may be sent.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class CircuitBreaker {
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+  // How long requests wait while a probe is in flight.
+  private static final long PROBE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openDurationNanos;
+  private final LongSupplier nanoClock;
+
+  // Guarded by this.
+  private String endpoint;
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean probeInFlight;
+
+  private CircuitBreaker(Builder builder) {
+    this.failureThreshold = builder.failureThreshold;
+    this.openDurationNanos = builder.openDurationNanos;
+    this.nanoClock = builder.nanoClock;
+  }
+
+  /** @return A new builder, for a breaker that opens after 5 failures, for 30 seconds. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Checks whether a request could be sent now, without claiming the probe when half-open.
+   *
+   * @return 0 if a request could be sent, otherwise how many nanoseconds to wait before trying
+   *     again
+   */
+  public synchronized long peek() {
+    return waitNanos(nanoClock.getAsLong());
+  }
+
+  /**
+   * Claims the right to send a request. When the breaker is half-open, this claims the single
+   * probe. Each successful call must be followed by exactly one call to {@link #onSuccess()},
+   * {@link #onFailure()} or {@link #onIgnored()}.
+   *
+   * @return 0 if the request may be sent, otherwise how many nanoseconds to wait before trying
+   *     again
+   */
+  public synchronized long tryAcquire() {
+    long now = nanoClock.getAsLong();
+    long wait = waitNanos(now);
+    if (wait == 0 && state != State.CLOSED) {
+      state = State.HALF_OPEN;
+      probeInFlight = true;
+    }
+    return wait;
+  }
+
+  /** Records a request that the endpoint responded to with anything but a 5xx. */
+  public synchronized void onSuccess() {
+    consecutiveFailures = 0;
+    if (state != State.CLOSED) {
+      logger.info("Circuit breaker closed");
+      state = State.CLOSED;
+      probeInFlight = false;
+    }
+  }
+
+  /** Records a request that failed with a 5xx response or an I/O error. */
+  public synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.OPEN) {
+      // A request sent before the breaker opened; it doesn't extend the open duration.
+      return;
+    }
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      logger.warn(
+          "Circuit breaker opened after {} consecutive failures. Not sending for {} ms",
+          consecutiveFailures,
+          TimeUnit.NANOSECONDS.toMillis(openDurationNanos));
+      state = State.OPEN;
+      openedAt = nanoClock.getAsLong();
+      probeInFlight = false;
+    }
+  }
+
+  /** Records a request that wasn't sent after all. */
+  public synchronized void onIgnored() {
+    probeInFlight = false;
+  }
+
+  /**
+   * Ties this breaker to the endpoint of the sender that uses it.
+   *
+   * @throws IllegalArgumentException if the breaker is already used for another endpoint
+   */
+  synchronized void bindTo(URL endpointUrl) {
+    // Compared as strings, since URL.equals resolves host names.
+    String url = String.valueOf(endpointUrl);
+    if (endpoint == null) {
+      endpoint = url;
+    } else if (!endpoint.equals(url)) {
+      throw new IllegalArgumentException(
+          "This circuit breaker is already used for "
+              + endpoint
+              + ". Each endpoint needs its own breaker: "
+              + url);
+    }
+  }
+
+  /** @return The current state, for monitoring. */
+  public synchronized State getState() {
+    if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openDurationNanos) {
+      return State.HALF_OPEN;
+    }
+    return state;
+  }
+
+  private long waitNanos(long now) {
+    switch (state) {
+      case OPEN:
+        return Math.max(0, openDurationNanos - (now - openedAt));
+      case HALF_OPEN:
+        return probeInFlight ? Math.min(PROBE_WAIT_NANOS, openDurationNanos) : 0;
+      default:
+        return 0;
+    }
+  }
+
+  public static final class Builder {
+    private int failureThreshold = 5;
+    private long openDurationNanos = TimeUnit.SECONDS.toNanos(30);
+    private LongSupplier nanoClock = System::nanoTime;
+
+    private Builder() {}
+
+    /**
+     * @param failureThreshold the number of consecutive failures that opens the breaker. Defaults
+     *     to 5.
+     * @return this builder
+     */
+    public Builder failureThreshold(int failureThreshold) {
+      if (failureThreshold < 1) {
+        throw new IllegalArgumentException(
+            "failureThreshold must be at least 1: " + failureThreshold);
+      }
+      this.failureThreshold = failureThreshold;
+      return this;
+    }
+
+    /**
+     * @param openDuration how long the breaker stays open before letting a probe through. Defaults
+     *     to 30 seconds.
+     * @param unit the unit of the duration
+     * @return this builder
+     */
+    public Builder openDuration(long openDuration, TimeUnit unit) {
+      if (openDuration <= 0) {
+        throw new IllegalArgumentException("openDuration must be positive: " + openDuration);
+      }
+      this.openDurationNanos = unit.toNanos(openDuration);
+      return this;
+    }
+
+    Builder nanoClock(LongSupplier nanoClock) {
+      this.nanoClock = nanoClock;
+      return this;
+    }
+
+    public CircuitBreaker build() {
+      return new CircuitBreaker(this);
+    }
+  }
+}
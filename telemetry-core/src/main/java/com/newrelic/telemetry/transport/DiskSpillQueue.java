@@ -0,0 +1,637 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import com.newrelic.telemetry.TelemetryType;
+import com.newrelic.telemetry.util.Utils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A queue of encoded payloads on disk, for batches that can't be sent or held in memory, so that
+ * an ingest outage of minutes to hours doesn't have to be ridden out on the heap. See {@link
+ * com.newrelic.telemetry.TelemetryClient.Builder#spillQueue(DiskSpillQueue)}.
+ *
+ * <p>Payloads are appended, already compressed, to memory-mapped segment files in a directory of
+ * their own, oldest first. They can be taken oldest first overall, or oldest first of one type of
+ * telemetry, so that the payloads for an endpoint that is down don't hold back those for the
+ * others. Taking a payload from the queue only marks it as consumed; a segment file is deleted
+ * once every payload in it has been consumed. Since the files outlive the process,
+ * payloads spilled before a restart are found again by the next queue built on the same directory.
+ *
+ * <p>The queue is bounded in two ways:
+ *
+ * <ul>
+ *   <li>by {@link Builder#maxDiskBytes(long) disk size}: when a new segment would go over it, the
+ *       oldest segments are deleted, payloads and all, and
+ *   <li>by {@link Builder#maxAge(long, TimeUnit) age}: payloads older than the max age are skipped
+ *       rather than returned, since the ingest API would likely reject their timestamps anyway.
+ * </ul>
+ *
+ * <p>Discarded payloads are counted by {@link #getEvictedCount()}. Each payload is flushed to disk
+ * when it is added. Segment files are unmapped when they are deleted and when the queue is
+ * closed, on Java 9 and later; on Java 8, the mapping is only released once the garbage collector
+ * gets to it. This class is thread-safe; a directory must only be used by one queue at a
+ * time.
+ */
+public final class DiskSpillQueue implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(DiskSpillQueue.class);
+  private static final String SEGMENT_SUFFIX = ".spill";
+  private static final int MAGIC = 0x4e525350; // "NRSP"
+  private static final int SEGMENT_HEADER_BYTES = 4;
+  // length (4), state (1), type (1), item count (4), spilled at (8), followed by the payload. The
+  // length is written last, so that a record cut short by a crash is never read.
+  private static final int RECORD_HEADER_BYTES = 18;
+  private static final byte PENDING = 1;
+  private static final byte CONSUMED = 2;
+  private static final Unmapper UNMAPPER = Unmapper.find();
+
+  private final Path directory;
+  private final long maxDiskBytes;
+  private final long maxAgeMillis;
+  private final int segmentBytes;
+  private final LongSupplier clock;
+
+  // Guarded by this. Oldest first; only the last segment is appended to.
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private long nextSequence;
+  private long diskBytes;
+  private int size;
+  private long evicted;
+  private boolean closed;
+  // How far the scans for the oldest payload, of any type and of each type, have got.
+  private final Cursor anyCursor = new Cursor(null);
+  private final Map<TelemetryType, Cursor> typeCursors = new EnumMap<>(TelemetryType.class);
+
+  private DiskSpillQueue(Builder builder) throws IOException {
+    this.directory = builder.directory;
+    this.maxDiskBytes = builder.maxDiskBytes;
+    this.maxAgeMillis = builder.maxAgeMillis;
+    this.segmentBytes = builder.segmentBytes;
+    this.clock = builder.clock;
+    for (TelemetryType type : TelemetryType.values()) {
+      typeCursors.put(type, new Cursor(type));
+    }
+    Files.createDirectories(directory);
+    openExistingSegments();
+  }
+
+  /**
+   * @param directory The directory to keep segment files in, created if needed. Payloads spilled
+   *     to it by a previous process are picked up.
+   * @return A new builder, for a queue of at most 256MB, keeping payloads for up to 24 hours.
+   */
+  public static Builder builder(Path directory) {
+    return new Builder(directory);
+  }
+
+  /**
+   * Appends a payload to the queue, deleting the oldest segments if that's needed to stay under
+   * the max disk size.
+   *
+   * @param type The type of telemetry in the payload, which decides where it is sent.
+   * @param payload The encoded payload.
+   * @return true if the payload was written to disk, false if it is larger than the max disk size,
+   *     the queue is closed, or the write failed
+   */
+  public synchronized boolean offer(TelemetryType type, EncodedPayload payload) {
+    Utils.verifyNonNull(type);
+    Utils.verifyNonNull(payload);
+    if (closed || payload.size() == 0) {
+      return false;
+    }
+    int recordBytes = RECORD_HEADER_BYTES + payload.size();
+    Segment tail = segments.peekLast();
+    if (tail == null || tail.remaining() < recordBytes) {
+      Segment full = tail;
+      long capacity = Math.max(segmentBytes, (long) SEGMENT_HEADER_BYTES + recordBytes);
+      if (capacity > maxDiskBytes || capacity > Integer.MAX_VALUE) {
+        logger.warn("Not spilling a payload of {} bytes, over the max disk size", payload.size());
+        return false;
+      }
+      while (!segments.isEmpty() && diskBytes + capacity > maxDiskBytes) {
+        evict(segments.pollFirst(), "the spill directory is full");
+      }
+      try {
+        tail = createSegment((int) capacity);
+      } catch (IOException e) {
+        logger.warn("Failed to create a spill segment in " + directory, e);
+        return false;
+      }
+      if (full != null) {
+        // Only the last segment is kept once it has been consumed, since it is appended to.
+        deleteIfConsumed(full);
+      }
+    }
+    tail.append(type, payload, clock.getAsLong());
+    size++;
+    return true;
+  }
+
+  /**
+   * @return The oldest payload in the queue that isn't over the max age, without removing it, or
+   *     null if there is none.
+   */
+  public synchronized Entry peek() {
+    return peek(anyCursor);
+  }
+
+  /**
+   * @param type A type of telemetry.
+   * @return The oldest payload of the type in the queue that isn't over the max age, without
+   *     removing it, or null if there is none.
+   */
+  public synchronized Entry peek(TelemetryType type) {
+    return peek(typeCursors.get(Utils.verifyNonNull(type)));
+  }
+
+  /**
+   * Removes the oldest payload in the queue that isn't over the max age. Once removed, a payload
+   * isn't returned again, not even by a queue built on the same directory after a restart.
+   *
+   * @return The payload, or null if there is none.
+   */
+  public synchronized Entry poll() {
+    return poll(anyCursor);
+  }
+
+  /**
+   * Removes the oldest payload of a type in the queue that isn't over the max age, as for {@link
+   * #poll()}. Payloads of other types are left where they are.
+   *
+   * @param type A type of telemetry.
+   * @return The payload, or null if there is none.
+   */
+  public synchronized Entry poll(TelemetryType type) {
+    return poll(typeCursors.get(Utils.verifyNonNull(type)));
+  }
+
+  private Entry peek(Cursor cursor) {
+    if (cursor.next != null || closed) {
+      return cursor.next;
+    }
+    long oldestAllowed = clock.getAsLong() - maxAgeMillis;
+    // A copy, since consuming the last payload in a segment deletes it.
+    for (Segment segment : new ArrayList<>(segments)) {
+      if (segment.sequence < cursor.sequence) {
+        continue;
+      }
+      if (segment.sequence > cursor.sequence) {
+        cursor.sequence = segment.sequence;
+        cursor.offset = SEGMENT_HEADER_BYTES;
+      }
+      while (!segment.deleted && cursor.offset < segment.writePosition) {
+        int offset = cursor.offset;
+        cursor.offset = offset + RECORD_HEADER_BYTES + segment.buffer.getInt(offset);
+        if (segment.buffer.get(offset + 4) != PENDING) {
+          continue;
+        }
+        // Any scan skips payloads that can never be returned, whatever their type.
+        if (!segment.hasKnownType(offset) || segment.spilledAt(offset) < oldestAllowed) {
+          consume(segment, offset);
+          evicted++;
+          continue;
+        }
+        if (cursor.type != null && segment.typeOrdinal(offset) != cursor.type.ordinal()) {
+          continue;
+        }
+        cursor.next = segment.read(offset);
+        cursor.nextSegment = segment;
+        cursor.nextOffset = offset;
+        return cursor.next;
+      }
+      // Segments a restart found already consumed.
+      deleteIfConsumed(segment);
+    }
+    return null;
+  }
+
+  private Entry poll(Cursor cursor) {
+    Entry entry = peek(cursor);
+    if (entry != null) {
+      consume(cursor.nextSegment, cursor.nextOffset);
+    }
+    return entry;
+  }
+
+  private void consume(Segment segment, int offset) {
+    segment.consume(offset);
+    size--;
+    forget(cursor -> cursor.nextSegment == segment && cursor.nextOffset == offset);
+    deleteIfConsumed(segment);
+  }
+
+  private void deleteIfConsumed(Segment segment) {
+    if (segment.pending == 0 && !segment.deleted && segment != segments.peekLast()) {
+      segments.remove(segment);
+      delete(segment);
+    }
+  }
+
+  // Drops the payloads cursors have peeked at, so that they are found again, or not, by the next
+  // peek.
+  private void forget(Predicate<Cursor> which) {
+    if (which.test(anyCursor)) {
+      anyCursor.forget();
+    }
+    for (Cursor cursor : typeCursors.values()) {
+      if (which.test(cursor)) {
+        cursor.forget();
+      }
+    }
+  }
+
+  /**
+   * @return The number of payloads in the queue, including any that are over the max age but
+   *     haven't been skipped yet.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** @return The number of bytes taken up by the segment files. */
+  public synchronized long getDiskBytes() {
+    return diskBytes;
+  }
+
+  /**
+   * @return The number of payloads discarded without being returned, because they were over the
+   *     max age or the max disk size.
+   */
+  public synchronized long getEvictedCount() {
+    return evicted;
+  }
+
+  /**
+   * Flushes the segment files and closes the queue. Payloads still in the queue stay on disk, for
+   * the next queue built on the same directory.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Segment segment : segments) {
+      segment.buffer.force();
+      UNMAPPER.unmap(segment.buffer);
+    }
+    segments.clear();
+    forget(cursor -> true);
+  }
+
+  private void openExistingSegments() throws IOException {
+    List<Path> paths = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      files.forEach(paths::add);
+    }
+    // Zero-padded sequence numbers sort in the order the segments were created.
+    Collections.sort(paths);
+    for (Path path : paths) {
+      Segment segment = openSegment(path);
+      if (segment == null) {
+        logger.warn("Deleting unreadable spill segment {}", path);
+        Files.deleteIfExists(path);
+        continue;
+      }
+      segments.addLast(segment);
+      diskBytes += segment.capacity;
+      size += segment.pending;
+      nextSequence = Math.max(nextSequence, segment.sequence + 1);
+    }
+    if (size > 0) {
+      logger.info("Found {} spilled payloads in {}", size, directory);
+    }
+  }
+
+  private static Segment openSegment(Path path) throws IOException {
+    String name = path.getFileName().toString();
+    long sequence;
+    try {
+      sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    try (FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long capacity = channel.size();
+      if (capacity < SEGMENT_HEADER_BYTES || capacity > Integer.MAX_VALUE) {
+        return null;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      if (buffer.getInt(0) != MAGIC) {
+        return null;
+      }
+      Segment segment = new Segment(sequence, path, buffer);
+      segment.scan();
+      return segment;
+    }
+  }
+
+  private Segment createSegment(int capacity) throws IOException {
+    long sequence = nextSequence++;
+    Path path = directory.resolve(String.format("%019d%s", sequence, SEGMENT_SUFFIX));
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      // Mapping past the end of the file grows it, filled with zeros.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      buffer.putInt(0, MAGIC);
+      Segment segment = new Segment(sequence, path, buffer);
+      segments.addLast(segment);
+      diskBytes += capacity;
+      return segment;
+    }
+  }
+
+  private void evict(Segment segment, String reason) {
+    if (segment.pending > 0) {
+      logger.warn("Discarding {} spilled payloads, because {}", segment.pending, reason);
+    }
+    size -= segment.pending;
+    evicted += segment.pending;
+    delete(segment);
+  }
+
+  private void delete(Segment segment) {
+    segment.deleted = true;
+    forget(cursor -> cursor.nextSegment == segment);
+    // The segment is no longer in the deque, so nothing reads its buffer after this.
+    UNMAPPER.unmap(segment.buffer);
+    diskBytes -= segment.capacity;
+    try {
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      logger.warn("Failed to delete spill segment " + segment.path, e);
+    }
+  }
+
+  /** A payload taken from the queue. */
+  public static final class Entry {
+    private final TelemetryType type;
+    private final EncodedPayload payload;
+    private final long spilledAt;
+
+    Entry(TelemetryType type, EncodedPayload payload, long spilledAt) {
+      this.type = type;
+      this.payload = payload;
+      this.spilledAt = spilledAt;
+    }
+
+    /** @return The type of telemetry in the payload. */
+    public TelemetryType getType() {
+      return type;
+    }
+
+    public EncodedPayload getPayload() {
+      return payload;
+    }
+
+    /** @return When the payload was spilled, in milliseconds since the epoch. */
+    public long getSpilledAt() {
+      return spilledAt;
+    }
+  }
+
+  private static final class Segment {
+    private final long sequence;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int writePosition = SEGMENT_HEADER_BYTES;
+    private int pending;
+    private boolean deleted;
+
+    Segment(long sequence, Path path, MappedByteBuffer buffer) {
+      this.sequence = sequence;
+      this.path = path;
+      this.buffer = buffer;
+      this.capacity = buffer.capacity();
+    }
+
+    int remaining() {
+      return capacity - writePosition;
+    }
+
+    /** Finds the end of the records in a segment written by an earlier queue. */
+    void scan() {
+      while (remaining() >= RECORD_HEADER_BYTES) {
+        int length = buffer.getInt(writePosition);
+        if (length <= 0 || length > remaining() - RECORD_HEADER_BYTES) {
+          break;
+        }
+        if (buffer.get(writePosition + 4) == PENDING) {
+          pending++;
+        }
+        writePosition += RECORD_HEADER_BYTES + length;
+      }
+    }
+
+    void append(TelemetryType type, EncodedPayload payload, long now) {
+      int offset = writePosition;
+      buffer.put(offset + 4, PENDING);
+      buffer.put(offset + 5, (byte) type.ordinal());
+      buffer.putInt(offset + 6, payload.getItemCount());
+      buffer.putLong(offset + 10, now);
+      ByteBuffer body = buffer.duplicate();
+      body.position(offset + RECORD_HEADER_BYTES);
+      body.put(payload.getCompressedBytes());
+      buffer.putInt(offset, payload.size());
+      buffer.force();
+      writePosition = offset + RECORD_HEADER_BYTES + payload.size();
+      pending++;
+    }
+
+    int typeOrdinal(int offset) {
+      return buffer.get(offset + 5);
+    }
+
+    boolean hasKnownType(int offset) {
+      int typeOrdinal = typeOrdinal(offset);
+      return typeOrdinal >= 0 && typeOrdinal < TelemetryType.values().length;
+    }
+
+    long spilledAt(int offset) {
+      return buffer.getLong(offset + 10);
+    }
+
+    /** @return The record at the offset, which must be of a known type. */
+    Entry read(int offset) {
+      byte[] bytes = new byte[buffer.getInt(offset)];
+      ByteBuffer body = buffer.duplicate();
+      body.position(offset + RECORD_HEADER_BYTES);
+      body.get(bytes);
+      return new Entry(
+          TelemetryType.values()[typeOrdinal(offset)],
+          new EncodedPayload(bytes, buffer.getInt(offset + 6)),
+          spilledAt(offset));
+    }
+
+    void consume(int offset) {
+      buffer.put(offset + 4, CONSUMED);
+      pending--;
+    }
+  }
+
+  /** How far a scan for the oldest payload, of one type or of any, has got. */
+  private static final class Cursor {
+    // The type of payload to find, or null for any.
+    private final TelemetryType type;
+    // Records before this offset in the segment with this sequence number, and all records in
+    // earlier segments, have been skipped or consumed.
+    private long sequence = -1;
+    private int offset;
+    // The payload found by the last peek, so that the following poll needn't read it again.
+    private Entry next;
+    private Segment nextSegment;
+    private int nextOffset;
+
+    Cursor(TelemetryType type) {
+      this.type = type;
+    }
+
+    void forget() {
+      next = null;
+      nextSegment = null;
+    }
+  }
+
+  /**
+   * Releases the memory and file handle of a mapped buffer right away, rather than when it is
+   * garbage collected, so that a deleted segment stops taking up space. The SDK is built for Java
+   * 8, so {@code Unsafe.invokeCleaner}, added in Java 9, is looked up reflectively, once.
+   */
+  private static final class Unmapper {
+    private final Object unsafe;
+    private final Method invokeCleaner;
+
+    private Unmapper(Object unsafe, Method invokeCleaner) {
+      this.unsafe = unsafe;
+      this.invokeCleaner = invokeCleaner;
+    }
+
+    static Unmapper find() {
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        return new Unmapper(
+            theUnsafe.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        return new Unmapper(null, null);
+      }
+    }
+
+    /** The buffer must not be used afterwards. */
+    void unmap(MappedByteBuffer buffer) {
+      if (invokeCleaner == null) {
+        return;
+      }
+      try {
+        invokeCleaner.invoke(unsafe, buffer);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        logger.debug("Failed to unmap a spill segment", e);
+      }
+    }
+  }
+
+  public static final class Builder {
+    private final Path directory;
+    private long maxDiskBytes = 256L * 1024 * 1024;
+    private long maxAgeMillis = TimeUnit.HOURS.toMillis(24);
+    private int segmentBytes = 16 * 1024 * 1024;
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private Builder(Path directory) {
+      this.directory = Utils.verifyNonNull(directory);
+    }
+
+    /**
+     * @param maxDiskBytes the max number of bytes of segment files. Defaults to 256MB.
+     * @return this builder
+     */
+    public Builder maxDiskBytes(long maxDiskBytes) {
+      if (maxDiskBytes <= 0) {
+        throw new IllegalArgumentException("maxDiskBytes must be positive: " + maxDiskBytes);
+      }
+      this.maxDiskBytes = maxDiskBytes;
+      return this;
+    }
+
+    /**
+     * @param maxAge how long a payload is kept before it is discarded. Defaults to 24 hours.
+     * @param unit the unit of the max age
+     * @return this builder
+     */
+    public Builder maxAge(long maxAge, TimeUnit unit) {
+      if (maxAge <= 0) {
+        throw new IllegalArgumentException("maxAge must be positive: " + maxAge);
+      }
+      this.maxAgeMillis = unit.toMillis(maxAge);
+      return this;
+    }
+
+    /**
+     * @param segmentBytes the size of each segment file, which must not be over the max disk size.
+     *     A payload larger than this gets a segment to itself. Defaults to 16MB.
+     * @return this builder
+     */
+    public Builder segmentBytes(int segmentBytes) {
+      if (segmentBytes <= SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES) {
+        throw new IllegalArgumentException("segmentBytes is too small: " + segmentBytes);
+      }
+      this.segmentBytes = segmentBytes;
+      return this;
+    }
+
+    Builder clock(LongSupplier clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * @return a new queue, with any payloads left in the directory by an earlier one
+     * @throws IOException if the directory can't be created or read
+     * @throws IllegalArgumentException if the segment size is over the max disk size, since then
+     *     no payload could be spilled
+     */
+    public DiskSpillQueue build() throws IOException {
+      if (segmentBytes > maxDiskBytes) {
+        throw new IllegalArgumentException(
+            "segmentBytes (" + segmentBytes + ") is over maxDiskBytes (" + maxDiskBytes + ")");
+      }
+      return new DiskSpillQueue(this);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import com.newrelic.telemetry.util.Utils;
+
+/**
+ * The compressed, ready-to-post body generated for a batch. A payload is produced once per batch
+ * and then reused for every retry of that batch, so that retries don't pay to marshall and compress
+ * the same data again.
+ *
+ * <p>Instances are immutable. The backing array is shared and must not be modified.
+ */
+public final class EncodedPayload {
+
+  private final byte[] compressedBytes;
+  private final int itemCount;
+
+  public EncodedPayload(byte[] compressedBytes) {
+    this(compressedBytes, 0);
+  }
+
+  /**
+   * @param compressedBytes The gzipped json body.
+   * @param itemCount The number of telemetry items in the body, or 0 if unknown.
+   */
+  public EncodedPayload(byte[] compressedBytes, int itemCount) {
+    this.compressedBytes = Utils.verifyNonNull(compressedBytes);
+    this.itemCount = itemCount;
+  }
+
+  /** @return The gzipped json body, as sent to the ingest API. */
+  public byte[] getCompressedBytes() {
+    return compressedBytes;
+  }
+
+  /** @return The number of compressed bytes in this payload. */
+  public int size() {
+    return compressedBytes.length;
+  }
+
+  /**
+   * @return The number of telemetry items in this payload, or 0 if unknown. Lets a payload that
+   *     has outlived its batch be counted like one.
+   */
+  public int getItemCount() {
+    return itemCount;
+  }
+
+  @Override
+  public String toString() {
+    return "EncodedPayload{" + "size=" + compressedBytes.length + ", itemCount=" + itemCount + '}';
+  }
+}
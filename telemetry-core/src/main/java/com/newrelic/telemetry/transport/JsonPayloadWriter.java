@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the JSON document for a batch directly to a character stream. This lets the {@link
+ * BatchDataSender} chain marshalling straight into the compression stream, without ever holding the
+ * whole uncompressed payload in memory.
+ */
+@FunctionalInterface
+public interface JsonPayloadWriter {
+
+  /**
+   * Write the full JSON document to the provided stream. Implementations must not close the stream.
+   *
+   * @param out the stream to write to
+   * @throws IOException if the underlying stream fails
+   */
+  void writeTo(Writer out) throws IOException;
+
+  /**
+   * Write the full JSON document to the provided stream, encoded as UTF-8. By default, the document
+   * written by {@link #writeTo(Writer)} is encoded through a buffered {@link OutputStreamWriter}.
+   * Implementations must not close the stream.
+   *
+   * @param out the stream to write to
+   * @throws IOException if the underlying stream fails
+   */
+  default void writeUtf8To(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writeTo(writer);
+    writer.flush();
+  }
+
+  /**
+   * @param chars Writes the document as chars.
+   * @param utf8 Writes the same document directly as UTF-8 bytes.
+   * @return A payload writer that writes the document with {@code utf8} whenever the caller wants
+   *     bytes.
+   */
+  static JsonPayloadWriter of(JsonPayloadWriter chars, Utf8Writer utf8) {
+    return new JsonPayloadWriter() {
+      @Override
+      public void writeTo(Writer out) throws IOException {
+        chars.writeTo(out);
+      }
+
+      @Override
+      public void writeUtf8To(OutputStream out) throws IOException {
+        utf8.writeTo(out);
+      }
+    };
+  }
+
+  /** Writes the JSON document for a batch directly to a byte stream, encoded as UTF-8. */
+  @FunctionalInterface
+  interface Utf8Writer {
+
+    /**
+     * Write the full JSON document to the provided stream. Implementations must not close the
+     * stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the underlying stream fails
+     */
+    void writeTo(OutputStream out) throws IOException;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import com.newrelic.telemetry.OverflowPolicy;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Creates and inspects the queues that back the telemetry buffers. */
+public final class BufferQueues {
+
+  private BufferQueues() {}
+
+  /**
+   * Create the queue for a telemetry buffer.
+   *
+   * @param capacity The maximum number of elements, or 0 for an unbounded queue. A striped bounded
+   *     queue shares the capacity between its stripes, so that any one thread can fill it.
+   * @param overflowPolicy What to do when a bounded queue is full.
+   * @param striped Whether to spread producing threads over several stripes.
+   * @param <E> The type of elements in the queue.
+   * @return A new thread-safe queue.
+   */
+  public static <E> Queue<E> create(int capacity, OverflowPolicy overflowPolicy, boolean striped) {
+    if (!striped) {
+      return capacity > 0
+          ? new OverflowQueue<>(new RingBufferQueue<>(capacity), overflowPolicy)
+          : new ConcurrentLinkedQueue<>();
+    }
+    StripedQueue<E> stripes =
+        new StripedQueue<>(
+            StripedQueue.defaultStripeCount(), i -> new ConcurrentLinkedQueue<>(), capacity);
+    return capacity > 0 ? new OverflowQueue<>(stripes, overflowPolicy) : stripes;
+  }
+
+  /**
+   * Removes the elements currently in a queue and adds them to the given collection, for creating
+   * a batch. Only about as many elements as the queue held when the drain started are taken, so
+   * that producers that keep up with the drain can't keep it going. A {@link RingBufferQueue} is
+   * drained with a single update of its head; any other queue is polled, up to its size.
+   *
+   * @param queue The queue to drain, usually one created by {@link #create(int, OverflowPolicy,
+   *     boolean)}.
+   * @param target The collection to add the elements to.
+   * @param <E> The type of elements in the queue.
+   * @return The number of elements drained.
+   */
+  public static <E> int drainTo(Queue<E> queue, Collection<? super E> target) {
+    if (queue instanceof RingBufferQueue) {
+      return ((RingBufferQueue<E>) queue).drainTo(target);
+    }
+    if (queue instanceof OverflowQueue) {
+      return ((OverflowQueue<E>) queue).drainTo(target);
+    }
+    if (queue instanceof StripedQueue) {
+      return ((StripedQueue<E>) queue).drainTo(target);
+    }
+    int limit = queue.size();
+    int drained = 0;
+    E element;
+    while (drained < limit && (element = queue.poll()) != null) {
+      target.add(element);
+      drained++;
+    }
+    return drained;
+  }
+
+  /**
+   * @param queue A queue created by {@link #create(int, OverflowPolicy, boolean)}.
+   * @return The number of elements the queue has discarded because it was full.
+   */
+  public static long getDroppedCount(Queue<?> queue) {
+    if (queue instanceof OverflowQueue) {
+      return ((OverflowQueue<?>) queue).getDroppedCount();
+    }
+    return 0;
+  }
+}
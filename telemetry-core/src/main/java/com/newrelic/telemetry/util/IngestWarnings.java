@@ -1,5 +1,6 @@
 package com.newrelic.telemetry.util;
 
+import com.newrelic.telemetry.AttributesView;
 import com.newrelic.telemetry.Telemetry;
 import com.newrelic.telemetry.events.Event;
 import com.newrelic.telemetry.logs.Log;
@@ -43,25 +44,43 @@ public class IngestWarnings {
     }
 
     // Second Check - Check that the attribute names are valid
+    // Third Check - Check that the attribute values are valid
 
-    for (String attributeName : attributes.keySet()) {
-      if (attributeName != null) {
-        if (attributeName.length() > MAX_ATTRIBUTE_NAME_LENGTH) {
-          attributeNameWarning(attributeName);
+    if (attributes instanceof AttributesView) {
+      // Read the view in place, without allocating entries or boxing its primitive values, which
+      // are never strings.
+      AttributesView view = (AttributesView) attributes;
+      for (int i = 0; i < view.size(); i++) {
+        checkAttributeName(view.keyAt(i));
+      }
+      for (int i = 0; i < view.size(); i++) {
+        if (view.keyAt(i) != null && view.typeAt(i) == AttributesView.ValueType.OBJECT) {
+          checkAttributeValue(view.valueAt(i));
         }
       }
+      return;
     }
+    attributes.forEach((attributeName, attributeValue) -> checkAttributeName(attributeName));
+    attributes.forEach(
+        (attributeName, attributeValue) -> {
+          if (attributeName != null) {
+            checkAttributeValue(attributeValue);
+          }
+        });
+  }
 
-    // Third Check - Check that the attribute values are valid
+  private void checkAttributeName(String attributeName) {
+    if (attributeName != null) {
+      if (attributeName.length() > MAX_ATTRIBUTE_NAME_LENGTH) {
+        attributeNameWarning(attributeName);
+      }
+    }
+  }
 
-    for (String attributeName : attributes.keySet()) {
-      if (attributeName != null) {
-        if (attributes.get(attributeName) instanceof String) {
-          String attributeValue = attributes.get(attributeName).toString();
-          if (attributeValue.length() > MAX_ATTRIBUTE_VALUE_LENGTH) {
-            attributeValueWarning(attributeValue);
-          }
-        }
+  private void checkAttributeValue(Object attributeValue) {
+    if (attributeValue instanceof String) {
+      if (((String) attributeValue).length() > MAX_ATTRIBUTE_VALUE_LENGTH) {
+        attributeValueWarning((String) attributeValue);
       }
     }
   }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import com.newrelic.telemetry.OverflowPolicy;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps a bounded queue and applies an {@link OverflowPolicy} when it is full, counting every
+ * element that is discarded as a result.
+ *
+ * <p>{@link #offer(Object)} returns false only when the new element itself was discarded.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public final class OverflowQueue<E> extends AbstractQueue<E> {
+
+  private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final Queue<E> delegate;
+  private final OverflowPolicy policy;
+  private final LongAdder dropped = new LongAdder();
+
+  public OverflowQueue(Queue<E> delegate, OverflowPolicy policy) {
+    this.delegate = Utils.verifyNonNull(delegate);
+    this.policy = Utils.verifyNonNull(policy);
+  }
+
+  @Override
+  public boolean offer(E element) {
+    if (delegate.offer(element)) {
+      return true;
+    }
+    switch (policy.getAction()) {
+      case BLOCK:
+        return offerWithTimeout(element);
+      case DROP_OLDEST:
+      case SAMPLE:
+        if (policy.shouldEvictOldest()) {
+          return offerEvictingOldest(element);
+        }
+        break;
+      default:
+        break;
+    }
+    dropped.increment();
+    return false;
+  }
+
+  private boolean offerEvictingOldest(E element) {
+    do {
+      if (delegate.poll() != null) {
+        dropped.increment();
+      }
+    } while (!delegate.offer(element));
+    return true;
+  }
+
+  private boolean offerWithTimeout(E element) {
+    long deadline = System.nanoTime() + policy.getTimeoutNanos();
+    while (true) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+        dropped.increment();
+        return false;
+      }
+      LockSupport.parkNanos(Math.min(remaining, MAX_PARK_NANOS));
+      if (delegate.offer(element)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public E poll() {
+    return delegate.poll();
+  }
+
+  @Override
+  public E peek() {
+    return delegate.peek();
+  }
+
+  /**
+   * Removes the elements currently in the queue and adds them to the given collection, as for
+   * {@link BufferQueues#drainTo(Queue, Collection)}.
+   *
+   * @param target The collection to add the elements to.
+   * @return The number of elements drained.
+   */
+  public int drainTo(Collection<? super E> target) {
+    return BufferQueues.drainTo(delegate, target);
+  }
+
+  @Override
+  public int size() {
+    return delegate.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return delegate.isEmpty();
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return delegate.iterator();
+  }
+
+  /** @return The number of elements discarded because the queue was full. */
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  public OverflowPolicy getPolicy() {
+    return policy;
+  }
+}
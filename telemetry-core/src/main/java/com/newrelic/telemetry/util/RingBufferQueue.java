@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue backed by a pre-allocated ring of slots.
+ *
+ * <p>Unlike {@link java.util.concurrent.ConcurrentLinkedQueue}, adding an element doesn't allocate
+ * a node, the memory held by the queue is fixed by its capacity, and {@link #size()} is a constant
+ * time operation. Any number of threads may offer and poll concurrently; the typical use is many
+ * producers and a single thread draining the queue with {@link #drainTo(Collection)}.
+ *
+ * <p>Each slot carries a sequence number that tells producers and consumers whether it is free or
+ * filled for a given position in the ring, so that claiming a slot is a single compare-and-set on
+ * the tail (for producers) or the head (for consumers).
+ *
+ * <p>{@link #offer(Object)} returns false when the queue is full. Null elements are not permitted.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public final class RingBufferQueue<E> extends AbstractQueue<E> {
+
+  private final int capacity;
+  private final AtomicReferenceArray<E> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * Create a new queue.
+   *
+   * @param capacity The maximum number of elements the queue can hold. Must be positive.
+   */
+  public RingBufferQueue(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, free(i));
+    }
+  }
+
+  @Override
+  public boolean offer(E element) {
+    Utils.verifyNonNull(element);
+    while (true) {
+      long position = tail.get();
+      int index = indexOf(position);
+      long difference = sequences.get(index) - free(position);
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots.lazySet(index, element);
+          // Publishes the element to consumers.
+          sequences.set(index, filled(position));
+          return true;
+        }
+      } else if (difference < 0) {
+        // The slot still holds an element from the previous lap: the queue is full.
+        return false;
+      }
+      // Otherwise another producer claimed this position first; try the next one.
+    }
+  }
+
+  @Override
+  public E poll() {
+    while (true) {
+      long position = head.get();
+      int index = indexOf(position);
+      long difference = sequences.get(index) - filled(position);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          E element = slots.get(index);
+          slots.lazySet(index, null);
+          // Frees the slot for the producer one lap ahead.
+          sequences.set(index, free(position + capacity));
+          return element;
+        }
+      } else if (difference < 0) {
+        // Empty, or the producer that claimed this slot hasn't published it yet.
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public E peek() {
+    while (true) {
+      long position = head.get();
+      int index = indexOf(position);
+      if (sequences.get(index) != filled(position)) {
+        return null;
+      }
+      E element = slots.get(index);
+      if (element != null && head.get() == position) {
+        return element;
+      }
+    }
+  }
+
+  /**
+   * Removes every element currently available and adds them to the given collection, in order.
+   * Only the elements added before the drain starts are taken, so producers that keep up with the
+   * drain can't keep it going.
+   *
+   * @param target The collection to add the elements to.
+   * @return The number of elements drained.
+   */
+  public int drainTo(Collection<? super E> target) {
+    return drainTo(target, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Removes up to the given number of the elements currently available and adds them to the given
+   * collection, in order. The tail is read once, and the published elements from the head up to
+   * it are claimed together with a single update of the head, rather than one at a time. An
+   * element whose producer has claimed its slot but not yet published it ends the drain.
+   *
+   * @param target The collection to add the elements to.
+   * @param maxElements The max number of elements to drain.
+   * @return The number of elements drained.
+   */
+  public int drainTo(Collection<? super E> target, int maxElements) {
+    long end = tail.get();
+    while (true) {
+      long start = head.get();
+      long limit = Math.min(end, start + maxElements);
+      long position = start;
+      while (position < limit && sequences.get(indexOf(position)) == filled(position)) {
+        position++;
+      }
+      if (position == start) {
+        return 0;
+      }
+      if (head.compareAndSet(start, position)) {
+        for (long claimed = start; claimed < position; claimed++) {
+          int index = indexOf(claimed);
+          E element = slots.get(index);
+          slots.lazySet(index, null);
+          sequences.set(index, free(claimed + capacity));
+          target.add(element);
+        }
+        return (int) (position - start);
+      }
+      // Another consumer took from the head first; try again with what is left.
+    }
+  }
+
+  /**
+   * Returns the number of elements in the queue. This is a constant time operation; while elements
+   * are being added or removed concurrently the result is an estimate, but it is never negative
+   * and never greater than the capacity.
+   */
+  @Override
+  public int size() {
+    while (true) {
+      long currentHead = head.get();
+      long currentTail = tail.get();
+      if (head.get() == currentHead) {
+        return (int) Math.max(0, Math.min(capacity, currentTail - currentHead));
+      }
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /** @return The maximum number of elements this queue can hold. */
+  public int capacity() {
+    return capacity;
+  }
+
+  /** @return The number of elements that can be added before the queue is full. */
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  /**
+   * Returns a weakly consistent iterator over a snapshot of the elements in the queue. The
+   * iterator doesn't support removal.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<>();
+    long end = tail.get();
+    for (long position = head.get(); position < end; position++) {
+      int index = indexOf(position);
+      E element = slots.get(index);
+      if (element != null && sequences.get(index) == filled(position)) {
+        snapshot.add(element);
+      }
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  // A slot's sequence is free(p) while it waits for the element at position p, and filled(p) once
+  // that element is published. These never collide, whatever the capacity.
+  private static long free(long position) {
+    return position << 1;
+  }
+
+  private static long filled(long position) {
+    return (position << 1) + 1;
+  }
+
+  private int indexOf(long position) {
+    return (int) (position % capacity);
+  }
+}
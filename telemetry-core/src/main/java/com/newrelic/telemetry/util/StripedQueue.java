@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * A queue made of several independent stripes, with each producing thread always adding to the
+ * same stripe. When many threads add concurrently they mostly touch different stripes, instead of
+ * all contending on the tail of a single queue.
+ *
+ * <p>Consumers drain the stripes one after another. Elements from one thread come out in the order
+ * they were added, but there is no ordering between elements added by different threads. An
+ * element added while a drain is in progress is either returned by that drain or left for the
+ * next one.
+ *
+ * <p>{@link #poll()} keeps taking from the same stripe until it is empty, and then moves on to the
+ * next, so that draining the queue is linear in the number of elements. Each drain starts one
+ * stripe further along than the last, so that no stripe is always drained first.
+ *
+ * <p>A bounded queue keeps a single count of the elements across all its stripes and checks its
+ * capacity against that, so that one thread can fill the whole queue. Offers that race while the
+ * queue is nearly full can take it over its capacity by at most one element per racing thread.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public final class StripedQueue<E> extends AbstractQueue<E> {
+
+  private final List<Queue<E>> stripes;
+  private final int mask;
+  private final int capacity;
+  // The number of elements in a bounded queue, or null for an unbounded one.
+  private final LongAdder count;
+  // The stripe to take from first. Races between consumers only affect which stripe that is.
+  private volatile int start;
+
+  /**
+   * @param stripeCount The number of stripes. Must be a power of two.
+   * @param stripeFactory Creates the queue for the stripe with the given index.
+   */
+  public StripedQueue(int stripeCount, IntFunction<Queue<E>> stripeFactory) {
+    this(stripeCount, stripeFactory, 0);
+  }
+
+  /**
+   * @param stripeCount The number of stripes. Must be a power of two.
+   * @param stripeFactory Creates the queue for the stripe with the given index. The stripes of a
+   *     bounded queue should be unbounded, since the capacity is shared between them.
+   * @param capacity The maximum number of elements across all the stripes, or 0 for an unbounded
+   *     queue.
+   */
+  public StripedQueue(int stripeCount, IntFunction<Queue<E>> stripeFactory, int capacity) {
+    if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) {
+      throw new IllegalArgumentException("stripeCount must be a power of two: " + stripeCount);
+    }
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+    }
+    List<Queue<E>> stripes = new ArrayList<>(stripeCount);
+    for (int i = 0; i < stripeCount; i++) {
+      stripes.add(stripeFactory.apply(i));
+    }
+    this.stripes = Collections.unmodifiableList(stripes);
+    this.mask = stripeCount - 1;
+    this.capacity = capacity;
+    this.count = capacity > 0 ? new LongAdder() : null;
+  }
+
+  /**
+   * @return The default number of stripes: the number of available processors rounded down to a
+   *     power of two, up to 64.
+   */
+  public static int defaultStripeCount() {
+    return Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), 64));
+  }
+
+  @Override
+  public boolean offer(E element) {
+    if (count == null) {
+      return stripes.get(stripeIndex()).offer(element);
+    }
+    if (count.sum() >= capacity || !stripes.get(stripeIndex()).offer(element)) {
+      return false;
+    }
+    count.increment();
+    return true;
+  }
+
+  @Override
+  public E poll() {
+    int first = start;
+    for (int i = 0; i <= mask; i++) {
+      int index = (first + i) & mask;
+      E element = stripes.get(index).poll();
+      if (element != null) {
+        if (index != first) {
+          start = index;
+        }
+        if (count != null) {
+          count.decrement();
+        }
+        return element;
+      }
+    }
+    // Empty; start the next drain from the next stripe.
+    start = (first + 1) & mask;
+    return null;
+  }
+
+  @Override
+  public E peek() {
+    int first = start;
+    for (int i = 0; i <= mask; i++) {
+      E element = stripes.get((first + i) & mask).peek();
+      if (element != null) {
+        return element;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes every element currently available and adds them to the given collection, one stripe
+   * after another, each with {@link BufferQueues#drainTo(Queue, Collection)}. Elements offered
+   * while the drain is in progress may or may not be included.
+   *
+   * @param target The collection to add the elements to.
+   * @return The number of elements drained.
+   */
+  public int drainTo(Collection<? super E> target) {
+    int first = start;
+    start = (first + 1) & mask;
+    int drained = 0;
+    for (int i = 0; i <= mask; i++) {
+      drained += BufferQueues.drainTo(stripes.get((first + i) & mask), target);
+    }
+    if (count != null) {
+      count.add(-drained);
+    }
+    return drained;
+  }
+
+  /** Returns the number of elements, which for a bounded queue is a constant time operation. */
+  @Override
+  public int size() {
+    if (count != null) {
+      return (int) Math.max(0, count.sum());
+    }
+    int size = 0;
+    for (Queue<E> stripe : stripes) {
+      size += stripe.size();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (Queue<E> stripe : stripes) {
+      if (!stripe.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns a weakly consistent iterator over the stripes' elements, one stripe after another. */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<>();
+    for (Queue<E> stripe : stripes) {
+      snapshot.addAll(stripe);
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  /** @return The stripes, for inspection. */
+  public List<Queue<E>> getStripes() {
+    return stripes;
+  }
+
+  private int stripeIndex() {
+    long id = Thread.currentThread().getId();
+    // Spread sequential thread ids over the stripes.
+    return (int) (id ^ (id >>> 16)) & mask;
+  }
+}
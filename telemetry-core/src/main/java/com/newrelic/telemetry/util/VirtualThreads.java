@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads, which are only available on Java 21 and later. The SDK is built for
+ * Java 8, so the JDK method is looked up reflectively, once.
+ */
+public final class VirtualThreads {
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+  private VirtualThreads() {}
+
+  /** @return true if the running JVM supports virtual threads. */
+  public static boolean isAvailable() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task.
+   *
+   * @return the result of {@code Executors.newVirtualThreadPerTaskExecutor()}
+   * @throws UnsupportedOperationException if the running JVM doesn't support virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new UnsupportedOperationException("Unable to create a virtual thread executor", e);
+    }
+  }
+
+  private static Method findFactory() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      // On Java 19 and 20 the method exists, but fails unless preview features are enabled.
+      ((ExecutorService) factory.invoke(null)).shutdown();
+      return factory;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.metrics.Count;
+import com.newrelic.telemetry.metrics.Gauge;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AttributesInternerTest {
+
+  @Test
+  @DisplayName("Equal attributes, however built, share the first interned view")
+  void testEqualAttributesShareAView() {
+    AttributesInterner interner = new AttributesInterner(64);
+    AttributesView first = interner.intern(new Attributes().put("host", "a").put("shard", 1));
+    AttributesView second = interner.intern(new Attributes().put("shard", 1).put("host", "a"));
+    AttributesView other = interner.intern(new Attributes().put("host", "b").put("shard", 1));
+
+    assertSame(first, second);
+    assertNotSame(first, other);
+    assertEquals(2, interner.size());
+    assertSame(AttributesView.EMPTY, interner.intern(new Attributes()));
+  }
+
+  @Test
+  @DisplayName("The interned view is not affected by later changes to the attributes")
+  void testInternedViewIsFrozen() {
+    AttributesInterner interner = new AttributesInterner(64);
+    Attributes attributes = new Attributes().put("host", "a");
+    AttributesView interned = interner.intern(attributes);
+    attributes.put("host", "b").put("pod", "c");
+
+    assertEquals(1, interned.size());
+    assertEquals("a", interned.get("host"));
+    assertNotSame(interned, interner.intern(attributes));
+  }
+
+  @Test
+  @DisplayName("Attributes remember their interned view, until they change")
+  void testAttributesRememberTheirInternedView() {
+    AttributesInterner interner = new AttributesInterner(64);
+    AttributesView first = interner.intern(new Attributes().put("host", "a"));
+    Attributes attributes = new Attributes().put("host", "a");
+
+    assertSame(first, interner.intern(attributes));
+    assertSame(first, attributes.view());
+    assertSame(first, attributes.copy().view());
+    attributes.put("pod", "b");
+    assertEquals(2, attributes.view().size());
+    assertEquals(1, first.size());
+  }
+
+  @Test
+  void testSizeIsBounded() {
+    AttributesInterner interner = new AttributesInterner(32);
+    for (int i = 0; i < 1000; i++) {
+      interner.intern(new Attributes().put("id", i));
+    }
+    assertTrue(interner.size() <= 32, "size: " + interner.size());
+  }
+
+  @Test
+  void testMetricsShareAttributes() {
+    Count count = new Count("c", 1, 0, 1, new Attributes().put("region", "us").put("pod", "p1"));
+    Gauge gauge = new Gauge("g", 1, 1, new Attributes().put("pod", "p1").put("region", "us"));
+    assertSame(count.getAttributes(), gauge.getAttributes());
+  }
+}
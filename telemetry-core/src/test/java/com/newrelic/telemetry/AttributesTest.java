@@ -6,8 +6,12 @@ package com.newrelic.telemetry;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 class AttributesTest {
@@ -64,4 +68,92 @@ class AttributesTest {
     a.remove("foo");
     assertFalse(a.asMap().containsKey("foo"));
   }
+
+  @Test
+  @DisplayName("A view doesn't see later changes, and is reused until there are some")
+  void testViewIsolation() {
+    Attributes a = new Attributes().put("foo", "bar");
+    AttributesView view = a.view();
+    assertSame(view, a.view());
+    assertSame(view, a.copy().view());
+
+    a.put("biz", "baz").remove("foo");
+    assertEquals(1, view.size());
+    assertEquals("bar", view.get("foo"));
+    assertFalse(view.containsKey("biz"));
+    assertEquals("baz", a.view().get("biz"));
+  }
+
+  @Test
+  @DisplayName("Putting all into empty attributes shares, but doesn't link, the two")
+  void testPutAllIntoEmpty() {
+    Attributes a = new Attributes().put("foo", "bar");
+    Attributes b = new Attributes().putAll(a);
+    b.put("biz", 1);
+    a.put("foo", "changed");
+    assertEquals("bar", b.asMap().get("foo"));
+    assertFalse(a.containsKey("biz"));
+    assertEquals(2, b.size());
+  }
+
+  @Test
+  void testEqualsAndHashCodeMatchAHashMap() {
+    Attributes a = new Attributes().put("z", 1).put("a", true).put("m", "x").put("z", 2.5);
+    Map<String, Object> expected = new HashMap<>();
+    expected.put("a", true);
+    expected.put("m", "x");
+    expected.put("z", 2.5);
+    assertEquals(expected, a.asMap());
+    assertEquals(a.asMap(), expected);
+    assertEquals(expected.hashCode(), a.hashCode());
+    assertEquals(new Attributes().put("m", "x").put("a", true).put("z", 2.5), a);
+  }
+
+  @Test
+  @DisplayName("Primitives are held unboxed, but read back as their boxed equivalents")
+  void testPrimitiveValues() {
+    Attributes a =
+        new Attributes()
+            .putLong("status", 503)
+            .putDouble("latency", 12.5)
+            .putBoolean("retried", true)
+            .put("host", "h1");
+    Attributes boxed =
+        new Attributes()
+            .put("status", (Number) 503L)
+            .put("latency", (Number) 12.5)
+            .put("retried", true)
+            .put("host", "h1");
+    AttributesView view = a.view();
+    assertEquals(AttributesView.ValueType.LONG, view.typeAt(3));
+    assertEquals(503L, view.longAt(3));
+    assertEquals(503L, view.get("status"));
+    assertEquals(12.5, view.get("latency"));
+    assertEquals(true, view.get("retried"));
+    assertEquals(boxed, a);
+    assertEquals(boxed.view(), view);
+
+    Map<String, Object> expected = new HashMap<>();
+    expected.put("status", 503L);
+    expected.put("latency", 12.5);
+    expected.put("retried", true);
+    expected.put("host", "h1");
+    assertEquals(expected, view);
+    assertEquals(expected.hashCode(), view.hashCode());
+  }
+
+  @Test
+  void testReplacingAndRemovingPrimitives() {
+    Attributes a = new Attributes().put("a", "x").putLong("b", 1).putDouble("c", 2.0);
+    AttributesView before = a.view();
+    a.put("b", "now a string").remove("a");
+    a.putLong("c", 3);
+
+    assertEquals(1L, before.get("b"));
+    assertEquals(2.0, before.get("c"));
+    assertEquals(AttributesView.ValueType.OBJECT, a.view().typeAt(0));
+    assertEquals("now a string", a.view().get("b"));
+    assertEquals(3L, a.view().get("c"));
+    assertEquals(2, a.size());
+  }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class AttributesViewTest {
+
+  @Test
+  void testSortedByKeyWithNullFirst() {
+    AttributesView view =
+        new Attributes().put("b", 2).put(null, "n").put("c", 3).put("a", 1).view();
+
+    List<String> keys = new ArrayList<>();
+    for (Map.Entry<String, Object> entry : view.entrySet()) {
+      keys.add(entry.getKey());
+    }
+    assertEquals(Arrays.asList(null, "a", "b", "c"), keys);
+    assertEquals("a", view.keyAt(1));
+    assertEquals(3, view.valueAt(3));
+    assertEquals("n", view.get(null));
+    assertTrue(view.containsKey(null));
+  }
+
+  @Test
+  void testLookups() {
+    AttributesView view = new Attributes().put("a", 1).put("b", "two").view();
+    assertEquals("two", view.get("b"));
+    assertNull(view.get("c"));
+    assertNull(view.get(42));
+    assertThrows(IndexOutOfBoundsException.class, () -> view.keyAt(2));
+    assertThrows(UnsupportedOperationException.class, () -> view.put("c", 3));
+  }
+
+  @Test
+  void testEmpty() {
+    AttributesView view = new Attributes().view();
+    assertTrue(view.isEmpty());
+    assertEquals(0, view.hashCode());
+    assertTrue(view.entrySet().isEmpty());
+  }
+
+  @Test
+  void testUnboxedReads() {
+    AttributesView view =
+        new Attributes().putLong("a", 7).putDouble("b", 0.5).putBoolean("c", false).view();
+    assertEquals(7, view.longAt(0));
+    assertEquals(0.5, view.doubleAt(1));
+    assertEquals(AttributesView.ValueType.BOOLEAN, view.typeAt(2));
+    assertEquals(false, view.booleanAt(2));
+    assertThrows(IllegalStateException.class, () -> view.doubleAt(0));
+  }
+}
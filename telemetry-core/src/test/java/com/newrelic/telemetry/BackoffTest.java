@@ -2,7 +2,11 @@ package com.newrelic.telemetry;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 
 class BackoffTest {
@@ -39,4 +43,66 @@ class BackoffTest {
     assertEquals(-1, testClass.nextWaitMs());
     assertEquals(-1, testClass.nextWaitMs());
   }
+
+  @Test
+  void testJitteredWaitsStayInBounds() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      Backoff full = jittered(BackoffStrategy.fullJitter());
+      Backoff equal = jittered(BackoffStrategy.equalJitter());
+      Backoff decorrelated = jittered(BackoffStrategy.decorrelatedJitter());
+      assertEquals(0, full.nextWaitMs());
+      assertEquals(0, equal.nextWaitMs());
+      assertEquals(0, decorrelated.nextWaitMs());
+      for (int retry = 1; retry < 10; retry++) {
+        long exponential = Math.min(15000, 1000L << (retry - 1));
+        long fullWait = full.nextWaitMs();
+        long equalWait = equal.nextWaitMs();
+        long decorrelatedWait = decorrelated.nextWaitMs();
+        assertTrue(fullWait >= 0 && fullWait <= exponential, "full: " + fullWait);
+        assertTrue(
+            equalWait >= exponential / 2 && equalWait <= exponential, "equal: " + equalWait);
+        assertTrue(
+            decorrelatedWait >= 1000 && decorrelatedWait <= 15000,
+            "decorrelated: " + decorrelatedWait);
+      }
+      assertEquals(-1, full.nextWaitMs());
+      assertEquals(-1, decorrelated.nextWaitMs());
+    }
+  }
+
+  /**
+   * Simulates many clients that all fail at the same moment and retry 4 times, and counts how many
+   * of their 4th retries land in the busiest second.
+   */
+  @Test
+  void testJitterSpreadsRetries() throws Exception {
+    int clients = 1000;
+    assertEquals(clients, busiestSecond(clients, BackoffStrategy.exponential()));
+    assertTrue(busiestSecond(clients, BackoffStrategy.fullJitter()) < clients / 4);
+    assertTrue(busiestSecond(clients, BackoffStrategy.equalJitter()) < clients / 2);
+    assertTrue(busiestSecond(clients, BackoffStrategy.decorrelatedJitter()) < clients / 4);
+  }
+
+  private static int busiestSecond(int clients, BackoffStrategy strategy) {
+    Map<Long, Integer> retriesPerSecond = new HashMap<>();
+    int busiest = 0;
+    for (int i = 0; i < clients; i++) {
+      Backoff backoff = jittered(strategy);
+      long retryAtMs = 0;
+      for (int retry = 0; retry <= 4; retry++) {
+        retryAtMs += backoff.nextWaitMs();
+      }
+      busiest = Math.max(busiest, retriesPerSecond.merge(retryAtMs / 1000, 1, Integer::sum));
+    }
+    return busiest;
+  }
+
+  private static Backoff jittered(BackoffStrategy strategy) {
+    return Backoff.builder()
+        .maxBackoff(15, TimeUnit.SECONDS)
+        .backoffFactor(1, TimeUnit.SECONDS)
+        .maxRetries(10)
+        .strategy(strategy)
+        .build();
+  }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class EndpointRateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+
+  @Test
+  @DisplayName("Requests are limited to a burst, then to the steady rate")
+  void testRequestsPerSecond() {
+    EndpointRateLimiter testClass = new EndpointRateLimiter(2, 0, clock::get);
+
+    assertEquals(0, testClass.tryAcquire());
+    assertEquals(0, testClass.tryAcquire());
+    assertEquals(SECOND / 2, testClass.tryAcquire());
+
+    clock.addAndGet(SECOND / 2);
+    assertEquals(0, testClass.tryAcquire());
+    assertEquals(SECOND / 2, testClass.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("Bytes are charged after the fact, and the debt is waited out")
+  void testBytesPerSecond() {
+    EndpointRateLimiter testClass = new EndpointRateLimiter(0, 1000, clock::get);
+
+    assertEquals(0, testClass.tryAcquire());
+    testClass.recordBytes(3000);
+    assertEquals(2 * SECOND, testClass.tryAcquire());
+
+    clock.addAndGet(2 * SECOND);
+    assertEquals(0, testClass.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("A pause holds back every request, and only ever gets longer")
+  void testPause() {
+    EndpointRateLimiter testClass = new EndpointRateLimiter(0, 0, clock::get);
+    assertEquals(0, testClass.tryAcquire());
+
+    testClass.pause(10, TimeUnit.SECONDS);
+    testClass.pause(1, TimeUnit.SECONDS);
+    assertEquals(10 * SECOND, testClass.tryAcquire());
+
+    clock.addAndGet(4 * SECOND);
+    assertEquals(6 * SECOND, testClass.tryAcquire());
+
+    clock.addAndGet(6 * SECOND);
+    assertEquals(0, testClass.tryAcquire());
+    assertEquals(0, testClass.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("Negative limits are rejected")
+  void testNegativeLimits() {
+    assertThrows(IllegalArgumentException.class, () -> new EndpointRateLimiter(-1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new EndpointRateLimiter(0, -1));
+  }
+}
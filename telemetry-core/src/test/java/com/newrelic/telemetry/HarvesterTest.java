@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.events.Event;
+import com.newrelic.telemetry.events.EventBatch;
+import com.newrelic.telemetry.events.EventBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class HarvesterTest {
+
+  private final EventBuffer buffer = EventBuffer.builder().build();
+  private final List<EventBatch> sent = new CopyOnWriteArrayList<>();
+
+  @Test
+  @DisplayName("The buffer is harvested once it holds enough items")
+  void testMaxItems() {
+    Harvester<EventBatch> harvester =
+        Harvester.builder(buffer::size, buffer::createBatch, sent::add).maxItems(3).build();
+
+    addEvents(2);
+    harvester.check();
+    assertTrue(sent.isEmpty());
+
+    addEvents(1);
+    harvester.check();
+    assertEquals(1, sent.size());
+    assertEquals(3, sent.get(0).size());
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  @DisplayName("The buffer is harvested once its estimated size is big enough")
+  void testMaxBytes() {
+    Harvester<EventBatch> harvester =
+        Harvester.builder(buffer::size, buffer::createBatch, sent::add)
+            .estimatedBytesPerItem(100)
+            .maxBytes(500)
+            .build();
+
+    addEvents(4);
+    harvester.check();
+    assertTrue(sent.isEmpty());
+
+    addEvents(1);
+    harvester.check();
+    assertEquals(1, sent.size());
+    assertEquals(5, sent.get(0).size());
+  }
+
+  @Test
+  @DisplayName("The buffer is harvested once the oldest item is old enough")
+  void testMaxAge() throws Exception {
+    Harvester<EventBatch> harvester =
+        Harvester.builder(buffer::size, buffer::createBatch, sent::add)
+            .maxAge(50, TimeUnit.MILLISECONDS)
+            .jitter(0.5)
+            .build();
+
+    harvester.check();
+    addEvents(1);
+    harvester.check();
+    assertTrue(sent.isEmpty());
+
+    Thread.sleep(100);
+    harvester.check();
+    assertEquals(1, sent.size());
+
+    // The age is reset by the harvest.
+    addEvents(1);
+    harvester.check();
+    assertEquals(1, sent.size());
+  }
+
+  @Test
+  @DisplayName("Once started, the harvester flushes on its own, and on shutdown")
+  void testStartAndShutdown() throws Exception {
+    Harvester<EventBatch> harvester =
+        Harvester.builder(buffer::size, buffer::createBatch, sent::add)
+            .maxItems(10)
+            .checkInterval(5, TimeUnit.MILLISECONDS)
+            .build();
+    harvester.start();
+
+    addEvents(10);
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, sent.size());
+
+    addEvents(2);
+    harvester.shutdown();
+    assertEquals(2, sent.size());
+    assertEquals(2, sent.get(1).size());
+  }
+
+  @Test
+  @DisplayName("Shutdown stops the checks on a provided executor without shutting it down")
+  void testShutdownWithProvidedExecutor() throws Exception {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      Harvester<EventBatch> harvester =
+          Harvester.builder(buffer::size, buffer::createBatch, sent::add)
+              .maxItems(1)
+              .checkInterval(5, TimeUnit.MILLISECONDS)
+              .executor(executor)
+              .build();
+      harvester.start();
+      assertThrows(IllegalStateException.class, harvester::start);
+      harvester.shutdown();
+
+      addEvents(1);
+      Thread.sleep(50);
+      assertTrue(sent.isEmpty());
+      assertFalse(executor.isShutdown());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  @DisplayName("Invalid settings are rejected")
+  void testInvalidSettings() {
+    Harvester.Builder<EventBatch> builder =
+        Harvester.builder(buffer::size, buffer::createBatch, sent::add);
+    assertThrows(IllegalArgumentException.class, () -> builder.maxItems(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.maxBytes(-1));
+    assertThrows(IllegalArgumentException.class, () -> builder.jitter(1.5));
+    assertThrows(IllegalArgumentException.class, () -> builder.maxAge(0, TimeUnit.SECONDS));
+  }
+
+  private void addEvents(int count) {
+    for (int i = 0; i < count; i++) {
+      buffer.addEvent(new Event("test", new Attributes(), i));
+    }
+  }
+}
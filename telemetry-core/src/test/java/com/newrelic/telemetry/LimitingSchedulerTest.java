@@ -7,14 +7,19 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -85,6 +90,145 @@ class LimitingSchedulerTest {
     assertFalse(wasRun.get());
   }
 
+  @Test
+  void testDropNewestCountsDroppedTelemetry() {
+    LimitingScheduler testClass = new LimitingScheduler(exec, 10);
+    assertTrue(testClass.schedule(TelemetryType.METRIC, 6, () -> {}, 1, TimeUnit.HOURS));
+    assertFalse(testClass.schedule(TelemetryType.SPAN, 6, Assertions::fail, 0, SECONDS));
+    assertFalse(testClass.schedule(7, Assertions::fail));
+
+    assertEquals(13, testClass.getDroppedCount());
+    assertEquals(6, testClass.getDroppedCount(TelemetryType.SPAN));
+    assertEquals(0, testClass.getDroppedCount(TelemetryType.METRIC));
+  }
+
+  @Test
+  void testDropOldestDiscardsPendingWork() throws Exception {
+    LimitingScheduler testClass = new LimitingScheduler(exec, 10, OverflowPolicy.dropOldest());
+    CountDownLatch completed = new CountDownLatch(1);
+    assertTrue(testClass.schedule(TelemetryType.EVENT, 6, Assertions::fail, 1, SECONDS));
+    assertTrue(testClass.schedule(TelemetryType.LOG, 6, completed::countDown, 0, SECONDS));
+
+    assertTrue(completed.await(5, SECONDS));
+    assertEquals(6, testClass.getDroppedCount(TelemetryType.EVENT));
+    assertEquals(0, testClass.getDroppedCount(TelemetryType.LOG));
+    testClass.shutdown();
+    assertTrue(testClass.awaitTermination(5, SECONDS));
+  }
+
+  @Test
+  void testWorkRunsOnWorkerAndHoldsItsShare() throws Exception {
+    ExecutorService worker = Executors.newCachedThreadPool();
+    LimitingScheduler testClass =
+        new LimitingScheduler(exec, worker, 10, OverflowPolicy.dropNewest());
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    assertTrue(
+        testClass.schedule(
+            TelemetryType.SPAN,
+            6,
+            () -> {
+              started.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            },
+            0,
+            SECONDS));
+
+    assertTrue(started.await(5, SECONDS));
+    // The scheduling thread is free, but the running work still counts towards the max.
+    assertFalse(testClass.schedule(TelemetryType.SPAN, 6, Assertions::fail, 0, SECONDS));
+    CountDownLatch second = new CountDownLatch(1);
+    assertTrue(testClass.schedule(TelemetryType.SPAN, 4, second::countDown, 0, SECONDS));
+    assertTrue(second.await(5, SECONDS));
+
+    release.countDown();
+    testClass.shutdown();
+    assertTrue(testClass.awaitTermination(5, SECONDS));
+    assertTrue(worker.isTerminated());
+    assertEquals(6, testClass.getDroppedCount(TelemetryType.SPAN));
+  }
+
+  @Test
+  void testBlockWaitsForRoom() throws Exception {
+    LimitingScheduler testClass =
+        new LimitingScheduler(exec, 10, OverflowPolicy.block(5, SECONDS));
+    CountDownLatch completed = new CountDownLatch(2);
+    assertTrue(testClass.schedule(6, completed::countDown, 50, TimeUnit.MILLISECONDS));
+    assertTrue(testClass.schedule(6, completed::countDown));
+    assertTrue(completed.await(5, SECONDS));
+    assertEquals(0, testClass.getDroppedCount());
+
+    LimitingScheduler impatient =
+        new LimitingScheduler(exec, 10, OverflowPolicy.block(10, TimeUnit.MILLISECONDS));
+    assertTrue(impatient.schedule(6, () -> {}, 1, TimeUnit.HOURS));
+    assertFalse(impatient.schedule(6, Assertions::fail));
+    assertEquals(6, impatient.getDroppedCount());
+  }
+
+  @Test
+  void testRescheduleKeepsItsShare() throws Exception {
+    // With a full buffer and a block policy, acquiring again would wait on the running work itself.
+    LimitingScheduler testClass =
+        new LimitingScheduler(exec, 10, OverflowPolicy.block(5, SECONDS));
+    CountDownLatch completed = new CountDownLatch(1);
+    AtomicBoolean rescheduled = new AtomicBoolean();
+    AtomicLong rescheduleNanos = new AtomicLong(-1);
+    Runnable[] work = new Runnable[1];
+    work[0] =
+        () -> {
+          if (rescheduled.get()) {
+            completed.countDown();
+            return;
+          }
+          long start = System.nanoTime();
+          rescheduled.set(testClass.reschedule(null, 10, work[0], 10, TimeUnit.MILLISECONDS));
+          rescheduleNanos.set(System.nanoTime() - start);
+        };
+    assertTrue(testClass.schedule(10, work[0]));
+    assertTrue(completed.await(5, SECONDS));
+    assertTrue(rescheduleNanos.get() < TimeUnit.SECONDS.toNanos(1), "didn't wait for room");
+
+    exec.shutdown();
+    assertTrue(exec.awaitTermination(5, SECONDS));
+    assertEquals(10, testClass.getAvailable());
+    assertEquals(0, testClass.getDroppedCount());
+  }
+
+  @Test
+  void testRescheduledPiecesShareTheRunningWorksShare() throws Exception {
+    LimitingScheduler testClass = new LimitingScheduler(exec, 10);
+    CountDownLatch completed = new CountDownLatch(2);
+    List<Boolean> rescheduled = new CopyOnWriteArrayList<>();
+    assertTrue(
+        testClass.schedule(
+            10,
+            () -> {
+              rescheduled.add(testClass.reschedule(null, 4, completed::countDown, 0, SECONDS));
+              rescheduled.add(testClass.reschedule(null, 6, completed::countDown, 0, SECONDS));
+              // Nothing is left to hand over.
+              rescheduled.add(testClass.reschedule(null, 1, Assertions::fail, 0, SECONDS));
+            }));
+    assertTrue(completed.await(5, SECONDS));
+
+    exec.shutdown();
+    assertTrue(exec.awaitTermination(5, SECONDS));
+    assertEquals(Arrays.asList(true, true, false), rescheduled);
+    assertEquals(10, testClass.getAvailable());
+    assertEquals(1, testClass.getDroppedCount());
+  }
+
+  @Test
+  void testRescheduleFromOutsideTheWorkSchedules() {
+    LimitingScheduler testClass = new LimitingScheduler(exec, 10);
+    assertTrue(testClass.reschedule(null, 6, () -> {}, 1, TimeUnit.HOURS));
+    assertFalse(testClass.reschedule(null, 6, Assertions::fail, 1, TimeUnit.HOURS));
+    assertEquals(6, testClass.getDroppedCount());
+  }
+
   @Test
   public void testDelegates() throws Exception {
     ScheduledExecutorService delegate = mock(ScheduledExecutorService.class);
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.logs.Log;
+import com.newrelic.telemetry.logs.LogBatch;
+import com.newrelic.telemetry.metrics.Gauge;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PayloadSizeEstimatorTest {
+
+  @Test
+  @DisplayName("The bytes per char are remembered, and smoothed, for each type")
+  void testBytesPerChar() {
+    PayloadSizeEstimator testClass = new PayloadSizeEstimator();
+    assertEquals(0, testClass.bytesPerChar(TelemetryType.METRIC));
+
+    testClass.record(TelemetryType.METRIC, 10, 1000);
+    testClass.record(TelemetryType.SPAN, 0, 1000);
+    assertEquals(100, testClass.bytesPerChar(TelemetryType.METRIC));
+    assertEquals(0, testClass.bytesPerChar(TelemetryType.SPAN));
+
+    testClass.record(TelemetryType.METRIC, 10, 2000);
+    assertEquals(130, testClass.bytesPerChar(TelemetryType.METRIC), 0.001);
+  }
+
+  @Test
+  @DisplayName("Items are sized by their strings and attributes")
+  void testCharsOf() {
+    Log small = Log.builder().message("short").build();
+    Log large = Log.builder().message(String.join("", Collections.nCopies(1000, "x"))).build();
+    assertEquals(995, PayloadSizeEstimator.charsOf(large) - PayloadSizeEstimator.charsOf(small));
+
+    Attributes attributes = new Attributes().put("key", "value").putLong("count", 1);
+    Gauge bare = new Gauge("gauge", 1, 0, new Attributes());
+    Gauge tagged = new Gauge("gauge", 1, 0, attributes);
+    assertTrue(PayloadSizeEstimator.charsOf(tagged) >= PayloadSizeEstimator.charsOf(bare) + 13);
+
+    LogBatch batch = new LogBatch(Arrays.asList(small, large), new Attributes());
+    assertEquals(
+        PayloadSizeEstimator.charsOf(small) + PayloadSizeEstimator.charsOf(large),
+        PayloadSizeEstimator.charsOf(batch));
+  }
+}
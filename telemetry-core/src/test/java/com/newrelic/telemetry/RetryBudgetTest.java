@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RetryBudgetTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+
+  @Test
+  @DisplayName("Retries are limited to a fraction of attempts, on top of the minimum")
+  void testRatio() {
+    RetryBudget testClass = new RetryBudget(0.2, 2, 10, TimeUnit.SECONDS, clock::get);
+    for (int i = 0; i < 10; i++) {
+      testClass.recordAttempt();
+    }
+
+    for (int i = 0; i < 4; i++) {
+      assertTrue(testClass.tryRetry());
+    }
+    assertFalse(testClass.tryRetry());
+    testClass.recordAttempt();
+    testClass.recordAttempt();
+    testClass.recordAttempt();
+    testClass.recordAttempt();
+    testClass.recordAttempt();
+    assertTrue(testClass.tryRetry());
+    assertFalse(testClass.tryRetry());
+
+    assertEquals(5, testClass.getRetryCount());
+    assertEquals(2, testClass.getDeniedCount());
+  }
+
+  @Test
+  @DisplayName("Attempts and retries expire as the window slides")
+  void testWindowSlides() {
+    RetryBudget testClass = new RetryBudget(1, 0, 10, TimeUnit.SECONDS, clock::get);
+    testClass.recordAttempt();
+    clock.addAndGet(5 * SECOND);
+    testClass.recordAttempt();
+    assertTrue(testClass.tryRetry());
+    assertTrue(testClass.tryRetry());
+    assertFalse(testClass.tryRetry());
+
+    clock.addAndGet(5 * SECOND);
+    assertFalse(testClass.tryRetry(), "the retries outlive the first attempt");
+    testClass.recordAttempt();
+    assertFalse(testClass.tryRetry());
+    testClass.recordAttempt();
+    assertTrue(testClass.tryRetry());
+
+    clock.addAndGet(60 * SECOND);
+    assertFalse(testClass.tryRetry());
+    testClass.recordAttempt();
+    assertTrue(testClass.tryRetry());
+  }
+
+  @Test
+  @DisplayName("An unlimited budget allows every retry, and counts them")
+  void testUnlimited() {
+    RetryBudget testClass = RetryBudget.unlimited();
+    for (int i = 0; i < 100; i++) {
+      assertTrue(testClass.tryRetry());
+    }
+    assertEquals(100, testClass.getRetryCount());
+    assertEquals(0, testClass.getDeniedCount());
+  }
+}
@@ -8,12 +8,14 @@ import static java.util.Collections.emptyList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.newrelic.telemetry.metrics.Count;
 import com.newrelic.telemetry.metrics.Gauge;
 import com.newrelic.telemetry.metrics.Metric;
 import com.newrelic.telemetry.metrics.MetricBatch;
+import com.newrelic.telemetry.transport.EncodedPayload;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -58,4 +60,48 @@ class TelemetryBatchTest {
     assertNotEquals(batch.getUuid(), split.get(1).getUuid());
     assertNotEquals(split.get(0).getUuid(), split.get(1).getUuid());
   }
+
+  @Test
+  void testSplitDoesNotCarryEncodedPayload() {
+    long now = System.currentTimeMillis();
+    Metric m1 = new Gauge("foo1", 12.34, now, new Attributes());
+    Metric m2 = new Gauge("foo2", 56.78, now, new Attributes());
+    TelemetryBatch<Metric> batch = new MetricBatch(Arrays.asList(m1, m2), new Attributes());
+    batch.setEncodedPayload(new EncodedPayload(new byte[] {1, 2, 3}));
+    List<TelemetryBatch<Metric>> split = batch.split();
+    assertNull(split.get(0).getEncodedPayload());
+    assertNull(split.get(1).getEncodedPayload());
+  }
+
+  @Test
+  void testSplitByAccumulatedSize() {
+    long now = System.currentTimeMillis();
+    List<Metric> metrics =
+        Arrays.asList(
+            new Gauge("a", 1, now, new Attributes()),
+            new Gauge("bbb", 2, now, new Attributes()),
+            new Gauge("cc", 3, now, new Attributes()),
+            new Gauge("ddd", 4, now, new Attributes()),
+            new Gauge("e", 5, now, new Attributes()));
+    TelemetryBatch<Metric> batch = new MetricBatch(metrics, new Attributes());
+
+    List<TelemetryBatch<Metric>> split =
+        batch.split(metric -> ((Gauge) metric).getName().length(), 5);
+
+    assertEquals(3, split.size());
+    assertEquals(metrics.subList(0, 2), split.get(0).getTelemetry());
+    assertEquals(metrics.subList(2, 4), split.get(1).getTelemetry());
+    assertEquals(metrics.subList(4, 5), split.get(2).getTelemetry());
+    assertEquals(batch.getCommonAttributes(), split.get(2).getCommonAttributes());
+  }
+
+  @Test
+  void testSplitBySizeKeepsABatchThatFits() {
+    long now = System.currentTimeMillis();
+    Metric m1 = new Gauge("foo1", 12.34, now, new Attributes());
+    Metric m2 = new Gauge("foo2", 56.78, now, new Attributes());
+    TelemetryBatch<Metric> batch = new MetricBatch(Arrays.asList(m1, m2), new Attributes());
+
+    assertEquals(Collections.singletonList(batch), batch.split(metric -> 10, 20));
+  }
 }
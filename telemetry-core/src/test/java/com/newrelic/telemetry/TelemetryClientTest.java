@@ -6,7 +6,9 @@ package com.newrelic.telemetry;
 
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -20,6 +22,7 @@ import com.newrelic.telemetry.events.EventBatchSender;
 import com.newrelic.telemetry.exceptions.RetryWithBackoffException;
 import com.newrelic.telemetry.exceptions.RetryWithRequestedWaitException;
 import com.newrelic.telemetry.exceptions.RetryWithSplitException;
+import com.newrelic.telemetry.http.AsyncHttpPoster;
 import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.http.HttpResponse;
 import com.newrelic.telemetry.logs.Log;
@@ -32,21 +35,37 @@ import com.newrelic.telemetry.metrics.MetricBatchSender;
 import com.newrelic.telemetry.spans.Span;
 import com.newrelic.telemetry.spans.SpanBatch;
 import com.newrelic.telemetry.spans.SpanBatchSender;
+import com.newrelic.telemetry.transport.CircuitBreaker;
+import com.newrelic.telemetry.transport.DiskSpillQueue;
+import com.newrelic.telemetry.transport.EncodedPayload;
 import com.newrelic.telemetry.util.Utils;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -136,6 +155,551 @@ class TelemetryClientTest {
     assertTrue(result);
   }
 
+  @Test
+  void sendUsesTheConfiguredBackoff() throws Exception {
+    CountDownLatch dropped = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    AtomicInteger backoffsCreated = new AtomicInteger();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      attempts.incrementAndGet();
+                      return new HttpResponse("", 503, "Unavailable", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(sender)
+            .backoff(
+                () -> {
+                  backoffsCreated.incrementAndGet();
+                  return Backoff.builder()
+                      .backoffFactor(10, TimeUnit.MILLISECONDS)
+                      .maxBackoff(20, TimeUnit.MILLISECONDS)
+                      .maxRetries(3)
+                      .strategy(BackoffStrategy.fullJitter())
+                      .build();
+                })
+            .build();
+    testClass.withNotificationHandler(
+        new NotificationHandler() {
+          @Override
+          public void noticeInfo(
+              String message, Exception exception, TelemetryBatch<? extends Telemetry> batch) {}
+
+          @Override
+          public void noticeError(
+              String message, Throwable throwable, TelemetryBatch<? extends Telemetry> batch) {
+            dropped.countDown();
+          }
+        });
+
+    testClass.sendBatch(metricBatch);
+
+    assertTrue(dropped.await(5, TimeUnit.SECONDS));
+    assertEquals(4, attempts.get());
+    assertEquals(1, backoffsCreated.get());
+    testClass.shutdown();
+  }
+
+  @Test
+  void retriesOfABatchThatFillsTheBufferAreNotDropped() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) ->
+                        attempts.incrementAndGet() == 1
+                            ? new HttpResponse("", 503, "Unavailable", Collections.emptyMap())
+                            : new HttpResponse("", 202, "OK", Collections.emptyMap()))
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(sender)
+            .maxTelemetryBuffer(metricBatch.size())
+            .backoff(
+                () ->
+                    Backoff.builder()
+                        .backoffFactor(10, TimeUnit.MILLISECONDS)
+                        .maxBackoff(20, TimeUnit.MILLISECONDS)
+                        .build())
+            .build();
+    CustomNotificationHandler notifications = new CustomNotificationHandler();
+    testClass.withNotificationHandler(notifications);
+
+    testClass.sendBatch(metricBatch);
+    waitFor(() -> attempts.get() == 2);
+
+    // The retry took over the room the batch held, rather than needing room of its own.
+    assertEquals(0, testClass.getDroppedCount(TelemetryType.METRIC));
+    assertEquals(0, notifications.errorMessages.size());
+    testClass.shutdown();
+  }
+
+  @Test
+  void retriesStopOnceTheBudgetIsExhausted() throws Exception {
+    CountDownLatch dropped = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      attempts.incrementAndGet();
+                      return new HttpResponse("", 503, "Unavailable", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(sender)
+            .retryBudget(0, 1, TimeUnit.MINUTES)
+            .backoff(
+                () ->
+                    Backoff.builder()
+                        .backoffFactor(1, TimeUnit.MILLISECONDS)
+                        .maxBackoff(1, TimeUnit.MILLISECONDS)
+                        .maxRetries(100)
+                        .build())
+            .build();
+    testClass.withNotificationHandler(
+        new NotificationHandler() {
+          @Override
+          public void noticeInfo(
+              String message, Exception exception, TelemetryBatch<? extends Telemetry> batch) {}
+
+          @Override
+          public void noticeError(
+              String message, Throwable throwable, TelemetryBatch<? extends Telemetry> batch) {
+            dropped.countDown();
+          }
+        });
+
+    testClass.sendBatch(metricBatch);
+
+    assertTrue(dropped.await(5, TimeUnit.SECONDS));
+    assertEquals(11, attempts.get(), "the first attempt and the 10 retries always allowed");
+    assertEquals(10, testClass.getRetryCount());
+    assertEquals(1, testClass.getRetriesDeniedCount());
+    testClass.shutdown();
+  }
+
+  @Test
+  void circuitBreakerHoldsBatchesBackDuringAnOutage() throws Exception {
+    long outageEnds = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+    AtomicInteger failures = new AtomicInteger();
+    CountDownLatch delivered = new CountDownLatch(20);
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      if (System.nanoTime() - outageEnds < 0) {
+                        failures.incrementAndGet();
+                        return new HttpResponse("", 503, "Unavailable", Collections.emptyMap());
+                      }
+                      delivered.countDown();
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .circuitBreaker(
+                    CircuitBreaker.builder()
+                        .failureThreshold(2)
+                        .openDuration(100, TimeUnit.MILLISECONDS)
+                        .build())
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(sender)
+            .backoff(
+                () ->
+                    Backoff.builder()
+                        .backoffFactor(10, TimeUnit.MILLISECONDS)
+                        .maxBackoff(50, TimeUnit.MILLISECONDS)
+                        .maxRetries(100)
+                        .build())
+            .build();
+
+    for (int i = 0; i < 20; i++) {
+      testClass.sendBatch(makeBatch(singleton(makeMetric())));
+    }
+
+    assertTrue(delivered.await(10, TimeUnit.SECONDS));
+    // Without the breaker, every batch would have failed at least once.
+    assertTrue(failures.get() < 20, "failures: " + failures.get());
+    testClass.shutdown();
+  }
+
+  @Test
+  void batchesHeldBackByTheBreakerUseUpTheirRetries() throws Exception {
+    AtomicInteger posts = new AtomicInteger();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      posts.incrementAndGet();
+                      return new HttpResponse("", 503, "Unavailable", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .circuitBreaker(
+                    CircuitBreaker.builder()
+                        .failureThreshold(1)
+                        .openDuration(1, TimeUnit.HOURS)
+                        .build())
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(sender)
+            .backoff(() -> Backoff.builder().maxRetries(1).build())
+            .build();
+    CountDownLatch dropped = new CountDownLatch(1);
+    testClass.withNotificationHandler(
+        new CustomNotificationHandler() {
+          @Override
+          public void noticeError(
+              String message, Throwable t, TelemetryBatch<? extends Telemetry> batch) {
+            if (message.startsWith("Max retries exceeded")) {
+              dropped.countDown();
+            }
+          }
+        });
+
+    testClass.sendBatch(makeBatch(singleton(makeMetric())));
+
+    // The breaker opens on the first failure, and the retry it holds back is the batch's last.
+    assertTrue(dropped.await(5, TimeUnit.SECONDS));
+    assertEquals(1, posts.get());
+    testClass.shutdown();
+  }
+
+  @Test
+  void batchesAreSplitToFitTheMaxPayloadSize() throws Exception {
+    int maxPayloadBytes = 2000;
+    List<Integer> postedSizes = new CopyOnWriteArrayList<>();
+    AtomicInteger splits = new AtomicInteger();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      postedSizes.add(body.length);
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .maxPayloadBytes(maxPayloadBytes)
+                .build());
+    TelemetryClient testClass = TelemetryClient.builder().metricBatchSender(sender).build();
+    testClass.withNotificationHandler(
+        new NotificationHandler() {
+          @Override
+          public void noticeInfo(
+              String message, Exception exception, TelemetryBatch<? extends Telemetry> batch) {
+            if (exception instanceof RetryWithSplitException) {
+              splits.incrementAndGet();
+            }
+          }
+
+          @Override
+          public void noticeError(
+              String message, Throwable throwable, TelemetryBatch<? extends Telemetry> batch) {}
+        });
+
+    testClass.sendBatch(makeBatch(makeMetrics(200)));
+    waitFor(() -> !postedSizes.isEmpty());
+    Thread.sleep(100);
+    int firstBatchPosts = postedSizes.size();
+    testClass.sendBatch(makeBatch(makeMetrics(200)));
+    waitFor(() -> postedSizes.size() > firstBatchPosts);
+    Thread.sleep(100);
+
+    assertEquals(1, splits.get(), "only the first batch had to be rejected to learn its size");
+    assertTrue(firstBatchPosts > 2);
+    postedSizes.forEach(size -> assertTrue(size <= maxPayloadBytes, "posted " + size));
+    testClass.shutdown();
+  }
+
+  @Test
+  void aSingleItemOverTheMaxPayloadSizeIsDropped() throws Exception {
+    AtomicInteger posts = new AtomicInteger();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      posts.incrementAndGet();
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .maxPayloadBytes(10)
+                .build());
+    TelemetryClient testClass = TelemetryClient.builder().metricBatchSender(sender).build();
+    CustomNotificationHandler notifications = new CustomNotificationHandler();
+    testClass.withNotificationHandler(notifications);
+
+    testClass.sendBatch(makeBatch(makeMetrics(2)));
+    waitFor(() -> notifications.errorMessages.size() == 2);
+    Thread.sleep(100);
+
+    assertEquals(1, notifications.infoMessages.size(), "only the pair was split");
+    assertEquals(2, notifications.errorMessages.size());
+    assertEquals(0, posts.get());
+    testClass.shutdown();
+  }
+
+  @Test
+  void batchesOfUnevenItemsAreSplitByTheirSize() throws Exception {
+    int maxPayloadBytes = 8000;
+    List<Integer> postedSizes = new CopyOnWriteArrayList<>();
+    AtomicInteger splits = new AtomicInteger();
+    LogBatchSender sender =
+        LogBatchSender.create(
+            LogBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      postedSizes.add(body.length);
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/log/v1"))
+                .maxPayloadBytes(maxPayloadBytes)
+                .build());
+    TelemetryClient testClass = TelemetryClient.builder().logBatchSender(sender).build();
+    testClass.withNotificationHandler(
+        new NotificationHandler() {
+          @Override
+          public void noticeInfo(
+              String message, Exception exception, TelemetryBatch<? extends Telemetry> batch) {
+            if (exception instanceof RetryWithSplitException) {
+              splits.incrementAndGet();
+            }
+          }
+
+          @Override
+          public void noticeError(
+              String message, Throwable throwable, TelemetryBatch<? extends Telemetry> batch) {}
+        });
+    Random random = new Random(7);
+
+    testClass.sendBatch(new LogBatch(makeLogs(random, 4, 1000), new Attributes()));
+    waitFor(() -> postedSizes.size() == 1);
+    // As many items as before, by count, but some of them are three times the size.
+    List<Log> uneven = makeLogs(random, 8, 1000);
+    uneven.addAll(makeLogs(random, 3, 3000));
+    testClass.sendBatch(new LogBatch(uneven, new Attributes()));
+    waitFor(() -> postedSizes.size() > 2);
+    Thread.sleep(100);
+
+    assertEquals(0, splits.get(), "the big logs were split off before they were encoded");
+    postedSizes.forEach(size -> assertTrue(size <= maxPayloadBytes, "posted " + size));
+    testClass.shutdown();
+  }
+
+  @Test
+  void batchesWithoutASenderAreReportedToTheNotificationHandler() throws Exception {
+    TelemetryClient testClass = TelemetryClient.builder().metricBatchSender(batchSender).build();
+    CustomNotificationHandler notifications = new CustomNotificationHandler();
+    testClass.withNotificationHandler(notifications);
+
+    testClass.sendBatch(logBatch);
+
+    assertEquals(1, notifications.errorMessages.size());
+    testClass.shutdown();
+  }
+
+  @Test
+  void batchesOutOfRetriesAreSpilledAndReplayedOnceTheEndpointRecovers() throws Exception {
+    AtomicBoolean failing = new AtomicBoolean(true);
+    List<byte[]> accepted = new CopyOnWriteArrayList<>();
+    List<byte[]> rejected = new CopyOnWriteArrayList<>();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      if (failing.get()) {
+                        rejected.add(body);
+                        return new HttpResponse("", 503, "Unavailable", Collections.emptyMap());
+                      }
+                      accepted.add(body);
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    Path directory = Files.createTempDirectory("spill");
+    DiskSpillQueue spillQueue = DiskSpillQueue.builder(directory).build();
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(sender)
+            .spillQueue(spillQueue)
+            .backoff(
+                () ->
+                    Backoff.builder()
+                        .backoffFactor(1, TimeUnit.MILLISECONDS)
+                        .maxBackoff(1, TimeUnit.MILLISECONDS)
+                        .maxRetries(1)
+                        .build())
+            .build();
+
+    testClass.sendBatch(metricBatch);
+    waitFor(() -> spillQueue.size() == 1);
+    assertEquals(2, rejected.size());
+
+    // The spilled batch waits until a new batch gets through.
+    failing.set(false);
+    testClass.sendBatch(makeBatch(singleton(makeMetric())));
+    waitFor(() -> accepted.size() == 2);
+
+    assertTrue(Arrays.equals(rejected.get(0), accepted.get(1)), "the same payload was replayed");
+    assertTrue(spillQueue.isEmpty());
+    testClass.shutdown();
+    spillQueue.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  void spilledBatchesProbeAnEndpointThatGetsNoNewTelemetry() throws Exception {
+    AtomicBoolean failing = new AtomicBoolean(true);
+    List<byte[]> accepted = new CopyOnWriteArrayList<>();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      if (failing.get()) {
+                        return new HttpResponse("", 503, "Unavailable", Collections.emptyMap());
+                      }
+                      accepted.add(body);
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    Path directory = Files.createTempDirectory("spill");
+    DiskSpillQueue spillQueue = DiskSpillQueue.builder(directory).build();
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(sender)
+            .spillQueue(spillQueue)
+            .spillProbeInterval(100, TimeUnit.MILLISECONDS)
+            .backoff(() -> Backoff.builder().maxRetries(1).build())
+            .build();
+
+    testClass.sendBatch(makeBatch(singleton(makeMetric())));
+    testClass.sendBatch(makeBatch(singleton(makeMetric())));
+    waitFor(() -> spillQueue.size() == 2);
+    failing.set(false);
+
+    // Nothing new is sent, so only a probe can find out that the endpoint is back.
+    waitFor(() -> accepted.size() == 2);
+    assertTrue(spillQueue.isEmpty());
+    testClass.shutdown();
+    spillQueue.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  void spilledBatchesForAnEndpointThatIsDownDontHoldBackOtherTypes() throws Exception {
+    List<byte[]> acceptedLogs = new CopyOnWriteArrayList<>();
+    MetricBatchSender metricSender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) ->
+                        new HttpResponse("", 503, "Unavailable", Collections.emptyMap()))
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    LogBatchSender logSender =
+        LogBatchSender.create(
+            LogBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      acceptedLogs.add(body);
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/log/v1"))
+                .build());
+    Path directory = Files.createTempDirectory("spill");
+    DiskSpillQueue spillQueue = DiskSpillQueue.builder(directory).build();
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(metricSender)
+            .logBatchSender(logSender)
+            .spillQueue(spillQueue)
+            .backoff(() -> Backoff.builder().maxRetries(1).build())
+            .build();
+
+    testClass.sendBatch(makeBatch(singleton(makeMetric())));
+    waitFor(() -> spillQueue.size() == 1);
+    EncodedPayload logPayload = logSender.encode(logBatch);
+    assertTrue(spillQueue.offer(TelemetryType.LOG, logPayload));
+
+    // The metrics endpoint is only probed every 30 seconds, but the logs behind it go right away.
+    waitFor(() -> acceptedLogs.size() == 1);
+    assertArrayEquals(logPayload.getCompressedBytes(), acceptedLogs.get(0));
+    assertEquals(1, spillQueue.size());
+    assertEquals(TelemetryType.METRIC, spillQueue.peek().getType());
+    testClass.shutdown();
+    spillQueue.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  void spilledBatchesWithoutASenderAreDropped() throws Exception {
+    List<byte[]> accepted = new CopyOnWriteArrayList<>();
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(
+                    (url, headers, body, mediaType) -> {
+                      accepted.add(body);
+                      return new HttpResponse("", 202, "OK", Collections.emptyMap());
+                    })
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    Path directory = Files.createTempDirectory("spill");
+    DiskSpillQueue spillQueue = DiskSpillQueue.builder(directory).build();
+    // As if spilled by an earlier process that also sent spans.
+    spillQueue.offer(TelemetryType.SPAN, new EncodedPayload(new byte[] {1}, 1));
+    spillQueue.offer(TelemetryType.METRIC, new EncodedPayload(new byte[] {2}, 1));
+    TelemetryClient testClass =
+        TelemetryClient.builder().metricBatchSender(sender).spillQueue(spillQueue).build();
+    CustomNotificationHandler notifications = new CustomNotificationHandler();
+    testClass.withNotificationHandler(notifications);
+
+    waitFor(() -> accepted.size() == 1);
+    assertArrayEquals(new byte[] {2}, accepted.get(0));
+    assertEquals(1, notifications.errorMessages.size());
+    assertTrue(spillQueue.isEmpty());
+    testClass.shutdown();
+    spillQueue.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
   @Test
   void sendGeneratesRetryWithRequestedBackoff() throws Exception {
     CountDownLatch sendLatch = new CountDownLatch(1);
@@ -350,6 +914,224 @@ class TelemetryClientTest {
     return makeBatch(metrics);
   }
 
+  @Test
+  void sendKeepsMultipleRequestsInFlight() throws Exception {
+    List<CompletableFuture<HttpResponse>> pending = new CopyOnWriteArrayList<>();
+    AsyncHttpPoster poster =
+        (url, headers, body, mediaType) -> {
+          CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+          pending.add(response);
+          return response;
+        };
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(poster)
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder().metricBatchSender(sender).maxRequestsInFlight(3).build();
+
+    for (int i = 0; i < 5; i++) {
+      testClass.sendBatch(makeBatch(singleton(makeMetric())));
+    }
+    waitFor(() -> pending.size() == 3);
+    Thread.sleep(50);
+    assertEquals(3, pending.size());
+
+    pending.forEach(
+        response -> response.complete(new HttpResponse("", 202, "OK", Collections.emptyMap())));
+    waitFor(() -> pending.size() == 5);
+    pending.forEach(
+        response -> response.complete(new HttpResponse("", 202, "OK", Collections.emptyMap())));
+    testClass.shutdown();
+  }
+
+  @Test
+  void asyncFailuresAreHandledOnTheLaneThread() throws Exception {
+    CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+    AsyncHttpPoster poster = (url, headers, body, mediaType) -> response;
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(poster)
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder().metricBatchSender(sender).maxRequestsInFlight(2).build();
+    List<Thread> handledOn = new CopyOnWriteArrayList<>();
+    testClass.withNotificationHandler(
+        new CustomNotificationHandler() {
+          @Override
+          public void noticeError(
+              String message, Throwable t, TelemetryBatch<? extends Telemetry> batch) {
+            handledOn.add(Thread.currentThread());
+          }
+        });
+
+    testClass.sendBatch(metricBatch);
+    Thread.sleep(50);
+    // A fatal response, completed on this thread as if it were the HTTP client's.
+    response.complete(new HttpResponse("", 400, "Bad Request", Collections.emptyMap()));
+    waitFor(() -> handledOn.size() == 1);
+    assertNotSame(Thread.currentThread(), handledOn.get(0));
+    testClass.shutdown();
+  }
+
+  @Test
+  void slowLaneDoesNotHoldBackOtherTypes() throws Exception {
+    CountDownLatch logsReleased = new CountDownLatch(1);
+    CountDownLatch logsStarted = new CountDownLatch(1);
+    CountDownLatch metricsSent = new CountDownLatch(2);
+    HttpPoster logPoster =
+        (url, headers, body, mediaType) -> {
+          logsStarted.countDown();
+          try {
+            logsReleased.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return new HttpResponse("", 202, "OK", Collections.emptyMap());
+        };
+    HttpPoster metricPoster =
+        (url, headers, body, mediaType) -> {
+          metricsSent.countDown();
+          return new HttpResponse("", 202, "OK", Collections.emptyMap());
+        };
+    TelemetryClient testClass =
+        TelemetryClient.builder()
+            .metricBatchSender(
+                MetricBatchSender.create(
+                    MetricBatchSender.configurationBuilder()
+                        .apiKey("api-key")
+                        .httpPoster(metricPoster)
+                        .endpoint(new URL("http://localhost/metric/v1"))
+                        .build()))
+            .logBatchSender(
+                LogBatchSender.create(
+                    SenderConfiguration.builder("http://localhost", "/log/v1")
+                        .apiKey("api-key")
+                        .httpPoster(logPoster)
+                        .build()))
+            .lane(TelemetryType.LOG, 1)
+            .lane(TelemetryType.METRIC, 2)
+            .build();
+
+    testClass.sendBatch(logBatch);
+    assertTrue(logsStarted.await(5, TimeUnit.SECONDS));
+    testClass.sendBatch(metricBatch);
+    testClass.sendBatch(makeBatch(singleton(makeMetric())));
+
+    assertTrue(metricsSent.await(5, TimeUnit.SECONDS));
+    logsReleased.countDown();
+    testClass.shutdown();
+  }
+
+  @Test
+  void retryAfterPausesTheWholeEndpoint() throws Exception {
+    AtomicInteger accepted = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    AtomicLong pausedUntil = new AtomicLong();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/metric/v1",
+        exchange -> {
+          long now = System.nanoTime();
+          if (rejected.get() == 0 || now - pausedUntil.get() < 0) {
+            // The first request, and any request during the pause, is rate limited.
+            rejected.incrementAndGet();
+            pausedUntil.set(now + TimeUnit.SECONDS.toNanos(1));
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            exchange.sendResponseHeaders(429, -1);
+          } else {
+            accepted.incrementAndGet();
+            exchange.sendResponseHeaders(202, -1);
+          }
+          exchange.close();
+        });
+    server.start();
+    try {
+      URL endpoint =
+          new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metric/v1");
+      MetricBatchSender sender =
+          MetricBatchSender.create(
+              MetricBatchSender.configurationBuilder()
+                  .apiKey("api-key")
+                  .httpPoster(new UrlConnectionPoster())
+                  .endpoint(endpoint)
+                  .build());
+      TelemetryClient testClass = TelemetryClient.builder().metricBatchSender(sender).build();
+
+      for (int i = 0; i < 5; i++) {
+        testClass.sendBatch(makeBatch(singleton(makeMetric())));
+      }
+      waitFor(() -> accepted.get() == 5);
+      assertEquals(1, rejected.get());
+      testClass.shutdown();
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void requestsPerSecondIsEnforced() throws Exception {
+    List<Long> sentAt = new CopyOnWriteArrayList<>();
+    HttpPoster poster =
+        (url, headers, body, mediaType) -> {
+          sentAt.add(System.nanoTime());
+          return new HttpResponse("", 202, "OK", Collections.emptyMap());
+        };
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("api-key")
+                .httpPoster(poster)
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    TelemetryClient testClass =
+        TelemetryClient.builder().metricBatchSender(sender).maxRequestsPerSecond(10).build();
+
+    for (int i = 0; i < 15; i++) {
+      testClass.sendBatch(makeBatch(singleton(makeMetric())));
+    }
+    waitFor(() -> sentAt.size() == 15);
+    // A burst of 10, then 5 more at 10 per second.
+    long elapsed = sentAt.get(14) - sentAt.get(0);
+    assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(400), "elapsed " + elapsed);
+    testClass.shutdown();
+  }
+
+  /** Posts with the JDK's HttpURLConnection, so that tests can talk to a local server. */
+  private static class UrlConnectionPoster implements HttpPoster {
+    @Override
+    public HttpResponse post(URL url, Map<String, String> headers, byte[] body, String mediaType)
+        throws IOException {
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      headers.forEach(connection::setRequestProperty);
+      connection.setRequestProperty("Content-Type", mediaType);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+      int code = connection.getResponseCode();
+      HttpResponse response =
+          new HttpResponse("", code, connection.getResponseMessage(), connection.getHeaderFields());
+      connection.disconnect();
+      return response;
+    }
+  }
+
+  private static void waitFor(Supplier<Boolean> condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!condition.get() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(condition.get());
+  }
+
   private static Metric makeMetric() {
     return new Count(
         Utils.generateUUID().toString(),
@@ -359,6 +1141,14 @@ class TelemetryClientTest {
         new Attributes().put("bar", "baz"));
   }
 
+  private static List<Metric> makeMetrics(int count) {
+    List<Metric> metrics = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      metrics.add(makeMetric());
+    }
+    return metrics;
+  }
+
   private static Span makeSpan() {
     return Span.builder("spanId").timestamp(6666).traceId("traceId").build();
   }
@@ -371,6 +1161,18 @@ class TelemetryClientTest {
     return Log.builder().message("starting").build();
   }
 
+  private static List<Log> makeLogs(Random random, int count, int messageLength) {
+    List<Log> logs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      StringBuilder message = new StringBuilder();
+      while (message.length() < messageLength) {
+        message.append(Integer.toHexString(random.nextInt(16)));
+      }
+      logs.add(Log.builder().message(message.toString()).build());
+    }
+    return logs;
+  }
+
   private MetricBatch makeBatch(Collection<Metric> metrics) {
     return new MetricBatch(metrics, new Attributes().put("foo", "bar"));
   }
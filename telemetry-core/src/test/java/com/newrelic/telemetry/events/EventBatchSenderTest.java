@@ -3,7 +3,6 @@ package com.newrelic.telemetry.events;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isA;
@@ -18,6 +17,7 @@ import com.newrelic.telemetry.exceptions.RetryWithSplitException;
 import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.http.HttpResponse;
 import com.newrelic.telemetry.transport.BatchDataSender;
+import com.newrelic.telemetry.transport.JsonPayloadWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -43,13 +43,13 @@ public class EventBatchSenderTest {
     Attributes common = new Attributes().put("j", "k");
     EventBatch batch = new EventBatch(events, common);
 
-    String json = "{\"a\":\"great document\"}";
     EventBatchMarshaller marshaller = mock(EventBatchMarshaller.class);
-    when(marshaller.toJson(any())).thenReturn(json);
 
     Response ok = new Response(200, "OK", "yup");
     BatchDataSender sender = mock(BatchDataSender.class);
-    when(sender.send(json, batch)).thenThrow(RetryWithSplitException.class).thenReturn(ok);
+    when(sender.send(isA(JsonPayloadWriter.class), eq(batch)))
+        .thenThrow(RetryWithSplitException.class)
+        .thenReturn(ok);
 
     EventBatchSender testClass = new EventBatchSender(marshaller, sender);
 
@@ -3,6 +3,9 @@ package com.newrelic.telemetry.events;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -18,4 +21,69 @@ class EventBufferTest {
     eventBuffer.addEvent(expectedEvent);
     assertEquals(1, eventBuffer.size());
   }
+
+  @Test
+  @DisplayName("A bounded buffer drops events once full, and accepts more after a batch")
+  void testBoundedBuffer() {
+    EventBuffer eventBuffer = EventBuffer.builder().capacity(2).build();
+    Event first = new Event("myEvent", new Attributes().put("n", 1), 1);
+    Event second = new Event("myEvent", new Attributes().put("n", 2), 2);
+    Event third = new Event("myEvent", new Attributes().put("n", 3), 3);
+
+    eventBuffer.addEvent(first);
+    eventBuffer.addEvent(second);
+    eventBuffer.addEvent(third);
+    assertEquals(2, eventBuffer.size());
+    assertEquals(1, eventBuffer.getDroppedCount());
+
+    List<Event> events = new ArrayList<>(eventBuffer.createBatch().getTelemetry());
+    assertEquals(2, events.size());
+    assertEquals(first, events.get(0));
+    assertEquals(second, events.get(1));
+    assertEquals(0, eventBuffer.size());
+
+    eventBuffer.addEvent(third);
+    assertEquals(third, eventBuffer.createBatch().getTelemetry().iterator().next());
+  }
+
+  @Test
+  @DisplayName("A bounded buffer can discard its oldest events instead")
+  void testDropOldest() {
+    EventBuffer eventBuffer =
+        EventBuffer.builder().capacity(1).overflowPolicy(OverflowPolicy.dropOldest()).build();
+    Event first = new Event("myEvent", new Attributes().put("n", 1), 1);
+    Event second = new Event("myEvent", new Attributes().put("n", 2), 2);
+
+    eventBuffer.addEvent(first);
+    eventBuffer.addEvent(second);
+
+    assertEquals(1, eventBuffer.getDroppedCount());
+    assertEquals(second, eventBuffer.createBatch().getTelemetry().iterator().next());
+  }
+
+  @Test
+  @DisplayName("A striped buffer batches events added from many threads")
+  void testStripedBuffer() throws Exception {
+    EventBuffer eventBuffer = EventBuffer.builder().striped(true).build();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      threads.add(
+          new Thread(
+              () -> {
+                for (int i = 0; i < 100; i++) {
+                  eventBuffer.addEvent(new Event("myEvent", new Attributes().put("n", i), i));
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(800, eventBuffer.size());
+    assertEquals(800, eventBuffer.createBatch().size());
+    assertEquals(0, eventBuffer.size());
+  }
 }
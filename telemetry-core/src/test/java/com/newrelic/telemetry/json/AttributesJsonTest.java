@@ -5,8 +5,15 @@
 package com.newrelic.telemetry.json;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.AttributesView;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 
@@ -24,4 +31,63 @@ class AttributesJsonTest {
     JSONAssert.assertEquals(
         "{\"foo\":\"bar\"}", attributesJson.toJson(Collections.singletonMap("foo", "bar")), false);
   }
+
+  @Test
+  @DisplayName("A view is encoded once, without its illegal values")
+  void testViewEncodingIsCached() {
+    AttributesJson attributesJson = new AttributesJson();
+    Attributes attributes =
+        new Attributes()
+            .put("b", 2)
+            .put("a", "x")
+            .put("nan", Double.NaN)
+            .put("none", (String) null);
+    AttributesView view = attributes.view();
+
+    String json = attributesJson.toJson(view);
+    assertEquals("{\"a\":\"x\",\"b\":2}", json);
+    assertSame(json, attributesJson.toJson(view));
+    assertSame(json, new AttributesJson().toJson(attributes.asMap()));
+
+    attributes.put("c", true);
+    assertNotSame(json, attributesJson.toJson(attributes.asMap()));
+    assertEquals(
+        "{\"a\":\"x\",\"b\":2,\"c\":true}", attributesJson.toJson(attributes.asMap()));
+  }
+
+  @Test
+  @DisplayName("A view is spliced in as cached bytes, the same as its json text")
+  void testWriteJsonValue() throws Exception {
+    AttributesJson attributesJson = new AttributesJson();
+    Attributes attributes = new Attributes().put("a", "\u00e9").put("b", 2.5);
+    AttributesView view = attributes.view();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Utf8JsonWriter writer = new Utf8JsonWriter(out);
+    writer.beginArray();
+    attributesJson.writeJsonValue(attributes.asMap(), writer);
+    attributesJson.writeJsonValue(Collections.singletonMap("c", true), writer);
+    writer.endArray();
+    writer.close();
+
+    assertEquals(
+        "[{\"a\":\"\u00e9\",\"b\":2.5},{\"c\":true}]",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+    byte[] cached = view.toUtf8Json(v -> "unused");
+    assertEquals("{\"a\":\"\u00e9\",\"b\":2.5}", new String(cached, StandardCharsets.UTF_8));
+    assertSame(cached, view.toUtf8Json(v -> "unused"));
+  }
+
+  @Test
+  void testUnboxedValues() {
+    Attributes attributes =
+        new Attributes()
+            .putLong("count", 12)
+            .putDouble("ratio", 0.25)
+            .putDouble("infinite", Double.POSITIVE_INFINITY)
+            .putBoolean("ok", true);
+    assertEquals(
+        "{\"count\":12,\"ok\":true,\"ratio\":0.25}",
+        new AttributesJson().toJson(attributes.asMap()));
+  }
 }
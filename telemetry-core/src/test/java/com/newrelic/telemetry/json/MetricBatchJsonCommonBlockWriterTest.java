@@ -8,10 +8,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.google.gson.stream.JsonWriter;
 import com.newrelic.telemetry.Attributes;
 import com.newrelic.telemetry.metrics.Gauge;
 import com.newrelic.telemetry.metrics.MetricBatch;
 import com.newrelic.telemetry.metrics.json.MetricBatchJsonCommonBlockWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -53,4 +57,40 @@ class MetricBatchJsonCommonBlockWriterTest {
 
     assertEquals(expectedCommonJsonBlock, sb.toString());
   }
+
+  @Test
+  void testCommonJsonWrittenIntoTheEnclosingWriter() throws Exception {
+    StringWriter out = new StringWriter();
+    JsonWriter jsonWriter = new JsonWriter(out);
+    MetricBatchJsonCommonBlockWriter testClass =
+        new MetricBatchJsonCommonBlockWriter(new AttributesJson());
+
+    jsonWriter.beginObject();
+    testClass.appendCommonJson(metricBatch, jsonWriter);
+    jsonWriter.endObject();
+
+    assertEquals("{\"common\":{\"attributes\":{\"key\":\"val\"}}}", out.toString());
+  }
+
+  @Test
+  void testCommonJsonIsEncodedOnce() throws Exception {
+    MetricBatchJsonCommonBlockWriter testClass =
+        new MetricBatchJsonCommonBlockWriter(new AttributesJson());
+
+    for (int i = 0; i < 2; i++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Utf8JsonWriter jsonWriter = new Utf8JsonWriter(out);
+      jsonWriter.beginObject();
+      testClass.appendCommonJson(metricBatch, jsonWriter);
+      jsonWriter.endObject();
+      jsonWriter.close();
+      assertEquals(
+          "{\"common\":{\"attributes\":{\"key\":\"val\"}}}",
+          new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+    // The writer filled the view's cache, so this encoder is never asked.
+    assertEquals(
+        "{\"key\":\"val\"}",
+        new String(commonAttributes.view().toUtf8Json(v -> "unused"), StandardCharsets.UTF_8));
+  }
 }
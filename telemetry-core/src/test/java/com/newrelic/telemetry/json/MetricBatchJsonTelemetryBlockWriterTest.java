@@ -8,12 +8,16 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.google.gson.stream.JsonWriter;
 import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.metrics.Count;
 import com.newrelic.telemetry.metrics.Gauge;
 import com.newrelic.telemetry.metrics.Metric;
 import com.newrelic.telemetry.metrics.MetricBatch;
+import com.newrelic.telemetry.metrics.Summary;
 import com.newrelic.telemetry.metrics.json.MetricBatchJsonTelemetryBlockWriter;
 import com.newrelic.telemetry.metrics.json.MetricToJson;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -70,4 +74,30 @@ class MetricBatchJsonTelemetryBlockWriterTest {
     testClass.appendTelemetryJson(metricBatch, builder);
     assertEquals("\"metrics\":[valid one]", builder.toString());
   }
+
+  @Test
+  @DisplayName("Metrics are validated and written to a shared writer in one pass")
+  void testSinglePassJsonWriter() throws Exception {
+    Gauge invalidGauge =
+        new Gauge("crumb", Double.NaN, System.currentTimeMillis(), new Attributes());
+    Count count = new Count("count", 5d, 100, 200, new Attributes().put("foo", "bar"));
+    Summary invalidSummary =
+        new Summary("summary", 1, Double.POSITIVE_INFINITY, 1d, 1d, 100, 200, new Attributes());
+    List<Metric> metrics = Arrays.asList(gauge, invalidGauge, count, invalidSummary);
+    metricBatch = new MetricBatch(metrics, commonAttributes);
+
+    StringWriter out = new StringWriter();
+    JsonWriter jsonWriter = new JsonWriter(out);
+    jsonWriter.beginObject();
+    new MetricBatchJsonTelemetryBlockWriter(new MetricToJson())
+        .appendTelemetryJson(metricBatch, jsonWriter);
+    jsonWriter.endObject();
+
+    String expected =
+        "{\"metrics\":["
+            + "{\"name\":\"gauge\",\"type\":\"gauge\",\"value\":3.0,\"timestamp\":555,\"attributes\":{}},"
+            + "{\"name\":\"count\",\"type\":\"count\",\"value\":5.0,\"timestamp\":100,\"interval.ms\":100,"
+            + "\"attributes\":{\"foo\":\"bar\"}}]}";
+    assertEquals(expected, out.toString());
+  }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.json;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class Utf8JsonWriterTest {
+
+  @Test
+  @DisplayName("Strings are escaped and encoded exactly like gson over a UTF-8 writer")
+  void testStrings() throws IOException {
+    String[] strings = {
+      "",
+      "plain",
+      "\"quoted\" \\ back/slash",
+      "tab\tnew\nline\rfeed\fback\bspace",
+      "\u0000\u0001\u001f\u007f",
+      "<html> & 'quotes' =",
+      "caf\u00e9 \u20ac \u4e2d\u6587",
+      "line\u2028separator\u2029paragraph",
+      "emoji \ud83d\ude00 pair",
+      "lone \ud83d high, lone \ude00 low, trailing \ud83d"
+    };
+    for (String string : strings) {
+      assertSameBytes(
+          writer -> {
+            writer.beginObject();
+            writer.name(string).value(string);
+            writer.endObject();
+          });
+    }
+  }
+
+  @Test
+  @DisplayName("Random strings longer than the buffer are encoded exactly like gson")
+  void testRandomStrings() throws IOException {
+    Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      int id = round;
+      StringBuilder string = new StringBuilder();
+      int length = random.nextInt(20_000);
+      for (int i = 0; i < length; i++) {
+        // Mostly ascii, with every other kind of char mixed in.
+        char c = random.nextInt(4) == 0 ? (char) random.nextInt(0x10000) : (char) (32 + i % 95);
+        string.append(c);
+      }
+      assertSameBytes(
+          writer -> {
+            writer.beginArray();
+            writer.value(string.toString());
+            writer.jsonValue("{\"raw\":\"" + id + "\"}");
+            writer.endArray();
+          });
+    }
+  }
+
+  @Test
+  @DisplayName("Numbers are written exactly like gson")
+  void testNumbers() throws IOException {
+    double[] doubles = {
+      0.0, -0.0, 1.0, -1.0, 0.5, 100.0, 9_999_999.0, 1e7, -1e7, 12345678.0, 1e21, 0.001, 1e-4,
+      1.5e-5, 123456.789, 0.1 + 0.2, Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE
+    };
+    long[] longs = {0, 7, -7, 10, 99, 1_000_000, Long.MAX_VALUE, Long.MIN_VALUE, -1};
+    Number[] numbers = {3, -3, 4.32f, new BigDecimal("55.555"), (byte) 1, 2.5d, 9L};
+    assertSameBytes(
+        writer -> {
+          writer.beginObject();
+          for (double value : doubles) {
+            writer.name("d").value(value);
+          }
+          for (long value : longs) {
+            writer.name("l").value(value);
+          }
+          for (Number value : numbers) {
+            writer.name("n").value(value);
+          }
+          writer.endObject();
+        });
+  }
+
+  @Test
+  void testStructure() throws IOException {
+    assertSameBytes(
+        writer -> {
+          writer.beginArray();
+          writer.beginObject();
+          writer.name("common").beginObject().name("attributes").jsonValue("{\"a\":1}");
+          writer.endObject();
+          writer.name("metrics").beginArray();
+          for (int i = 0; i < 3; i++) {
+            writer.beginObject();
+            writer.name("name").value("m" + i);
+            writer.name("timestamp").value(1586413929145L + i);
+            writer.name("flag").value(i % 2 == 0);
+            writer.name("boxed").value(Boolean.FALSE);
+            writer.name("missing").nullValue();
+            writer.name("nested").beginArray().endArray();
+            writer.name("empty").beginObject().endObject();
+            writer.endObject();
+          }
+          writer.endArray();
+          writer.endObject();
+          writer.endArray();
+        });
+  }
+
+  @Test
+  void testRejectsWhatGsonRejects() throws IOException {
+    Utf8JsonWriter writer = new Utf8JsonWriter(new ByteArrayOutputStream());
+    writer.beginObject();
+    assertThrows(IllegalStateException.class, () -> writer.value("no name"));
+    writer.name("a");
+    assertThrows(IllegalStateException.class, () -> writer.name("b"));
+    assertThrows(IllegalArgumentException.class, () -> writer.value(Double.NaN));
+    assertThrows(IllegalArgumentException.class, () -> writer.value((Number) Float.NaN));
+    writer.value(1).endObject();
+    assertThrows(IllegalStateException.class, writer::endObject);
+    assertThrows(IllegalStateException.class, writer::beginArray);
+  }
+
+  @Test
+  void testFlushesAsItGoes() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Utf8JsonWriter writer = new Utf8JsonWriter(out);
+    writer.beginArray();
+    for (int i = 0; i < 10_000; i++) {
+      writer.value("x");
+    }
+    // Only the last, partly filled buffer is still held.
+    assertEquals(8192 * (40_001 / 8192), out.size());
+    writer.endArray();
+    writer.close();
+    assertEquals(40_001, out.size());
+  }
+
+  @Test
+  @DisplayName("Short decimals are written exactly like gson")
+  void testDecimals() throws IOException {
+    double[] doubles = {
+      0.001, 12.5, -3.25, 0.1, 1234567.123456, 9999999.999999, 0.30000000000000004, 1e-4, 1.5e7,
+      -0.0015, 42.000001, 3.141592653589793
+    };
+    double[] randoms = new double[20_000];
+    Random random = new Random(19);
+    for (int i = 0; i < randoms.length; i += 2) {
+      long unscaled = random.nextInt(2_000_000_000) - 1_000_000_000L;
+      randoms[i] = unscaled / Math.pow(10, random.nextInt(10));
+      randoms[i + 1] = random.nextDouble() * 1e7;
+    }
+    assertSameBytes(
+        writer -> {
+          writer.beginArray();
+          for (double value : doubles) {
+            writer.value(value);
+          }
+          for (double value : randoms) {
+            writer.value(value);
+          }
+          writer.endArray();
+        });
+  }
+
+  @Test
+  @DisplayName("Encoded json bytes are spliced in as they are")
+  void testJsonValueBytes() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Utf8JsonWriter writer = new Utf8JsonWriter(out);
+    writer.beginArray();
+    writer.jsonValue("{\"a\":\"\u00e9\"}".getBytes(StandardCharsets.UTF_8));
+    writer.jsonValue("[1]".getBytes(StandardCharsets.UTF_8));
+    writer.endArray();
+    writer.close();
+    assertEquals("[{\"a\":\"\u00e9\"},[1]]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  @DisplayName("A closed writer hands its buffer to the next one")
+  void testBufferIsReusedAfterClose() throws IOException {
+    Utf8JsonWriter first = new Utf8JsonWriter(new ByteArrayOutputStream());
+    first.beginArray().value(1).endArray();
+    first.close();
+    first.close();
+    assertThrows(IllegalStateException.class, first::beginArray);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Utf8JsonWriter second = new Utf8JsonWriter(out);
+    second.beginArray().value("x").endArray();
+    second.close();
+    assertEquals("[\"x\"]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private static void assertSameBytes(Document document) throws IOException {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Writer gsonOut = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+    document.write(new JsonWriter(gsonOut));
+    gsonOut.flush();
+
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    Utf8JsonWriter writer = new Utf8JsonWriter(actual);
+    document.write(writer);
+    writer.close();
+
+    assertEquals(
+        new String(expected.toByteArray(), StandardCharsets.UTF_8),
+        new String(actual.toByteArray(), StandardCharsets.UTF_8));
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+  }
+
+  private interface Document {
+    void write(JsonWriter writer) throws IOException;
+  }
+}
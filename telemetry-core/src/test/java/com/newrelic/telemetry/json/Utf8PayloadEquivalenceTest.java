@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.json;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.events.Event;
+import com.newrelic.telemetry.events.EventBatch;
+import com.newrelic.telemetry.events.json.EventBatchMarshaller;
+import com.newrelic.telemetry.logs.Log;
+import com.newrelic.telemetry.logs.LogBatch;
+import com.newrelic.telemetry.logs.json.LogBatchMarshaller;
+import com.newrelic.telemetry.logs.json.LogJsonCommonBlockWriter;
+import com.newrelic.telemetry.logs.json.LogJsonTelemetryBlockWriter;
+import com.newrelic.telemetry.metrics.Count;
+import com.newrelic.telemetry.metrics.Gauge;
+import com.newrelic.telemetry.metrics.MetricBatch;
+import com.newrelic.telemetry.metrics.Summary;
+import com.newrelic.telemetry.metrics.json.MetricBatchJsonCommonBlockWriter;
+import com.newrelic.telemetry.metrics.json.MetricBatchJsonTelemetryBlockWriter;
+import com.newrelic.telemetry.metrics.json.MetricBatchMarshaller;
+import com.newrelic.telemetry.metrics.json.MetricToJson;
+import com.newrelic.telemetry.spans.Span;
+import com.newrelic.telemetry.spans.SpanBatch;
+import com.newrelic.telemetry.spans.json.SpanBatchMarshaller;
+import com.newrelic.telemetry.spans.json.SpanJsonCommonBlockWriter;
+import com.newrelic.telemetry.spans.json.SpanJsonTelemetryBlockWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/** The UTF-8 encoder must produce exactly the bytes that gson does, for every kind of batch. */
+class Utf8PayloadEquivalenceTest {
+
+  private static final long TIMESTAMP = 1586413929145L;
+
+  @Test
+  @DisplayName("Metric batches encode to the same bytes")
+  void testMetrics() throws IOException {
+    MetricBatch batch =
+        new MetricBatch(
+            asList(
+                new Count("count", 12.0, TIMESTAMP, TIMESTAMP + 1000, attributes()),
+                new Gauge("gauge", -0.25, TIMESTAMP, attributes().put("extra", 1e21)),
+                new Summary(
+                    "summary\u00e9",
+                    3,
+                    1.5e-5,
+                    0.0,
+                    9999999.0,
+                    TIMESTAMP,
+                    TIMESTAMP + 5,
+                    new Attributes())),
+            attributes());
+    for (JsonEncoder encoder : JsonEncoder.values()) {
+      MetricBatchMarshaller marshaller =
+          new MetricBatchMarshaller(
+              new MetricBatchJsonCommonBlockWriter(new AttributesJson()),
+              new MetricBatchJsonTelemetryBlockWriter(new MetricToJson()),
+              encoder);
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+      marshaller.writeJson(batch, writer);
+      writer.flush();
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      marshaller.writeUtf8Json(batch, actual);
+      assertSameBytes(expected, actual);
+    }
+  }
+
+  @Test
+  @DisplayName("Span batches encode to the same bytes")
+  void testSpans() throws IOException {
+    SpanBatch batch =
+        new SpanBatch(
+            asList(
+                Span.builder("span1")
+                    .traceId("trace\"1\"")
+                    .timestamp(TIMESTAMP)
+                    .name("GET /\u4e2d")
+                    .serviceName("service")
+                    .durationMs(12.5)
+                    .parentId("parent")
+                    .withError("bad\nthing", "java.lang.Exception")
+                    .attributes(attributes())
+                    .build(),
+                Span.builder("span2").timestamp(TIMESTAMP).durationMs(3.0).build()),
+            attributes(),
+            "trace\u2028id");
+    SpanBatchMarshaller marshaller =
+        new SpanBatchMarshaller(
+            new SpanJsonCommonBlockWriter(new AttributesJson()),
+            new SpanJsonTelemetryBlockWriter(new AttributesJson()),
+            JsonEncoder.UTF8);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+    marshaller.writeJson(batch, writer);
+    writer.flush();
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    marshaller.writeUtf8Json(batch, actual);
+    assertSameBytes(expected, actual);
+  }
+
+  @Test
+  @DisplayName("Log batches encode to the same bytes")
+  void testLogs() throws IOException {
+    LogBatch batch =
+        new LogBatch(
+            asList(
+                Log.builder()
+                    .timestamp(TIMESTAMP)
+                    .message("multi\nline \u00bd message")
+                    .level("WARN")
+                    .serviceName("service")
+                    .throwable(new IllegalStateException("oops \"quoted\""))
+                    .attributes(attributes())
+                    .build(),
+                Log.builder().timestamp(TIMESTAMP + 1).message("plain").build()),
+            attributes());
+    LogBatchMarshaller marshaller =
+        new LogBatchMarshaller(
+            new LogJsonCommonBlockWriter(new AttributesJson()),
+            new LogJsonTelemetryBlockWriter(new AttributesJson()),
+            JsonEncoder.UTF8);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+    marshaller.writeJson(batch, writer);
+    writer.flush();
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    marshaller.writeUtf8Json(batch, actual);
+    assertSameBytes(expected, actual);
+  }
+
+  @Test
+  @DisplayName("Event batches encode to the same bytes")
+  void testEvents() throws IOException {
+    EventBatch batch =
+        new EventBatch(
+            asList(
+                new Event("CustomEvent", attributes(), TIMESTAMP),
+                new Event(
+                    "Other\u00e9",
+                    new Attributes()
+                        .put("float", 4.32f)
+                        .put("decimal", new BigDecimal("55.555"))
+                        .put("int", 7)
+                        .put("double", 0.1 + 0.2),
+                    TIMESTAMP + 1)),
+            attributes());
+    EventBatchMarshaller marshaller = new EventBatchMarshaller(JsonEncoder.UTF8);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+    marshaller.writeJson(batch, writer);
+    writer.flush();
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    marshaller.writeUtf8Json(batch, actual);
+    assertSameBytes(expected, actual);
+  }
+
+  private static Attributes attributes() {
+    return new Attributes()
+        .put("host", "h\u00f6st \"one\"")
+        .put("long", 42L)
+        .put("negative", -7L)
+        .put("ratio", 0.5)
+        .put("whole", 100.0)
+        .put("ok", true)
+        .put("emoji", "\ud83d\ude00");
+  }
+
+  private static void assertSameBytes(
+      ByteArrayOutputStream expected, ByteArrayOutputStream actual) {
+    assertEquals(
+        new String(expected.toByteArray(), StandardCharsets.UTF_8),
+        new String(actual.toByteArray(), StandardCharsets.UTF_8));
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+  }
+}
@@ -9,6 +9,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.newrelic.telemetry.Attributes;
@@ -18,6 +19,8 @@ import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.http.HttpResponse;
 import com.newrelic.telemetry.logs.json.LogBatchMarshaller;
 import com.newrelic.telemetry.transport.BatchDataSender;
+import com.newrelic.telemetry.transport.JsonPayloadWriter;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -35,19 +38,23 @@ class LogBatchSenderTest {
   void testSimpleSend() throws Exception {
     Log log = Log.builder().build();
     LogBatch batch = new LogBatch(Collections.singletonList(log), new Attributes().put("j", "k"));
-    String json = "{a great document}";
     Response response = new Response(123, "OK", "yup");
 
     LogBatchMarshaller marshaller = mock(LogBatchMarshaller.class);
     BatchDataSender sender = mock(BatchDataSender.class);
 
-    when(marshaller.toJson(batch)).thenReturn(json);
-    when(sender.send(json, batch)).thenReturn(response);
+    ArgumentCaptor<JsonPayloadWriter> payloadCaptor =
+        ArgumentCaptor.forClass(JsonPayloadWriter.class);
+    when(sender.send(payloadCaptor.capture(), eq(batch))).thenReturn(response);
 
     LogBatchSender testClass = new LogBatchSender(marshaller, sender);
 
     Response result = testClass.sendBatch(batch);
     assertEquals(response, result);
+
+    StringWriter out = new StringWriter();
+    payloadCaptor.getValue().writeTo(out);
+    verify(marshaller).writeJson(batch, out);
   }
 
   @Test
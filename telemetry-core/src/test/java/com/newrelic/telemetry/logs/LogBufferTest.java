@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.logs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LogBufferTest {
+
+  @Test
+  @DisplayName("Logs are batched with the common attributes and the buffer is cleared")
+  void testCreateBatch() {
+    Attributes attributes = new Attributes().put("key1", "value1");
+    LogBuffer logBuffer = LogBuffer.builder().attributes(attributes).serviceName("gopher").build();
+    Log first = log(1);
+    Log second = log(2);
+    assertEquals(0, logBuffer.size());
+
+    logBuffer.addLog(first);
+    logBuffer.addLog(second);
+    assertEquals(2, logBuffer.size());
+
+    LogBatch batch = logBuffer.createBatch();
+    List<Log> logs = new ArrayList<>(batch.getTelemetry());
+    assertEquals(2, logs.size());
+    assertEquals(first, logs.get(0));
+    assertEquals(second, logs.get(1));
+    assertEquals(
+        new Attributes(attributes).put("service.name", "gopher"), batch.getCommonAttributes());
+    assertEquals(0, logBuffer.size());
+    assertTrue(logBuffer.createBatch().isEmpty());
+  }
+
+  @Test
+  @DisplayName("A bounded buffer applies its overflow policy")
+  void testBoundedBuffer() {
+    LogBuffer logBuffer =
+        LogBuffer.builder().capacity(2).overflowPolicy(OverflowPolicy.dropOldest()).build();
+    for (int i = 0; i < 5; i++) {
+      logBuffer.addLog(log(i));
+    }
+
+    assertEquals(2, logBuffer.size());
+    assertEquals(3, logBuffer.getDroppedCount());
+    List<Log> logs = new ArrayList<>(logBuffer.createBatch().getTelemetry());
+    assertEquals(log(3), logs.get(0));
+    assertEquals(log(4), logs.get(1));
+  }
+
+  @Test
+  @DisplayName("A striped buffer batches logs added from many threads")
+  void testStripedBuffer() throws Exception {
+    LogBuffer logBuffer = LogBuffer.builder().striped(true).build();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      threads.add(
+          new Thread(
+              () -> {
+                for (int i = 0; i < 100; i++) {
+                  logBuffer.addLog(log(i));
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(800, logBuffer.size());
+    assertEquals(800, logBuffer.createBatch().size());
+  }
+
+  private static Log log(int i) {
+    return Log.builder()
+        .timestamp(i)
+        .message("message")
+        .attributes(new Attributes().put("n", i))
+        .build();
+  }
+}
@@ -5,8 +5,12 @@
 package com.newrelic.telemetry.metrics;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.newrelic.telemetry.Attributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -88,4 +92,175 @@ class MetricBufferTest {
             .build();
     assertEquals(expectedAttributes, buffer.getCommonAttributes());
   }
+
+  @Test
+  @DisplayName("Aggregating buffer sums counts per series")
+  void testAggregatingCounts() {
+    MetricBuffer metricBuffer = MetricBuffer.builder().aggregating(true).build();
+    Attributes attributes = new Attributes().put("route", "/foo");
+
+    for (int i = 0; i < 1000; i++) {
+      metricBuffer.addMetric(new Count("requests", 1, 100 + i, 101 + i, attributes.copy()));
+    }
+    metricBuffer.addMetric(new Count("requests", 5, 50, 60, new Attributes().put("route", "/bar")));
+
+    assertEquals(2, metricBuffer.size());
+    Collection<Metric> metrics = metricBuffer.createBatch().getTelemetry();
+    assertEquals(2, metrics.size());
+    assertTrue(metrics.contains(new Count("requests", 1000, 100, 1100, attributes)));
+    assertTrue(
+        metrics.contains(new Count("requests", 5, 50, 60, new Attributes().put("route", "/bar"))));
+  }
+
+  @Test
+  @DisplayName("Aggregating buffer keeps the latest gauge value and merges summaries")
+  void testAggregatingGaugesAndSummaries() {
+    MetricBuffer metricBuffer = MetricBuffer.builder().aggregating(true).build();
+    Attributes attributes = new Attributes().put("host", "a");
+
+    metricBuffer.addMetric(new Gauge("heap", 30, 2000, attributes));
+    metricBuffer.addMetric(new Gauge("heap", 10, 1000, attributes));
+    metricBuffer.addMetric(new Summary("latency", 2, 10, 3, 7, 100, 200, attributes));
+    metricBuffer.addMetric(new Summary("latency", 3, 30, 1, 20, 200, 300, attributes));
+
+    Collection<Metric> metrics = metricBuffer.createBatch().getTelemetry();
+    assertEquals(2, metrics.size());
+    assertTrue(metrics.contains(new Gauge("heap", 30, 2000, attributes)));
+    assertTrue(metrics.contains(new Summary("latency", 5, 40, 1, 20, 100, 300, attributes)));
+  }
+
+  @Test
+  @DisplayName("Aggregated series are reset between batches and dropped once idle")
+  void testAggregatingIntervals() {
+    MetricBuffer metricBuffer = MetricBuffer.builder().aggregating(true).build();
+    Attributes attributes = new Attributes();
+
+    metricBuffer.addMetric(new Count("c", 2, 0, 10, attributes));
+    metricBuffer.addMetric(new Count("c", Double.NaN, 0, 10, attributes));
+    assertEquals(
+        new Count("c", 2, 0, 10, attributes),
+        new ArrayList<>(metricBuffer.createBatch().getTelemetry()).get(0));
+
+    metricBuffer.addMetric(new Count("c", 3, 10, 20, attributes));
+    List<Metric> second = new ArrayList<>(metricBuffer.createBatch().getTelemetry());
+    assertEquals(1, second.size());
+    assertEquals(new Count("c", 3, 10, 20, attributes), second.get(0));
+
+    // The series is kept for one more interval, but isn't counted while it is idle.
+    assertEquals(0, metricBuffer.size());
+    assertTrue(metricBuffer.createBatch().getTelemetry().isEmpty());
+    assertEquals(0, metricBuffer.size());
+  }
+
+  @Test
+  @DisplayName("Idle bound instruments don't count towards the size")
+  void testIdleBoundInstrumentsAreNotCounted() {
+    MetricBuffer metricBuffer = new MetricBuffer(new Attributes());
+    BoundCounter counter = metricBuffer.boundCounter("requests", new Attributes());
+    metricBuffer.boundGauge("queue.depth", new Attributes());
+    assertEquals(0, metricBuffer.size());
+
+    counter.increment();
+    counter.increment();
+    assertEquals(1, metricBuffer.size());
+    assertEquals(1, metricBuffer.createBatch().size());
+    assertEquals(0, metricBuffer.size());
+    assertTrue(metricBuffer.createBatch().isEmpty());
+  }
+
+  @Test
+  @DisplayName("Bound instruments are reported once per interval")
+  void testBoundInstruments() {
+    MetricBuffer metricBuffer = new MetricBuffer(new Attributes());
+    Attributes attributes = new Attributes().put("route", "/foo");
+
+    BoundCounter counter = metricBuffer.boundCounter("requests", attributes);
+    BoundGauge gauge = metricBuffer.boundGauge("queue.depth", attributes);
+    BoundSummary summary = metricBuffer.boundSummary("latency", attributes);
+    for (int i = 1; i <= 10; i++) {
+      counter.increment();
+      gauge.record(i);
+      summary.record(i);
+    }
+    counter.add(Double.NaN);
+
+    List<Metric> metrics = new ArrayList<>(metricBuffer.createBatch().getTelemetry());
+    assertEquals(3, metrics.size());
+    for (Metric metric : metrics) {
+      if (metric instanceof Count) {
+        assertEquals(10d, ((Count) metric).getValue());
+        assertEquals(attributes.asMap(), ((Count) metric).getAttributes());
+      } else if (metric instanceof Gauge) {
+        assertEquals(10d, ((Gauge) metric).getValue());
+      } else {
+        Summary result = (Summary) metric;
+        assertEquals(10, result.getCount());
+        assertEquals(55d, result.getSum());
+        assertEquals(1d, result.getMin());
+        assertEquals(10d, result.getMax());
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("A bound counter reports the interval between harvests")
+  void testBoundCounterInterval() throws Exception {
+    MetricBuffer metricBuffer = new MetricBuffer(new Attributes());
+    long created = System.currentTimeMillis();
+    BoundCounter counter = metricBuffer.boundCounter("requests", new Attributes());
+    Thread.sleep(5);
+    counter.increment();
+    long harvested = System.currentTimeMillis();
+    Count first = (Count) metricBuffer.createBatch().getTelemetry().iterator().next();
+
+    assertTrue(first.getStartTimeMs() >= created);
+    assertTrue(first.getEndTimeMs() >= harvested);
+    assertTrue(first.getEndTimeMs() - first.getStartTimeMs() >= 5);
+
+    // An idle interval still moves the start of the next one along.
+    assertTrue(metricBuffer.createBatch().getTelemetry().isEmpty());
+    long idleHarvest = System.currentTimeMillis();
+    counter.increment();
+    Count second = (Count) metricBuffer.createBatch().getTelemetry().iterator().next();
+    assertTrue(second.getStartTimeMs() >= first.getEndTimeMs());
+    assertTrue(second.getStartTimeMs() <= idleHarvest);
+  }
+
+  @Test
+  @DisplayName("Bound instruments share their series and survive idle intervals")
+  void testBoundInstrumentsArePinned() {
+    MetricBuffer metricBuffer = MetricBuffer.builder().aggregating(true).build();
+    Attributes attributes = new Attributes().put("route", "/foo");
+
+    BoundCounter counter = metricBuffer.boundCounter("requests", attributes);
+    metricBuffer.addMetric(new Count("requests", 2, 0, 10, attributes));
+    metricBuffer.boundCounter("requests", attributes).add(3);
+    assertEquals(1, metricBuffer.size());
+
+    Count count = (Count) metricBuffer.createBatch().getTelemetry().iterator().next();
+    assertEquals(5d, count.getValue());
+
+    // Kept while idle, though not counted, so the handle still records into it.
+    assertTrue(metricBuffer.createBatch().getTelemetry().isEmpty());
+    assertEquals(0, metricBuffer.size());
+    counter.add(4);
+    count = (Count) metricBuffer.createBatch().getTelemetry().iterator().next();
+    assertEquals(4d, count.getValue());
+  }
+
+  @Test
+  @DisplayName("A bounded buffer drops metrics once full")
+  void testBoundedBuffer() {
+    MetricBuffer metricBuffer = MetricBuffer.builder().capacity(3).build();
+    for (int i = 0; i < 5; i++) {
+      metricBuffer.addMetric(new Gauge("gauge", i, i, new Attributes()));
+    }
+    assertEquals(3, metricBuffer.size());
+    assertEquals(2, metricBuffer.getDroppedCount());
+
+    List<Metric> metrics = new ArrayList<>(metricBuffer.createBatch().getTelemetry());
+    assertEquals(3, metrics.size());
+    assertEquals(new Gauge("gauge", 2, 2, new Attributes()), metrics.get(2));
+    assertEquals(0, metricBuffer.size());
+  }
 }
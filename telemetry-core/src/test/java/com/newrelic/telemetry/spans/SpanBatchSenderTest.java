@@ -9,6 +9,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.newrelic.telemetry.Attributes;
@@ -18,6 +19,8 @@ import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.http.HttpResponse;
 import com.newrelic.telemetry.spans.json.SpanBatchMarshaller;
 import com.newrelic.telemetry.transport.BatchDataSender;
+import com.newrelic.telemetry.transport.JsonPayloadWriter;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -36,19 +39,23 @@ class SpanBatchSenderTest {
     Span span = Span.builder("123").build();
     SpanBatch batch =
         new SpanBatch(Collections.singletonList(span), new Attributes().put("j", "k"));
-    String json = "{a great document}";
     Response response = new Response(123, "OK", "yup");
 
     SpanBatchMarshaller marshaller = mock(SpanBatchMarshaller.class);
     BatchDataSender sender = mock(BatchDataSender.class);
 
-    when(marshaller.toJson(batch)).thenReturn(json);
-    when(sender.send(json, batch)).thenReturn(response);
+    ArgumentCaptor<JsonPayloadWriter> payloadCaptor =
+        ArgumentCaptor.forClass(JsonPayloadWriter.class);
+    when(sender.send(payloadCaptor.capture(), eq(batch))).thenReturn(response);
 
     SpanBatchSender testClass = new SpanBatchSender(marshaller, sender);
 
     Response result = testClass.sendBatch(batch);
     assertEquals(response, result);
+
+    StringWriter out = new StringWriter();
+    payloadCaptor.getValue().writeTo(out);
+    verify(marshaller).writeJson(batch, out);
   }
 
   @Test
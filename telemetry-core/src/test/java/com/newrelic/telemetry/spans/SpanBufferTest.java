@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.spans;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SpanBufferTest {
+
+  @Test
+  @DisplayName("Spans are batched with the common attributes and the buffer is cleared")
+  void testCreateBatch() {
+    Attributes attributes = new Attributes().put("key1", "value1");
+    SpanBuffer spanBuffer =
+        SpanBuffer.builder().attributes(attributes).serviceName("gopher").build();
+    Span first = span(1);
+    Span second = span(2);
+    assertEquals(0, spanBuffer.size());
+
+    spanBuffer.addSpan(first);
+    spanBuffer.addSpan(second);
+    assertEquals(2, spanBuffer.size());
+
+    SpanBatch batch = spanBuffer.createBatch();
+    List<Span> spans = new ArrayList<>(batch.getTelemetry());
+    assertEquals(2, spans.size());
+    assertEquals(first, spans.get(0));
+    assertEquals(second, spans.get(1));
+    assertEquals(
+        new Attributes(attributes).put("service.name", "gopher"), batch.getCommonAttributes());
+    assertEquals(0, spanBuffer.size());
+    assertTrue(spanBuffer.createBatch().isEmpty());
+  }
+
+  @Test
+  @DisplayName("A bounded buffer applies its overflow policy")
+  void testBoundedBuffer() {
+    SpanBuffer spanBuffer =
+        SpanBuffer.builder().capacity(2).overflowPolicy(OverflowPolicy.dropOldest()).build();
+    for (int i = 0; i < 5; i++) {
+      spanBuffer.addSpan(span(i));
+    }
+
+    assertEquals(2, spanBuffer.size());
+    assertEquals(3, spanBuffer.getDroppedCount());
+    List<Span> spans = new ArrayList<>(spanBuffer.createBatch().getTelemetry());
+    assertEquals(span(3), spans.get(0));
+    assertEquals(span(4), spans.get(1));
+  }
+
+  @Test
+  @DisplayName("A striped buffer batches spans added from many threads")
+  void testStripedBuffer() throws Exception {
+    SpanBuffer spanBuffer = SpanBuffer.builder().striped(true).build();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      threads.add(
+          new Thread(
+              () -> {
+                for (int i = 0; i < 100; i++) {
+                  spanBuffer.addSpan(span(i));
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(800, spanBuffer.size());
+    assertEquals(800, spanBuffer.createBatch().size());
+  }
+
+  private static Span span(int i) {
+    return Span.builder("id" + i).timestamp(i).attributes(new Attributes().put("n", i)).build();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+  @Test
+  @DisplayName("The limit grows by one per success while it is in use")
+  void testAdditiveIncrease() throws Exception {
+    AdaptiveConcurrencyLimiter limiter =
+        AdaptiveConcurrencyLimiter.builder().initialLimit(4).maxLimit(6).build();
+
+    limiter.acquire();
+    limiter.onSuccess(FAST);
+    assertEquals(4, limiter.getLimit(), "a single request doesn't use half the limit");
+
+    for (int i = 0; i < 4; i++) {
+      limiter.acquire();
+      limiter.acquire();
+      limiter.acquire();
+      limiter.onSuccess(FAST);
+      limiter.onIgnored();
+      limiter.onIgnored();
+    }
+    assertEquals(6, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  @DisplayName("The limit is cut by the backoff ratio on a drop or a timeout")
+  void testMultiplicativeDecrease() throws Exception {
+    AdaptiveConcurrencyLimiter limiter =
+        AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(16)
+            .minLimit(2)
+            .timeout(1, TimeUnit.SECONDS)
+            .build();
+
+    limiter.acquire();
+    limiter.onDropped(FAST);
+    assertEquals(8, limiter.getLimit());
+
+    limiter.acquire();
+    limiter.onSuccess(TimeUnit.SECONDS.toNanos(2));
+    assertEquals(4, limiter.getLimit());
+
+    limiter.acquire();
+    limiter.onIgnored();
+    assertEquals(4, limiter.getLimit());
+
+    for (int i = 0; i < 5; i++) {
+      limiter.acquire();
+      limiter.onDropped(FAST);
+    }
+    assertEquals(2, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  @DisplayName("Latency is tracked for monitoring")
+  void testLatency() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().build();
+    assertEquals(-1, limiter.getSmoothedLatency(TimeUnit.MILLISECONDS));
+
+    limiter.acquire();
+    limiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(100));
+    limiter.acquire();
+    limiter.onDropped(TimeUnit.MILLISECONDS.toNanos(200));
+
+    assertEquals(120, limiter.getSmoothedLatency(TimeUnit.MILLISECONDS));
+    assertEquals(100, limiter.getMinLatency(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  @DisplayName("Acquiring waits while the limit is reached")
+  void testAcquireBlocksAtTheLimit() throws Exception {
+    AdaptiveConcurrencyLimiter limiter =
+        AdaptiveConcurrencyLimiter.builder().initialLimit(1).build();
+    limiter.acquire();
+
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread waiter =
+        new Thread(
+            () -> {
+              try {
+                limiter.acquire();
+                acquired.countDown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    waiter.start();
+
+    assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+    limiter.onIgnored();
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    assertEquals(1, limiter.getInFlight());
+  }
+
+  @Test
+  @DisplayName("Invalid settings are rejected")
+  void testInvalidSettings() {
+    assertThrows(
+        IllegalArgumentException.class, () -> AdaptiveConcurrencyLimiter.builder().minLimit(0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AdaptiveConcurrencyLimiter.builder().backoffRatio(1.5));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AdaptiveConcurrencyLimiter.builder().minLimit(8).maxLimit(4).build());
+  }
+}
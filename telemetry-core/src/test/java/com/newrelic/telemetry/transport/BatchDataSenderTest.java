@@ -5,27 +5,48 @@
 
 package com.newrelic.telemetry.transport;
 
+import static java.util.Collections.emptyList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
+import com.newrelic.telemetry.Attributes;
 import com.newrelic.telemetry.Response;
+import com.newrelic.telemetry.exceptions.CircuitOpenException;
+import com.newrelic.telemetry.exceptions.DiscardBatchException;
 import com.newrelic.telemetry.exceptions.RetryWithBackoffException;
+import com.newrelic.telemetry.exceptions.RetryWithSplitException;
+import com.newrelic.telemetry.http.AsyncHttpPoster;
 import com.newrelic.telemetry.http.HttpPoster;
 import com.newrelic.telemetry.http.HttpResponse;
 import com.newrelic.telemetry.metrics.MetricBatch;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 class BatchDataSenderTest {
 
@@ -122,4 +143,272 @@ class BatchDataSenderTest {
     assertNotNull(exception.getCause());
     assertEquals("timeout", exception.getCause().getMessage());
   }
+
+  @Test
+  void testStreamedPayloadIsCompressed() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    HttpPoster httpPoster = mock(HttpPoster.class);
+    ArgumentCaptor<byte[]> bodyCaptor = ArgumentCaptor.forClass(byte[].class);
+    when(httpPoster.post(
+            eq(endpointURl), any(), bodyCaptor.capture(), eq("application/json; charset=utf-8")))
+        .thenReturn(new HttpResponse("yepyep", 202, "OK", Collections.emptyMap()));
+
+    BatchDataSender testClass =
+        new BatchDataSender(httpPoster, "api-key", endpointURl, false, null);
+
+    Response response =
+        testClass.send(
+            out -> {
+              out.write("[{\"metrics\":[");
+              out.write("]}]");
+            },
+            batch);
+
+    assertEquals(new Response(202, "OK", "yepyep"), response);
+    assertEquals("[{\"metrics\":[]}]", gunzip(bodyCaptor.getValue()));
+  }
+
+  @Test
+  void testStreamedPayloadFailureDiscardsBatch() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    HttpPoster httpPoster = mock(HttpPoster.class);
+
+    BatchDataSender testClass =
+        new BatchDataSender(httpPoster, "api-key", endpointURl, false, null);
+
+    assertThrows(
+        DiscardBatchException.class,
+        () ->
+            testClass.send(
+                out -> {
+                  throw new IOException("boom");
+                },
+                batch));
+  }
+
+  @Test
+  void testRetryReusesEncodedPayload() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    HttpPoster httpPoster = mock(HttpPoster.class);
+    ArgumentCaptor<byte[]> bodyCaptor = ArgumentCaptor.forClass(byte[].class);
+    when(httpPoster.post(
+            eq(endpointURl), any(), bodyCaptor.capture(), eq("application/json; charset=utf-8")))
+        .thenReturn(new HttpResponse("oops", 500, "Error", Collections.emptyMap()))
+        .thenReturn(new HttpResponse("yepyep", 202, "OK", Collections.emptyMap()));
+
+    BatchDataSender testClass =
+        new BatchDataSender(httpPoster, "api-key", endpointURl, false, null);
+    MetricBatch realBatch = new MetricBatch(Collections.emptyList(), new Attributes());
+    AtomicInteger marshallCount = new AtomicInteger();
+    JsonPayloadWriter payloadWriter =
+        out -> {
+          marshallCount.incrementAndGet();
+          out.write("[{\"metrics\":[]}]");
+        };
+
+    assertThrows(RetryWithBackoffException.class, () -> testClass.send(payloadWriter, realBatch));
+    Response response = testClass.send(payloadWriter, realBatch);
+
+    assertEquals(new Response(202, "OK", "yepyep"), response);
+    assertEquals(1, marshallCount.get());
+    assertNotNull(realBatch.getEncodedPayload());
+    assertEquals(2, bodyCaptor.getAllValues().size());
+    assertSame(bodyCaptor.getAllValues().get(0), bodyCaptor.getAllValues().get(1));
+  }
+
+  @Test
+  void testSendAsync() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    List<byte[]> bodies = new ArrayList<>();
+    AsyncHttpPoster httpPoster =
+        (url, headers, body, mediaType) -> {
+          bodies.add(body);
+          return CompletableFuture.completedFuture(
+              new HttpResponse("yepyep", 202, "OK", Collections.emptyMap()));
+        };
+    BatchDataSender testClass =
+        new BatchDataSender(httpPoster, "api-key", endpointURl, false, null);
+    MetricBatch realBatch = new MetricBatch(Collections.emptyList(), new Attributes());
+
+    Response response =
+        testClass.sendAsync(out -> out.write("[{\"metrics\":[]}]"), realBatch).get();
+
+    assertEquals(new Response(202, "OK", "yepyep"), response);
+    assertEquals("[{\"metrics\":[]}]", gunzip(bodies.get(0)));
+    assertNotNull(realBatch.getEncodedPayload());
+  }
+
+  @Test
+  void testSendAsyncFailures() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    AtomicInteger attempts = new AtomicInteger();
+    AsyncHttpPoster httpPoster =
+        (url, headers, body, mediaType) -> {
+          CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+          if (attempts.incrementAndGet() == 1) {
+            result.completeExceptionally(new IOException("connection reset"));
+          } else {
+            result.complete(new HttpResponse("too big", 413, "Too Large", Collections.emptyMap()));
+          }
+          return result;
+        };
+    BatchDataSender testClass =
+        new BatchDataSender(httpPoster, "api-key", endpointURl, false, null);
+    MetricBatch realBatch = new MetricBatch(Collections.emptyList(), new Attributes());
+
+    ExecutionException ioFailure =
+        assertThrows(
+            ExecutionException.class, () -> testClass.sendAsync(out -> {}, realBatch).get());
+    assertTrue(ioFailure.getCause() instanceof RetryWithBackoffException);
+    ExecutionException tooLarge =
+        assertThrows(
+            ExecutionException.class, () -> testClass.sendAsync(out -> {}, realBatch).get());
+    assertTrue(tooLarge.getCause() instanceof RetryWithSplitException);
+  }
+
+  @Test
+  void testConcurrencyLimiterFollowsResponses() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    AtomicInteger code = new AtomicInteger(503);
+    AsyncHttpPoster httpPoster =
+        (url, headers, body, mediaType) ->
+            CompletableFuture.completedFuture(
+                new HttpResponse("", code.get(), "", Collections.emptyMap()));
+    AdaptiveConcurrencyLimiter limiter =
+        AdaptiveConcurrencyLimiter.builder().initialLimit(8).build();
+    BatchDataSender testClass =
+        new BatchDataSender(
+            httpPoster, "api-key", endpointURl, false, null, false, limiter, null, 0);
+    MetricBatch realBatch = new MetricBatch(Collections.emptyList(), new Attributes());
+
+    assertThrows(RetryWithBackoffException.class, () -> testClass.send("[]", realBatch));
+    assertEquals(4, limiter.getLimit());
+    code.set(413);
+    assertThrows(
+        ExecutionException.class, () -> testClass.sendAsync(out -> {}, realBatch).get());
+    assertEquals(4, limiter.getLimit());
+    code.set(202);
+    testClass.sendAsync(out -> {}, realBatch).get();
+    testClass.send("[]", realBatch);
+    assertEquals(4, limiter.getLimit(), "a single request in flight doesn't raise the limit");
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void testCircuitBreakerSkipsTheNetworkDuringAnOutage() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    AtomicInteger code = new AtomicInteger(503);
+    AtomicInteger posts = new AtomicInteger();
+    HttpPoster httpPoster =
+        (url, headers, body, mediaType) -> {
+          posts.incrementAndGet();
+          return new HttpResponse("", code.get(), "", Collections.emptyMap());
+        };
+    AtomicLong clock = new AtomicLong();
+    CircuitBreaker breaker =
+        CircuitBreaker.builder()
+            .failureThreshold(2)
+            .openDuration(1, TimeUnit.SECONDS)
+            .nanoClock(clock::get)
+            .build();
+    BatchDataSender testClass =
+        new BatchDataSender(
+            httpPoster, "api-key", endpointURl, false, null, false, null, breaker, 0);
+    AtomicInteger encodes = new AtomicInteger();
+    JsonPayloadWriter payloadWriter = out -> encodes.incrementAndGet();
+
+    for (int i = 0; i < 2; i++) {
+      assertThrows(
+          RetryWithBackoffException.class,
+          () -> testClass.send(payloadWriter, new MetricBatch(emptyList(), new Attributes())));
+    }
+    CircuitOpenException open =
+        assertThrows(
+            CircuitOpenException.class,
+            () -> testClass.send(payloadWriter, new MetricBatch(emptyList(), new Attributes())));
+    assertEquals(TimeUnit.MILLISECONDS, open.getTimeUnit());
+    assertEquals(1001, open.getWaitTime());
+    ExecutionException openAsync =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                testClass
+                    .sendAsync(payloadWriter, new MetricBatch(emptyList(), new Attributes()))
+                    .get());
+    assertTrue(openAsync.getCause() instanceof CircuitOpenException);
+    assertEquals(2, posts.get());
+    assertEquals(2, encodes.get(), "batches held back by the breaker aren't encoded");
+
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    code.set(202);
+    testClass.send(payloadWriter, new MetricBatch(emptyList(), new Attributes()));
+    testClass.send(payloadWriter, new MetricBatch(emptyList(), new Attributes()));
+    assertEquals(4, posts.get());
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void testCircuitBreakerIsNotSharedAcrossEndpoints() throws Exception {
+    URL endpointURl = new URL("http://example.com/a");
+    URL otherEndpointURl = new URL("http://example.com/b");
+    AsyncHttpPoster httpPoster =
+        (url, headers, body, mediaType) ->
+            CompletableFuture.completedFuture(
+                new HttpResponse("", 202, "OK", Collections.emptyMap()));
+    CircuitBreaker breaker = CircuitBreaker.builder().build();
+    new BatchDataSender(httpPoster, "api-key", endpointURl, false, null, false, null, breaker, 0);
+    // Another sender for the same endpoint may share it.
+    new BatchDataSender(httpPoster, "api-key", endpointURl, false, null, false, null, breaker, 0);
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new BatchDataSender(
+                httpPoster, "api-key", otherEndpointURl, false, null, false, null, breaker, 0));
+  }
+
+  @Test
+  void testOversizedPayloadIsNotSent() throws Exception {
+    URL endpointURl = new URL("http://example.com");
+    AtomicInteger posts = new AtomicInteger();
+    AsyncHttpPoster httpPoster =
+        (url, headers, body, mediaType) -> {
+          posts.incrementAndGet();
+          return CompletableFuture.completedFuture(
+              new HttpResponse("", 202, "OK", Collections.emptyMap()));
+        };
+    BatchDataSender testClass =
+        new BatchDataSender(
+            httpPoster, "api-key", endpointURl, false, null, false, null, null, 100);
+    JsonPayloadWriter payloadWriter =
+        out -> {
+          for (int i = 0; i < 100; i++) {
+            out.write(UUID.randomUUID().toString());
+          }
+        };
+    MetricBatch realBatch = new MetricBatch(Collections.emptyList(), new Attributes());
+
+    assertThrows(RetryWithSplitException.class, () -> testClass.send(payloadWriter, realBatch));
+    assertTrue(realBatch.getEncodedPayload().size() > 100);
+    ExecutionException async =
+        assertThrows(
+            ExecutionException.class, () -> testClass.sendAsync(payloadWriter, realBatch).get());
+    assertTrue(async.getCause() instanceof RetryWithSplitException);
+    assertEquals(0, posts.get());
+
+    testClass.send("[]", new MetricBatch(Collections.emptyList(), new Attributes()));
+    assertEquals(1, posts.get());
+  }
+
+  private static String gunzip(byte[] compressed) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.newrelic.telemetry.transport.CircuitBreaker.State;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+  private final CircuitBreaker testClass =
+      CircuitBreaker.builder()
+          .failureThreshold(3)
+          .openDuration(10, TimeUnit.SECONDS)
+          .nanoClock(clock::get)
+          .build();
+
+  @Test
+  @DisplayName("Consecutive failures open the breaker, and a success resets the count")
+  void testOpens() {
+    fail(2);
+    succeed();
+    fail(2);
+    assertEquals(State.CLOSED, testClass.getState());
+
+    fail(1);
+    assertEquals(State.OPEN, testClass.getState());
+    assertEquals(10 * SECOND, testClass.peek());
+    clock.addAndGet(4 * SECOND);
+    assertEquals(6 * SECOND, testClass.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("Half-open lets a single probe through, which closes the breaker on success")
+  void testProbeSucceeds() {
+    fail(3);
+    clock.addAndGet(10 * SECOND);
+    assertEquals(State.HALF_OPEN, testClass.getState());
+
+    assertEquals(0, testClass.peek());
+    assertEquals(0, testClass.tryAcquire());
+    assertEquals(SECOND, testClass.tryAcquire(), "only one probe at a time");
+    testClass.onSuccess();
+
+    assertEquals(State.CLOSED, testClass.getState());
+    assertEquals(0, testClass.tryAcquire());
+    testClass.onSuccess();
+  }
+
+  @Test
+  @DisplayName("A failed probe opens the breaker again, and an unsent probe frees the slot")
+  void testProbeFails() {
+    fail(3);
+    clock.addAndGet(10 * SECOND);
+
+    assertEquals(0, testClass.tryAcquire());
+    testClass.onIgnored();
+    assertEquals(0, testClass.tryAcquire());
+    testClass.onFailure();
+
+    assertEquals(State.OPEN, testClass.getState());
+    assertEquals(10 * SECOND, testClass.tryAcquire());
+    testClass.onFailure();
+    assertEquals(10 * SECOND, testClass.peek(), "late failures don't extend the open duration");
+  }
+
+  @Test
+  @DisplayName("Invalid settings are rejected")
+  void testInvalidSettings() {
+    assertThrows(
+        IllegalArgumentException.class, () -> CircuitBreaker.builder().failureThreshold(0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> CircuitBreaker.builder().openDuration(0, TimeUnit.SECONDS));
+  }
+
+  private void fail(int times) {
+    for (int i = 0; i < times; i++) {
+      assertEquals(0, testClass.tryAcquire());
+      testClass.onFailure();
+    }
+  }
+
+  private void succeed() {
+    assertEquals(0, testClass.tryAcquire());
+    testClass.onSuccess();
+  }
+}
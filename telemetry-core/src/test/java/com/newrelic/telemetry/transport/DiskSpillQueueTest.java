@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.transport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.TelemetryType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DiskSpillQueueTest {
+
+  private Path directory;
+
+  @BeforeEach
+  void setup() throws IOException {
+    directory = Files.createTempDirectory("spill");
+  }
+
+  @AfterEach
+  void cleanup() throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  @DisplayName("Payloads come back in order, and those not yet taken survive a restart")
+  void testOrderAndRestart() throws IOException {
+    DiskSpillQueue queue = DiskSpillQueue.builder(directory).build();
+    assertTrue(queue.offer(TelemetryType.METRIC, payload(10, 1)));
+    assertTrue(queue.offer(TelemetryType.SPAN, payload(20, 2)));
+    assertTrue(queue.offer(TelemetryType.LOG, payload(30, 3)));
+    assertEquals(3, queue.size());
+
+    DiskSpillQueue.Entry first = queue.poll();
+    assertEquals(TelemetryType.METRIC, first.getType());
+    assertArrayEquals(
+        payload(10, 1).getCompressedBytes(), first.getPayload().getCompressedBytes());
+    assertEquals(1, first.getPayload().getItemCount());
+    queue.close();
+    assertFalse(queue.offer(TelemetryType.METRIC, payload(10, 1)));
+
+    DiskSpillQueue reopened = DiskSpillQueue.builder(directory).build();
+    assertEquals(2, reopened.size());
+    DiskSpillQueue.Entry second = reopened.peek();
+    assertSame(second, reopened.poll());
+    assertEquals(TelemetryType.SPAN, second.getType());
+    assertEquals(2, second.getPayload().getItemCount());
+    assertTrue(reopened.offer(TelemetryType.EVENT, payload(40, 4)));
+    assertEquals(TelemetryType.LOG, reopened.poll().getType());
+    assertEquals(TelemetryType.EVENT, reopened.poll().getType());
+    assertNull(reopened.poll());
+    assertTrue(reopened.isEmpty());
+    reopened.close();
+  }
+
+  @Test
+  @DisplayName("Payloads of one type can be taken without taking those before them")
+  void testByType() throws IOException {
+    DiskSpillQueue queue = DiskSpillQueue.builder(directory).segmentBytes(100).build();
+    assertTrue(queue.offer(TelemetryType.METRIC, payload(40, 1)));
+    assertTrue(queue.offer(TelemetryType.LOG, payload(40, 2)));
+    assertTrue(queue.offer(TelemetryType.METRIC, payload(40, 3)));
+    assertTrue(queue.offer(TelemetryType.LOG, payload(40, 4)));
+
+    assertEquals(2, queue.peek(TelemetryType.LOG).getPayload().getItemCount());
+    assertEquals(2, queue.poll(TelemetryType.LOG).getPayload().getItemCount());
+    assertEquals(4, queue.poll(TelemetryType.LOG).getPayload().getItemCount());
+    assertNull(queue.poll(TelemetryType.LOG));
+    assertNull(queue.peek(TelemetryType.SPAN));
+    assertEquals(2, queue.size());
+
+    // The metrics are still there, in order, and the logs aren't returned again.
+    assertEquals(1, queue.peek().getPayload().getItemCount());
+    assertEquals(1, queue.poll(TelemetryType.METRIC).getPayload().getItemCount());
+    assertTrue(queue.offer(TelemetryType.LOG, payload(40, 5)));
+    assertEquals(3, queue.poll().getPayload().getItemCount());
+    assertEquals(5, queue.poll().getPayload().getItemCount());
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+    // Only the segment being appended to is left.
+    assertEquals(100, queue.getDiskBytes());
+    queue.close();
+  }
+
+  @Test
+  @DisplayName("The oldest segments are deleted to stay under the max disk size")
+  void testMaxDiskBytes() throws IOException {
+    // Each 60 byte payload takes up a 100 byte segment of its own.
+    DiskSpillQueue queue =
+        DiskSpillQueue.builder(directory).segmentBytes(100).maxDiskBytes(250).build();
+    assertTrue(queue.offer(TelemetryType.METRIC, payload(60, 1)));
+    assertTrue(queue.offer(TelemetryType.METRIC, payload(60, 2)));
+    assertTrue(queue.offer(TelemetryType.METRIC, payload(60, 3)));
+
+    assertEquals(2, queue.size());
+    assertEquals(1, queue.getEvictedCount());
+    assertEquals(200, queue.getDiskBytes());
+    assertEquals(2, segmentFiles());
+    assertFalse(queue.offer(TelemetryType.METRIC, payload(300, 4)), "larger than the max");
+
+    assertEquals(2, queue.poll().getPayload().getItemCount());
+    assertEquals(3, queue.poll().getPayload().getItemCount());
+    assertNull(queue.poll());
+    assertEquals(1, segmentFiles(), "only the segment still being written to is kept");
+    assertEquals(100, queue.getDiskBytes());
+    queue.close();
+  }
+
+  @Test
+  @DisplayName("Segments can't be larger than the max disk size")
+  void testSegmentBytesOverMaxDiskBytes() {
+    DiskSpillQueue.Builder builder =
+        DiskSpillQueue.builder(directory).segmentBytes(1000).maxDiskBytes(999);
+    assertThrows(IllegalArgumentException.class, builder::build);
+  }
+
+  @Test
+  @DisplayName("Payloads over the max age are skipped")
+  void testMaxAge() throws IOException {
+    AtomicLong now = new AtomicLong(0);
+    DiskSpillQueue queue =
+        DiskSpillQueue.builder(directory)
+            .maxAge(1500, TimeUnit.MILLISECONDS)
+            .clock(now::get)
+            .build();
+    queue.offer(TelemetryType.METRIC, payload(10, 1));
+    now.set(1000);
+    queue.offer(TelemetryType.METRIC, payload(10, 2));
+    queue.offer(TelemetryType.METRIC, payload(10, 3));
+
+    now.set(2000);
+    assertEquals(2, queue.poll().getPayload().getItemCount());
+    assertEquals(1, queue.getEvictedCount());
+    now.set(3000);
+    assertNull(queue.peek());
+    assertEquals(2, queue.getEvictedCount());
+    assertEquals(0, queue.size());
+    queue.close();
+  }
+
+  private long segmentFiles() throws IOException {
+    try (Stream<Path> paths = Files.list(directory)) {
+      return paths.count();
+    }
+  }
+
+  private static EncodedPayload payload(int size, int itemCount) {
+    byte[] bytes = new byte[size];
+    Arrays.fill(bytes, (byte) itemCount);
+    return new EncodedPayload(bytes, itemCount);
+  }
+}
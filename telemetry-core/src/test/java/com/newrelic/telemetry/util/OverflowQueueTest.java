@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OverflowQueueTest {
+
+  @Test
+  @DisplayName("Drop newest rejects new elements while full")
+  void testDropNewest() {
+    OverflowQueue<String> queue =
+        new OverflowQueue<>(new RingBufferQueue<>(2), OverflowPolicy.dropNewest());
+    assertTrue(queue.offer("a"));
+    assertTrue(queue.offer("b"));
+    assertFalse(queue.offer("c"));
+    assertEquals(Arrays.asList("a", "b"), new ArrayList<>(queue));
+    assertEquals(1, queue.getDroppedCount());
+  }
+
+  @Test
+  @DisplayName("Drop oldest makes room for new elements")
+  void testDropOldest() {
+    OverflowQueue<String> queue =
+        new OverflowQueue<>(new RingBufferQueue<>(2), OverflowPolicy.dropOldest());
+    assertTrue(queue.offer("a"));
+    assertTrue(queue.offer("b"));
+    assertTrue(queue.offer("c"));
+    assertTrue(queue.offer("d"));
+    assertEquals(Arrays.asList("c", "d"), new ArrayList<>(queue));
+    assertEquals(2, queue.getDroppedCount());
+  }
+
+  @Test
+  @DisplayName("Block gives up after the timeout")
+  void testBlock() {
+    OverflowQueue<String> queue =
+        new OverflowQueue<>(
+            new RingBufferQueue<>(1), OverflowPolicy.block(20, TimeUnit.MILLISECONDS));
+    assertTrue(queue.offer("a"));
+    long start = System.nanoTime();
+    assertFalse(queue.offer("b"));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    assertEquals(1, queue.getDroppedCount());
+  }
+
+  @Test
+  @DisplayName("Block succeeds once room is made")
+  void testBlockSucceeds() throws Exception {
+    OverflowQueue<String> queue =
+        new OverflowQueue<>(new RingBufferQueue<>(1), OverflowPolicy.block(5, TimeUnit.SECONDS));
+    assertTrue(queue.offer("a"));
+    Thread consumer =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(20);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              queue.poll();
+            });
+    consumer.start();
+    assertTrue(queue.offer("b"));
+    consumer.join();
+    assertEquals("b", queue.poll());
+    assertEquals(0, queue.getDroppedCount());
+  }
+
+  @Test
+  @DisplayName("Sampling at the extremes behaves like drop oldest or drop newest")
+  void testSample() {
+    OverflowQueue<String> always =
+        new OverflowQueue<>(new RingBufferQueue<>(1), OverflowPolicy.sample(1));
+    OverflowQueue<String> never =
+        new OverflowQueue<>(new RingBufferQueue<>(1), OverflowPolicy.sample(0));
+    for (String s : Arrays.asList("a", "b", "c")) {
+      always.offer(s);
+      never.offer(s);
+    }
+    assertEquals("c", always.peek());
+    assertEquals("a", never.peek());
+    assertEquals(2, always.getDroppedCount());
+    assertEquals(2, never.getDroppedCount());
+  }
+}
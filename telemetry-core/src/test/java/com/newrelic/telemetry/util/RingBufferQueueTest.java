@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RingBufferQueueTest {
+
+  @Test
+  @DisplayName("Elements come out in order, and offers fail once full")
+  void testFifoAndBounded() {
+    RingBufferQueue<String> queue = new RingBufferQueue<>(3);
+
+    assertTrue(queue.offer("a"));
+    assertTrue(queue.offer("b"));
+    assertTrue(queue.offer("c"));
+    assertFalse(queue.offer("d"));
+    assertEquals(3, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    assertEquals("a", queue.peek());
+    assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(queue));
+
+    assertEquals("a", queue.poll());
+    assertTrue(queue.offer("d"));
+    List<String> drained = new ArrayList<>();
+    assertEquals(3, queue.drainTo(drained));
+    assertEquals(Arrays.asList("b", "c", "d"), drained);
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  @DisplayName("The ring wraps around many times")
+  void testWrapAround() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(5);
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(queue.offer(i));
+      assertTrue(queue.offer(i + 1));
+      assertEquals(i, (int) queue.poll());
+      assertEquals(i + 1, (int) queue.poll());
+    }
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  @DisplayName("A queue with a capacity of 1 holds exactly one element")
+  void testCapacityOne() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(1);
+    for (int i = 0; i < 100; i++) {
+      assertNull(queue.peek());
+      assertTrue(queue.offer(i));
+      assertFalse(queue.offer(-i));
+      assertEquals(1, queue.size());
+      assertEquals(i, (int) queue.peek());
+      assertEquals(i, (int) queue.poll());
+      assertNull(queue.poll());
+    }
+  }
+
+  @Test
+  @DisplayName("Invalid arguments are rejected")
+  void testInvalidArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new RingBufferQueue<String>(0));
+    assertThrows(IllegalArgumentException.class, () -> new RingBufferQueue<String>(1).offer(null));
+  }
+
+  @Test
+  @DisplayName("A drain takes only what was there when it started, up to the given max")
+  void testDrainIsBounded() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(i));
+    }
+    // A producer that refills the queue as fast as it is drained
+    List<Integer> drained =
+        new ArrayList<Integer>() {
+          @Override
+          public boolean add(Integer value) {
+            queue.offer(value + 4);
+            return super.add(value);
+          }
+        };
+
+    assertEquals(2, queue.drainTo(drained, 2));
+    assertEquals(Arrays.asList(0, 1), drained);
+    assertEquals(4, queue.size());
+    assertEquals(4, queue.drainTo(drained));
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), drained);
+    assertEquals(Arrays.asList(6, 7, 8, 9), new ArrayList<>(queue));
+  }
+
+  @Test
+  @DisplayName("Concurrent drains neither lose nor duplicate elements")
+  void testConcurrentDrains() throws Exception {
+    int consumers = 4;
+    int total = 100_000;
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(256);
+    ExecutorService executor = Executors.newFixedThreadPool(consumers);
+    List<List<Integer>> drained = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(consumers);
+    for (int c = 0; c < consumers; c++) {
+      List<Integer> mine = new ArrayList<>();
+      drained.add(mine);
+      executor.execute(
+          () -> {
+            while (!Thread.currentThread().isInterrupted()) {
+              if (queue.drainTo(mine, 32) == 0) {
+                Thread.yield();
+              }
+            }
+            done.countDown();
+          });
+    }
+    for (int i = 0; i < total; i++) {
+      while (!queue.offer(i)) {
+        Thread.yield();
+      }
+    }
+    while (!queue.isEmpty()) {
+      Thread.yield();
+    }
+    executor.shutdownNow();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+
+    Set<Integer> seen = new HashSet<>();
+    for (List<Integer> mine : drained) {
+      for (int i = 1; i < mine.size(); i++) {
+        assertTrue(mine.get(i - 1) < mine.get(i), "out of order");
+      }
+      for (Integer value : mine) {
+        assertTrue(seen.add(value), "duplicate " + value);
+      }
+    }
+    assertEquals(total, seen.size());
+  }
+
+  @Test
+  @DisplayName("Concurrent producers neither lose nor duplicate elements")
+  void testConcurrentProducers() throws Exception {
+    int producers = 8;
+    int perProducer = 10_000;
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(1024);
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    CountDownLatch done = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      int base = p * perProducer;
+      executor.execute(
+          () -> {
+            for (int i = 0; i < perProducer; i++) {
+              while (!queue.offer(base + i)) {
+                Thread.yield();
+              }
+            }
+            done.countDown();
+          });
+    }
+
+    Set<Integer> seen = new HashSet<>();
+    List<Integer> drained = new ArrayList<>();
+    while (seen.size() < producers * perProducer) {
+      drained.clear();
+      queue.drainTo(drained);
+      for (Integer value : drained) {
+        assertTrue(seen.add(value), "duplicate " + value);
+      }
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    executor.shutdown();
+    assertNull(queue.poll());
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.newrelic.telemetry.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class StripedQueueTest {
+
+  @Test
+  @DisplayName("Elements from one thread keep their order")
+  void testSingleThread() {
+    StripedQueue<Integer> queue = new StripedQueue<>(4, i -> new ConcurrentLinkedQueue<>());
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertEquals(10, queue.size());
+    assertEquals(0, (int) queue.peek());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, (int) queue.poll());
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  @DisplayName("Draining takes each stripe in turn, starting further along each time")
+  void testDrainRotates() {
+    List<Queue<Integer>> stripes = new ArrayList<>();
+    StripedQueue<Integer> queue =
+        new StripedQueue<>(
+            4,
+            i -> {
+              Queue<Integer> stripe = new ConcurrentLinkedQueue<>();
+              stripes.add(stripe);
+              return stripe;
+            });
+    for (int i = 0; i < 4; i++) {
+      stripes.get(i).add(i * 10);
+      stripes.get(i).add(i * 10 + 1);
+    }
+
+    List<Integer> polled = new ArrayList<>();
+    Integer value;
+    while ((value = queue.poll()) != null) {
+      polled.add(value);
+    }
+    assertEquals(Arrays.asList(0, 1, 10, 11, 20, 21, 30, 31), polled);
+
+    for (int i = 0; i < 4; i++) {
+      stripes.get(i).add(i);
+    }
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(4, queue.drainTo(drained));
+    // The last, empty, poll moved the start on from stripe 3 to stripe 0.
+    assertEquals(Arrays.asList(0, 1, 2, 3), drained);
+
+    for (int i = 0; i < 4; i++) {
+      stripes.get(i).add(i);
+    }
+    drained.clear();
+    queue.drainTo(drained);
+    assertEquals(Arrays.asList(1, 2, 3, 0), drained);
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  @DisplayName("Elements from many threads are all drained")
+  void testManyThreads() throws Exception {
+    int threads = 16;
+    int perThread = 1000;
+    StripedQueue<Integer> queue = new StripedQueue<>(8, i -> new ConcurrentLinkedQueue<>());
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      int base = t * perThread;
+      new Thread(
+              () -> {
+                for (int i = 0; i < perThread; i++) {
+                  queue.offer(base + i);
+                }
+                done.countDown();
+              })
+          .start();
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+
+    Set<Integer> drained = new HashSet<>();
+    Integer value;
+    while ((value = queue.poll()) != null) {
+      assertTrue(drained.add(value));
+    }
+    assertEquals(threads * perThread, drained.size());
+  }
+
+  @Test
+  @DisplayName("Bounded stripes share the capacity and count drops")
+  void testBoundedStripes() throws Exception {
+    Queue<Integer> queue = BufferQueues.create(10, OverflowPolicy.dropNewest(), true);
+    int offered = 0;
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      threads.add(
+          new Thread(
+              () -> {
+                for (int i = 0; i < 10; i++) {
+                  queue.offer(i);
+                }
+              }));
+      offered += 10;
+    }
+    for (Thread thread : threads) {
+      thread.start();
+      thread.join();
+    }
+    assertTrue(queue.size() <= 10);
+    assertEquals(offered, queue.size() + BufferQueues.getDroppedCount(queue));
+    assertFalse(queue.isEmpty());
+  }
+
+  @Test
+  @DisplayName("A single thread can fill the whole capacity of a striped queue")
+  void testOneThreadFillsTheCapacity() {
+    int capacity = 4 * StripedQueue.defaultStripeCount();
+    Queue<Integer> dropNewest = BufferQueues.create(capacity, OverflowPolicy.dropNewest(), true);
+    Queue<Integer> dropOldest = BufferQueues.create(capacity, OverflowPolicy.dropOldest(), true);
+    for (int i = 0; i < capacity; i++) {
+      assertTrue(dropNewest.offer(i));
+      assertTrue(dropOldest.offer(i));
+    }
+    assertEquals(capacity, dropNewest.size());
+    assertEquals(0, BufferQueues.getDroppedCount(dropNewest));
+    assertFalse(dropNewest.offer(capacity));
+    assertEquals(1, BufferQueues.getDroppedCount(dropNewest));
+
+    assertTrue(dropOldest.offer(capacity));
+    assertEquals(capacity, dropOldest.size());
+    assertEquals(1, BufferQueues.getDroppedCount(dropOldest));
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(capacity, BufferQueues.drainTo(dropNewest, drained));
+    assertEquals(0, dropNewest.size());
+    assertTrue(dropNewest.offer(0));
+    assertEquals(1, dropNewest.size());
+  }
+
+  @Test
+  @DisplayName("The capacity is checked against the elements in all the stripes")
+  void testSharedCapacity() throws Exception {
+    StripedQueue<Integer> queue = new StripedQueue<>(4, i -> new ConcurrentLinkedQueue<>(), 3);
+    assertTrue(queue.offer(1));
+    List<Boolean> accepted = new ArrayList<>();
+    Thread other = new Thread(() -> accepted.addAll(Arrays.asList(queue.offer(2), queue.offer(3))));
+    other.start();
+    other.join();
+    assertEquals(Arrays.asList(true, true), accepted);
+    assertEquals(3, queue.size());
+    assertFalse(queue.offer(4));
+
+    assertTrue(queue.poll() != null);
+    assertEquals(2, queue.size());
+    assertTrue(queue.offer(4));
+    assertFalse(queue.offer(5));
+    assertEquals(3, queue.drainTo(new ArrayList<>()));
+    assertTrue(queue.isEmpty());
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  @DisplayName("Stripe counts must be powers of two")
+  void testInvalidStripeCount() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new StripedQueue<Integer>(3, i -> new ConcurrentLinkedQueue<>()));
+  }
+}
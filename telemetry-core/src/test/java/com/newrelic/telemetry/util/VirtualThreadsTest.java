@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+
+  @Test
+  @DisplayName("Virtual threads are used when the JVM has them, and refused otherwise")
+  void testAvailability() throws Exception {
+    boolean java21 = isAtLeastJava21();
+    assertEquals(java21, VirtualThreads.isAvailable());
+    if (!java21) {
+      assertThrows(
+          UnsupportedOperationException.class, VirtualThreads::newVirtualThreadPerTaskExecutor);
+      return;
+    }
+    ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+    boolean[] virtual = new boolean[1];
+    executor.execute(
+        () -> {
+          try {
+            Object isVirtual = Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+            virtual[0] = (Boolean) isVirtual;
+          } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+          }
+        });
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(virtual[0]);
+  }
+
+  private static boolean isAtLeastJava21() {
+    String version = System.getProperty("java.specification.version");
+    return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+  }
+}
@@ -4,20 +4,27 @@
  */
 package com.newrelic.telemetry;
 
-import com.newrelic.telemetry.http.HttpPoster;
+import com.newrelic.telemetry.http.AsyncHttpPoster;
 import com.newrelic.telemetry.http.HttpResponse;
 import java.io.IOException;
 import java.net.URL;
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 
-/** Implementation of the HttpPoster interface using an OkHttp client. */
-public class OkHttpPoster implements HttpPoster {
+/**
+ * Implementation of the HttpPoster interface using an OkHttp client. Requests posted with {@link
+ * #postAsync} are sent with {@link Call#enqueue}, so the number of requests in flight is also
+ * bounded by the client's {@link okhttp3.Dispatcher}.
+ */
+public class OkHttpPoster implements AsyncHttpPoster {
   private final OkHttpClient okHttpClient;
 
   /** Create an OkHttpPoster with a default OkHttpClient, and a connect timeout of 2 seconds. */
@@ -46,18 +53,52 @@ public class OkHttpPoster implements HttpPoster {
   @Override
   public HttpResponse post(URL url, Map<String, String> headers, byte[] body, String mediaType)
       throws IOException {
-    RequestBody requestBody = RequestBody.create(MediaType.get(mediaType), body);
-    Request request =
-        new Request.Builder().url(url).headers(Headers.of(headers)).post(requestBody).build();
+    Request request = buildRequest(url, headers, body, mediaType);
     try (okhttp3.Response response = okHttpClient.newCall(request).execute()) {
-      return new HttpResponse(
-          response.body() != null ? response.body().string() : null,
-          response.code(),
-          response.message(),
-          response.headers().toMultimap());
+      return toSdkResponse(response);
     }
   }
 
+  @Override
+  public CompletableFuture<HttpResponse> postAsync(
+      URL url, Map<String, String> headers, byte[] body, String mediaType) {
+    CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+    Request request = buildRequest(url, headers, body, mediaType);
+    okHttpClient
+        .newCall(request)
+        .enqueue(
+            new Callback() {
+              @Override
+              public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(e);
+              }
+
+              @Override
+              public void onResponse(Call call, okhttp3.Response response) {
+                try (okhttp3.Response closed = response) {
+                  result.complete(toSdkResponse(closed));
+                } catch (IOException e) {
+                  result.completeExceptionally(e);
+                }
+              }
+            });
+    return result;
+  }
+
+  private static Request buildRequest(
+      URL url, Map<String, String> headers, byte[] body, String mediaType) {
+    RequestBody requestBody = RequestBody.create(MediaType.get(mediaType), body);
+    return new Request.Builder().url(url).headers(Headers.of(headers)).post(requestBody).build();
+  }
+
+  private static HttpResponse toSdkResponse(okhttp3.Response response) throws IOException {
+    return new HttpResponse(
+        response.body() != null ? response.body().string() : null,
+        response.code(),
+        response.message(),
+        response.headers().toMultimap());
+  }
+
   public static MetricBatchSenderFactory metricSenderFactory() {
     return MetricBatchSenderFactory.fromHttpImplementation(OkHttpPoster::new);
   }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.examples;
+
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.json.AttributesJson;
+import com.newrelic.telemetry.metrics.Count;
+import com.newrelic.telemetry.metrics.Gauge;
+import com.newrelic.telemetry.metrics.Metric;
+import com.newrelic.telemetry.metrics.MetricBatch;
+import com.newrelic.telemetry.metrics.Summary;
+import com.newrelic.telemetry.metrics.json.MetricBatchJsonCommonBlockWriter;
+import com.newrelic.telemetry.metrics.json.MetricBatchJsonTelemetryBlockWriter;
+import com.newrelic.telemetry.metrics.json.MetricBatchMarshaller;
+import com.newrelic.telemetry.metrics.json.MetricToJson;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Measures how many bytes are allocated, per metric, to record metrics that share a set of
+ * attributes and to marshal them to json. Nothing is sent; the json is written to a writer that
+ * discards it.
+ *
+ * <p>Allocations are read from the HotSpot thread allocation counter, so this only runs on JVMs
+ * that provide {@code com.sun.management.ThreadMXBean}.
+ *
+ * <p>For comparison, it also measures the bytes per metric of taking each metric's attributes
+ * from a shared {@link Attributes}, both as the copy into a {@code HashMap} that every metric used
+ * to make and as the {@link Attributes#asMap()} view that metrics now share.
+ *
+ * <p>Optional command line arguments: the number of metrics per batch (default 1,000) and the
+ * number of measured batches (default 200), which follow as many unmeasured warm-up batches.
+ */
+public class AttributesAllocationBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int metricsPerBatch = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+    int batches = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      System.out.println("thread allocation counters are not available on this JVM");
+      return;
+    }
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    long threadId = Thread.currentThread().getId();
+
+    Attributes attributes =
+        new Attributes()
+            .put("host", "benchmark-host")
+            .put("service.name", "benchmark")
+            .put("region", "us-east-1")
+            .put("shard", 7)
+            .put("canary", false);
+    MetricBatchMarshaller marshaller =
+        new MetricBatchMarshaller(
+            new MetricBatchJsonCommonBlockWriter(new AttributesJson()),
+            new MetricBatchJsonTelemetryBlockWriter(new MetricToJson()));
+
+    runBatches(allocations, metricsPerBatch, batches, attributes, marshaller, new long[2]);
+    long[] bytes = new long[2];
+    long start = allocations.getThreadAllocatedBytes(threadId);
+    runBatches(allocations, metricsPerBatch, batches, attributes, marshaller, bytes);
+    long total = allocations.getThreadAllocatedBytes(threadId) - start;
+
+    double metrics = (double) metricsPerBatch * batches;
+    System.out.printf("record:  %.1f bytes/metric%n", bytes[0] / metrics);
+    System.out.printf("marshal: %.1f bytes/metric%n", bytes[1] / metrics);
+    System.out.printf("total:   %.1f bytes/metric%n", total / metrics);
+
+    Function<Attributes, Map<String, Object>> hashMapCopy =
+        a -> Collections.unmodifiableMap(new HashMap<>(a.asMap()));
+    Function<Attributes, Map<String, Object>> view = Attributes::asMap;
+    measureAttributes(allocations, metricsPerBatch, batches, attributes, hashMapCopy);
+    measureAttributes(allocations, metricsPerBatch, batches, attributes, view);
+    System.out.printf(
+        "attributes, HashMap copy: %.1f bytes/metric%n",
+        measureAttributes(allocations, metricsPerBatch, batches, attributes, hashMapCopy)
+            / metrics);
+    System.out.printf(
+        "attributes, asMap view:   %.1f bytes/metric%n",
+        measureAttributes(allocations, metricsPerBatch, batches, attributes, view) / metrics);
+  }
+
+  /** @return The bytes allocated to take the attributes of every metric in the batches. */
+  private static long measureAttributes(
+      com.sun.management.ThreadMXBean allocations,
+      int metricsPerBatch,
+      int batches,
+      Attributes attributes,
+      Function<Attributes, Map<String, Object>> perMetric) {
+    long threadId = Thread.currentThread().getId();
+    long bytes = 0;
+    for (int batch = 0; batch < batches; batch++) {
+      List<Map<String, Object>> taken = new ArrayList<>(metricsPerBatch);
+      long start = allocations.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < metricsPerBatch; i++) {
+        taken.add(perMetric.apply(attributes));
+      }
+      bytes += allocations.getThreadAllocatedBytes(threadId) - start;
+    }
+    return bytes;
+  }
+
+  private static void runBatches(
+      com.sun.management.ThreadMXBean allocations,
+      int metricsPerBatch,
+      int batches,
+      Attributes attributes,
+      MetricBatchMarshaller marshaller,
+      long[] bytes)
+      throws IOException {
+    long threadId = Thread.currentThread().getId();
+    Writer discard = new DiscardingWriter();
+    for (int batch = 0; batch < batches; batch++) {
+      long start = allocations.getThreadAllocatedBytes(threadId);
+      List<Metric> metrics = new ArrayList<>(metricsPerBatch);
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < metricsPerBatch; i++) {
+        switch (i % 3) {
+          case 0:
+            metrics.add(new Count("requests", i, now - 1000, now, attributes));
+            break;
+          case 1:
+            metrics.add(new Gauge("queue.depth", i, now, attributes));
+            break;
+          default:
+            metrics.add(new Summary("latency", 3, 42.0, 1.0, 30.0, now - 1000, now, attributes));
+        }
+      }
+      long recorded = allocations.getThreadAllocatedBytes(threadId);
+      marshaller.writeJson(new MetricBatch(metrics, new Attributes()), discard);
+      long marshalled = allocations.getThreadAllocatedBytes(threadId);
+      bytes[0] += recorded - start;
+      bytes[1] += marshalled - recorded;
+    }
+  }
+
+  private static class DiscardingWriter extends Writer {
+    @Override
+    public void write(char[] buffer, int offset, int length) {}
+
+    @Override
+    public void write(String string, int offset, int length) {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 New Relic Corporation. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.newrelic.telemetry.examples;
+
+import static java.util.Collections.singleton;
+
+import com.newrelic.telemetry.Attributes;
+import com.newrelic.telemetry.TelemetryClient;
+import com.newrelic.telemetry.http.HttpPoster;
+import com.newrelic.telemetry.http.HttpResponse;
+import com.newrelic.telemetry.metrics.Count;
+import com.newrelic.telemetry.metrics.MetricBatch;
+import com.newrelic.telemetry.metrics.MetricBatchSender;
+import com.newrelic.telemetry.util.VirtualThreads;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how long a TelemetryClient takes to send a number of batches when sending on its single
+ * default thread, and when sending each batch on its own virtual thread. Nothing leaves the JVM:
+ * the {@link HttpPoster} just blocks for a simulated round trip.
+ *
+ * <p>Virtual threads require Java 21 or later; on earlier versions only the single thread is
+ * measured.
+ *
+ * <p>Optional command line arguments: the number of batches (default 500) and the simulated round
+ * trip in milliseconds (default 100).
+ */
+public class SendConcurrencyBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int batches = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    long roundTripMs = args.length > 1 ? Long.parseLong(args[1]) : 100;
+
+    long singleThreadMs = timeSends(TelemetryClient.builder(), batches, roundTripMs);
+    System.out.printf(
+        "single thread:   %d batches in %d ms (%.1f batches/s)%n",
+        batches, singleThreadMs, batches * 1000.0 / singleThreadMs);
+
+    if (!VirtualThreads.isAvailable()) {
+      System.out.println("virtual threads: not available on this JVM");
+      return;
+    }
+    long virtualThreadsMs =
+        timeSends(TelemetryClient.builder().useVirtualThreads(true), batches, roundTripMs);
+    System.out.printf(
+        "virtual threads: %d batches in %d ms (%.1f batches/s)%n",
+        batches, virtualThreadsMs, batches * 1000.0 / virtualThreadsMs);
+  }
+
+  private static long timeSends(TelemetryClient.Builder builder, int batches, long roundTripMs)
+      throws Exception {
+    CountDownLatch sent = new CountDownLatch(batches);
+    HttpPoster poster =
+        (url, headers, body, mediaType) -> {
+          try {
+            Thread.sleep(roundTripMs);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          sent.countDown();
+          return new HttpResponse("", 202, "Accepted", Collections.emptyMap());
+        };
+    MetricBatchSender sender =
+        MetricBatchSender.create(
+            MetricBatchSender.configurationBuilder()
+                .apiKey("benchmark")
+                .httpPoster(poster)
+                .endpoint(new URL("http://localhost/metric/v1"))
+                .build());
+    TelemetryClient client = builder.metricBatchSender(sender).build();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < batches; i++) {
+      client.sendBatch(
+          new MetricBatch(
+              singleton(new Count("benchmark.count", 1, i, i + 1, new Attributes())),
+              new Attributes()));
+    }
+    sent.await();
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    client.shutdown();
+    return elapsedMs;
+  }
+}